@@ -3,6 +3,7 @@ package apoc;
 import apoc.custom.CypherProcedures;
 import apoc.cypher.CypherInitializer;
 import apoc.index.IndexUpdateTransactionEventHandler;
+import apoc.meta.MetaCache;
 import apoc.trigger.Trigger;
 import apoc.ttl.TTLLifeCycle;
 import apoc.util.ApocUrlStreamHandlerFactory;
@@ -59,6 +60,7 @@ public class ApocKernelExtensionFactory extends KernelExtensionFactory<ApocKerne
         private Trigger.LifeCycle triggerLifeCycle;
         private Log userLog;
         private TTLLifeCycle ttlLifeCycle;
+        private MetaCache metaCache;
 
         private IndexUpdateTransactionEventHandler.LifeCycle indexUpdateLifeCycle;
         private CypherProcedures.CustomProcedureStorage customProcedureStorage;
@@ -74,6 +76,14 @@ public class ApocKernelExtensionFactory extends KernelExtensionFactory<ApocKerne
             return indexUpdateLifeCycle;
         }
 
+        public TTLLifeCycle getTtlLifeCycle() {
+            return ttlLifeCycle;
+        }
+
+        public MetaCache getMetaCache() {
+            return metaCache;
+        }
+
         @Override
         public void start() throws Throwable {
             ApocConfiguration.initialize(db);
@@ -86,11 +96,14 @@ public class ApocKernelExtensionFactory extends KernelExtensionFactory<ApocKerne
             triggerLifeCycle.start();
             indexUpdateLifeCycle = new IndexUpdateTransactionEventHandler.LifeCycle(db, log.getUserLog(Procedures.class));
             indexUpdateLifeCycle.start();
+            metaCache = new MetaCache(db, log.getUserLog(MetaCache.class));
+            metaCache.start();
 
             customProcedureStorage = new CypherProcedures.CustomProcedureStorage(db, log.getUserLog(CypherProcedures.class));
             AvailabilityGuard availabilityGuard = dependencies.availabilityGuard();
             availabilityGuard.addListener(customProcedureStorage);
             availabilityGuard.addListener(new CypherInitializer(db, log.getUserLog(CypherInitializer.class)));
+            availabilityGuard.addListener(metaCache);
         }
 
         public void registerCustomProcedures() {
@@ -117,6 +130,12 @@ public class ApocKernelExtensionFactory extends KernelExtensionFactory<ApocKerne
                 } catch(Exception e) {
                     userLog.warn("Error stopping index update service",e);
                 }
+            if (metaCache !=null)
+                try {
+                    metaCache.stop();
+                } catch(Exception e) {
+                    userLog.warn("Error stopping meta data cache",e);
+                }
         }
 
     }
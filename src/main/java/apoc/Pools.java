@@ -5,27 +5,49 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.scheduler.JobScheduler;
 
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class Pools {
 
     static final String CONFIG_JOBS_SCHEDULED_NUM_THREADS = "jobs.scheduled.num_threads";
     static final String CONFIG_JOBS_POOL_NUM_THREADS = "jobs.pool.num_threads";
+    static final String CONFIG_JOBS_NUM_THREADS = "jobs.%s.num_threads";
+    static final String CONFIG_JOBS_QUEUE_SIZE = "jobs.%s.queue_size";
 
-    public final static int DEFAULT_SCHEDULED_THREADS = Runtime.getRuntime().availableProcessors() / 4;
-    public final static int DEFAULT_POOL_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    public final static String BATCH_WRITE_POOL = "batch_write";
+    public final static String ANALYTICS_POOL = "analytics";
+    public final static String IO_POOL = "io";
+    public final static String BACKGROUND_POOL = "background";
+
+    private final static int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    public final static int DEFAULT_SCHEDULED_THREADS = PROCESSORS / 4;
+    public final static int DEFAULT_POOL_THREADS = PROCESSORS * 2;
+
+    private final static Map<String, ThreadPoolExecutor> POOLS = new LinkedHashMap<>();
+
+    public final static ExecutorService SINGLE = register("single", createSinglePool());
+    public final static ExecutorService DEFAULT = register("pool", createDefaultPool());
+    public final static ScheduledExecutorService SCHEDULED = register("scheduled", createScheduledPool());
+
+    /** writing batches, e.g. apoc.periodic.iterate with parallel:true or batched refactorings */
+    public final static ExecutorService BATCH_WRITE = register(BATCH_WRITE_POOL, createPool(BATCH_WRITE_POOL, PROCESSORS));
+    /** read-mostly graph algorithms and parallel cypher */
+    public final static ExecutorService ANALYTICS = register(ANALYTICS_POOL, createPool(ANALYTICS_POOL, PROCESSORS));
+    /** import, export and store warmup */
+    public final static ExecutorService IO = register(IO_POOL, createPool(IO_POOL, Math.max(1, PROCESSORS / 2)));
+    /** long running background maintenance like index population */
+    public final static ExecutorService BACKGROUND = register(BACKGROUND_POOL, createPool(BACKGROUND_POOL, Math.max(1, PROCESSORS / 4)));
 
-    public final static ExecutorService SINGLE = createSinglePool();
-    public final static ExecutorService DEFAULT = createDefaultPool();
-    public final static ScheduledExecutorService SCHEDULED = createScheduledPool();
     public static JobScheduler NEO4J_SCHEDULER = null;
 
     static {
-        for (ExecutorService service : Arrays.asList(SINGLE, DEFAULT, SCHEDULED)) {
+        for (ExecutorService service : POOLS.values()) {
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 try {
                     service.shutdown();
@@ -43,24 +65,117 @@ public class Pools {
     public static ExecutorService createDefaultPool() {
         int threads = getNoThreadsInDefaultPool();
         int queueSize = threads * 25;
-        return new ThreadPoolExecutor(threads / 2, threads, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
-                new CallerBlocksPolicy());
+        return new NestingThreadPoolExecutor(Math.max(1, threads / 2), threads, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                Executors.defaultThreadFactory(), new CallerBlocksPolicy());
 //                new ThreadPoolExecutor.CallerRunsPolicy());
     }
+
+    /**
+     * creates a pool sized by <code>apoc.jobs.&lt;name&gt;.num_threads</code> and <code>apoc.jobs.&lt;name&gt;.queue_size</code>
+     */
+    public static ExecutorService createPool(String name, int defaultThreads) {
+        int threads = getConfigValue(String.format(CONFIG_JOBS_NUM_THREADS, name), defaultThreads);
+        int queueSize = getConfigValue(String.format(CONFIG_JOBS_QUEUE_SIZE, name), threads * 25);
+        ThreadPoolExecutor pool = new NestingThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                new NamedThreadFactory("apoc-" + name), new CallerBlocksPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Runs the tasks submitted by its own workers inline, in the submitting task's thread and transaction.
+     * A worker that queues a task on its own pool and waits for it, e.g. a parallel batch running a procedure that
+     * uses the same pool, holds a thread the task needs, once all workers do so the pool deadlocks.
+     */
+    static class NestingThreadPoolExecutor extends ThreadPoolExecutor {
+        private static final ThreadLocal<ThreadPoolExecutor> WORKER_OF = new ThreadLocal<>();
+
+        NestingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                                  ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+            super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (WORKER_OF.get() == this) {
+                command.run();
+            } else {
+                super.execute(command);
+            }
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            WORKER_OF.set(this);
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            WORKER_OF.remove();
+        }
+    }
+
+    /**
+     * Blocks the submitting thread until there is room in the queue again, instead of running or re-submitting the task.
+     */
     static class CallerBlocksPolicy implements RejectedExecutionHandler {
+        private final AtomicLong rejected = new AtomicLong();
+
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-            if (!executor.isShutdown()) {
-                // block caller for 100ns
-                LockSupport.parkNanos(100);
-                try {
-                    // submit again
-                    executor.submit(r).get();
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new RuntimeException(e);
-                }
+            rejected.incrementAndGet();
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Pool is shut down");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+            // shut down while we waited, the task would never run unless a worker already took it
+            if (executor.isShutdown() && executor.remove(r)) {
+                throw new RejectedExecutionException("Pool is shut down");
             }
         }
+
+        long getRejected() {
+            return rejected.get();
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicLong count = new AtomicLong();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static <T extends ExecutorService> T register(String name, T pool) {
+        POOLS.put(name, (ThreadPoolExecutor) pool);
+        return pool;
+    }
+
+    public static Map<String, ThreadPoolExecutor> getPools() {
+        return Collections.unmodifiableMap(POOLS);
+    }
+
+    public static long getRejectedCount(ThreadPoolExecutor pool) {
+        RejectedExecutionHandler handler = pool.getRejectedExecutionHandler();
+        return handler instanceof CallerBlocksPolicy ? ((CallerBlocksPolicy) handler).getRejected() : 0;
+    }
+
+    public static int getNoThreads(ExecutorService pool) {
+        return pool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) pool).getMaximumPoolSize() : getNoThreadsInDefaultPool();
     }
 
     public static int getNoThreadsInDefaultPool() {
@@ -71,9 +186,14 @@ public class Pools {
         Integer maxThreads = Util.toInteger(ApocConfiguration.get(CONFIG_JOBS_SCHEDULED_NUM_THREADS, DEFAULT_SCHEDULED_THREADS));
         return Math.max(1, maxThreads == null ? DEFAULT_POOL_THREADS : maxThreads);
     }
+    private static int getConfigValue(String key, int defaultValue) {
+        Integer value = Util.toInteger(ApocConfiguration.get(key, defaultValue));
+        return Math.max(1, value == null ? defaultValue : value);
+    }
 
     private static ExecutorService createSinglePool() {
-        return Executors.newSingleThreadExecutor();
+        return new NestingThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
     }
 
     private static ScheduledExecutorService createScheduledPool() {
@@ -81,7 +201,7 @@ public class Pools {
     }
 
     public static <T> Future<Void> processBatch(List<T> batch, GraphDatabaseService db, Consumer<T> action) {
-        return DEFAULT.submit((Callable<Void>) () -> {
+        return BATCH_WRITE.submit((Callable<Void>) () -> {
                 try (Transaction tx = db.beginTx()) {
                     batch.forEach(action);
                     tx.success();
@@ -42,7 +42,9 @@ public class Centrality {
     public TerminationGuard guard;
 
 
-    static final ExecutorService pool = Pools.DEFAULT;
+    static final ExecutorService pool = Pools.ANALYTICS;
+    static final String SETTING_SAMPLING_SIZE = "samplingSize";
+    static final String SETTING_PROBABILITY = "probability";
 
     @Deprecated
     @Procedure("apoc.algo.betweenness")
@@ -81,25 +83,76 @@ public class Centrality {
 
     @Deprecated
     @Procedure(value = "apoc.algo.betweennessCypher",mode = Mode.WRITE)
-    @Description("CALL apoc.algo.betweennessCypher(node_cypher,rel_cypher,write) - calculates betweeness " +
-    " centrality based on cypher input")
+    @Description("CALL apoc.algo.betweennessCypher({node_cypher,rel_cypher,graph,write,writeBatchSize:10000,skipUnchanged:false,samplingSize,probability,strategy:'random',seed}) - calculates betweeness " +
+    " centrality based on cypher input or a graph projection, with samplingSize or probability it is estimated from a sample of 'random' or 'degree' weighted source nodes")
     public Stream<apoc.algo.algorithms.AlgorithmInterface.Statistics> betweennessCypher(
             @Name("config") Map<String, Object> config) {
+        boolean shouldWrite = (boolean)config.getOrDefault(AlgoUtils.SETTING_WRITE, AlgoUtils.DEFAULT_PAGE_RANK_WRITE);
+        String property = (String) config.getOrDefault("property","betweenness_centrality");
+
+        apoc.algo.algorithms.BetweennessCentrality betweennessCentrality = readCentralityGraph("BetweennessCypher", config);
+        long afterReading = System.currentTimeMillis();
+
+        if (config.containsKey(SETTING_SAMPLING_SIZE) || config.containsKey(SETTING_PROBABILITY)) {
+            computeSampled(betweennessCentrality, config);
+        } else {
+            betweennessCentrality.computeUnweightedParallel();
+        }
+
+        long afterComputation = System.currentTimeMillis();
+        log.info("BetweennessCypher: Computations took " + (afterComputation - afterReading) + " milliseconds");
+
+        if (shouldWrite) {
+            betweennessCentrality.writeResultsToDB(property, ParallelResultWriter.fromConfig(dbAPI, guard, config));
+            long afterWrite = System.currentTimeMillis();
+            log.info("BetweennessCypher: Writeback took " + (afterWrite - afterComputation) + " milliseconds");
+        }
+
+        return Stream.of(betweennessCentrality.getStatistics());
+
+    }
+
+    @Procedure(value = "apoc.algo.closenessCypher",mode = Mode.WRITE)
+    @Description("CALL apoc.algo.closenessCypher({node_cypher,rel_cypher,graph,write,property:'closeness_centrality',writeBatchSize:10000,skipUnchanged:false,samplingSize,probability,strategy:'random',seed}) - calculates closeness " +
+    " centrality (1 / sum of the distances from all nodes) based on cypher input or a graph projection, with samplingSize or probability it is estimated from a sample of 'random' or 'degree' weighted source nodes")
+    public Stream<apoc.algo.algorithms.AlgorithmInterface.Statistics> closenessCypher(
+            @Name("config") Map<String, Object> config) {
+        boolean shouldWrite = (boolean)config.getOrDefault(AlgoUtils.SETTING_WRITE, AlgoUtils.DEFAULT_PAGE_RANK_WRITE);
+        String property = (String) config.getOrDefault("property","closeness_centrality");
+
+        apoc.algo.algorithms.BetweennessCentrality centrality = readCentralityGraph("ClosenessCypher", config);
+        computeSampled(centrality, config);
+        AlgorithmInterface.Statistics stats = centrality.getStatistics();
+        stats.error = centrality.getClosenessError();
+        log.info("ClosenessCypher: Computations took " + stats.computeMillis + " milliseconds");
+
+        if (shouldWrite) {
+            centrality.writeClosenessToDB(property, ParallelResultWriter.fromConfig(dbAPI, guard, config));
+            log.info("ClosenessCypher: Writeback took " + stats.writeMillis + " milliseconds");
+        }
+        return Stream.of(stats);
+    }
+
+    private apoc.algo.algorithms.BetweennessCentrality readCentralityGraph(String name, Map<String, Object> config) {
         String nodeCypher = AlgoUtils.getCypher(config, AlgoUtils.SETTING_CYPHER_NODE, AlgoUtils.DEFAULT_CYPHER_NODE);
         String relCypher = AlgoUtils.getCypher(config, AlgoUtils.SETTING_CYPHER_REL, AlgoUtils.DEFAULT_CYPHER_REL);
-        boolean shouldWrite = (boolean)config.getOrDefault(AlgoUtils.SETTING_WRITE, AlgoUtils.DEFAULT_PAGE_RANK_WRITE);
         Number weight = (Number) config.get(SETTING_WEIGHTED);
         Number batchSize = (Number) config.get(SETTING_BATCH_SIZE);
-        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreadsInDefaultPool())).intValue();
-        String property = (String) config.getOrDefault("property","betweenness_centrality");
+        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreads(pool))).intValue();
 
         long beforeReading = System.currentTimeMillis();
-        log.info("BetweennessCypher: Reading data into local ds");
+        log.info(name + ": Reading data into local ds");
         apoc.algo.algorithms.BetweennessCentrality betweennessCentrality =
                 new apoc.algo.algorithms.BetweennessCentrality(dbAPI, pool, log, guard);
 
-        boolean success = betweennessCentrality.readNodeAndRelCypherData(
-                relCypher, nodeCypher, weight, batchSize, concurrency);
+        String graph = (String) config.get(AlgoUtils.SETTING_GRAPH);
+        boolean success = true;
+        if (graph != null) {
+            betweennessCentrality.readGraph(GraphCatalog.get(graph));
+        } else {
+            success = betweennessCentrality.readNodeAndRelCypherData(
+                    relCypher, nodeCypher, weight, batchSize, concurrency);
+        }
         if (!success) {
             String errorMsg = "Failure while reading cypher queries. Make sure the results are ordered.";
             log.info(errorMsg);
@@ -107,24 +160,29 @@ public class Centrality {
         }
         long afterReading = System.currentTimeMillis();
 
-        log.info("BetweennessCypher: Graph stored in local ds in " + (afterReading - beforeReading) + " milliseconds");
-        log.info("BetweennessCypher: Number of nodes: " + betweennessCentrality.numberOfNodes());
-        log.info("BetweennessCypher: Number of relationships: " + betweennessCentrality.numberOfRels());
-
-
-        betweennessCentrality.computeUnweightedParallel();
-
-        long afterComputation = System.currentTimeMillis();
-        log.info("BetweennessCypher: Computations took " + (afterComputation - afterReading) + " milliseconds");
+        log.info(name + ": Graph stored in local ds in " + (afterReading - beforeReading) + " milliseconds");
+        log.info(name + ": Number of nodes: " + betweennessCentrality.numberOfNodes());
+        log.info(name + ": Number of relationships: " + betweennessCentrality.numberOfRels());
+        return betweennessCentrality;
+    }
 
-        if (shouldWrite) {
-            betweennessCentrality.writeResultsToDB(property);
-            long afterWrite = System.currentTimeMillis();
-            log.info("BetweennessCypher: Writeback took " + (afterWrite - afterComputation) + " milliseconds");
+    /**
+     * Samples {@code samplingSize} source nodes or a {@code probability} fraction of them, all nodes if neither is given.
+     */
+    private void computeSampled(apoc.algo.algorithms.BetweennessCentrality centrality, Map<String, Object> config) {
+        long nodes = centrality.numberOfNodes();
+        Number probability = (Number) config.get(SETTING_PROBABILITY);
+        if (probability != null && !(probability.doubleValue() > 0 && probability.doubleValue() <= 1)) {
+            throw new IllegalArgumentException("Sampling probability must be in (0,1] but was " + probability);
         }
-
-        return Stream.of(betweennessCentrality.getStatistics());
-
+        long samples = ((Number) config.getOrDefault(SETTING_SAMPLING_SIZE,
+                probability == null ? nodes : (long) Math.ceil(probability.doubleValue() * nodes))).longValue();
+        String strategy = (String) config.getOrDefault("strategy", "random");
+        if (!"random".equals(strategy) && !"degree".equals(strategy)) {
+            throw new IllegalArgumentException("Unknown sampling strategy " + strategy + ", expected 'random' or 'degree'");
+        }
+        long seed = ((Number) config.getOrDefault("seed", System.nanoTime())).longValue();
+        centrality.computeUnweightedSampled((int) Math.min(Integer.MAX_VALUE, samples), "degree".equals(strategy), seed);
     }
 
     @Deprecated
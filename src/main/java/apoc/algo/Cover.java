@@ -1,50 +1,136 @@
 package apoc.algo;
 
+import apoc.Pools;
 import apoc.result.RelationshipResult;
 import apoc.util.Util;
-import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
 
-import java.util.Collection;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class Cover {
 
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
     @Context
     public GraphDatabaseService db;
 
+    @Context
+    public KernelTransaction ktx;
+
     @Procedure
-    @Description("apoc.algo.cover(nodes) yield rel - returns all relationships between this set of nodes")
-    public Stream<RelationshipResult> cover(@Name("nodes") Object nodes) {
-        Set<Node> nodeSet = Util.nodeStream(db, nodes).collect(Collectors.toSet());
-        /*return nodeSet.parallelStream()
-                .flatMap(n ->
-                        Util.inTx(db,() ->
-                        StreamSupport.stream(n.getRelationships(Direction.OUTGOING)
-                                .spliterator(),false)
-                                .filter(r -> nodeSet.contains(r.getEndNode()))
-                                .map(RelationshipResult::new)));*/
-        // NB prallel approach doesn't work in 3.4 (see SubgraphTest.testSubgraphAllShouldContainExpectedNodesAndRels
-        // so falling back to single threaded
-        // TODO: consider using multithreading and maybe kernel API here
-        return coverNodes(nodeSet).map(RelationshipResult::new);
+    @Description("apoc.algo.cover(nodes, {parallel:true, batchSize:10000}) yield rel - returns all relationships between this set of nodes")
+    public Stream<RelationshipResult> cover(@Name("nodes") Object nodes, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        Roaring64NavigableMap nodeIds = new Roaring64NavigableMap();
+        Util.stream(nodes).forEach(node -> nodeIds.addLong(nodeId(node)));
+        int batchSize = Util.toInteger(config.getOrDefault("batchSize", DEFAULT_BATCH_SIZE));
+        boolean parallel = Util.toBoolean(config.getOrDefault("parallel", true));
+        return coverNodes(db, ktx, nodeIds, batchSize, parallel).map(RelationshipResult::new);
+    }
+
+    private static long nodeId(Object node) {
+        if (node instanceof Node) return ((Node) node).getId();
+        if (node instanceof Number) return ((Number) node).longValue();
+        throw new RuntimeException("Can't convert " + node.getClass() + " to a Node");
+    }
+
+    // utility method for use by other procedures
+    public static Stream<Relationship> coverNodes(GraphDatabaseService db, KernelTransaction ktx, Collection<Node> nodes) {
+        Roaring64NavigableMap nodeIds = new Roaring64NavigableMap();
+        for (Node node : nodes) {
+            nodeIds.addLong(node.getId());
+        }
+        return coverNodes(db, ktx, nodeIds, DEFAULT_BATCH_SIZE, true);
+    }
+
+    /**
+     * Returns the relationships between the given nodes, ordered by start node id.
+     * Nodes are read in batches of <code>batchSize</code> on the kernel API, more than one batch is read in parallel
+     * on the analytics pool unless the transaction has uncommitted changes, which other threads wouldn't see.
+     */
+    public static Stream<Relationship> coverNodes(GraphDatabaseService db, KernelTransaction ktx, Roaring64NavigableMap nodeIds, int batchSize, boolean parallel) {
+        batchSize = Math.max(1, batchSize);
+        boolean hasTxState = ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges();
+        List<long[]> rels = parallel && !hasTxState && nodeIds.getLongCardinality() > batchSize ?
+                coverParallel((GraphDatabaseAPI) db, nodeIds, batchSize) :
+                Collections.singletonList(cover(ktx, nodeIds, nodeIds.toArray()));
+        return rels.stream().flatMap(ids -> LongStream.of(ids).mapToObj(db::getRelationshipById));
+    }
+
+    private static List<long[]> coverParallel(GraphDatabaseAPI db, Roaring64NavigableMap nodeIds, int batchSize) {
+        ThreadToStatementContextBridge bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        List<Future<long[]>> futures = new ArrayList<>();
+        LongIterator it = nodeIds.getLongIterator();
+        while (it.hasNext()) {
+            long[] batch = new long[(int) Math.min(batchSize, nodeIds.getLongCardinality())];
+            int size = 0;
+            while (size < batch.length && it.hasNext()) {
+                batch[size++] = it.next();
+            }
+            long[] nodes = size == batch.length ? batch : Arrays.copyOf(batch, size);
+            futures.add(Pools.ANALYTICS.submit(() -> {
+                try (Transaction tx = db.beginTx()) {
+                    long[] result = cover(bridge.getKernelTransactionBoundToThisThread(true), nodeIds, nodes);
+                    tx.success();
+                    return result;
+                }
+            }));
+        }
+        List<long[]> rels = new ArrayList<>(futures.size());
+        for (Future<long[]> future : futures) {
+            try {
+                rels.add(Pools.force(future));
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new RuntimeException("Error computing cover of " + nodeIds.getLongCardinality() + " nodes", e.getCause());
+            }
+        }
+        return rels;
     }
 
-    // non-parallelized utility method for use by other procedures
-    public static Stream<Relationship> coverNodes(Collection<Node> nodes) {
-        return nodes.stream()
-                .flatMap(n ->
-                        StreamSupport.stream(n.getRelationships(Direction.OUTGOING)
-                                .spliterator(),false)
-                                .filter(r -> nodes.contains(r.getEndNode())));
+    private static long[] cover(KernelTransaction ktx, Roaring64NavigableMap nodeIds, long[] nodes) {
+        Read read = ktx.dataRead();
+        CursorFactory cursors = ktx.cursors();
+        long[] rels = new long[Math.max(16, nodes.length)];
+        int size = 0;
+        try (NodeCursor nodeCursor = cursors.allocateNodeCursor()) {
+            for (long nodeId : nodes) {
+                read.singleNode(nodeId, nodeCursor);
+                if (!nodeCursor.next()) {
+                    throw new NotFoundException("Node " + nodeId + " not found");
+                }
+                try (RelationshipSelectionCursor outgoing = RelationshipSelections.outgoingCursor(cursors, nodeCursor, null)) {
+                    while (outgoing.next()) {
+                        if (!nodeIds.contains(outgoing.otherNodeReference())) continue;
+                        if (size == rels.length) rels = Arrays.copyOf(rels, size * 2);
+                        rels[size++] = outgoing.relationshipReference();
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(rels, size);
     }
 }
@@ -0,0 +1,71 @@
+package apoc.algo;
+
+import apoc.algo.algorithms.GraphCatalog;
+import apoc.algo.algorithms.GraphProjection;
+import apoc.algo.algorithms.GraphProjectionLoader;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class GraphProjections {
+
+    @Context
+    public GraphDatabaseAPI db;
+
+    @Context
+    public KernelTransaction ktx;
+
+    @Context
+    public Log log;
+
+    public static class GraphInfo {
+        public final String name;
+        public final long nodes;
+        public final long relationships;
+        public final long memoryBytes;
+        public final long loadMillis;
+        public final boolean weighted;
+        public final Map<String, Object> config;
+
+        public GraphInfo(GraphProjection graph) {
+            this.name = graph.name;
+            this.nodes = graph.nodeCount();
+            this.relationships = graph.relationshipCount();
+            this.memoryBytes = graph.memoryBytes();
+            this.loadMillis = graph.loadMillis;
+            this.weighted = graph.weights != null;
+            this.config = graph.config;
+        }
+    }
+
+    @Procedure("apoc.algo.graph.load")
+    @Description("CALL apoc.algo.graph.load(name, {label, relationshipType, direction:'OUTGOING', weightProperty, defaultWeight:1.0, batchSize, parallel:true}) YIELD name, nodes, relationships, memoryBytes, loadMillis - loads a compact in-memory projection of the graph for use with the {graph:name} config of the apoc.algo procedures")
+    public Stream<GraphInfo> load(@Name("name") String name, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        GraphProjection graph = new GraphProjectionLoader(db, ktx, config).load(name, config);
+        GraphCatalog.put(graph);
+        log.info("apoc.algo.graph.load: loaded '%s' with %d nodes and %d relationships, %d bytes in %d ms",
+                name, graph.nodeCount(), graph.relationshipCount(), graph.memoryBytes(), graph.loadMillis);
+        return Stream.of(new GraphInfo(graph));
+    }
+
+    @Procedure("apoc.algo.graph.list")
+    @Description("CALL apoc.algo.graph.list() YIELD name, nodes, relationships, memoryBytes, loadMillis - lists the loaded graph projections")
+    public Stream<GraphInfo> list() {
+        return GraphCatalog.list().stream().sorted(Comparator.comparing(g -> g.name)).map(GraphInfo::new);
+    }
+
+    @Procedure("apoc.algo.graph.drop")
+    @Description("CALL apoc.algo.graph.drop(name) YIELD name, nodes, relationships, memoryBytes, loadMillis - removes the graph projection and frees its memory")
+    public Stream<GraphInfo> drop(@Name("name") String name) {
+        GraphProjection graph = GraphCatalog.remove(name);
+        return graph == null ? Stream.empty() : Stream.of(new GraphInfo(graph));
+    }
+}
@@ -1,14 +1,22 @@
 package apoc.algo;
 
 import apoc.Pools;
+import apoc.algo.algorithms.AlgoUtils;
+import apoc.algo.algorithms.GraphCatalog;
+import apoc.algo.algorithms.GraphProjection;
+import apoc.algo.algorithms.GraphProjectionLoader;
+import apoc.algo.algorithms.InMemoryLabelPropagation;
 import apoc.util.Util;
 import org.neo4j.graphdb.*;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static apoc.util.Util.parseDirection;
 
@@ -16,6 +24,10 @@ public class LabelPropagation {
     @Context
     public GraphDatabaseService db;
     @Context
+    public GraphDatabaseAPI dbAPI;
+    @Context
+    public KernelTransaction ktx;
+    @Context
     public TerminationGuard guard;
 
     @Context
@@ -83,6 +95,52 @@ public class LabelPropagation {
         }
     }
 
+    public static class CommunityStatistics {
+        public long nodes, relationships, iterations, communities, written, loadMillis, computeMillis, writeMillis;
+        public boolean converged, write;
+        public List<Long> changes;
+    }
+
+    @Procedure(name = "apoc.algo.community.inMemory", mode = Mode.WRITE)
+    @Description("CALL apoc.algo.community.inMemory({iterations:20, tolerance:0.0, labels:[], partitionKey:'partition', type, direction:'BOTH', weightKey, batchSize:10000, write:true, graph}) " +
+            "YIELD nodes, relationships, iterations, converged, changes, communities - label propagation on in-memory arrays until at most tolerance of the nodes change, writes the partitions back once at the end")
+    public Stream<CommunityStatistics> communityInMemory(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        String partitionKey = (String) config.getOrDefault("partitionKey", "partition");
+        String weightKey = (String) config.get("weightKey");
+        int batchSize = Util.toInteger(config.getOrDefault("batchSize", 10_000));
+        String graphName = (String) config.get(AlgoUtils.SETTING_GRAPH);
+
+        GraphProjection graph;
+        if (graphName != null) {
+            graph = GraphCatalog.get(graphName);
+        } else {
+            Map<String, Object> graphConfig = Util.map("label", config.get("labels"), "relationshipType", config.get("type"),
+                    "direction", config.getOrDefault("direction", "BOTH"), "weightProperty", weightKey);
+            graph = new GraphProjectionLoader(dbAPI, ktx, graphConfig).load("community", graphConfig);
+        }
+        InMemoryLabelPropagation algo = new InMemoryLabelPropagation(dbAPI, ktx, Pools.ANALYTICS, log, guard, graph, batchSize);
+        algo.loadNodeData(partitionKey, weightKey);
+        algo.compute(Util.toInteger(config.getOrDefault("iterations", 20)), Util.toDouble(config.getOrDefault("tolerance", 0.0d)));
+
+        CommunityStatistics stats = new CommunityStatistics();
+        if (Util.toBoolean(config.getOrDefault(AlgoUtils.SETTING_WRITE, true))) {
+            algo.write(partitionKey);
+            stats.write = true;
+        }
+        stats.nodes = graph.nodeCount();
+        stats.relationships = graph.relationshipCount();
+        stats.iterations = algo.changes.size();
+        stats.changes = algo.changes;
+        stats.converged = algo.converged;
+        stats.communities = algo.communities();
+        stats.written = algo.written;
+        stats.loadMillis = (graphName == null ? graph.loadMillis : 0) + algo.loadMillis;
+        stats.computeMillis = algo.computeMillis;
+        stats.writeMillis = algo.writeMillis;
+        log.info("apoc.algo.community.inMemory: %d iterations, converged %s, changes %s", stats.iterations, stats.converged, stats.changes);
+        return Stream.of(stats);
+    }
+
     private Future<Void> clusterBatch(List<Node> batch, String partitionKey, RelationshipType relationshipType, Direction direction, String weightKey) {
         return Pools.processBatch(batch, db, (node) -> {
             Map<Object, Double> votes = new HashMap<>();
@@ -5,6 +5,8 @@ import org.neo4j.kernel.api.KernelTransaction;
 import org.neo4j.procedure.*;
 import apoc.Pools;
 import apoc.algo.algorithms.AlgoUtils;
+import apoc.algo.algorithms.GraphCatalog;
+import apoc.algo.algorithms.ParallelResultWriter;
 import apoc.algo.pagerank.PageRankArrayStorageParallelCypher;
 import apoc.algo.pagerank.PageRankArrayStorageParallelSPI;
 import apoc.result.NodeScore;
@@ -25,9 +27,13 @@ public class PageRank {
 
     private static final String SETTING_PAGE_RANK_ITERATIONS = "iterations";
     private static final String SETTING_PAGE_RANK_TYPES = "types";
+    private static final String SETTING_PAGE_RANK_TOLERANCE = "tolerance";
+    private static final String SETTING_PAGE_RANK_INCREMENTAL = "incremental";
 
-    static final ExecutorService pool = Pools.DEFAULT;
+    static final ExecutorService pool = Pools.ANALYTICS;
     static final Long DEFAULT_PAGE_RANK_ITERATIONS = 20L;
+    static final Long DEFAULT_DELTA_MAX_ITERATIONS = 100L;
+    static final double DEFAULT_DELTA_TOLERANCE = 0.0001;
 
     @Context
     public GraphDatabaseAPI db;
@@ -68,7 +74,7 @@ public class PageRank {
     @Deprecated
     @Procedure(value = "apoc.algo.pageRankStats",mode = Mode.WRITE)
     @Description(
-            "CALL apoc.algo.pageRankStats({iterations:_,types:_,write:true,...}) YIELD nodeCount - calculates page rank on graph " +
+            "CALL apoc.algo.pageRankStats({iterations:_,types:_,write:true,writeBatchSize:10000,skipUnchanged:false,...}) YIELD nodeCount - calculates page rank on graph " +
                     " for given nodes and potentially writes back")
     public Stream<PageRankStatistics> pageRankStats(@Name("config") Map<String, Object> config) {
         Long iterations = (Long) config.getOrDefault(SETTING_PAGE_RANK_ITERATIONS, DEFAULT_PAGE_RANK_ITERATIONS);
@@ -78,7 +84,7 @@ public class PageRank {
 
     @Deprecated
     @Procedure(value = "apoc.algo.pageRankWithCypher",mode = Mode.WRITE)
-    @Description("CALL apoc.algo.pageRankWithCypher({iterations,node_cypher,rel_cypher,write,property,numCpu}) - calculates page rank based on cypher input")
+    @Description("CALL apoc.algo.pageRankWithCypher({iterations,node_cypher,rel_cypher,graph,write,property,numCpu,writeBatchSize:10000,skipUnchanged:false,tolerance,incremental:false}) - calculates page rank based on cypher input, with a tolerance or incremental:true by pushing residuals until their L1 norm per node is below the tolerance, incremental starts from the ranks stored in property")
     public Stream<PageRankStatistics> pageRankWithCypher(
             @Name("config") Map<String, Object> config) {
         Long iterations = (Long) config.getOrDefault(SETTING_PAGE_RANK_ITERATIONS, DEFAULT_PAGE_RANK_ITERATIONS);
@@ -87,14 +93,20 @@ public class PageRank {
         boolean shouldWrite = (boolean)config.getOrDefault(SETTING_WRITE, DEFAULT_PAGE_RANK_WRITE);
         Number weight = (Number) config.get(SETTING_WEIGHTED);
         Number batchSize = (Number) config.get(SETTING_BATCH_SIZE);
-        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreadsInDefaultPool())).intValue();
+        int concurrency = ((Number) config.getOrDefault("concurrency",Pools.getNoThreads(pool))).intValue();
         String property = (String) config.getOrDefault("property","pagerank");
 
         long beforeReading = System.currentTimeMillis();
         log.info("Pagerank: Reading data into local ds");
         PageRankArrayStorageParallelCypher pageRank = new PageRankArrayStorageParallelCypher(db, guard, pool, log);
-        boolean success = pageRank.readNodeAndRelCypherData(
-                relCypher, nodeCypher,weight, batchSize, concurrency);
+        String graph = (String) config.get(SETTING_GRAPH);
+        boolean success = true;
+        if (graph != null) {
+            pageRank.readGraph(GraphCatalog.get(graph));
+        } else {
+            success = pageRank.readNodeAndRelCypherData(
+                    relCypher, nodeCypher, weight, batchSize, concurrency);
+        }
         if (!success) {
             String errorMsg = "Failure while reading cypher queries. Make sure the results are ordered.";
             log.info(errorMsg);
@@ -106,13 +118,22 @@ public class PageRank {
         log.info("Pagerank: Number of nodes: " + pageRank.numberOfNodes());
         log.info("Pagerank: Number of relationships: " + pageRank.numberOfRels());
 
-        pageRank.compute(iterations.intValue());
+        Number tolerance = (Number) config.get(SETTING_PAGE_RANK_TOLERANCE);
+        boolean incremental = Util.toBoolean(config.get(SETTING_PAGE_RANK_INCREMENTAL));
+        if (incremental || tolerance != null) {
+            double[] initial = incremental ? pageRank.readRanks(property) : new double[(int) pageRank.numberOfNodes()];
+            Number maxIterations = (Number) config.getOrDefault(SETTING_PAGE_RANK_ITERATIONS, DEFAULT_DELTA_MAX_ITERATIONS);
+            pageRank.computeDelta(maxIterations.intValue(), tolerance == null ? DEFAULT_DELTA_TOLERANCE : tolerance.doubleValue(), initial);
+            log.info("Pagerank: Delta computation converged to residual " + pageRank.getStatistics().residual + " in " + pageRank.getStatistics().iterations + " iterations");
+        } else {
+            pageRank.compute(iterations.intValue());
+        }
 
         long afterComputation = System.currentTimeMillis();
         log.info("Pagerank: Computations took " + (afterComputation - afterReading) + " milliseconds");
 
         if (shouldWrite) {
-            pageRank.writeResultsToDB(property);
+            pageRank.writeResultsToDB(property, ParallelResultWriter.fromConfig(db, guard, config));
             long afterWrite = System.currentTimeMillis();
             log.info("Pagerank: Writeback took " + (afterWrite - afterComputation) + " milliseconds");
         }
@@ -135,7 +156,7 @@ public class PageRank {
             PageRankArrayStorageParallelSPI pageRank = new PageRankArrayStorageParallelSPI(db, ktx, guard, pool);
             pageRank.compute(iterations, types);
             if ((boolean)config.getOrDefault(SETTING_WRITE, DEFAULT_PAGE_RANK_WRITE)) {
-                pageRank.writeResultsToDB();
+                pageRank.writeResultsToDB(ParallelResultWriter.fromConfig(db, guard, config));
             }
             return Stream.of(pageRank.getStatistics());
         } catch (Exception e) {
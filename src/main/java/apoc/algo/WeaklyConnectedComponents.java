@@ -1,94 +1,142 @@
 package apoc.algo;
 
-import apoc.algo.wcc.CCVar;
+import apoc.Pools;
+import apoc.algo.algorithms.ParallelResultWriter;
+import apoc.algo.wcc.UnionFind;
 import apoc.result.CCResult;
-import org.neo4j.collection.primitive.Primitive;
-import org.neo4j.collection.primitive.PrimitiveLongIterator;
-import org.neo4j.collection.primitive.PrimitiveLongSet;
+import apoc.util.Util;
 import org.neo4j.graphdb.*;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
-import org.neo4j.procedure.Context;
-import org.neo4j.procedure.Description;
-import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.*;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class WeaklyConnectedComponents {
 
+	static final ExecutorService pool = Pools.ANALYTICS;
+	static final int DEFAULT_BATCH_SIZE = 100_000;
+
 	@Context
 	public GraphDatabaseService db;
 
+	@Context
+	public GraphDatabaseAPI dbAPI;
+
+	@Context
+	public KernelTransaction ktx;
+
 	@Context
 	public Log log;
 
+	@Context
+	public TerminationGuard guard;
+
+	public static class NodeComponent {
+		public final long nodeId;
+		public final long componentId;
+
+		public NodeComponent(long nodeId, long componentId) {
+			this.nodeId = nodeId;
+			this.componentId = componentId;
+		}
+	}
+
+	public static class WccStatistics {
+		public long nodes, relationships, components, maxComponentSize, computeMillis, writeMillis;
+		public boolean write;
+		public String property;
+	}
+
 	@Deprecated
 	@Procedure("apoc.algo.wcc")
 	@Description("CALL apoc.algo.wcc() YIELD number of weakly connected components")
 	public Stream<CCResult> wcc() {
-		List<List<CCVar>> results = new LinkedList<List<CCVar>>();
-		ResourceIterator<Node> nodes = db.getAllNodes().iterator();
-		PrimitiveLongSet allNodes = Primitive.longSet(0);
-		while (nodes.hasNext()) {
-			Node node = nodes.next();
-			if (node.getDegree() == 0) {
-				List<CCVar> result = new LinkedList<CCVar>();
-                result.add(new CCVar(node.getId()+"",node.getLabels().iterator().next().name()));
-                results.add(result);
-			} else {
-				allNodes.add(node.getId());
-			}
+		UnionFind unionFind = unionFind(Collections.emptyMap());
+		Map<Long, List<Long>> components = new LinkedHashMap<>();
+		for (long id = 0; id < unionFind.size(); id++) {
+			if (!unionFind.exists(id)) continue;
+			components.computeIfAbsent(unionFind.component(id), k -> new ArrayList<>()).add(id);
 		}
-		nodes.close();
-
-		PrimitiveLongIterator it = allNodes.iterator();
-		while (it.hasNext()) {
-			try {
-				long n = it.next();
-				List<CCVar> result = new LinkedList<CCVar>();
-				PrimitiveLongIterator reachableIDs = go(db.getNodeById(n), Direction.BOTH,result).iterator();
-				while (reachableIDs.hasNext()) {
-					long id = (long) reachableIDs.next();
-					allNodes.remove(id);
-				}
-				results.add(result);
-
-			} catch (NoSuchElementException e) {
-				break;
-			}
-			it = allNodes.iterator();
-		}
-		allNodes.close();
-		return results.stream().map((x) ->new CCResult( x.stream().map((z) -> new Long(z.getId())).collect(Collectors.toList()), x.stream().collect(Collectors.groupingBy(CCVar::getType)).entrySet().stream().collect(Collectors.toMap(
-                e -> e.getKey(),
-                e -> e.getValue().size()))
-            ));
+		return components.values().stream().map(nodeIds -> new CCResult(nodeIds, nodeIds.stream()
+				.map(id -> db.getNodeById(id).getLabels().iterator())
+				.filter(Iterator::hasNext)
+				.collect(Collectors.groupingBy(labels -> labels.next().name(), Collectors.counting()))));
+	}
+
+	@Procedure("apoc.algo.wcc.stream")
+	@Description("CALL apoc.algo.wcc.stream({types:'', batchSize:100000}) YIELD nodeId, componentId - weakly connected components by parallel union-find, the component id is the smallest node id of the component")
+	public Stream<NodeComponent> wccStream(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+		UnionFind unionFind = unionFind(config);
+		return LongStream.range(0, unionFind.size())
+				.filter(unionFind::exists)
+				.mapToObj(id -> new NodeComponent(id, unionFind.component(id)));
+	}
+
+	@Procedure(value = "apoc.algo.wcc.write", mode = Mode.WRITE)
+	@Description("CALL apoc.algo.wcc.write({types:'', batchSize:100000, property:'component'}) YIELD nodes, components, maxComponentSize, computeMillis, writeMillis - weakly connected components by parallel union-find, writes the component id of each node in parallel batches")
+	public Stream<WccStatistics> wccWrite(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+		UnionFind unionFind = unionFind(config);
+		WccStatistics stats = statistics(unionFind);
+		stats.write = true;
+		stats.property = (String) config.getOrDefault("property", "component");
+		stats.writeMillis = write(unionFind, stats.property, batchSize(config));
+		return Stream.of(stats);
+	}
+
+	@Procedure("apoc.algo.wcc.stats")
+	@Description("CALL apoc.algo.wcc.stats({types:'', batchSize:100000}) YIELD nodes, relationships, components, maxComponentSize, computeMillis - weakly connected components by parallel union-find, only returns statistics")
+	public Stream<WccStatistics> wccStats(@Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+		return Stream.of(statistics(unionFind(config)));
 	}
 
-	private PrimitiveLongSet go(Node node, Direction direction, List<CCVar> result) {
+	private static int batchSize(Map<String, Object> config) {
+		return Util.toInteger(config.getOrDefault("batchSize", DEFAULT_BATCH_SIZE));
+	}
 
-		PrimitiveLongSet visitedIDs = Primitive.longSet(0);
-		Stack<Node> frontierList = new Stack<Node>();
+	private UnionFind unionFind(Map<String, Object> config) {
+		TokenRead tokenRead = ktx.tokenRead();
+		int[] types = Stream.of(Util.typesAndDirectionsToTypesArray((String) config.getOrDefault("types", "")))
+				.mapToInt(type -> tokenRead.relationshipType(type.name()))
+				.toArray();
+		// unknown types stay NO_TOKEN and match no relationship
+		UnionFind unionFind = new UnionFind(dbAPI, pool, batchSize(config), guard).compute(types);
+		log.info("apoc.algo.wcc: %d nodes and %d relationships in %d ms", unionFind.nodes, unionFind.relationships, unionFind.computeMillis);
+		return unionFind;
+	}
 
-		frontierList.push(node);
-		visitedIDs.add(node.getId());
-		result.add(new CCVar(node.getId()+"",node.getLabels().iterator().next().name()));
+	private static WccStatistics statistics(UnionFind unionFind) {
+		WccStatistics stats = new WccStatistics();
+		stats.nodes = unionFind.nodes;
+		stats.relationships = unionFind.relationships;
+		stats.components = unionFind.components();
+		stats.maxComponentSize = unionFind.maxComponentSize();
+		stats.computeMillis = unionFind.computeMillis;
+		return stats;
+	}
 
+	private long write(UnionFind unionFind, String property, int batchSize) {
+		ParallelResultWriter.NodeValues components = new ParallelResultWriter.NodeValues() {
+			public int size() {
+				return (int) unionFind.size();
+			}
 
-		while (!frontierList.isEmpty()) {
-			node = frontierList.pop();
-			Iterator<Relationship> itR = node.getRelationships(direction).iterator();
-			while (itR.hasNext()) {
-				Node child = itR.next().getOtherNode(node);
-				if (visitedIDs.contains(child.getId())) {
-					continue;
-				}
-				visitedIDs.add(child.getId());
-				frontierList.push(child);
-				result.add(new CCVar(child.getId()+"",child.getLabels().iterator().next().name()));
+			public long nodeId(int index) {
+				return unionFind.exists(index) ? index : -1;
 			}
-		}
-		return visitedIDs;
+
+			public Value value(int index) {
+				return Values.longValue(unionFind.component(index));
+			}
+		};
+		return new ParallelResultWriter(dbAPI, guard, batchSize, false).write(property, components).writeMillis;
 	}
 }
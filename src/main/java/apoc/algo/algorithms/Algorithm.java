@@ -48,6 +48,8 @@ public class Algorithm implements AlgoIdGenerator {
     public int [] relationshipTarget;
     public int [] relationshipWeight;
     private Number batchSize;
+    // set when backed by a catalog projection instead of cypher loaded data
+    private GraphProjection graph;
 
     public Algorithm(GraphDatabaseAPI db,
                      ExecutorService pool,
@@ -85,6 +87,22 @@ public class Algorithm implements AlgoIdGenerator {
         return true;
     }
 
+    /**
+     * Uses the arrays of the projection as is, so repeated runs on the same projection don't reload the graph.
+     */
+    public void readGraph(GraphProjection graph) {
+        this.graph = graph;
+        this.maxAlgoNodeId = graph.nodeCount();
+        this.relCount = graph.relationshipCount();
+        this.sourceDegreeData = graph.degrees;
+        this.sourceChunkStartingIndex = graph.offsets;
+        this.relationshipTarget = graph.targets;
+        this.relationshipWeight = graph.intWeights();
+        this.readNodeMillis = 0;
+        this.readRelationshipMillis = 0;
+        log.info("Using graph projection '%s' with %d nodes and %d relationships", graph.name, maxAlgoNodeId, relCount);
+    }
+
     public int loadNodes(String nodeCypher) {
         if (nodeCypher == null) return  0;
 
@@ -94,6 +112,7 @@ public class Algorithm implements AlgoIdGenerator {
     }
 
     public int getAlgoNodeId(long node) {
+        if (graph != null) return graph.toAlgoId(node);
         return nodeMap.get(node); // Arrays.binarySearch(nodeMapping, 0, nodeCount, node);
     }
 
@@ -114,15 +133,6 @@ public class Algorithm implements AlgoIdGenerator {
         return maxAlgoNodeId;
     }
 
-    // TODO Create buckets instead of copying data.
-    // Not doing it right now because of the complications of the interface.
-    private static int [] growArray(int[] array, float growFactor) {
-        int currentSize = array.length;
-        int newArray[] = new int[(int)(currentSize * growFactor)];
-        System.arraycopy(array, 0, newArray, 0, currentSize);
-        return newArray;
-    }
-
     private int loadRelationships(String relCypher, boolean weighted, int defaultWeight) {
         RelationshipLoader loader = new RelationshipLoader(0, weighted, defaultWeight, this);
         db.execute(COMPILED_RUNTIME + relCypher).accept(loader);
@@ -215,6 +225,7 @@ public class Algorithm implements AlgoIdGenerator {
     }
 
     public long getMappedNode(int algoId) {
+        if (graph != null) return graph.toNodeId(algoId);
         return nodeMapping[algoId];
     }
 
@@ -11,7 +11,10 @@ public interface AlgorithmInterface
     long getMappedNode(int algoId);
 
     class Statistics {
-        public long nodes, relationships, readNodeMillis, readRelationshipMillis,computeMillis,writeMillis;
+        public long nodes, relationships, readNodeMillis, readRelationshipMillis,computeMillis,writeMillis,batches,written;
+        // sampled source nodes and estimated relative standard error of the sampled computation
+        public long samples;
+        public double error;
         public boolean write;
         public String property;
 
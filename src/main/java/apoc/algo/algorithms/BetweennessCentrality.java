@@ -6,13 +6,14 @@ import org.neo4j.collection.primitive.PrimitiveIntObjectMap;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.TerminationGuard;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
 
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 public class BetweennessCentrality implements AlgorithmInterface {
-    public static final int WRITE_BATCH=100_000;
     public final int MINIMUM_BATCH_SIZE =10_000 ;
     private Algorithm algorithm;
     private Log log;
@@ -24,6 +25,9 @@ public class BetweennessCentrality implements AlgorithmInterface {
 
     private PrimitiveIntObjectMap intermediateBcPerThread;
     float betweennessCentrality[];
+    // only computed by computeUnweightedSampled
+    double closenessCentrality[];
+    private double closenessError;
     private String property;
     private final TerminationGuard guard;
 
@@ -62,6 +66,16 @@ public class BetweennessCentrality implements AlgorithmInterface {
         return algorithm.getMappedNode(algoId);
     }
 
+    public void readGraph(GraphProjection graph) {
+        algorithm.readGraph(graph);
+        this.nodeCount = algorithm.getNodeCount();
+        this.relCount = algorithm.relCount;
+        stats.readNodeMillis = 0;
+        stats.readRelationshipMillis = 0;
+        stats.nodes = nodeCount;
+        stats.relationships = relCount;
+    }
+
     public boolean readNodeAndRelCypherData(String relCypher, String nodeCypher, Number weight, Number batchSize, int concurrency) {
         boolean success = algorithm.readNodeAndRelCypher(relCypher, nodeCypher,weight, batchSize, concurrency);
         this.nodeCount = algorithm.getNodeCount();
@@ -113,7 +127,7 @@ public class BetweennessCentrality implements AlgorithmInterface {
         Arrays.fill(betweennessCentrality, 0);
         long before = System.currentTimeMillis();
 
-        int numOfThreads = Pools.getNoThreadsInDefaultPool();
+        int numOfThreads = Pools.getNoThreads(pool);
         assert(numOfThreads != 0);
         int batchSize = (int)nodeCount/numOfThreads;
         int batches = 0;
@@ -126,7 +140,7 @@ public class BetweennessCentrality implements AlgorithmInterface {
         }
 
 
-        List<Future> futures = new ArrayList<>(batches);
+        List<Future<?>> futures = new ArrayList<>(batches);
         intermediateBcPerThread = Primitive.intObjectMap();
         int nodeIter = 0;
         int batchNumber = 0;
@@ -134,7 +148,7 @@ public class BetweennessCentrality implements AlgorithmInterface {
             final int start = nodeIter;
             final int end = Integer.min(start + batchSize, nodeCount);
             final int threadBatchNo = batchNumber;
-            Future future = pool.submit(new Runnable() {
+            Future<?> future = pool.submit(new Runnable() {
                 @Override
                 public void run() {
                     processNodesInBatch(threadBatchNo, start, end, sourceDegreeData, sourceChunkStartingIndex, relationshipTarget);
@@ -155,6 +169,36 @@ public class BetweennessCentrality implements AlgorithmInterface {
         stats.computeMillis = difference;
     }
 
+    /**
+     * Estimates betweenness (and closeness) centrality from {@code samples} source nodes, see {@link CentralitySampler}.
+     */
+    public void computeUnweightedSampled(int samples, boolean degreeWeighted, long seed) {
+        long before = System.currentTimeMillis();
+        CentralitySampler sampler = new CentralitySampler(nodeCount, algorithm.sourceDegreeData,
+                algorithm.sourceChunkStartingIndex, algorithm.relationshipTarget, pool, guard);
+        sampler.compute(samples, degreeWeighted, seed);
+        betweennessCentrality = new float[nodeCount];
+        closenessCentrality = new double[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            betweennessCentrality[node] = (float) sampler.betweenness[node];
+            closenessCentrality[node] = sampler.farness[node] > 0 ? 1 / sampler.farness[node] : 0;
+        }
+        closenessError = CentralitySampler.relativeError(sampler.farness, sampler.farnessError);
+        stats.samples = sampler.samples;
+        stats.error = CentralitySampler.relativeError(sampler.betweenness, sampler.betweennessError);
+        stats.computeMillis = System.currentTimeMillis() - before;
+        log.info("Sampled %d sources (%d distinct) in %d milliseconds, relative error %f", sampler.samples, sampler.sources, stats.computeMillis, stats.error);
+    }
+
+    public double getCloseness(long node) {
+        int logicalIndex = algorithm.getAlgoNodeId(node);
+        return logicalIndex >= 0 ? closenessCentrality[logicalIndex] : -1;
+    }
+
+    public double getClosenessError() {
+        return closenessError;
+    }
+
     private void compileResults(int batchNumber) {
         for (int i = 0; i < nodeCount; i++) {
             float value = 0;
@@ -271,12 +315,34 @@ public class BetweennessCentrality implements AlgorithmInterface {
         log.debug("Thread: " + Thread.currentThread().getName() + " Finishing " + processedNode);
     }
 
-    public void writeResultsToDB(String property) {
+    public void writeResultsToDB(String property, ParallelResultWriter writer) {
         this.property = property;
         stats.write = true;
-        long before = System.currentTimeMillis();
-        AlgoUtils.writeBackResults(pool, db, this, WRITE_BATCH, guard);
-        stats.writeMillis = System.currentTimeMillis() - before;
+        ParallelResultWriter.WriteResult result = AlgoUtils.writeBackResults(writer, this);
+        stats.writeMillis = result.writeMillis;
+        stats.batches = result.batches;
+        stats.written = result.written;
         stats.property = getPropertyName();
     }
+
+    public void writeClosenessToDB(String property, ParallelResultWriter writer) {
+        stats.write = true;
+        ParallelResultWriter.WriteResult result = writer.write(property, new ParallelResultWriter.NodeValues() {
+            public int size() {
+                return nodeCount;
+            }
+
+            public long nodeId(int index) {
+                return getMappedNode(index);
+            }
+
+            public Value value(int index) {
+                return Values.doubleValue(closenessCentrality[index]);
+            }
+        });
+        stats.writeMillis = result.writeMillis;
+        stats.batches = result.batches;
+        stats.written = result.written;
+        stats.property = property;
+    }
 }
@@ -0,0 +1,233 @@
+package apoc.algo.algorithms;
+
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.procedure.TerminationGuard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Estimates betweenness and closeness centrality from the shortest path traversals (Brandes) of a sample of source nodes.
+ *
+ * Sources are drawn uniformly without replacement or, with {@code degreeWeighted}, with replacement proportional to their
+ * degree. Each traversal is scaled by the inverse probability of its source, so the estimates are unbiased, and their
+ * standard errors follow from the variance between the sources. With all nodes as sources the results are exact.
+ * Sources are traversed in parallel batches on the pool, a terminated transaction fails the computation.
+ */
+public class CentralitySampler {
+
+    private final int nodeCount;
+    private final int[] degrees, offsets, targets;
+    private final ExecutorService pool;
+    private final TerminationGuard guard;
+
+    public double[] betweenness, betweennessError, farness, farnessError;
+    // number of draws and of distinct traversed sources
+    public int samples, sources;
+
+    public CentralitySampler(int nodeCount, int[] degrees, int[] offsets, int[] targets, ExecutorService pool, TerminationGuard guard) {
+        this.nodeCount = nodeCount;
+        this.degrees = degrees;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.pool = pool;
+        this.guard = guard;
+    }
+
+    public void compute(int sampleSize, boolean degreeWeighted, long seed) {
+        Random random = new Random(seed);
+        int[] sourceIds;
+        int[] counts;
+        double[] scales;
+        double correction;
+        sources = 0;
+        if (degreeWeighted) {
+            long[] cumulative = new long[nodeCount];
+            long total = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                total += degrees[node];
+                cumulative[node] = total;
+            }
+            samples = total == 0 ? 0 : Math.max(1, sampleSize);
+            int[] drawn = new int[nodeCount];
+            for (int i = 0; i < samples; i++) {
+                drawn[firstAbove(cumulative, (long) (random.nextDouble() * total))]++;
+            }
+            sourceIds = new int[nodeCount];
+            counts = new int[nodeCount];
+            scales = new double[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                if (drawn[node] == 0) continue;
+                sourceIds[sources] = node;
+                counts[sources] = drawn[node];
+                scales[sources++] = total / (double) degrees[node];
+            }
+            correction = 1;
+        } else {
+            samples = Math.max(0, Math.min(sampleSize, nodeCount));
+            int[] nodes = new int[nodeCount];
+            for (int node = 0; node < nodeCount; node++) nodes[node] = node;
+            // partial Fisher-Yates shuffle, the first samples nodes are the sample
+            for (int i = 0; i < samples; i++) {
+                int j = i + random.nextInt(nodeCount - i);
+                int swap = nodes[i];
+                nodes[i] = nodes[j];
+                nodes[j] = swap;
+            }
+            sourceIds = nodes;
+            counts = new int[samples];
+            Arrays.fill(counts, 1);
+            scales = new double[samples];
+            Arrays.fill(scales, nodeCount);
+            sources = samples;
+            // finite population correction of the variance
+            correction = nodeCount > 1 ? (nodeCount - samples) / (double) (nodeCount - 1) : 0;
+        }
+        Accumulator sums = traverse(sourceIds, counts, scales);
+        betweenness = new double[nodeCount];
+        betweennessError = new double[nodeCount];
+        farness = new double[nodeCount];
+        farnessError = new double[nodeCount];
+        estimate(sums.betweenness, sums.betweennessSquares, correction, betweenness, betweennessError);
+        estimate(sums.farness, sums.farnessSquares, correction, farness, farnessError);
+    }
+
+    // the first index whose cumulative degree is above value, skips nodes without relationships
+    private static int firstAbove(long[] cumulative, long value) {
+        int low = 0, high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > value) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+    private void estimate(double[] sum, double[] squares, double correction, double[] estimate, double[] error) {
+        if (samples == 0) return;
+        for (int node = 0; node < nodeCount; node++) {
+            estimate[node] = sum[node] / samples;
+            if (samples > 1) {
+                double variance = Math.max(0, squares[node] - sum[node] * sum[node] / samples) / (samples - 1);
+                error[node] = Math.sqrt(variance * correction / samples);
+            }
+        }
+    }
+
+    /**
+     * @return the summed standard errors relative to the summed estimates
+     */
+    public static double relativeError(double[] estimate, double[] error) {
+        double total = 0, totalError = 0;
+        for (int node = 0; node < estimate.length; node++) {
+            total += estimate[node];
+            totalError += error[node];
+        }
+        return total == 0 ? 0 : totalError / total;
+    }
+
+    private static class Accumulator {
+        final double[] betweenness, betweennessSquares, farness, farnessSquares;
+
+        Accumulator(int nodeCount) {
+            betweenness = new double[nodeCount];
+            betweennessSquares = new double[nodeCount];
+            farness = new double[nodeCount];
+            farnessSquares = new double[nodeCount];
+        }
+
+        void add(Accumulator other) {
+            for (int node = 0; node < betweenness.length; node++) {
+                betweenness[node] += other.betweenness[node];
+                betweennessSquares[node] += other.betweennessSquares[node];
+                farness[node] += other.farness[node];
+                farnessSquares[node] += other.farnessSquares[node];
+            }
+        }
+    }
+
+    private Accumulator traverse(int[] sourceIds, int[] counts, double[] scales) {
+        int batches = Math.max(1, Math.min(sources, Pools.getNoThreads(pool)));
+        int batchSize = (sources + batches - 1) / Math.max(1, batches);
+        List<Future<Accumulator>> futures = new ArrayList<>();
+        for (int start = 0; start < sources; start += batchSize) {
+            int from = start, to = Math.min(sources, start + batchSize);
+            futures.add(pool.submit(() -> traverse(sourceIds, counts, scales, from, to)));
+        }
+        Accumulator result = new Accumulator(nodeCount);
+        for (Future<Accumulator> future : futures) {
+            try {
+                result.add(Pools.force(future));
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error in centrality sampling", e.getCause());
+            }
+        }
+        // terminated batches skip their remaining sources, fail instead of scaling a partial sample as a full one
+        guard.check();
+        return result;
+    }
+
+    private Accumulator traverse(int[] sourceIds, int[] counts, double[] scales, int from, int to) {
+        Accumulator sums = new Accumulator(nodeCount);
+        int[] distance = new int[nodeCount];
+        Arrays.fill(distance, -1);
+        double[] paths = new double[nodeCount];
+        double[] delta = new double[nodeCount];
+        // visit order of the breadth first search, walked backwards to accumulate the dependencies
+        int[] order = new int[nodeCount];
+        for (int i = from; i < to; i++) {
+            if (Util.transactionIsTerminated(guard)) break;
+            int source = sourceIds[i];
+            int count = counts[i];
+            double scale = scales[i];
+            distance[source] = 0;
+            paths[source] = 1;
+            order[0] = source;
+            int visited = 1;
+            for (int head = 0; head < visited; head++) {
+                int node = order[head];
+                for (int rel = offsets[node]; rel < offsets[node] + degrees[node]; rel++) {
+                    int target = targets[rel];
+                    if (distance[target] < 0) {
+                        distance[target] = distance[node] + 1;
+                        order[visited++] = target;
+                        double far = scale * distance[target];
+                        sums.farness[target] += count * far;
+                        sums.farnessSquares[target] += count * far * far;
+                    }
+                    if (distance[target] == distance[node] + 1) {
+                        paths[target] += paths[node];
+                    }
+                }
+            }
+            for (int idx = visited - 1; idx >= 0; idx--) {
+                int node = order[idx];
+                for (int rel = offsets[node]; rel < offsets[node] + degrees[node]; rel++) {
+                    int target = targets[rel];
+                    if (distance[target] == distance[node] + 1) {
+                        delta[node] += paths[node] / paths[target] * (1 + delta[target]);
+                    }
+                }
+                if (node != source && delta[node] != 0) {
+                    double dependency = scale * delta[node];
+                    sums.betweenness[node] += count * dependency;
+                    sums.betweennessSquares[node] += count * dependency * dependency;
+                }
+            }
+            for (int idx = 0; idx < visited; idx++) {
+                int node = order[idx];
+                distance[node] = -1;
+                paths[node] = 0;
+                delta[node] = 0;
+            }
+        }
+        return sums;
+    }
+}
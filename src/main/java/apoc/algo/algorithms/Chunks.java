@@ -236,6 +236,24 @@ public class Chunks {
         this.chunks=new int[0][];
     }
 
+    /**
+     * copies the first {@code length} values into {@code target} starting at {@code offset}, chunk by chunk
+     */
+    void copyTo(int[] target, int offset, int length) {
+        for (int i = 0; length > 0 && i < numChunks; i++) {
+            int count = Math.min(chunkSize, length);
+            int[] chunk = chunks[i];
+            if (chunk == null) {
+                Arrays.fill(target, offset, offset + count, defaultValue);
+            } else {
+                System.arraycopy(chunk, 0, target, offset, count);
+            }
+            offset += count;
+            length -= count;
+        }
+        if (length > 0) Arrays.fill(target, offset, offset + length, defaultValue);
+    }
+
     interface IndexValueConsumer {
         void accept(int index, int value);
     }
@@ -0,0 +1,69 @@
+package apoc.algo.algorithms;
+
+import apoc.ApocConfiguration;
+import apoc.util.Util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named in-memory {@link GraphProjection}s, shared by the algorithm procedures so they can run repeatedly without
+ * reloading the graph. The total size of all projections is limited by {@code apoc.algo.graph.max_memory}
+ * (bytes, default half of the max heap).
+ */
+public class GraphCatalog {
+
+    public static final String CONFIG_MAX_MEMORY = "algo.graph.max_memory";
+
+    private static final Map<String, GraphProjection> graphs = new ConcurrentHashMap<>();
+
+    public static long maxMemory() {
+        return Util.toLong(ApocConfiguration.get(CONFIG_MAX_MEMORY, Runtime.getRuntime().maxMemory() / 2));
+    }
+
+    public static long usedMemory() {
+        return graphs.values().stream().mapToLong(GraphProjection::memoryBytes).sum();
+    }
+
+    /**
+     * Stores the projection under its name, replacing a previous one of the same name.
+     * @throws RuntimeException if the projection doesn't fit into the remaining memory budget
+     */
+    public static synchronized void put(GraphProjection graph) {
+        checkMemory(graph.name, graph.memoryBytes());
+        graphs.put(graph.name, graph);
+    }
+
+    /**
+     * Checks that a projection of that size fits into the memory budget, used with an estimate before loading.
+     * @throws RuntimeException if it doesn't fit into the remaining memory budget
+     */
+    public static synchronized void checkMemory(String name, long bytes) {
+        GraphProjection previous = graphs.get(name);
+        long used = usedMemory() - (previous == null ? 0 : previous.memoryBytes());
+        long max = maxMemory();
+        if (used + bytes > max) {
+            throw new RuntimeException(String.format("Graph projection '%s' needs %d bytes but only %d of %d bytes are available, drop projections or raise apoc.%s",
+                    name, bytes, Math.max(0, max - used), max, CONFIG_MAX_MEMORY));
+        }
+    }
+
+    /**
+     * @throws RuntimeException if there is no projection with that name
+     */
+    public static GraphProjection get(String name) {
+        GraphProjection graph = graphs.get(name);
+        if (graph == null) throw new RuntimeException("No graph projection named '" + name + "', load it with apoc.algo.graph.load");
+        return graph;
+    }
+
+    public static GraphProjection remove(String name) {
+        return graphs.remove(name);
+    }
+
+    public static Collection<GraphProjection> list() {
+        return new ArrayList<>(graphs.values());
+    }
+}
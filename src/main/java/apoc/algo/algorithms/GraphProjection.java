@@ -0,0 +1,84 @@
+package apoc.algo.algorithms;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compressed sparse row (CSR) projection of a graph, as used by the algorithms in {@link Algorithm}.
+ *
+ * Algo node ids are the positions in the sorted {@link #nodeIds} array, so mapping in both directions needs
+ * no locks: algo id to node id is an array access and node id to algo id a binary search.
+ * The relationships of algo node {@code i} are {@code targets[offsets[i] .. offsets[i] + degrees[i]]}.
+ *
+ * @see GraphProjectionLoader
+ * @see GraphCatalog
+ */
+public class GraphProjection {
+
+    public final String name;
+    public final long[] nodeIds;
+    public final int[] degrees;
+    public final int[] offsets;
+    public final int[] targets;
+    // null if unweighted
+    public final double[] weights;
+    private int[] intWeights;
+    public final long loadMillis;
+    public final Map<String, Object> config;
+
+    GraphProjection(String name, long[] nodeIds, int[] degrees, int[] offsets, int[] targets, double[] weights, long loadMillis, Map<String, Object> config) {
+        this.name = name;
+        this.nodeIds = nodeIds;
+        this.degrees = degrees;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.loadMillis = loadMillis;
+        this.config = config;
+    }
+
+    public int nodeCount() {
+        return nodeIds.length;
+    }
+
+    public int relationshipCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return the algo id of the node or -1 if the node is not part of the projection
+     */
+    public int toAlgoId(long nodeId) {
+        int idx = Arrays.binarySearch(nodeIds, nodeId);
+        return idx < 0 ? -1 : idx;
+    }
+
+    public long toNodeId(int algoId) {
+        return nodeIds[algoId];
+    }
+
+    /**
+     * @return the weights truncated to integers as used by {@link Algorithm}, computed once, null if unweighted
+     */
+    public synchronized int[] intWeights() {
+        if (weights == null || intWeights != null) return intWeights;
+        intWeights = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            intWeights[i] = (int) weights[i];
+        }
+        return intWeights;
+    }
+
+    public long memoryBytes() {
+        return memoryBytes(nodeIds.length, targets.length, weights != null);
+    }
+
+    /**
+     * @return the size of the arrays of a projection, weighted ones including the {@link #intWeights()}
+     */
+    public static long memoryBytes(long nodes, long relationships, boolean weighted) {
+        long bytes = nodes * (Long.BYTES + 2 * Integer.BYTES) + relationships * Integer.BYTES;
+        if (weighted) bytes += relationships * (Double.BYTES + Integer.BYTES);
+        return bytes;
+    }
+}
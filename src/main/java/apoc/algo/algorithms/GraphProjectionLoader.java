@@ -0,0 +1,320 @@
+package apoc.algo.algorithms;
+
+import apoc.Pools;
+import apoc.util.Util;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.LabelSet;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.PropertyCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.values.storable.NumberValue;
+import org.neo4j.values.storable.Value;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.NODES;
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
+
+/**
+ * Loads a {@link GraphProjection} from kernel scans.
+ *
+ * The node id space is split into ranges that are read in parallel on the analytics pool, each range in its own
+ * transaction. A first pass collects the node ids of each range, which concatenated are already sorted.
+ * A second pass reads the relationships of each range into chunked per-range buffers, maps the other node with a
+ * binary search over the (then immutable) node ids and finally copies the buffers into the CSR arrays.
+ *
+ * Weights are buffered as float bits in the int chunks.
+ * Before anything is read, the size of the projection is estimated from the counts store and checked against the
+ * memory budget of the {@link GraphCatalog}.
+ *
+ * config: {label, relationshipType, direction:'OUTGOING', weightProperty, defaultWeight:1.0, batchSize, parallel:true},
+ * label and relationshipType can be a single name, a list or names separated by '|'
+ */
+public class GraphProjectionLoader {
+
+    public static final int MIN_BATCH_SIZE = 10_000;
+
+    private final GraphDatabaseAPI db;
+    private final KernelTransaction ktx;
+    private final ExecutorService pool = Pools.ANALYTICS;
+
+    private final List<String> labels;
+    private final List<String> relationshipTypes;
+    private final Direction direction;
+    private final String weightProperty;
+    private final float defaultWeight;
+    private final Number batchSize;
+    private final boolean parallel;
+
+    // null for all nodes
+    private int[] labelIds;
+    // null for all types, empty for none
+    private int[] types;
+    private int weightId = NO_TOKEN;
+
+    private static class Partition {
+        final long start, end;
+        long[] nodes;
+        int[] degrees;
+        Chunks targets, weights;
+        int relationships;
+        int nodeBase, relationshipBase;
+
+        Partition(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public GraphProjectionLoader(GraphDatabaseAPI db, KernelTransaction ktx, Map<String, Object> config) {
+        this.db = db;
+        this.ktx = ktx;
+        this.labels = names(config.get("label"));
+        this.relationshipTypes = names(config.get("relationshipType"));
+        this.direction = Util.parseDirection((String) config.getOrDefault("direction", "OUTGOING"));
+        this.weightProperty = (String) config.get("weightProperty");
+        this.defaultWeight = Util.toDouble(config.getOrDefault("defaultWeight", 1)).floatValue();
+        this.batchSize = (Number) config.get(AlgoUtils.SETTING_BATCH_SIZE);
+        this.parallel = Util.toBoolean(config.getOrDefault("parallel", true));
+    }
+
+    private static List<String> names(Object names) {
+        if (names == null) return null;
+        if (names instanceof Collection) {
+            List<String> result = new ArrayList<>();
+            for (Object name : (Collection<?>) names) result.add(String.valueOf(name));
+            return result;
+        }
+        return Arrays.asList(names.toString().split("\\|"));
+    }
+
+    public GraphProjection load(String name, Map<String, Object> config) {
+        long start = System.currentTimeMillis();
+        resolveTokens(ktx.tokenRead());
+        GraphCatalog.checkMemory(name, estimateMemoryBytes(ktx.dataRead()));
+
+        long highId = MultiThreadedGlobalGraphOperations.getHighestIdInUseForStore(db.getDependencyResolver(), NODES);
+        List<Partition> partitions = partitions(highId);
+
+        run(partitions, this::readNodes);
+        long[] nodeIds = new long[sumUp(partitions, p -> p.nodes.length, (p, base) -> p.nodeBase = base)];
+        if (nodeIds.length > 0) {
+            for (Partition p : partitions) {
+                System.arraycopy(p.nodes, 0, nodeIds, p.nodeBase, p.nodes.length);
+            }
+            run(partitions, (ktx, p) -> readRelationships(ktx, p, nodeIds));
+        }
+
+        int[] degrees = new int[nodeIds.length];
+        int[] offsets = new int[nodeIds.length];
+        int[] targets = new int[sumUp(partitions, p -> p.relationships, (p, base) -> p.relationshipBase = base)];
+        double[] weights = weightProperty == null ? null : new double[targets.length];
+        if (isParallel(partitions)) {
+            runParallel(partitions, p -> copy(p, degrees, offsets, targets, weights));
+        } else {
+            partitions.forEach(p -> copy(p, degrees, offsets, targets, weights));
+        }
+
+        return new GraphProjection(name, nodeIds, degrees, offsets, targets, weights, System.currentTimeMillis() - start, config);
+    }
+
+    private void resolveTokens(TokenRead tokenRead) {
+        if (labels != null) {
+            labelIds = labels.stream().mapToInt(tokenRead::nodeLabel).filter(label -> label != NO_TOKEN).toArray();
+        }
+        if (relationshipTypes != null) {
+            types = relationshipTypes.stream().mapToInt(tokenRead::relationshipType).filter(type -> type != NO_TOKEN).toArray();
+        }
+        if (weightProperty != null) {
+            // an unknown property still yields a weighted projection with the default weight
+            weightId = tokenRead.propertyKey(weightProperty);
+        }
+    }
+
+    /**
+     * Upper bound of the projection size, nodes with several of the labels and relationships to nodes outside of
+     * the projection are counted anyway.
+     */
+    private long estimateMemoryBytes(Read read) {
+        long nodes = 0;
+        if (labelIds == null) {
+            nodes = read.countsForNode(Read.ANY_LABEL);
+        } else {
+            for (int labelId : labelIds) nodes += read.countsForNode(labelId);
+        }
+        long relationships = 0;
+        if (types == null) {
+            relationships = read.countsForRelationship(Read.ANY_LABEL, Read.ANY_RELATIONSHIP_TYPE, Read.ANY_LABEL);
+        } else {
+            for (int type : types) relationships += read.countsForRelationship(Read.ANY_LABEL, type, Read.ANY_LABEL);
+        }
+        if (direction == Direction.BOTH) relationships *= 2;
+        return GraphProjection.memoryBytes(nodes, relationships, weightProperty != null);
+    }
+
+    private List<Partition> partitions(long highId) {
+        int size = batchSize != null ? Math.max(1, batchSize.intValue()) :
+                (int) Math.max(MIN_BATCH_SIZE, highId / (4 * Pools.getNoThreads(pool)) + 1);
+        List<Partition> partitions = new ArrayList<>();
+        for (long start = 0; start < highId; start += size) {
+            partitions.add(new Partition(start, Math.min(highId, start + size)));
+        }
+        return partitions;
+    }
+
+    private interface PartitionSize {
+        int size(Partition partition);
+    }
+
+    private static int sumUp(List<Partition> partitions, PartitionSize size, BiConsumer<Partition, Integer> base) {
+        long total = 0;
+        for (Partition p : partitions) {
+            base.accept(p, (int) total);
+            total += size.size(p);
+        }
+        if (total > Integer.MAX_VALUE) throw new RuntimeException("Graph projection exceeds " + Integer.MAX_VALUE + " entries: " + total);
+        return (int) total;
+    }
+
+    private boolean isParallel(List<Partition> partitions) {
+        boolean hasTxState = ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges();
+        return parallel && !hasTxState && partitions.size() > 1;
+    }
+
+    /**
+     * Runs the task for all partitions, in parallel transactions unless the current transaction has uncommitted changes.
+     */
+    private void run(List<Partition> partitions, BiConsumer<KernelTransaction, Partition> task) {
+        if (!isParallel(partitions)) {
+            partitions.forEach(p -> task.accept(ktx, p));
+            return;
+        }
+        ThreadToStatementContextBridge bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        runParallel(partitions, p -> {
+            try (Transaction tx = db.beginTx()) {
+                task.accept(bridge.getKernelTransactionBoundToThisThread(true), p);
+                tx.success();
+            }
+        });
+    }
+
+    private void runParallel(List<Partition> partitions, Consumer<Partition> task) {
+        List<Future<?>> futures = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions) {
+            futures.add(pool.submit(() -> task.accept(partition)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                Pools.force(future);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error loading graph projection", e.getCause());
+            }
+        }
+    }
+
+    private void readNodes(KernelTransaction ktx, Partition p) {
+        if (labelIds != null && labelIds.length == 0) {
+            p.nodes = new long[0];
+            return;
+        }
+        Read read = ktx.dataRead();
+        long[] nodes = new long[(int) (p.end - p.start)];
+        int count = 0;
+        try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor()) {
+            for (long id = p.start; id < p.end; id++) {
+                read.singleNode(id, nodeCursor);
+                if (!nodeCursor.next()) continue;
+                if (labelIds != null && !hasAnyLabel(nodeCursor.labels(), labelIds)) continue;
+                nodes[count++] = id;
+            }
+        }
+        p.nodes = count == nodes.length ? nodes : Arrays.copyOf(nodes, count);
+    }
+
+    private static boolean hasAnyLabel(LabelSet labels, int[] labelIds) {
+        for (int labelId : labelIds) {
+            if (labels.contains(labelId)) return true;
+        }
+        return false;
+    }
+
+    private void readRelationships(KernelTransaction ktx, Partition p, long[] nodeIds) {
+        p.degrees = new int[p.nodes.length];
+        p.targets = new Chunks();
+        p.weights = weightProperty == null ? null : new Chunks().withDefault(Float.floatToRawIntBits(defaultWeight));
+        if (types != null && types.length == 0) return;
+
+        Read read = ktx.dataRead();
+        CursorFactory cursors = ktx.cursors();
+        try (NodeCursor nodeCursor = cursors.allocateNodeCursor();
+             PropertyCursor propertyCursor = cursors.allocatePropertyCursor()) {
+            for (int i = 0; i < p.nodes.length; i++) {
+                read.singleNode(p.nodes[i], nodeCursor);
+                if (!nodeCursor.next()) continue;
+                try (RelationshipSelectionCursor rels = select(cursors, nodeCursor)) {
+                    while (rels.next()) {
+                        int target = Arrays.binarySearch(nodeIds, rels.otherNodeReference());
+                        if (target < 0) continue;
+                        if (p.weights != null) {
+                            p.weights.set(p.relationships, Float.floatToRawIntBits(weight(read, rels, propertyCursor)));
+                        }
+                        p.targets.set(p.relationships++, target);
+                        p.degrees[i]++;
+                    }
+                }
+            }
+        }
+    }
+
+    private RelationshipSelectionCursor select(CursorFactory cursors, NodeCursor nodeCursor) {
+        switch (direction) {
+            case OUTGOING: return RelationshipSelections.outgoingCursor(cursors, nodeCursor, types);
+            case INCOMING: return RelationshipSelections.incomingCursor(cursors, nodeCursor, types);
+            default: return RelationshipSelections.allCursor(cursors, nodeCursor, types);
+        }
+    }
+
+    private float weight(Read read, RelationshipSelectionCursor rels, PropertyCursor propertyCursor) {
+        read.relationshipProperties(rels.relationshipReference(), rels.propertiesReference(), propertyCursor);
+        while (propertyCursor.next()) {
+            if (weightId == NO_TOKEN || propertyCursor.propertyKey() != weightId) continue;
+            Value value = propertyCursor.propertyValue();
+            return value instanceof NumberValue ? (float) ((NumberValue) value).doubleValue() : defaultWeight;
+        }
+        return defaultWeight;
+    }
+
+    private static void copy(Partition p, int[] degrees, int[] offsets, int[] targets, double[] weights) {
+        if (p.degrees == null) return;
+        System.arraycopy(p.degrees, 0, degrees, p.nodeBase, p.degrees.length);
+        int offset = p.relationshipBase;
+        for (int i = 0; i < p.degrees.length; i++) {
+            offsets[p.nodeBase + i] = offset;
+            offset += p.degrees[i];
+        }
+        p.targets.copyTo(targets, p.relationshipBase, p.relationships);
+        if (weights != null) {
+            for (int i = 0; i < p.relationships; i++) {
+                weights[p.relationshipBase + i] = Float.intBitsToFloat(p.weights.get(i));
+            }
+        }
+        p.targets.clear();
+        if (p.weights != null) p.weights.clear();
+    }
+}
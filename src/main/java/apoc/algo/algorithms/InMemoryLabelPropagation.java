@@ -0,0 +1,248 @@
+package apoc.algo.algorithms;
+
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+import org.neo4j.collection.primitive.hopscotch.LongKeyIntValueTable;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.PropertyCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.Write;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.TerminationGuard;
+import org.neo4j.values.storable.NumberValue;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
+
+/**
+ * Label propagation on a {@link GraphProjection}.
+ *
+ * Partitions and node weights are read once into arrays indexed by algo id. Each iteration computes the new partition
+ * of all nodes in parallel batches, every neighbour votes for its partition with the weight of the relationship times
+ * its node weight. The partition with the highest total wins, ties keep the current partition or else pick the
+ * smallest one. Updates are semi-synchronous: within a batch the nodes see the partitions already updated before them
+ * in this iteration, across batches the ones of the previous iteration. Fully synchronous updates oscillate on
+ * bipartite graphs, where both sides swap their partitions in every iteration.
+ * Iterations stop when at most {@code tolerance} of the nodes changed their partition. The partitions of all nodes
+ * are written back once at the end.
+ */
+public class InMemoryLabelPropagation {
+
+    private final GraphDatabaseAPI db;
+    private final KernelTransaction ktx;
+    private final ExecutorService pool;
+    private final Log log;
+    private final TerminationGuard guard;
+    private final GraphProjection graph;
+    private final int batchSize;
+
+    private long[] partitions;
+    private double[] nodeWeights;
+
+    public final List<Long> changes = new ArrayList<>();
+    public boolean converged;
+    public long loadMillis, computeMillis, writeMillis, written;
+
+    public InMemoryLabelPropagation(GraphDatabaseAPI db, KernelTransaction ktx, ExecutorService pool, Log log, TerminationGuard guard, GraphProjection graph, int batchSize) {
+        this.db = db;
+        this.ktx = ktx;
+        this.pool = pool;
+        this.log = log;
+        this.guard = guard;
+        this.graph = graph;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Reads the numeric {@code partitionKey} (default: node id) and {@code weightKey} (default: 1.0) of all nodes.
+     */
+    public void loadNodeData(String partitionKey, String weightKey) {
+        long start = System.currentTimeMillis();
+        TokenRead tokenRead = ktx.tokenRead();
+        int partitionId = tokenRead.propertyKey(partitionKey);
+        int weightId = weightKey == null ? NO_TOKEN : tokenRead.propertyKey(weightKey);
+        int nodeCount = graph.nodeCount();
+        partitions = Arrays.copyOf(graph.nodeIds, nodeCount);
+        nodeWeights = new double[nodeCount];
+        Arrays.fill(nodeWeights, 1.0d);
+        if (partitionId != NO_TOKEN || weightId != NO_TOKEN) {
+            runInTx((ktx, from, to) -> readNodeData(ktx, from, to, partitionId, weightId));
+        }
+        loadMillis = System.currentTimeMillis() - start;
+    }
+
+    private long readNodeData(KernelTransaction ktx, int from, int to, int partitionId, int weightId) {
+        Read read = ktx.dataRead();
+        try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            for (int i = from; i < to; i++) {
+                read.singleNode(graph.toNodeId(i), nodeCursor);
+                if (!nodeCursor.next()) continue;
+                nodeCursor.properties(propertyCursor);
+                while (propertyCursor.next()) {
+                    int key = propertyCursor.propertyKey();
+                    if (key != partitionId && key != weightId) continue;
+                    Value value = propertyCursor.propertyValue();
+                    if (!(value instanceof NumberValue)) continue;
+                    if (key == partitionId) partitions[i] = ((NumberValue) value).longValue();
+                    if (key == weightId) nodeWeights[i] = ((NumberValue) value).doubleValue();
+                }
+            }
+        }
+        return to - from;
+    }
+
+    public void compute(int maxIterations, double tolerance) {
+        long start = System.currentTimeMillis();
+        long[] next = new long[partitions.length];
+        for (int iteration = 0; iteration < maxIterations && !converged; iteration++) {
+            if (Util.transactionIsTerminated(guard)) break;
+            long[] current = partitions, updated = next;
+            long changed = sum(run((from, to) -> iterate(current, updated, from, to)));
+            partitions = updated;
+            next = current;
+            changes.add(changed);
+            converged = changed <= tolerance * partitions.length;
+            log.debug("Label propagation iteration %d: %d changes", iteration, changed);
+        }
+        computeMillis = System.currentTimeMillis() - start;
+    }
+
+    private long iterate(long[] current, long[] next, int from, int to) {
+        int[] degrees = graph.degrees, offsets = graph.offsets, targets = graph.targets;
+        double[] weights = graph.weights;
+        PrimitiveLongIntMap slots = Primitive.longIntMap();
+        long[] votedPartitions = new long[16];
+        double[] votes = new double[16];
+        long changed = 0;
+        for (int node = from; node < to; node++) {
+            int degree = degrees[node];
+            long partition = current[node];
+            if (degree > votes.length) {
+                votedPartitions = new long[degree];
+                votes = new double[degree];
+            }
+            slots.clear();
+            int voted = 0;
+            for (int rel = offsets[node]; rel < offsets[node] + degree; rel++) {
+                int target = targets[rel];
+                long targetPartition = target >= from && target < node ? next[target] : current[target];
+                int slot = slots.get(targetPartition);
+                if (slot == LongKeyIntValueTable.NULL) {
+                    slot = voted++;
+                    slots.put(targetPartition, slot);
+                    votedPartitions[slot] = targetPartition;
+                    votes[slot] = 0;
+                }
+                votes[slot] += (weights == null ? 1.0d : weights[rel]) * nodeWeights[target];
+            }
+            int own = slots.get(partition);
+            double best = own == LongKeyIntValueTable.NULL ? 0 : votes[own];
+            for (int slot = 0; slot < voted; slot++) {
+                if (votes[slot] > best) {
+                    best = votes[slot];
+                    partition = votedPartitions[slot];
+                } else if (votes[slot] == best && partition != current[node] && votedPartitions[slot] < partition) {
+                    partition = votedPartitions[slot];
+                }
+            }
+            next[node] = partition;
+            if (partition != current[node]) changed++;
+        }
+        return changed;
+    }
+
+    public long communities() {
+        return Arrays.stream(partitions).distinct().count();
+    }
+
+    /**
+     * Writes the partitions of all nodes, in parallel batches.
+     */
+    public void write(String partitionKey) {
+        long start = System.currentTimeMillis();
+        int propertyId;
+        try {
+            propertyId = ktx.tokenWrite().propertyKeyGetOrCreateForName(partitionKey);
+        } catch (KernelException e) {
+            throw new RuntimeException("Can't create property key " + partitionKey, e);
+        }
+        written = sum(runInTx((ktx, from, to) -> {
+            long count = 0;
+            try {
+                Write write = ktx.dataWrite();
+                for (int i = from; i < to; i++) {
+                    write.nodeSetProperty(graph.toNodeId(i), propertyId, Values.longValue(partitions[i]));
+                    count++;
+                }
+            } catch (KernelException e) {
+                throw new RuntimeException("Can't write partitions of nodes " + graph.toNodeId(from) + " to " + graph.toNodeId(to - 1), e);
+            }
+            return count;
+        }));
+        writeMillis = System.currentTimeMillis() - start;
+    }
+
+    private interface Batch {
+        long run(int from, int to);
+    }
+
+    private interface TxBatch {
+        long run(KernelTransaction ktx, int from, int to);
+    }
+
+    private List<Long> runInTx(TxBatch batch) {
+        boolean hasTxState = ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges();
+        if (hasTxState) {
+            return Arrays.asList(batch.run(ktx, 0, graph.nodeCount()));
+        }
+        ThreadToStatementContextBridge bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        return run((from, to) -> {
+            try (Transaction tx = db.beginTx()) {
+                long result = batch.run(bridge.getKernelTransactionBoundToThisThread(true), from, to);
+                tx.success();
+                return result;
+            }
+        });
+    }
+
+    private List<Long> run(Batch batch) {
+        int nodeCount = graph.nodeCount();
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int start = 0; start < nodeCount; start += batchSize) {
+            int from = start, to = Math.min(nodeCount, start + batchSize);
+            futures.add(pool.submit(() -> batch.run(from, to)));
+        }
+        List<Long> results = new ArrayList<>(futures.size());
+        for (Future<Long> future : futures) {
+            try {
+                results.add(Pools.force(future));
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error in label propagation", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static long sum(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).sum();
+    }
+}
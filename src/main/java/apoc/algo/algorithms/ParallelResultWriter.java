@@ -0,0 +1,208 @@
+package apoc.algo.algorithms;
+
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.PropertyCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.Write;
+import org.neo4j.internal.kernel.api.exceptions.EntityNotFoundException;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.TerminationGuard;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes per node results of the algorithms back as a node property.
+ *
+ * The results are ordered by node id and split into batches of consecutive node ids, each batch is committed in its own
+ * transaction on the {@code batch_write} pool, so concurrent batches touch disjoint store ranges.
+ * With {@code skipUnchanged} the current value is read first and only differing values are written.
+ * Deleted nodes are skipped.
+ * A terminated transaction stops submitting and running batches and fails the write, the batches committed until
+ * then stay written.
+ */
+public class ParallelResultWriter {
+
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    /**
+     * Results by index, {@link #nodeId(int)} returns -1 for indexes without a node.
+     */
+    public interface NodeValues {
+        int size();
+
+        long nodeId(int index);
+
+        Value value(int index);
+    }
+
+    public static class WriteResult {
+        public long batches, written, skipped, writeMillis;
+    }
+
+    private final GraphDatabaseAPI db;
+    private final TerminationGuard guard;
+    private final ExecutorService pool;
+    private final int batchSize;
+    private final boolean skipUnchanged;
+
+    public ParallelResultWriter(GraphDatabaseAPI db, TerminationGuard guard, int batchSize, boolean skipUnchanged) {
+        this(db, guard, Pools.BATCH_WRITE, batchSize, skipUnchanged);
+    }
+
+    public ParallelResultWriter(GraphDatabaseAPI db, TerminationGuard guard, ExecutorService pool, int batchSize, boolean skipUnchanged) {
+        this.db = db;
+        this.guard = guard;
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    public static ParallelResultWriter fromConfig(GraphDatabaseAPI db, TerminationGuard guard, Map<String, Object> config) {
+        return new ParallelResultWriter(db, guard,
+                Util.toInteger(config.getOrDefault("writeBatchSize", DEFAULT_BATCH_SIZE)),
+                Util.toBoolean(config.getOrDefault("skipUnchanged", false)));
+    }
+
+    public static NodeValues doubleValues(AlgorithmInterface algorithm) {
+        return new NodeValues() {
+            public int size() {
+                return (int) algorithm.numberOfNodes();
+            }
+
+            public long nodeId(int index) {
+                return algorithm.getMappedNode(index);
+            }
+
+            public Value value(int index) {
+                return Values.doubleValue(algorithm.getResult(algorithm.getMappedNode(index)));
+            }
+        };
+    }
+
+    public WriteResult write(String property, NodeValues values) {
+        long start = System.currentTimeMillis();
+        WriteResult result = new WriteResult();
+        ThreadToStatementContextBridge bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        int propertyId;
+        try (Transaction tx = db.beginTx()) {
+            propertyId = bridge.getKernelTransactionBoundToThisThread(true).tokenWrite().propertyKeyGetOrCreateForName(property);
+            tx.success();
+        } catch (KernelException e) {
+            throw new RuntimeException("Can't create property key " + property, e);
+        }
+
+        int[] order = orderByNodeId(values);
+        AtomicLong written = new AtomicLong(), skipped = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < order.length; from += batchSize) {
+            if (Util.transactionIsTerminated(guard)) break;
+            int batchStart = from, batchEnd = Math.min(order.length, from + batchSize);
+            futures.add(pool.submit(() -> {
+                if (Util.transactionIsTerminated(guard)) return;
+                try (Transaction tx = db.beginTx()) {
+                    writeBatch(bridge.getKernelTransactionBoundToThisThread(true), propertyId, values, order, batchStart, batchEnd, written, skipped);
+                    tx.success();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                Pools.force(future);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error writing " + property, e.getCause());
+            }
+        }
+        if (Util.transactionIsTerminated(guard)) {
+            throw new RuntimeException(String.format("Writing %s was terminated, %d of %d nodes were written", property, written.get(), order.length));
+        }
+        result.batches = futures.size();
+        result.written = written.get();
+        result.skipped = skipped.get();
+        result.writeMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * @return the indexes that have a node, ordered by node id
+     */
+    private static int[] orderByNodeId(NodeValues values) {
+        int size = values.size();
+        int[] order = new int[size];
+        int count = 0;
+        boolean sorted = true, smallIds = true;
+        long last = -1;
+        for (int i = 0; i < size; i++) {
+            long nodeId = values.nodeId(i);
+            if (nodeId < 0) continue;
+            sorted &= nodeId > last;
+            smallIds &= nodeId <= Integer.MAX_VALUE;
+            last = nodeId;
+            order[count++] = i;
+        }
+        if (!sorted && smallIds) {
+            // node id in the upper, index in the lower 32 bits
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = values.nodeId(order[i]) << 32 | order[i];
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < count; i++) {
+                order[i] = (int) keys[i];
+            }
+        }
+        return count == size ? order : Arrays.copyOf(order, count);
+    }
+
+    private void writeBatch(KernelTransaction ktx, int propertyId, NodeValues values, int[] order, int from, int to, AtomicLong written, AtomicLong skipped) {
+        try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            Write write = ktx.dataWrite();
+            Read read = ktx.dataRead();
+            long batchWritten = 0, batchSkipped = 0;
+            for (int i = from; i < to; i++) {
+                long nodeId = values.nodeId(order[i]);
+                Value value = values.value(order[i]);
+                if (skipUnchanged && value.equals(currentValue(read, nodeCursor, propertyCursor, nodeId, propertyId))) {
+                    batchSkipped++;
+                    continue;
+                }
+                try {
+                    write.nodeSetProperty(nodeId, propertyId, value);
+                    batchWritten++;
+                } catch (EntityNotFoundException e) {
+                    batchSkipped++;
+                }
+            }
+            written.addAndGet(batchWritten);
+            skipped.addAndGet(batchSkipped);
+        } catch (KernelException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Value currentValue(Read read, NodeCursor nodeCursor, PropertyCursor propertyCursor, long nodeId, int propertyId) {
+        read.singleNode(nodeId, nodeCursor);
+        if (!nodeCursor.next()) return Values.NO_VALUE;
+        nodeCursor.properties(propertyCursor);
+        while (propertyCursor.next()) {
+            if (propertyCursor.propertyKey() == propertyId) return propertyCursor.propertyValue();
+        }
+        return Values.NO_VALUE;
+    }
+}
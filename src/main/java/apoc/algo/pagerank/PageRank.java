@@ -18,7 +18,9 @@ public interface PageRank extends PageRankAlgorithm
     PageRankStatistics getStatistics();
 
     class PageRankStatistics {
-        public long nodes, relationships, iterations, readNodeMillis, readRelationshipMillis,computeMillis,writeMillis;
+        public long nodes, relationships, iterations, readNodeMillis, readRelationshipMillis,computeMillis,writeMillis,batches,written;
+        // L1 norm of the remaining residuals of the delta computation
+        public double residual;
         public boolean write;
         public String property;
 
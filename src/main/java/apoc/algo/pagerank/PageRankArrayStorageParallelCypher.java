@@ -3,23 +3,37 @@ package apoc.algo.pagerank;
 import apoc.algo.algorithms.AlgoUtils;
 import apoc.algo.algorithms.Algorithm;
 import apoc.algo.algorithms.AlgorithmInterface;
+import apoc.algo.algorithms.GraphProjection;
+import apoc.algo.algorithms.ParallelResultWriter;
+import apoc.util.Util;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.PropertyCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.TerminationGuard;
+import org.neo4j.values.storable.NumberValue;
+import org.neo4j.values.storable.Value;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
 import static apoc.algo.pagerank.PageRankUtils.toFloat;
 import static apoc.algo.pagerank.PageRankUtils.toInt;
 
 public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmInterface
 {
     public static final int ONE_MINUS_ALPHA_INT = toInt( ONE_MINUS_ALPHA );
-    public static final int WRITE_BATCH=100_100;
     public static final int INITIAL_ARRAY_SIZE=100_000;
     public final int BATCH_SIZE = 100_000 ;
     private final GraphDatabaseAPI db;
@@ -34,6 +48,8 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
     // Output arrays.
     int [] previousPageRanks;
     private AtomicIntegerArray pageRanksAtomic;
+    // results of computeDelta
+    private double[] ranks;
 
     private Algorithm algorithm;
     private String property;
@@ -58,6 +74,16 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
         return algorithm.getAlgoNodeId(node);
     }
 
+    public void readGraph(GraphProjection graph) {
+        algorithm.readGraph(graph);
+        this.nodeCount = algorithm.getNodeCount();
+        this.relCount = algorithm.relCount;
+        stats.readNodeMillis = 0;
+        stats.readRelationshipMillis = 0;
+        stats.nodes = nodeCount;
+        stats.relationships = relCount;
+    }
+
     public boolean readNodeAndRelCypherData(String relCypher, String nodeCypher, Number weight, Number batchSize, int concurrency) {
         boolean success = algorithm.readNodeAndRelCypher(relCypher, nodeCypher, weight,batchSize,concurrency);
         this.nodeCount = algorithm.getNodeCount();
@@ -116,13 +142,13 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
                                  int[] relationshipTarget,
                                  int[] relationshipWeight) {
         int batches = (int)nodeCount/BATCH_SIZE;
-        List<Future> futures = new ArrayList<>(batches);
+        List<Future<?>> futures = new ArrayList<>(batches);
         int nodeIter = 0;
         while(nodeIter < nodeCount) {
             // Process BATCH_SIZE relationships in one batch, aligned to the chunksize.
             final int start = nodeIter;
             final int end = getEndNode(nodeIter, sourceChunkStartingIndex);
-            Future future = pool.submit(new Runnable() {
+            Future<?> future = pool.submit(new Runnable() {
                 @Override
                 public void run() {
                     for (int i = start; i < end; i++) {
@@ -176,12 +202,182 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
         }
     }
 
-    public void writeResultsToDB(String property) {
+    /**
+     * Reads the numeric {@code property} of all nodes as starting ranks for {@link #computeDelta(int, double, double[])},
+     * nodes without it start at 0.
+     */
+    public double[] readRanks(String property) {
+        double[] initial = new double[nodeCount];
+        KernelTransaction ktx = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).getKernelTransactionBoundToThisThread(true);
+        int propertyId = ktx.tokenRead().propertyKey(property);
+        if (propertyId == NO_TOKEN) return initial;
+        Read read = ktx.dataRead();
+        try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            for (int node = 0; node < nodeCount; node++) {
+                read.singleNode(getMappedNode(node), nodeCursor);
+                if (!nodeCursor.next()) continue;
+                nodeCursor.properties(propertyCursor);
+                while (propertyCursor.next()) {
+                    if (propertyCursor.propertyKey() != propertyId) continue;
+                    Value value = propertyCursor.propertyValue();
+                    if (value instanceof NumberValue) initial[node] = ((NumberValue) value).doubleValue();
+                    break;
+                }
+            }
+        }
+        return initial;
+    }
+
+    /**
+     * Push based (delta) page rank, starting from the {@code initial} ranks.
+     *
+     * The residual of a node is the difference between its rank and the page rank equation over the current ranks
+     * of its neighbours, it is computed once for all nodes. Each iteration adds the residual of every active node, whose
+     * residual exceeds {@code tolerance}, to its rank and pushes the share of it to its targets. Targets whose residual
+     * grows above {@code tolerance} are active in the next iteration, so after small changes of the graph only the nodes
+     * around the changes are processed. Stops when the L1 norm of the residuals is at most {@code tolerance} times the
+     * number of nodes or no node is active.
+     */
+    public void computeDelta(int maxIterations, double tolerance, double[] initial) {
+        long before = System.currentTimeMillis();
+        int[] degrees = algorithm.sourceDegreeData, offsets = algorithm.sourceChunkStartingIndex;
+        int[] targets = algorithm.relationshipTarget, weights = algorithm.relationshipWeight;
+        double[] shares = new double[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            int weightedDegree = getTotalWeightForNode(node, offsets, degrees, weights);
+            shares[node] = weightedDegree > 0 ? ALPHA / weightedDegree : 0;
+        }
+        ranks = initial.clone();
+
+        // residual = (1 - alpha) + alpha * incoming rank - rank
+        AtomicLongArray residuals = new AtomicLongArray(nodeCount);
+        List<Future<?>> futures = new ArrayList<>();
+        int nodeIter = 0;
+        while (nodeIter < nodeCount) {
+            final int start = nodeIter;
+            final int end = getEndNode(nodeIter, offsets);
+            futures.add(pool.submit(() -> {
+                for (int node = start; node < end; node++) {
+                    push(ranks[node] * shares[node], node, degrees, offsets, targets, weights, residuals);
+                }
+            }));
+            nodeIter = end;
+        }
+        AlgoUtils.waitForTasks(futures);
+
+        // the active nodes of this and the next iteration, a node is queued for iteration i when its mark is i + 1
+        int[] active = new int[nodeCount], next = new int[nodeCount];
+        AtomicIntegerArray marks = new AtomicIntegerArray(nodeCount);
+        int activeCount = 0;
+        double initialNorm = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            double residual = ONE_MINUS_ALPHA - ranks[node] + getAndAdd(residuals, node, ONE_MINUS_ALPHA - ranks[node]);
+            initialNorm += Math.abs(residual);
+            if (Math.abs(residual) > tolerance) {
+                marks.set(node, 1);
+                active[activeCount++] = node;
+            }
+        }
+        DoubleAdder norm = new DoubleAdder();
+        norm.add(initialNorm);
+
+        double limit = tolerance * nodeCount;
+        AtomicInteger nextCount = new AtomicInteger();
+        int iteration = 0;
+        while (activeCount > 0 && norm.sum() > limit && iteration < maxIterations && !Util.transactionIsTerminated(guard)) {
+            final int[] worklist = active, queue = next;
+            final int mark = iteration + 2;
+            nextCount.set(0);
+            List<Future<?>> batches = new ArrayList<>();
+            int position = 0;
+            while (position < activeCount) {
+                // batches of about BATCH_SIZE relationships of active nodes
+                final int start = position;
+                int relationships = 0;
+                while (position < activeCount && relationships <= BATCH_SIZE) {
+                    relationships += degrees[worklist[position++]];
+                }
+                final int end = position;
+                batches.add(pool.submit(() -> {
+                    double normDelta = 0;
+                    for (int i = start; i < end; i++) {
+                        int node = worklist[i];
+                        double residual = Double.longBitsToDouble(residuals.getAndSet(node, 0));
+                        ranks[node] += residual;
+                        normDelta -= Math.abs(residual);
+                        normDelta += push(residual * shares[node], node, degrees, offsets, targets, weights, residuals, tolerance, marks, mark, queue, nextCount);
+                    }
+                    norm.add(normDelta);
+                }));
+            }
+            AlgoUtils.waitForTasks(batches);
+            active = queue;
+            next = worklist;
+            activeCount = nextCount.get();
+            iteration++;
+            log.debug("Delta page rank iteration %d: %d active nodes, residual %f", iteration, activeCount, norm.sum());
+        }
+        stats.iterations = iteration;
+        stats.residual = l1Norm(residuals);
+        stats.computeMillis = System.currentTimeMillis() - before;
+    }
+
+    private static void push(double share, int node, int[] degrees, int[] offsets, int[] targets, int[] weights,
+                             AtomicLongArray result) {
+        if (share == 0) return;
+        for (int rel = offsets[node]; rel < offsets[node] + degrees[node]; rel++) {
+            getAndAdd(result, targets[rel], weights == null ? share : share * weights[rel]);
+        }
+    }
+
+    /**
+     * Pushes the share of a node to the residuals of its targets and queues the targets whose residual exceeds the
+     * tolerance once.
+     *
+     * @return the change of the L1 norm of the residuals
+     */
+    private static double push(double share, int node, int[] degrees, int[] offsets, int[] targets, int[] weights,
+                               AtomicLongArray residuals, double tolerance, AtomicIntegerArray marks, int mark,
+                               int[] queue, AtomicInteger queued) {
+        if (share == 0) return 0;
+        double normDelta = 0;
+        for (int rel = offsets[node]; rel < offsets[node] + degrees[node]; rel++) {
+            int target = targets[rel];
+            double delta = weights == null ? share : share * weights[rel];
+            double previous = getAndAdd(residuals, target, delta);
+            double residual = previous + delta;
+            normDelta += Math.abs(residual) - Math.abs(previous);
+            if (Math.abs(residual) > tolerance && marks.getAndSet(target, mark) != mark) {
+                queue[queued.getAndIncrement()] = target;
+            }
+        }
+        return normDelta;
+    }
+
+    private static double getAndAdd(AtomicLongArray values, int index, double delta) {
+        long current;
+        do {
+            current = values.get(index);
+        } while (!values.compareAndSet(index, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta)));
+        return Double.longBitsToDouble(current);
+    }
+
+    private static double l1Norm(AtomicLongArray values) {
+        double norm = 0;
+        for (int i = 0; i < values.length(); i++) {
+            norm += Math.abs(Double.longBitsToDouble(values.get(i)));
+        }
+        return norm;
+    }
+
+    public void writeResultsToDB(String property, ParallelResultWriter writer) {
         this.property = property;
         stats.write = true;
-        long before = System.currentTimeMillis();
-        AlgoUtils.writeBackResults(pool, db, this, WRITE_BATCH, guard);
-        stats.writeMillis = System.currentTimeMillis() - before;
+        ParallelResultWriter.WriteResult result = AlgoUtils.writeBackResults(writer, this);
+        stats.writeMillis = result.writeMillis;
+        stats.batches = result.batches;
+        stats.written = result.written;
         stats.property = getPropertyName();
     }
 
@@ -190,7 +386,9 @@ public class PageRankArrayStorageParallelCypher implements PageRank, AlgorithmIn
         double val = 0;
         int logicalIndex = getNodeIndex((int)node);
 
-        if (logicalIndex >= 0 && pageRanksAtomic.length() >= logicalIndex) {
+        if (ranks != null) {
+            val = logicalIndex >= 0 ? ranks[logicalIndex] : 0;
+        } else if (logicalIndex >= 0 && pageRanksAtomic.length() >= logicalIndex) {
             val = toFloat(pageRanksAtomic.get(logicalIndex));
         }
         return val;
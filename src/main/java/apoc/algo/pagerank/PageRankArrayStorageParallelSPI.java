@@ -2,6 +2,7 @@ package apoc.algo.pagerank;
 
 import apoc.algo.algorithms.AlgoUtils;
 import apoc.algo.algorithms.AlgorithmInterface;
+import apoc.algo.algorithms.ParallelResultWriter;
 import apoc.stats.DegreeUtil;
 import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
 import org.neo4j.graphdb.DependencyResolver;
@@ -17,7 +18,6 @@ import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 
-import static apoc.algo.pagerank.PageRankArrayStorageParallelCypher.WRITE_BATCH;
 import static apoc.algo.pagerank.PageRankUtils.*;
 import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.NODES;
 import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.RELATIONSHIPS;
@@ -138,12 +138,12 @@ public class PageRankArrayStorageParallelSPI implements PageRank, AlgorithmInter
         return (int) algoId;
     }
 
-    public void writeResultsToDB() {
+    public void writeResultsToDB(ParallelResultWriter writer) {
         stats.write = true;
-        long before = System.currentTimeMillis();
-        AlgoUtils.writeBackResults(pool, db, this, WRITE_BATCH, guard);
-        stats.write = true;
-        stats.writeMillis = System.currentTimeMillis() - before;
+        ParallelResultWriter.WriteResult result = AlgoUtils.writeBackResults(writer, this);
+        stats.writeMillis = result.writeMillis;
+        stats.batches = result.batches;
+        stats.written = result.written;
         stats.property = getPropertyName();
     }
 
@@ -0,0 +1,154 @@
+package apoc.algo.wcc;
+
+import apoc.util.Util;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations.BatchJobResult;
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.TerminationGuard;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.NODES;
+
+/**
+ * Weakly connected components by a concurrent union-find over a parallel relationship scan.
+ *
+ * The parent array is indexed by node id, roots are only ever linked below a root with a smaller id (by CAS),
+ * so the component id of each node is the smallest node id of its component, independent of the scan order.
+ * Finds compress paths by halving. Ids of deleted nodes keep the parent -1.
+ * The parent array is sized to the node high id when the computation starts, nodes created later are left out.
+ * A terminated transaction stops the scans and fails the computation.
+ */
+public class UnionFind {
+
+    private static final long NO_NODE = -1;
+
+    private final GraphDatabaseAPI db;
+    private final ExecutorService pool;
+    private final int batchSize;
+    private final TerminationGuard guard;
+
+    private AtomicLongArray parent;
+    public long nodes, relationships, computeMillis;
+
+    public UnionFind(GraphDatabaseAPI db, ExecutorService pool, int batchSize, TerminationGuard guard) {
+        this.db = db;
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.guard = guard;
+    }
+
+    /**
+     * @param types relationship type tokens to follow, all types if empty
+     */
+    public UnionFind compute(int[] types) {
+        long start = System.currentTimeMillis();
+        long highId = MultiThreadedGlobalGraphOperations.getHighestIdInUseForStore(db.getDependencyResolver(), NODES);
+        if (highId > Integer.MAX_VALUE) throw new RuntimeException("Too many node ids for union-find: " + highId);
+        parent = new AtomicLongArray((int) highId);
+        for (int i = 0; i < highId; i++) {
+            parent.lazySet(i, NO_NODE);
+        }
+        BatchJobResult nodeScan = MultiThreadedGlobalGraphOperations.forAllNodes(db, pool, batchSize, (ktx, nodeCursor) -> {
+            long node = nodeCursor.nodeReference();
+            if (node < highId && !Util.transactionIsTerminated(guard)) {
+                parent.set((int) node, node);
+            }
+        });
+        guard.check();
+        BatchJobResult relScan = MultiThreadedGlobalGraphOperations.forAllRelationships(db, pool, batchSize, (ktx, rel) -> {
+            long source = rel.sourceNodeReference(), target = rel.targetNodeReference();
+            // relationships of nodes created after the snapshot of the high id
+            if (source >= highId || target >= highId) return;
+            if ((types.length == 0 || contains(types, rel.type())) && !Util.transactionIsTerminated(guard)) {
+                union(source, target);
+            }
+        });
+        guard.check();
+        if (nodeScan.getFailures() + relScan.getFailures() > 0) {
+            throw new RuntimeException("Failed to read " + nodeScan.getFailures() + " nodes and " + relScan.getFailures() + " relationships");
+        }
+        nodes = nodeScan.getSucceeded();
+        relationships = relScan.getSucceeded();
+        computeMillis = System.currentTimeMillis() - start;
+        return this;
+    }
+
+    private static boolean contains(int[] types, int type) {
+        for (int t : types) {
+            if (t == type) return true;
+        }
+        return false;
+    }
+
+    private long find(long node) {
+        long p;
+        while ((p = parent.get((int) node)) != node) {
+            long grandParent = parent.get((int) p);
+            if (grandParent != p) parent.compareAndSet((int) node, p, grandParent);
+            node = grandParent;
+        }
+        return node;
+    }
+
+    private void union(long a, long b) {
+        while (true) {
+            a = find(a);
+            b = find(b);
+            if (a == b) return;
+            if (a < b) {
+                long tmp = a;
+                a = b;
+                b = tmp;
+            }
+            if (parent.compareAndSet((int) a, a, b)) return;
+        }
+    }
+
+    public long size() {
+        return parent.length();
+    }
+
+    public boolean exists(long node) {
+        return parent.get((int) node) != NO_NODE;
+    }
+
+    /**
+     * @return the smallest node id of the component of the node
+     */
+    public long component(long node) {
+        return find(node);
+    }
+
+    public long components() {
+        long components = 0;
+        for (int i = 0; i < parent.length(); i++) {
+            if (parent.get(i) == i) components++;
+        }
+        return components;
+    }
+
+    /**
+     * Counts the other members of each component at its root, singleton components need no entry.
+     */
+    public long maxComponentSize() {
+        int max = 0;
+        try (PrimitiveLongIntMap members = Primitive.longIntMap()) {
+            for (int i = 0; i < parent.length(); i++) {
+                if (parent.get(i) == NO_NODE) continue;
+                long root = find(i);
+                int size = 1;
+                if (root != i) {
+                    int others = members.containsKey(root) ? members.get(root) + 1 : 1;
+                    members.put(root, others);
+                    size += others;
+                }
+                max = Math.max(max, size);
+            }
+        }
+        return max;
+    }
+}
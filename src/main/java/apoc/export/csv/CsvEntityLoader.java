@@ -5,42 +5,50 @@ import apoc.export.util.CountingReader;
 import apoc.export.util.ProgressReporter;
 import apoc.load.LoadCsv;
 import apoc.util.FileUtils;
+import apoc.util.Util;
 import com.opencsv.CSVReader;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.logging.Log;
 
 import java.io.IOException;
-import java.util.AbstractMap;
-import java.util.Collections;
-import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.Arrays;
 
 public class CsvEntityLoader {
 
     private final CsvLoaderConfig clc;
     private final ProgressReporter reporter;
+    private final Log log;
 
     /**
      * @param clc configuration object
      * @param reporter
      */
     public CsvEntityLoader(CsvLoaderConfig clc, ProgressReporter reporter) {
+        this(clc, reporter, null);
+    }
+
+    /**
+     * @param clc configuration object
+     * @param reporter
+     * @param log receives the throughput per partition of parallel relationship loading
+     */
+    public CsvEntityLoader(CsvLoaderConfig clc, ProgressReporter reporter, Log log) {
         this.clc = clc;
         this.reporter = reporter;
+        this.log = log;
     }
 
     /**
      * Loads nodes from a CSV file with given labels to an online database, and fills the {@code idMapping},
-     * which will be used by the {@link #loadRelationships(String, String, GraphDatabaseService, Map)}
+     * which will be used by the {@link #loadRelationships(String, String, GraphDatabaseService, CsvIdMapping)}
      * method.
      *
      * @param fileName URI of the CSV file representing the node
@@ -50,7 +58,7 @@ public class CsvEntityLoader {
      * @throws IOException
      */
     public void loadNodes(final String fileName, final List<String> labels, final GraphDatabaseService db,
-                          final Map<String, Map<String, Long>> idMapping) throws IOException {
+                          final CsvIdMapping idMapping) throws IOException {
         final CountingReader reader = FileUtils.readerFor(fileName);
         final String header = readFirstLine(reader);
         reader.skip(clc.getSkipLines() - 1);
@@ -60,44 +68,30 @@ public class CsvEntityLoader {
                 .filter(f -> CsvLoaderConstants.ID_FIELD.equals(f.getType()))
                 .findFirst();
 
-        final Optional<String> idAttribute = idField.isPresent() ? Optional.of(idField.get().getName()) : Optional.empty();
         final String idSpace = idField.isPresent() ? idField.get().getIdSpace() : CsvLoaderConstants.DEFAULT_IDSPACE;
 
-        idMapping.putIfAbsent(idSpace, new HashMap<>());
-        final Map<String, Long> idspaceIdMapping = idMapping.get(idSpace);
-
-        final Map<String, LoadCsv.Mapping> mapping = fields.stream().collect(
-                Collectors.toMap(
-                        CsvHeaderField::getName,
-                        f -> {
-                            final Map<String, Object> mappingMap = Collections
-                                    .unmodifiableMap(Stream.of(
-                                            new AbstractMap.SimpleEntry<>("type", f.getType()),
-                                            new AbstractMap.SimpleEntry<>("array", f.isArray())
-                                    ).collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)));
-                            return new LoadCsv.Mapping(f.getName(), mappingMap, clc.getArrayDelimiter(), false);
-                        }
-                )
-        );
+        final IdMapper idspaceIdMapping = idMapping.getOrCreate(idSpace);
+
+        final LoadCsv.Mapping[] mappings = createMappings(fields);
+        final Object[] values = new Object[fields.size()];
 
         final CSVReader csv = new CSVReader(reader, clc.getDelimiter(), clc.getQuotationCharacter());
 
-        final String[] loadCsvCompatibleHeader = fields.stream().map(f -> f.getName()).toArray(String[]::new);
         int lineNo = 0;
         try (BatchTransaction tx = new BatchTransaction(db, clc.getBatchSize(), reporter)) {
-            for (String[] line : csv.readAll()) {
+            String[] line;
+            while ((line = csv.readNext()) != null) {
                 lineNo++;
+                convertLine(line, mappings, values);
 
-                final EnumSet<LoadCsv.Results> results = EnumSet.of(LoadCsv.Results.map);
-                final LoadCsv.CSVResult result = new LoadCsv.CSVResult(
-                        loadCsvCompatibleHeader, line, lineNo, false, mapping, Collections.emptyList(), results
-                );
-
-                final String nodeCsvId = result.map.get(idAttribute.get()).toString();
+                if (idField.isPresent() && values[idField.get().getIndex()] == null) {
+                    throw new IllegalStateException("Missing node id on line " + lineNo + "\n" + Arrays.toString(line));
+                }
+                final String nodeCsvId = idField.isPresent() ? values[idField.get().getIndex()].toString() : null;
 
                 // if 'ignore duplicate nodes' is false, there is an id field and the mapping already has the current id,
                 // we either fail the loading process or skip it depending on the 'ignore duplicate nodes' setting
-                if (idField.isPresent() && idspaceIdMapping.containsKey(nodeCsvId)) {
+                if (idField.isPresent() && idspaceIdMapping.get(nodeCsvId) != IdMapper.NOT_FOUND) {
                     if (clc.getIgnoreDuplicateNodes()) {
                         continue;
                     } else {
@@ -120,10 +114,10 @@ public class CsvEntityLoader {
                 // add properties
                 int props = 0;
                 for (CsvHeaderField field : fields) {
-                    final String name = field.getName();
-                    Object value = result.map.get(name);
+                    Object value = values[field.getIndex()];
 
                     if (field.isMeta()) {
+                        if (value == null) continue;
                         final List<String> customLabels = (List<String>) value;
                         for (String customLabel : customLabels) {
                             node.addLabel(Label.label(customLabel));
@@ -143,6 +137,7 @@ public class CsvEntityLoader {
                     }
                 }
                 reporter.update(1, 0, props++);
+                tx.increment();
             }
         }
     }
@@ -150,7 +145,7 @@ public class CsvEntityLoader {
     /**
      * Loads relationships from a CSV file with given relationship types to an online database,
      * using the {@code idMapping} created by the
-     * {@link #loadNodes(String, List, GraphDatabaseService, Map)} method.
+     * {@link #loadNodes(String, List, GraphDatabaseService, CsvIdMapping)} method.
      *
      * @param fileName URI of the CSV file representing the relationship
      * @param type relationship type to be applied to each relationships
@@ -160,7 +155,7 @@ public class CsvEntityLoader {
      */
     public void loadRelationships(
             final String fileName, final String type, final GraphDatabaseService db,
-            final Map<String, Map<String, Long>> idMapping) throws IOException {
+            final CsvIdMapping idMapping) throws IOException {
         final CountingReader reader = FileUtils.readerFor(fileName);
         final String header = readFirstLine(reader);
         final List<CsvHeaderField> fields = CsvHeaderFields.processHeader(header, clc.getDelimiter(), clc.getQuotationCharacter());
@@ -178,67 +173,90 @@ public class CsvEntityLoader {
                 .filter(field -> !CsvLoaderConstants.END_ID_FIELD.equals(field.getType()))
                 .collect(Collectors.toList());
 
-        final Map<String, LoadCsv.Mapping> mapping = fields.stream().collect(
-                Collectors.toMap(
-                        CsvHeaderField::getName,
-                        f -> {
-                            final Map<String, Object> mappingMap = Collections
-                                    .unmodifiableMap(Stream.of(
-                                            new AbstractMap.SimpleEntry<>("type", f.getType()),
-                                            new AbstractMap.SimpleEntry<>("array", f.isArray())
-                                    ).collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)));
-
-                            return new LoadCsv.Mapping(f.getName(), mappingMap, clc.getArrayDelimiter(), false);
-                        }
-                )
-        );
+        final Optional<CsvHeaderField> typeField = fields.stream()
+                .filter(f -> CsvLoaderConstants.TYPE_FIELD.equals(f.getType()))
+                .findFirst();
+
+        final LoadCsv.Mapping[] mappings = createMappings(fields);
+        final Object[] values = new Object[fields.size()];
 
         final CSVReader csv = new CSVReader(reader, clc.getDelimiter());
-        final String[] loadCsvCompatibleHeader = fields.stream().map(f -> f.getName()).toArray(String[]::new);
 
         int lineNo = 0;
-        try (BatchTransaction tx = new BatchTransaction(db, clc.getBatchSize(), reporter)) {
-            for (String[] line : csv.readAll()) {
+        try (BatchTransaction tx = new BatchTransaction(db, clc.getBatchSize(), reporter);
+             ParallelRelationshipLoader parallelLoader = clc.isParallel() ? new ParallelRelationshipLoader(db, clc.getBatchSize(), reporter, edgePropertiesFields, log) : null) {
+            String[] line;
+            while ((line = csv.readNext()) != null) {
                 lineNo++;
+                convertLine(line, mappings, values);
 
-                final EnumSet<LoadCsv.Results> results = EnumSet.of(LoadCsv.Results.map);
-                final LoadCsv.CSVResult result = new LoadCsv.CSVResult(
-                        loadCsvCompatibleHeader, line, lineNo, false, mapping, Collections.emptyList(), results
-                );
-
-                final Object startId = result.map.get(CsvLoaderConstants.START_ID_ATTR);
-                final Object startInternalId = idMapping.get(startIdField.getIdSpace()).get(startId);
-                if (startInternalId == null) {
-                    throw new IllegalStateException("Node for id space " + endIdField.getIdSpace() + " and id " + startId + " not found");
+                final String startId = (String) values[startIdField.getIndex()];
+                final String endId = (String) values[endIdField.getIndex()];
+                if (startId == null || endId == null) {
+                    throw new IllegalStateException("Missing start or end id on line " + lineNo + "\n" + Arrays.toString(line));
+                }
+                final long startInternalId = idMapping.get(startIdField.getIdSpace(), startId);
+                if (startInternalId == IdMapper.NOT_FOUND) {
+                    throw new IllegalStateException("Node for id space " + startIdField.getIdSpace() + " and id " + startId + " not found");
                 }
-                final Node source = db.getNodeById((long) startInternalId);
 
-                final Object endId = result.map.get(CsvLoaderConstants.END_ID_ATTR);
-                final Object endInternalId = idMapping.get(endIdField.getIdSpace()).get(endId);
-                if (endInternalId == null) {
+                final long endInternalId = idMapping.get(endIdField.getIdSpace(), endId);
+                if (endInternalId == IdMapper.NOT_FOUND) {
                     throw new IllegalStateException("Node for id space " + endIdField.getIdSpace() + " and id " + endId + " not found");
                 }
-                final Node target = db.getNodeById((long) endInternalId);
 
                 final String currentType;
-                final Object overridingType = result.map.get(CsvLoaderConstants.TYPE_ATTR);
+                final Object overridingType = typeField.isPresent() ? values[typeField.get().getIndex()] : null;
                 if (overridingType != null && !((String) overridingType).isEmpty()) {
                     currentType = (String) overridingType;
                 } else {
                     currentType = type;
                 }
-                final Relationship rel = source.createRelationshipTo(target, RelationshipType.withName(currentType));
 
-                // add properties
-                int props = 0;
-                for (CsvHeaderField field : edgePropertiesFields) {
-                    final String name = field.getName();
-                    Object value = result.map.get(name);
-                    boolean propertyAdded = CsvPropertyConverter.addPropertyToGraphEntity(rel, field, value);
-                    props += propertyAdded ? 1 : 0;
+                if (parallelLoader != null) {
+                    parallelLoader.add(startInternalId, endInternalId, currentType, values);
+                    continue;
                 }
-                reporter.update(0, 1, props);
+
+                final Node source = db.getNodeById(startInternalId);
+                final Node target = db.getNodeById(endInternalId);
+                final Relationship rel = source.createRelationshipTo(target, RelationshipType.withName(currentType));
+                reporter.update(0, 1, addProperties(rel, edgePropertiesFields, values));
+                tx.increment();
             }
+            if (parallelLoader != null) parallelLoader.finish();
+        }
+    }
+
+    private static int addProperties(Relationship rel, List<CsvHeaderField> fields, Object[] values) {
+        int props = 0;
+        for (CsvHeaderField field : fields) {
+            Object value = values[field.getIndex()];
+            boolean propertyAdded = CsvPropertyConverter.addPropertyToGraphEntity(rel, field, value);
+            props += propertyAdded ? 1 : 0;
+        }
+        return props;
+    }
+
+    /**
+     * Creates the value converters once per file, indexed by column, so that rows can be converted
+     * without building a {@link LoadCsv.CSVResult} and its value map for every line.
+     */
+    private LoadCsv.Mapping[] createMappings(List<CsvHeaderField> fields) {
+        final LoadCsv.Mapping[] mappings = new LoadCsv.Mapping[fields.size()];
+        for (CsvHeaderField f : fields) {
+            final Map<String, Object> mappingMap = Util.map("type", f.getType(), "array", f.isArray());
+            mappings[f.getIndex()] = new LoadCsv.Mapping(f.getName(), mappingMap, clc.getArrayDelimiter(), false);
+        }
+        return mappings;
+    }
+
+    /**
+     * Converts a single CSV line into the reused {@code values} buffer, missing trailing columns are null.
+     */
+    private static void convertLine(String[] line, LoadCsv.Mapping[] mappings, Object[] values) {
+        for (int i = 0; i < mappings.length; i++) {
+            values[i] = i < line.length ? mappings[i].convert(line[i]) : null;
         }
     }
 
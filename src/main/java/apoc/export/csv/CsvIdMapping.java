@@ -0,0 +1,45 @@
+package apoc.export.csv;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mapping between the CSV ids and the DB's internal node ids for all id spaces of an import.
+ *
+ * Numeric ids ({@code stringIds: false}) are kept in a primitive long to long table, string ids in an
+ * off-heap dictionary, both outside of the Java heap and optionally in memory-mapped temporary files
+ * ({@code spillIdMapping: true}).
+ */
+public class CsvIdMapping implements AutoCloseable {
+
+    private final boolean stringIds;
+    private final boolean spill;
+    private final Map<String, IdMapper> idSpaces = new HashMap<>();
+
+    public CsvIdMapping(boolean stringIds, boolean spill) {
+        this.stringIds = stringIds;
+        this.spill = spill;
+    }
+
+    public static CsvIdMapping from(CsvLoaderConfig clc) {
+        return new CsvIdMapping(clc.getStringIds(), clc.getSpillIdMapping());
+    }
+
+    public IdMapper getOrCreate(String idSpace) {
+        return idSpaces.computeIfAbsent(idSpace, k -> stringIds ? new StringIdMapper(spill) : new LongIdMapper(spill));
+    }
+
+    /**
+     * @return the node id mapped to {@code csvId} in {@code idSpace} or {@link IdMapper#NOT_FOUND}
+     */
+    public long get(String idSpace, String csvId) {
+        IdMapper mapper = idSpaces.get(idSpace);
+        return mapper == null ? IdMapper.NOT_FOUND : mapper.get(csvId);
+    }
+
+    @Override
+    public void close() {
+        idSpaces.values().forEach(IdMapper::close);
+        idSpaces.clear();
+    }
+}
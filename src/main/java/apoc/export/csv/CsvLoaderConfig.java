@@ -1,5 +1,7 @@
 package apoc.export.csv;
 
+import apoc.util.Util;
+
 import java.util.Map;
 
 /**
@@ -15,6 +17,8 @@ public class CsvLoaderConfig {
     public static final String SKIP_LINES = "skipLines";
     public static final String BATCH_SIZE = "batchSize";
     public static final String IGNORE_DUPLICATE_NODES = "ignoreDuplicateNodes";
+    public static final String SPILL_ID_MAPPING = "spillIdMapping";
+    public static final String PARALLEL = "parallel";
 
     public static char DELIMITER_DEFAULT = ',';
     public static char ARRAY_DELIMITER_DEFAULT = ';';
@@ -23,6 +27,8 @@ public class CsvLoaderConfig {
     public static int SKIP_LINES_DEFAULT = 1;
     public static int BATCH_SIZE_DEFAULT = 2000;
     public static boolean IGNORE_DUPLICATE_NODES_DEFAULT = false;
+    public static boolean SPILL_ID_MAPPING_DEFAULT = false;
+    public static boolean PARALLEL_DEFAULT = false;
 
     private final char delimiter;
     private final char arrayDelimiter;
@@ -31,6 +37,8 @@ public class CsvLoaderConfig {
     private final int skipLines;
     private final int batchSize;
     private final boolean ignoreDuplicateNodes;
+    private final boolean spillIdMapping;
+    private final boolean parallel;
 
     private CsvLoaderConfig(Builder builder) {
         this.delimiter = builder.delimiter;
@@ -40,6 +48,8 @@ public class CsvLoaderConfig {
         this.skipLines = builder.skipLines;
         this.batchSize = builder.batchSize;
         this.ignoreDuplicateNodes = builder.ignoreDuplicateNodes;
+        this.spillIdMapping = builder.spillIdMapping;
+        this.parallel = builder.parallel;
     }
 
     public char getDelimiter() {
@@ -68,6 +78,10 @@ public class CsvLoaderConfig {
 
     public boolean getIgnoreDuplicateNodes() { return ignoreDuplicateNodes; }
 
+    public boolean getSpillIdMapping() { return spillIdMapping; }
+
+    public boolean isParallel() { return parallel; }
+
     /**
      * Creates builder to build {@link CsvLoaderConfig}.
      *
@@ -100,8 +114,10 @@ public class CsvLoaderConfig {
         if (config.get(QUOTATION_CHARACTER) != null) builder.quotationCharacter(getCharacterOrString(config, QUOTATION_CHARACTER));
         if (config.get(STRING_IDS) != null) builder.stringIds((boolean) config.get(STRING_IDS));
         if (config.get(SKIP_LINES) != null) builder.skipLines((int) config.get(SKIP_LINES));
-        if (config.get(BATCH_SIZE) != null) builder.batchSize((int) config.get(BATCH_SIZE));
+        if (config.get(BATCH_SIZE) != null) builder.batchSize(Util.toInteger(config.get(BATCH_SIZE)));
         if (config.get(IGNORE_DUPLICATE_NODES) != null) builder.ignoreDuplicateNodes((boolean) config.get(IGNORE_DUPLICATE_NODES));
+        if (config.get(SPILL_ID_MAPPING) != null) builder.spillIdMapping((boolean) config.get(SPILL_ID_MAPPING));
+        if (config.get(PARALLEL) != null) builder.parallel((boolean) config.get(PARALLEL));
 
         return builder.build();
     }
@@ -117,6 +133,8 @@ public class CsvLoaderConfig {
         private int skipLines = SKIP_LINES_DEFAULT;
         private int batchSize = BATCH_SIZE_DEFAULT;
         private boolean ignoreDuplicateNodes = IGNORE_DUPLICATE_NODES_DEFAULT;
+        private boolean spillIdMapping = SPILL_ID_MAPPING_DEFAULT;
+        private boolean parallel = PARALLEL_DEFAULT;
 
         private Builder() {
         }
@@ -156,6 +174,16 @@ public class CsvLoaderConfig {
             return this;
         }
 
+        public Builder spillIdMapping(boolean spillIdMapping) {
+            this.spillIdMapping = spillIdMapping;
+            return this;
+        }
+
+        public Builder parallel(boolean parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
         public CsvLoaderConfig build() {
             return new CsvLoaderConfig(this);
         }
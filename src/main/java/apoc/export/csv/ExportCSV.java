@@ -101,7 +101,7 @@ public class ExportCSV {
             final ArrayBlockingQueue<ProgressInfo> queue = new ArrayBlockingQueue<>(1000);
             ProgressReporter reporterWithConsumer = reporter.withConsumer(
                     (pi) -> Util.put(queue, pi == ProgressInfo.EMPTY ? ProgressInfo.EMPTY : new ProgressInfo(pi).drain(writer),timeout));
-            Util.inTxFuture(Pools.DEFAULT, db, () -> { dump(data, c, reporterWithConsumer, writer, exporter); return true; });
+            Util.inTxFuture(Pools.IO, db, () -> { dump(data, c, reporterWithConsumer, writer, exporter); return true; });
             QueueBasedSpliterator<ProgressInfo> spliterator = new QueueBasedSpliterator<>(queue, ProgressInfo.EMPTY, terminationGuard, timeout);
             return StreamSupport.stream(spliterator, false);
         } else {
@@ -0,0 +1,24 @@
+package apoc.export.csv;
+
+/**
+ * Maps the CSV ids of a single id space to the internal node ids of the database.
+ */
+public interface IdMapper extends AutoCloseable {
+
+    long NOT_FOUND = -1;
+
+    /**
+     * @return the internal node id or {@link #NOT_FOUND}
+     */
+    long get(String csvId);
+
+    /**
+     * @return false if the csv id was already mapped, in which case the existing mapping is kept
+     */
+    boolean put(String csvId, long nodeId);
+
+    long size();
+
+    @Override
+    void close();
+}
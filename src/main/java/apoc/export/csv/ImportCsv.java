@@ -5,12 +5,12 @@ import apoc.export.util.ProgressReporter;
 import apoc.result.ProgressInfo;
 import apoc.util.Util;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -19,6 +19,9 @@ public class ImportCsv {
     @Context
     public GraphDatabaseService db;
 
+    @Context
+    public Log log;
+
     public ImportCsv(GraphDatabaseService db) {
         this.db = db;
     }
@@ -38,19 +41,20 @@ public class ImportCsv {
                     final ProgressReporter reporter = new ProgressReporter(null, null, new ProgressInfo("progress.csv", "file", "csv"));
 
                     final CsvLoaderConfig clc = CsvLoaderConfig.from(config);
-                    final CsvEntityLoader loader = new CsvEntityLoader(clc, reporter);
+                    final CsvEntityLoader loader = new CsvEntityLoader(clc, reporter, log);
 
-                    final Map<String, Map<String, Long>> idMapping = new HashMap<>();
-                    for (Map<String, Object> node : nodes) {
-                        final String fileName = (String) node.get("fileName");
-                        final List<String> labels = (List<String>) node.get("labels");
-                        loader.loadNodes(fileName, labels, db, idMapping);
-                    }
+                    try (CsvIdMapping idMapping = CsvIdMapping.from(clc)) {
+                        for (Map<String, Object> node : nodes) {
+                            final String fileName = (String) node.get("fileName");
+                            final List<String> labels = (List<String>) node.get("labels");
+                            loader.loadNodes(fileName, labels, db, idMapping);
+                        }
 
-                    for (Map<String, String> relationship : relationships) {
-                        final String fileName = relationship.get("fileName");
-                        final String type = relationship.get("type");
-                        loader.loadRelationships(fileName, type, db, idMapping);
+                        for (Map<String, String> relationship : relationships) {
+                            final String fileName = relationship.get("fileName");
+                            final String type = relationship.get("type");
+                            loader.loadRelationships(fileName, type, db, idMapping);
+                        }
                     }
 
                     return reporter.getTotal();
@@ -0,0 +1,120 @@
+package apoc.export.csv;
+
+/**
+ * Open addressing hash table from numeric CSV ids to node ids, each slot holds the key and the node id + 1 (0 marks
+ * an empty slot) as two primitive longs in {@link OffHeapPages}.
+ *
+ * CSV ids are keyed by their raw string, only ids in the canonical decimal form of a long use the table. Others like
+ * {@code 007} or {@code +7} would collide with {@code 7} when parsed, they go into a {@link StringIdMapper} that is
+ * only created when such an id appears.
+ */
+final class LongIdMapper implements IdMapper {
+
+    private static final int SLOT_SIZE = OffHeapPages.SLOT_SIZE;
+    private static final double LOAD_FACTOR = 0.7;
+    static final long INITIAL_SLOTS = 1 << 16;
+
+    private final boolean spill;
+    private final OffHeapPages table;
+    private long slots = INITIAL_SLOTS;
+    private long size;
+    // non-canonical ids, null until the first one
+    private StringIdMapper others;
+
+    LongIdMapper(boolean spill) {
+        this.spill = spill;
+        this.table = OffHeapPages.allocate(spill, INITIAL_SLOTS * SLOT_SIZE);
+    }
+
+    @Override
+    public long get(String csvId) {
+        if (csvId == null) return NOT_FOUND;
+        if (isCanonical(csvId)) {
+            try {
+                return get(Long.parseLong(csvId));
+            } catch (NumberFormatException e) {
+                // out of the long range
+            }
+        }
+        return others == null ? NOT_FOUND : others.get(csvId);
+    }
+
+    /**
+     * @return true if the id is an optional minus followed by ASCII digits without leading zeros
+     */
+    static boolean isCanonical(String csvId) {
+        int start = csvId.startsWith("-") ? 1 : 0;
+        int length = csvId.length();
+        if (length == start || length - start > 19) return false;
+        if (csvId.charAt(start) == '0') return length == 1;
+        for (int i = start; i < length; i++) {
+            char c = csvId.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    long get(long key) {
+        long mask = slots - 1;
+        for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long offset = slot * SLOT_SIZE;
+            long value = table.getLong(offset + 8);
+            if (value == 0) return NOT_FOUND;
+            if (table.getLong(offset) == key) return value - 1;
+        }
+    }
+
+    @Override
+    public boolean put(String csvId, long nodeId) {
+        if (isCanonical(csvId)) {
+            try {
+                return put(Long.parseLong(csvId), nodeId);
+            } catch (NumberFormatException e) {
+                // out of the long range
+            }
+        }
+        if (others == null) others = new StringIdMapper(spill);
+        return others.put(csvId, nodeId);
+    }
+
+    boolean put(long key, long nodeId) {
+        if (size + 1 > slots * LOAD_FACTOR) grow();
+        if (!insert(key, nodeId + 1)) return false;
+        size++;
+        return true;
+    }
+
+    private boolean insert(long key, long value) {
+        long mask = slots - 1;
+        for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long offset = slot * SLOT_SIZE;
+            if (table.getLong(offset + 8) == 0) {
+                table.putLong(offset, key);
+                table.putLong(offset + 8, value);
+                return true;
+            }
+            if (table.getLong(offset) == key) return false;
+        }
+    }
+
+    private void grow() {
+        table.doubleSlots(slots, LongIdMapper::hash);
+        slots *= 2;
+    }
+
+    static long hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+
+    @Override
+    public long size() {
+        return size + (others == null ? 0 : others.size());
+    }
+
+    @Override
+    public void close() {
+        table.close();
+        if (others != null) others.close();
+    }
+}
@@ -0,0 +1,246 @@
+package apoc.export.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Growable byte storage outside of the Java heap, split into fixed size pages so that it can exceed the 2GB
+ * limit of a single {@link ByteBuffer}. Pages are either direct buffers or, when spilling, regions of a
+ * memory-mapped temporary file that is deleted on {@link #close()}.
+ *
+ * Storage smaller than a page is kept in a single page of the next power of two size, which is replaced by a larger
+ * one as it grows. Pages are released explicitly when they are replaced or closed, instead of waiting for the
+ * garbage collector to free the direct memory or unmap the file.
+ *
+ * Values never straddle a page: longs are read at 8-byte aligned offsets and variable sized entries are
+ * placed by the caller with {@link #fitsInPage(long, int)}.
+ */
+final class OffHeapPages implements AutoCloseable {
+
+    static final int PAGE_SHIFT = 23;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final long PAGE_MASK = PAGE_SIZE - 1;
+    static final int MIN_PAGE_SIZE = 1 << 12;
+
+    // hash table slots are a key and a value long, a slot is empty when both are 0
+    static final int SLOT_SIZE = 16;
+    // marks the values of slots not yet moved while rehashing, values are never negative otherwise
+    private static final long PENDING = Long.MIN_VALUE;
+
+    private final boolean spill;
+    private ByteBuffer[] pages = new ByteBuffer[0];
+    private File file;
+    private RandomAccessFile raf;
+
+    OffHeapPages(boolean spill) {
+        this.spill = spill;
+    }
+
+    /**
+     * @return storage of at least {@code bytes} zeroed bytes
+     */
+    static OffHeapPages allocate(boolean spill, long bytes) {
+        OffHeapPages pages = new OffHeapPages(spill);
+        pages.ensureCapacity(bytes);
+        return pages;
+    }
+
+    long capacity() {
+        if (pages.length == 1) return pages[0].capacity();
+        return (long) pages.length << PAGE_SHIFT;
+    }
+
+    /**
+     * grows the storage to at least {@code bytes}, the new bytes are zeroed
+     */
+    void ensureCapacity(long bytes) {
+        if (bytes <= capacity()) return;
+        if (bytes < PAGE_SIZE) {
+            resizeFirstPage((int) Math.max(MIN_PAGE_SIZE, Long.highestOneBit(bytes - 1) << 1));
+            return;
+        }
+        if (pages.length <= 1) resizeFirstPage(PAGE_SIZE);
+        int newPages = (int) ((bytes + PAGE_MASK) >>> PAGE_SHIFT);
+        int oldPages = pages.length;
+        pages = Arrays.copyOf(pages, newPages);
+        for (int i = oldPages; i < newPages; i++) {
+            pages[i] = allocate(i, PAGE_SIZE);
+        }
+    }
+
+    private void resizeFirstPage(int size) {
+        ByteBuffer old = pages.length == 0 ? null : pages[0];
+        if (old != null && old.capacity() >= size) return;
+        ByteBuffer page = allocate(0, size);
+        if (old != null) {
+            // a larger mapping of the same file already has the contents
+            if (!spill) {
+                ByteBuffer contents = old.duplicate();
+                contents.clear();
+                page.put(contents);
+                page.clear();
+            }
+            release(old);
+        }
+        pages = new ByteBuffer[]{page};
+    }
+
+    private ByteBuffer allocate(int page, int size) {
+        if (!spill) return ByteBuffer.allocateDirect(size);
+        try {
+            if (raf == null) {
+                file = File.createTempFile("apoc-import-ids", ".tmp");
+                file.deleteOnExit();
+                raf = new RandomAccessFile(file, "rw");
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) page << PAGE_SHIFT, size);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't map id mapping file " + file, e);
+        }
+    }
+
+    static boolean fitsInPage(long offset, int length) {
+        return (offset & PAGE_MASK) + length <= PAGE_SIZE;
+    }
+
+    static long nextPage(long offset) {
+        return (offset | PAGE_MASK) + 1;
+    }
+
+    long getLong(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].getLong((int) (offset & PAGE_MASK));
+    }
+
+    void putLong(long offset, long value) {
+        pages[(int) (offset >>> PAGE_SHIFT)].putLong((int) (offset & PAGE_MASK), value);
+    }
+
+    int getInt(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].getInt((int) (offset & PAGE_MASK));
+    }
+
+    void putInt(long offset, int value) {
+        pages[(int) (offset >>> PAGE_SHIFT)].putInt((int) (offset & PAGE_MASK), value);
+    }
+
+    byte get(long offset) {
+        return pages[(int) (offset >>> PAGE_SHIFT)].get((int) (offset & PAGE_MASK));
+    }
+
+    void put(long offset, byte value) {
+        pages[(int) (offset >>> PAGE_SHIFT)].put((int) (offset & PAGE_MASK), value);
+    }
+
+    /**
+     * Doubles an open addressing hash table of {@link #SLOT_SIZE} slots with linear probing in place, so the old and
+     * the new table are never allocated at the same time.
+     *
+     * All entries are marked as pending first. Each pending entry is then moved to the first slot of its probe
+     * sequence that is empty or pending itself, in which case the displaced entry is moved next. Placed entries are
+     * never moved again, so no probe sequence of a placed entry runs over a slot that is emptied later.
+     *
+     * @param hash the hash of the key of a slot
+     */
+    void doubleSlots(long slots, LongUnaryOperator hash) {
+        long newSlots = slots * 2;
+        ensureCapacity(newSlots * SLOT_SIZE);
+        for (long slot = 0; slot < slots; slot++) {
+            long offset = slot * SLOT_SIZE;
+            if (getLong(offset) != 0 || getLong(offset + 8) != 0) {
+                putLong(offset + 8, getLong(offset + 8) | PENDING);
+            }
+        }
+        long mask = newSlots - 1;
+        for (long slot = 0; slot < slots; slot++) {
+            long offset = slot * SLOT_SIZE;
+            long value = getLong(offset + 8);
+            if (value >= 0) continue;
+            long key = getLong(offset);
+            value &= ~PENDING;
+            putLong(offset, 0);
+            putLong(offset + 8, 0);
+            boolean moving = true;
+            while (moving) {
+                for (long target = hash.applyAsLong(key) & mask; ; target = (target + 1) & mask) {
+                    long targetOffset = target * SLOT_SIZE;
+                    long targetKey = getLong(targetOffset);
+                    long targetValue = getLong(targetOffset + 8);
+                    boolean empty = targetKey == 0 && targetValue == 0;
+                    if (!empty && targetValue >= 0) continue;
+                    putLong(targetOffset, key);
+                    putLong(targetOffset + 8, value);
+                    moving = !empty;
+                    key = targetKey;
+                    value = targetValue & ~PENDING;
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ByteBuffer page : pages) {
+            release(page);
+        }
+        pages = new ByteBuffer[0];
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException ignore) {
+                // the file is removed anyway
+            }
+            file.delete();
+            raf = null;
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner(ByteBuffer) on Java 9+, DirectByteBuffer.cleaner().clean() on Java 8
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+        } catch (Exception e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * frees the memory of a direct buffer or unmaps a mapped one right away, falls back to the garbage collector if
+     * the JVM doesn't allow it. The buffer must not be used afterwards.
+     */
+    static void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) return;
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package apoc.export.csv;
+
+import apoc.Pools;
+import apoc.export.util.BatchTransaction;
+import apoc.export.util.ProgressReporter;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Creates relationships for {@code apoc.import.csv} with {@code parallel: true}.
+ *
+ * Rows are collected in chunks and split into {@code partitions} node id ranges. Every relationship falls into the
+ * bucket of the (unordered) pair of ranges of its start and end node. The buckets are then written in rounds,
+ * first all buckets within a single range, then the pairs of a round-robin schedule, so the buckets running
+ * concurrently never share a node id range and never wait for each other's node locks.
+ *
+ * A chunk holds at most {@code batchSize} rows per partition, and only the property values of each row.
+ * The last chunk is only written by {@link #finish()}, {@link #close()} discards it, so a failed load doesn't
+ * write the rows read before the error.
+ */
+class ParallelRelationshipLoader implements AutoCloseable {
+
+    private static final int MAX_CHUNK_SIZE = 1_000_000;
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final GraphDatabaseService db;
+    private final int batchSize;
+    private final ProgressReporter reporter;
+    private final List<CsvHeaderField> propertyFields;
+    private final Log log;
+    private final ExecutorService pool = Pools.IO;
+
+    private final int partitions;
+    private final int chunkSize;
+    private final List<int[][]> rounds;
+    private final List<Row> chunk;
+    private final AtomicLongArray partitionRows;
+    private final AtomicLongArray partitionNanos;
+
+    private static class Row {
+        final long source;
+        final long target;
+        final String type;
+        final Object[] values;
+
+        Row(long source, long target, String type, Object[] values) {
+            this.source = source;
+            this.target = target;
+            this.type = type;
+            this.values = values;
+        }
+    }
+
+    ParallelRelationshipLoader(GraphDatabaseService db, int batchSize, ProgressReporter reporter, List<CsvHeaderField> propertyFields, Log log) {
+        this.db = db;
+        this.batchSize = batchSize;
+        this.reporter = reporter;
+        this.propertyFields = propertyFields;
+        this.log = log;
+        this.partitions = 2 * Pools.getNoThreads(pool);
+        this.chunkSize = (int) Math.min(MAX_CHUNK_SIZE, (long) batchSize * partitions);
+        this.rounds = rounds(partitions);
+        this.chunk = new ArrayList<>(Math.min(chunkSize, batchSize));
+        this.partitionRows = new AtomicLongArray(partitions);
+        this.partitionNanos = new AtomicLongArray(partitions);
+    }
+
+    /**
+     * Round-robin (circle method) schedule over an even number of partitions, preceded by a round of all
+     * partitions paired with themselves. Within each round every partition occurs exactly once.
+     */
+    static List<int[][]> rounds(int partitions) {
+        List<int[][]> rounds = new ArrayList<>(partitions);
+        int[][] self = new int[partitions][];
+        for (int i = 0; i < partitions; i++) {
+            self[i] = new int[]{i, i};
+        }
+        rounds.add(self);
+        int n = partitions - 1;
+        for (int r = 0; r < n; r++) {
+            int[][] round = new int[partitions / 2][];
+            round[0] = new int[]{r, n};
+            for (int k = 1; k < partitions / 2; k++) {
+                round[k] = new int[]{(r + k) % n, (r - k + n) % n};
+            }
+            rounds.add(round);
+        }
+        return rounds;
+    }
+
+    /**
+     * @param values the converted values of the row, only read during the call
+     */
+    void add(long source, long target, String type, Object[] values) {
+        Object[] properties = propertyFields.isEmpty() ? NO_VALUES : new Object[propertyFields.size()];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = values[propertyFields.get(i).getIndex()];
+        }
+        chunk.add(new Row(source, target, type, properties));
+        if (chunk.size() >= chunkSize) flush();
+    }
+
+    /**
+     * writes the rows of the last chunk, to be called when all rows were added
+     */
+    void finish() {
+        flush();
+    }
+
+    private void flush() {
+        if (chunk.isEmpty()) return;
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (Row row : chunk) {
+            min = Math.min(min, Math.min(row.source, row.target));
+            max = Math.max(max, Math.max(row.source, row.target));
+        }
+        long rangeSize = (max - min) / partitions + 1;
+        // by the pair of partitions a, b with a <= b at a * partitions + b
+        List<List<Row>> buckets = new ArrayList<>(Collections.nCopies(partitions * partitions, null));
+        for (Row row : chunk) {
+            int a = (int) ((row.source - min) / rangeSize);
+            int b = (int) ((row.target - min) / rangeSize);
+            int index = Math.min(a, b) * partitions + Math.max(a, b);
+            List<Row> bucket = buckets.get(index);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.set(index, bucket);
+            }
+            bucket.add(row);
+        }
+        chunk.clear();
+
+        for (int[][] round : rounds) {
+            List<Future<?>> futures = new ArrayList<>(round.length);
+            for (int[] pair : round) {
+                int a = Math.min(pair[0], pair[1]), b = Math.max(pair[0], pair[1]);
+                List<Row> bucket = buckets.set(a * partitions + b, null);
+                if (bucket == null) continue;
+                futures.add(pool.submit(() -> write(bucket, a)));
+            }
+            awaitAll(futures);
+        }
+    }
+
+    private void write(List<Row> bucket, int partition) {
+        long start = System.nanoTime();
+        long props = 0;
+        try (BatchTransaction tx = new BatchTransaction(db, batchSize, null)) {
+            for (Row row : bucket) {
+                Relationship rel = db.getNodeById(row.source).createRelationshipTo(db.getNodeById(row.target), RelationshipType.withName(row.type));
+                for (int i = 0; i < row.values.length; i++) {
+                    if (CsvPropertyConverter.addPropertyToGraphEntity(rel, propertyFields.get(i), row.values[i])) props++;
+                }
+                tx.increment();
+            }
+        }
+        partitionRows.addAndGet(partition, bucket.size());
+        partitionNanos.addAndGet(partition, System.nanoTime() - start);
+        synchronized (reporter) {
+            reporter.update(0, bucket.size(), props);
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> futures) {
+        RuntimeException error = null;
+        for (Future<?> future : futures) {
+            try {
+                Pools.force(future);
+            } catch (ExecutionException e) {
+                if (error == null) error = new RuntimeException("Error loading relationships: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    @Override
+    public void close() {
+        chunk.clear();
+        if (log == null) return;
+        for (int i = 0; i < partitions; i++) {
+            long rows = partitionRows.get(i);
+            if (rows == 0) continue;
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(partitionNanos.get(i)));
+            log.info("apoc.import.csv partition %d of %d: %d relationships in %d ms, %d relationships/s", i, partitions, rows, millis, rows * 1000 / millis);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package apoc.export.csv;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap dictionary from string CSV ids to node ids.
+ *
+ * The UTF-8 encoded ids are appended to a byte arena (length prefixed), the open addressing table stores per slot
+ * a reference into the arena, combined with 24 bits of the hash to skip most key comparisons, and the node id.
+ */
+final class StringIdMapper implements IdMapper {
+
+    private static final int SLOT_SIZE = OffHeapPages.SLOT_SIZE;
+    private static final double LOAD_FACTOR = 0.7;
+    private static final int TAG_SHIFT = 40;
+    private static final long OFFSET_MASK = (1L << TAG_SHIFT) - 1;
+
+    private final OffHeapPages arena;
+    private long arenaSize;
+    private final OffHeapPages table;
+    private long slots = LongIdMapper.INITIAL_SLOTS;
+    private long size;
+
+    StringIdMapper(boolean spill) {
+        this.arena = new OffHeapPages(spill);
+        this.table = OffHeapPages.allocate(spill, slots * SLOT_SIZE);
+    }
+
+    @Override
+    public long get(String csvId) {
+        if (csvId == null) return NOT_FOUND;
+        byte[] key = csvId.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        long tag = tag(hash);
+        long mask = slots - 1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long offset = slot * SLOT_SIZE;
+            long ref = table.getLong(offset);
+            if (ref == 0) return NOT_FOUND;
+            if ((ref >>> TAG_SHIFT) == tag && keyEquals((ref & OFFSET_MASK) - 1, key)) {
+                return table.getLong(offset + 8);
+            }
+        }
+    }
+
+    @Override
+    public boolean put(String csvId, long nodeId) {
+        if (size + 1 > slots * LOAD_FACTOR) grow();
+        byte[] key = csvId.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+        long tag = tag(hash);
+        long mask = slots - 1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long offset = slot * SLOT_SIZE;
+            long ref = table.getLong(offset);
+            if (ref == 0) {
+                table.putLong(offset, (tag << TAG_SHIFT) | (append(key) + 1));
+                table.putLong(offset + 8, nodeId);
+                size++;
+                return true;
+            }
+            if ((ref >>> TAG_SHIFT) == tag && keyEquals((ref & OFFSET_MASK) - 1, key)) return false;
+        }
+    }
+
+    private long append(byte[] key) {
+        int length = 4 + key.length;
+        if (length > OffHeapPages.PAGE_SIZE) {
+            throw new IllegalArgumentException("Id of " + key.length + " bytes is too long");
+        }
+        if (!OffHeapPages.fitsInPage(arenaSize, length)) {
+            arenaSize = OffHeapPages.nextPage(arenaSize);
+        }
+        arena.ensureCapacity(arenaSize + length);
+        long offset = arenaSize;
+        arena.putInt(offset, key.length);
+        for (int i = 0; i < key.length; i++) {
+            arena.put(offset + 4 + i, key[i]);
+        }
+        arenaSize += length;
+        return offset;
+    }
+
+    private boolean keyEquals(long offset, byte[] key) {
+        if (arena.getInt(offset) != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (arena.get(offset + 4 + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private byte[] readKey(long offset) {
+        byte[] key = new byte[arena.getInt(offset)];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = arena.get(offset + 4 + i);
+        }
+        return key;
+    }
+
+    private void grow() {
+        table.doubleSlots(slots, ref -> hash(readKey((ref & OFFSET_MASK) - 1)));
+        slots *= 2;
+    }
+
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash = (hash ^ b) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static long tag(long hash) {
+        return (hash >>> TAG_SHIFT) & 0xFFFFFF;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        table.close();
+        arena.close();
+    }
+}
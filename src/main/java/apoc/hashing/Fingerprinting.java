@@ -1,6 +1,9 @@
 package apoc.hashing;
 
+import apoc.Pools;
+import apoc.util.Util;
 import org.neo4j.graphdb.*;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
@@ -18,6 +21,7 @@ import java.util.stream.StreamSupport;
 public class Fingerprinting {
 
     public static final String DIGEST_ALGORITHM = "MD5";
+    public static final int DEFAULT_BATCH_SIZE = 100_000;
 
     @Context
     public GraphDatabaseService db;
@@ -54,8 +58,13 @@ public class Fingerprinting {
     }
 
     @UserFunction
-    @Description("calculate a checksum (md5) over a the full graph. Be aware that this function does use in-memomry datastructures depending on the size of your graph.")
-    public String fingerprintGraph(@Name(value = "propertyExcludes", defaultValue = "") List<String> excludedPropertyKeys) {
+    @Description("calculate a checksum (md5) over a the full graph. Be aware that this function does use in-memomry datastructures depending on the size of your graph, unless {parallel:true, batchSize:100000} is configured.")
+    public String fingerprintGraph(@Name(value = "propertyExcludes", defaultValue = "") List<String> excludedPropertyKeys,
+                                   @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        if (Util.toBoolean(config.get("parallel"))) {
+            int batchSize = Util.toInteger(config.getOrDefault("batchSize", DEFAULT_BATCH_SIZE));
+            return new ParallelGraphFingerprint((GraphDatabaseAPI) db, Pools.ANALYTICS, batchSize, this, excludedPropertyKeys).compute();
+        }
 
         return withMessageDigest(messageDigest -> {
             // step 1: load all nodes, calc their hash and map them to id
@@ -0,0 +1,203 @@
+package apoc.hashing;
+
+import apoc.Pools;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.*;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.unsafe.impl.batchimport.cache.ByteArray;
+import org.neo4j.unsafe.impl.batchimport.cache.NumberArrayFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Fingerprint of the full graph, computed in parallel batches of node and relationship ids.
+ *
+ * The digest of each node, the same as {@code apoc.hashing.fingerprint(node)}, is kept as a fixed width binary digest
+ * by node id off-heap. Each relationship is digested together with the digests of its start and end node.
+ * All node and relationship digests are summed modulo 2^128, so the result neither depends on internal ids nor on the
+ * order in which the batches finish, while the heap only holds one batch at a time.
+ *
+ * The off-heap digests take 16 bytes per node id up to the highest node id at the start. Nodes created since then have
+ * no digest, relationships to them are digested with an all zero digest for that end, like for a missing node.
+ */
+class ParallelGraphFingerprint {
+
+    private static final int DIGEST_WIDTH = 16;
+
+    private final GraphDatabaseAPI db;
+    private final ExecutorService pool;
+    private final int batchSize;
+    private final Fingerprinting fingerprinting;
+    private final List<String> excludedPropertyKeys;
+    private final ThreadToStatementContextBridge bridge;
+
+    private interface RangeWork {
+        void run(KernelTransaction ktx, long from, long to, MessageDigest md, Sum sum) throws KernelException;
+    }
+
+    /**
+     * Commutative sum of digests, modulo 2^128
+     */
+    private static class Sum {
+        long count, high, low;
+
+        void add(long high, long low, long count) {
+            long sum = this.low + low;
+            if (Long.compareUnsigned(sum, this.low) < 0) this.high++;
+            this.low = sum;
+            this.high += high;
+            this.count += count;
+        }
+
+        void add(byte[] digest) {
+            ByteBuffer buffer = ByteBuffer.wrap(digest);
+            add(buffer.getLong(0), buffer.getLong(8), 1);
+        }
+
+        void add(Sum other) {
+            add(other.high, other.low, other.count);
+        }
+
+        byte[] toBytes() {
+            return ByteBuffer.allocate(24).putLong(count).putLong(high).putLong(low).array();
+        }
+    }
+
+    ParallelGraphFingerprint(GraphDatabaseAPI db, ExecutorService pool, int batchSize, Fingerprinting fingerprinting, List<String> excludedPropertyKeys) {
+        this.db = db;
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+        this.fingerprinting = fingerprinting;
+        this.excludedPropertyKeys = excludedPropertyKeys;
+        this.bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+    }
+
+    String compute() {
+        long nodeHighId = MultiThreadedGlobalGraphOperations.getHighestIdInUseForStore(db.getDependencyResolver(), GlobalOperationsTypes.NODES);
+        long relHighId = MultiThreadedGlobalGraphOperations.getHighestIdInUseForStore(db.getDependencyResolver(), GlobalOperationsTypes.RELATIONSHIPS);
+        // all zero for missing nodes
+        try (ByteArray digests = NumberArrayFactory.AUTO_WITHOUT_PAGECACHE.newByteArray(Math.max(1, nodeHighId), new byte[DIGEST_WIDTH])) {
+            Sum nodes = forRanges(nodeHighId, (ktx, from, to, md, sum) -> digestNodes(ktx, from, to, md, sum, digests));
+            Sum rels = forRanges(relHighId, (ktx, from, to, md, sum) -> digestRelationships(ktx, from, to, md, sum, digests, nodeHighId));
+            MessageDigest md = newDigest();
+            md.update(nodes.toBytes());
+            md.update(rels.toBytes());
+            return DatatypeConverter.printHexBinary(md.digest());
+        }
+    }
+
+    private void digestNodes(KernelTransaction ktx, long from, long to, MessageDigest md, Sum sum, ByteArray digests) throws KernelException {
+        Read read = ktx.dataRead();
+        TokenRead tokens = ktx.tokenRead();
+        List<String> labels = new ArrayList<>();
+        try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            for (long id = from; id < to; id++) {
+                read.singleNode(id, nodeCursor);
+                if (!nodeCursor.next()) continue;
+                labels.clear();
+                LabelSet labelSet = nodeCursor.labels();
+                for (int i = 0; i < labelSet.numberOfLabels(); i++) {
+                    labels.add(tokens.nodeLabelName(labelSet.label(i)));
+                }
+                Collections.sort(labels);
+                labels.forEach(label -> md.update(label.getBytes()));
+                nodeCursor.properties(propertyCursor);
+                updateProperties(md, tokens, propertyCursor);
+                byte[] digest = md.digest();
+                digests.set(id, digest);
+                sum.add(digest);
+            }
+        }
+    }
+
+    private void digestRelationships(KernelTransaction ktx, long from, long to, MessageDigest md, Sum sum, ByteArray digests, long nodeHighId) throws KernelException {
+        Read read = ktx.dataRead();
+        TokenRead tokens = ktx.tokenRead();
+        byte[] nodeDigest = new byte[DIGEST_WIDTH];
+        try (RelationshipScanCursor relCursor = ktx.cursors().allocateRelationshipScanCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            for (long id = from; id < to; id++) {
+                read.singleRelationship(id, relCursor);
+                if (!relCursor.next()) continue;
+                nodeDigest(digests, nodeHighId, relCursor.sourceNodeReference(), nodeDigest);
+                md.update(nodeDigest);
+                md.update(tokens.relationshipTypeName(relCursor.type()).getBytes());
+                relCursor.properties(propertyCursor);
+                updateProperties(md, tokens, propertyCursor);
+                nodeDigest(digests, nodeHighId, relCursor.targetNodeReference(), nodeDigest);
+                md.update(nodeDigest);
+                sum.add(md.digest());
+            }
+        }
+    }
+
+    // all zero for nodes beyond the digests, created after the node ids were read
+    private static void nodeDigest(ByteArray digests, long nodeHighId, long node, byte[] into) {
+        if (node >= 0 && node < nodeHighId) {
+            digests.get(node, into);
+        } else {
+            Arrays.fill(into, (byte) 0);
+        }
+    }
+
+    // like the fingerprint of the properties map
+    private void updateProperties(MessageDigest md, TokenRead tokens, PropertyCursor propertyCursor) throws KernelException {
+        Map<String, Object> properties = new TreeMap<>();
+        while (propertyCursor.next()) {
+            String key = tokens.propertyKeyName(propertyCursor.propertyKey());
+            if (!excludedPropertyKeys.contains(key)) {
+                properties.put(key, propertyCursor.propertyValue().asObjectCopy());
+            }
+        }
+        properties.forEach((key, value) -> {
+            md.update(key.getBytes());
+            md.update(fingerprinting.fingerprint(value, excludedPropertyKeys).getBytes());
+        });
+    }
+
+    private Sum forRanges(long highestId, RangeWork work) {
+        List<Future<Sum>> futures = new ArrayList<>();
+        for (long start = 0; start < highestId; start += batchSize) {
+            long from = start, to = Math.min(highestId, start + batchSize);
+            futures.add(pool.submit(() -> {
+                Sum sum = new Sum();
+                try (Transaction tx = db.beginTx()) {
+                    work.run(bridge.getKernelTransactionBoundToThisThread(true), from, to, newDigest(), sum);
+                    tx.success();
+                }
+                return sum;
+            }));
+        }
+        Sum result = new Sum();
+        for (Future<Sum> future : futures) {
+            try {
+                result.add(Pools.force(future));
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error fingerprinting the graph", e.getCause());
+            }
+        }
+        return result;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(Fingerprinting.DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
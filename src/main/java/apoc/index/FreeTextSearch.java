@@ -3,6 +3,7 @@ package apoc.index;
 import apoc.ApocKernelExtensionFactory;
 import apoc.Pools;
 import apoc.result.WeightedNodeResult;
+import apoc.util.Util;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
@@ -19,13 +20,21 @@ import org.neo4j.index.impl.lucene.explicit.LuceneDataSource;
 import org.neo4j.index.impl.lucene.explicit.LuceneIndexImplementation;
 import org.neo4j.index.lucene.QueryContext;
 import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.internal.kernel.api.NodeLabelIndexCursor;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 import org.neo4j.scheduler.JobScheduler;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -38,19 +47,32 @@ public class FreeTextSearch {
         public final String label;
         public final String property;
         public final long nodeCount;
+        public final long timeTaken;
+        public final double nodesPerSecond;
 
-        private IndexStats(String label, String property, long nodeCount) {
+        private IndexStats(String label, String property, long nodeCount, long timeTaken, double nodesPerSecond) {
             this.label = label;
             this.property = property;
             this.nodeCount = nodeCount;
+            this.timeTaken = timeTaken;
+            this.nodesPerSecond = nodesPerSecond;
         }
     }
 
+    static final String PARALLEL = "parallel";
+    static final String BATCH_SIZE = "batchSize";
+    static final int DEFAULT_BATCH_SIZE = 50_000;
+    // log the progress of a parallel population every that many ms
+    static final long PROGRESS_INTERVAL = 10_000;
+
     /**
      * Create (or recreate) a free text search index.
      * <p>
      * This will populate the index with all currently matching data. Updates will not be reflected in the index.
      * In order to get updates into the index, the index has to be rebuilt.
+     * <p>
+     * With the option {@code parallel:true} the nodes of the indexed labels are read from the label scan store and
+     * indexed in batches of {@code batchSize} nodes, each in its own transaction, on the batch pool.
      *
      * @param index     The name of the index to create.
      * @param structure The labels of nodes to index, and the properties to index for each label.
@@ -62,8 +84,17 @@ public class FreeTextSearch {
         if (structure.isEmpty()) {
             throw new IllegalArgumentException("No structure given.");
         }
+        Map<String, Object> indexOptions = new HashMap<>(options);
+        boolean parallel = Util.toBoolean(indexOptions.remove(PARALLEL));
+        Object batchSizeOption = indexOptions.remove(BATCH_SIZE);
+        int batchSize = batchSizeOption == null ? DEFAULT_BATCH_SIZE : Math.max(1, Util.toInteger(batchSizeOption));
         return async(executor(), "Creating index '" + index + "'", result -> {
-            populate(index(index, structure, options ), structure, result);
+            Index<Node> nodeIndex = index(index, structure, indexOptions);
+            if (parallel) {
+                populateParallel(index, structure, batchSize, result);
+            } else {
+                populate(nodeIndex, structure, result);
+            }
         });
     }
 
@@ -112,6 +143,60 @@ public class FreeTextSearch {
         return toWeightedNodeResult(db.index().forNodes(index).query(queryParam));    
     }
 
+    /**
+     * Report the state of the asynchronous index updates, one row per worker thread.
+     * <p>
+     * Empty unless {@code apoc.autoIndex.enabled} and {@code apoc.autoIndex.async} are set.
+     *
+     * @return a stream of the metrics of each worker thread.
+     */
+    @Procedure(mode = Mode.READ)
+    @Description("apoc.index.autoUpdateStats() YIELD shard, queueDepth, queuedOperations, pendingOperations, lag, ... - queue depth, apply latency and lag of the async index update threads")
+    public Stream<AutoUpdateStats> autoUpdateStats() {
+        ApocKernelExtensionFactory.ApocLifecycle apocLifecycle = db.getDependencyResolver().resolveDependency(ApocKernelExtensionFactory.ApocLifecycle.class);
+        IndexUpdateTransactionEventHandler handler = apocLifecycle.getIndexUpdateLifeCycle().getIndexUpdateTransactionEventHandler();
+        if (handler == null || !handler.isAsync()) {
+            return Stream.empty();
+        }
+        return handler.getShards().stream().map(AutoUpdateStats::new);
+    }
+
+    public static class AutoUpdateStats {
+        public final long shard;
+        public final long queueDepth;
+        public final long queuedOperations;
+        public final long pendingOperations;
+        public final long operations;
+        public final long coalesced;
+        public final long applied;
+        public final long commits;
+        public final long failures;
+        public final long lastApplyMillis;
+        public final double avgApplyMillis;
+        public final long lag;
+        public final long lastLag;
+        public final long maxLag;
+        public final List<String> staleIndexes;
+
+        private AutoUpdateStats(IndexUpdateTransactionEventHandler.Shard shard) {
+            this.shard = shard.id;
+            this.queueDepth = shard.queueDepth();
+            this.queuedOperations = shard.queuedOperations.get();
+            this.pendingOperations = shard.pendingOperations;
+            this.operations = shard.operations.get();
+            this.coalesced = shard.coalesced.get();
+            this.applied = shard.applied.get();
+            this.commits = shard.commits.get();
+            this.failures = shard.failures.get();
+            this.lastApplyMillis = shard.lastApplyMillis;
+            this.avgApplyMillis = commits == 0 ? 0 : (double) shard.applyMillis.get() / commits;
+            this.lag = shard.lag();
+            this.lastLag = shard.lastLag;
+            this.maxLag = shard.maxLag;
+            this.staleIndexes = new ArrayList<>(shard.staleIndexes);
+        }
+    }
+
     private Stream<WeightedNodeResult> toWeightedNodeResult(IndexHits<Node> hits) {
         List<WeightedNodeResult> results = new ArrayList<>(hits.size());
         while (hits.hasNext()) {
@@ -158,6 +243,8 @@ public class FreeTextSearch {
     private void populate(Index<Node> index, Map<String, List<String>> config, Consumer<IndexStats> result) {
         Map<String, String[]> structure = convertStructure(config);
         Map<LabelProperty, Counter> stats = new HashMap<>();
+        long start = System.currentTimeMillis();
+        long nodes = 0;
         Transaction tx = db.beginTx();
         try {
             int batch = 0;
@@ -167,19 +254,11 @@ public class FreeTextSearch {
                     String[] keys = structure.get(label.name());
                     if (keys == null) continue;
                     indexed = true;
-                    Map<String, Object> properties = keys.length == 0 ? node.getAllProperties() : node.getProperties(keys);
-                    for (Map.Entry<String, Object> entry : properties.entrySet()) {
-                        Object value = entry.getValue();
-                        index.add(node, KEY, value.toString());
-                        if (value instanceof Number) {
-                            value = ValueContext.numeric(((Number) value).doubleValue());
-                        }
-                        index.add(node, label.name() + "." + entry.getKey(), value);
-                        stats.computeIfAbsent(new LabelProperty(label.name(), entry.getKey()), x -> new Counter()).count++;
-                    }
+                    add(index, node, label.name(), keys, stats);
                 }
                 if (indexed) {
-                    if (++batch == 50_000) {
+                    nodes++;
+                    if (++batch == DEFAULT_BATCH_SIZE) {
                         batch = 0;
                         tx.success();
                         tx.close();
@@ -191,7 +270,133 @@ public class FreeTextSearch {
         } finally {
             tx.close();
         }
-        stats.forEach((key,counter) -> result.accept(key.stats(counter)));
+        report(stats, nodes, start, result);
+    }
+
+    private static void add(Index<Node> index, Node node, String labelName, String[] keys, Map<LabelProperty, Counter> stats) {
+        Map<String, Object> properties = keys.length == 0 ? node.getAllProperties() : node.getProperties(keys);
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            Object value = entry.getValue();
+            index.add(node, KEY, value.toString());
+            if (value instanceof Number) {
+                value = ValueContext.numeric(((Number) value).doubleValue());
+            }
+            index.add(node, labelName + "." + entry.getKey(), value);
+            stats.computeIfAbsent(new LabelProperty(labelName, entry.getKey()), x -> new Counter()).count++;
+        }
+    }
+
+    private static void report(Map<LabelProperty, Counter> stats, long nodes, long start, Consumer<IndexStats> result) {
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        double nodesPerSecond = nodes * 1000D / millis;
+        stats.forEach((key,counter) -> result.accept(key.stats(counter, TimeUnit.MILLISECONDS.toSeconds(millis), nodesPerSecond)));
+    }
+
+    /**
+     * Reads the nodes of the indexed labels from the label scan store, in node id order, and indexes them in batches of
+     * {@code batchSize}, each in its own transaction on the batch pool. A node with several indexed labels is indexed
+     * once per label, like in {@link #populate}.
+     */
+    private void populateParallel(String indexName, Map<String, List<String>> config, int batchSize, Consumer<IndexStats> result) {
+        Map<String, String[]> structure = convertStructure(config);
+        Population population = new Population(indexName, Pools.BATCH_WRITE);
+        try {
+            try (Transaction tx = db.beginTx()) {
+                KernelTransaction ktx = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).getKernelTransactionBoundToThisThread(true);
+                TokenRead tokens = ktx.tokenRead();
+                for (String labelName : structure.keySet()) {
+                    int label = tokens.nodeLabel(labelName);
+                    if (label != TokenRead.NO_TOKEN) population.total += ktx.dataRead().countsForNodeWithoutTxState(label);
+                }
+                for (Map.Entry<String, String[]> entry : structure.entrySet()) {
+                    int label = tokens.nodeLabel(entry.getKey());
+                    if (label == TokenRead.NO_TOKEN) continue;
+                    try (NodeLabelIndexCursor cursor = ktx.cursors().allocateNodeLabelIndexCursor()) {
+                        ktx.dataRead().nodeLabelScan(label, cursor);
+                        long[] batch = new long[batchSize];
+                        int count = 0;
+                        while (cursor.next()) {
+                            batch[count++] = cursor.nodeReference();
+                            if (count == batchSize) {
+                                population.submit(entry.getKey(), entry.getValue(), batch);
+                                batch = new long[batchSize];
+                                count = 0;
+                            }
+                        }
+                        if (count > 0) {
+                            population.submit(entry.getKey(), entry.getValue(), Arrays.copyOf(batch, count));
+                        }
+                    }
+                }
+                tx.success();
+            }
+            population.finish();
+        } catch (ExecutionException e) {
+            population.cancel();
+            throw new RuntimeException("Error populating index " + indexName, e.getCause());
+        }
+        report(population.stats, population.done, population.start, result);
+    }
+
+    private class Population {
+        final String indexName;
+        final ExecutorService pool;
+        final int maxRunning;
+        final Deque<Future<Map<LabelProperty, Counter>>> running = new ArrayDeque<>();
+        // node count of each running batch, in the same order
+        final Deque<Integer> runningNodes = new ArrayDeque<>();
+        final Map<LabelProperty, Counter> stats = new HashMap<>();
+        final long start = System.currentTimeMillis();
+        // nodes submitted and nodes of the collected batches
+        long total, done, indexed, lastReport = start;
+
+        Population(String indexName, ExecutorService pool) {
+            this.indexName = indexName;
+            this.pool = pool;
+            this.maxRunning = Math.max(1, Pools.getNoThreads(pool)) * 2;
+        }
+
+        void submit(String labelName, String[] keys, long[] nodeIds) throws ExecutionException {
+            if (running.size() >= maxRunning) collect();
+            running.add(pool.submit(() -> {
+                Map<LabelProperty, Counter> batchStats = new HashMap<>();
+                try (Transaction tx = db.beginTx()) {
+                    Index<Node> index = db.index().forNodes(indexName);
+                    for (long nodeId : nodeIds) {
+                        Node node;
+                        try {
+                            node = db.getNodeById(nodeId);
+                        } catch (NotFoundException e) {
+                            // deleted since the label scan
+                            continue;
+                        }
+                        add(index, node, labelName, keys, batchStats);
+                    }
+                    tx.success();
+                }
+                return batchStats;
+            }));
+            runningNodes.add(nodeIds.length);
+            done += nodeIds.length;
+        }
+
+        void collect() throws ExecutionException {
+            Pools.force(running.poll()).forEach((key, counter) -> stats.computeIfAbsent(key, x -> new Counter()).count += counter.count);
+            indexed += runningNodes.poll();
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = now;
+                log.info("Populating index '%s': %d of %d nodes, %.0f nodes/s", indexName, indexed, total, indexed * 1000D / Math.max(1, now - start));
+            }
+        }
+
+        void finish() throws ExecutionException {
+            while (!running.isEmpty()) collect();
+        }
+
+        void cancel() {
+            running.forEach(f -> f.cancel(true));
+        }
     }
 
     private Map<String, String[]> convertStructure(Map<String, List<String>> config) {
@@ -225,17 +430,19 @@ public class FreeTextSearch {
             log.info("Creating or updating index '%s' with config '%s'", index, config );
             Index<Node> nodeIndex = db.index().forNodes(index, config);
 
-            resetIndexUpdateConfiguration();
+            resetIndexUpdateConfiguration(index);
             tx.success();
             return nodeIndex;
         }
     }
 
-    private void resetIndexUpdateConfiguration() {
+    private void resetIndexUpdateConfiguration(String index) {
         try {
             ApocKernelExtensionFactory.ApocLifecycle apocLifecycle = db.getDependencyResolver().resolveDependency(ApocKernelExtensionFactory.ApocLifecycle.class);
             if (apocLifecycle != null) {
                 apocLifecycle.getIndexUpdateLifeCycle().resetConfiguration();
+                IndexUpdateTransactionEventHandler handler = apocLifecycle.getIndexUpdateLifeCycle().getIndexUpdateTransactionEventHandler();
+                if (handler != null) handler.rebuilt(index);
             }
         } catch (Exception e) {
             log.error("failed to reset index update configuration", e);
@@ -257,7 +464,7 @@ public class FreeTextSearch {
     }
 
     private Executor executor() {
-        return Pools.DEFAULT;
+        return Pools.BACKGROUND;
     }
 
     /* same as LuceneDataSource.LOWER_CASE_WHITESPACE_ANALYZER */
@@ -317,8 +524,8 @@ public class FreeTextSearch {
             return Objects.hash(label, property);
         }
 
-        IndexStats stats(Counter counter) {
-            return new IndexStats(label, property, counter.count);
+        IndexStats stats(Counter counter, long timeTaken, double nodesPerSecond) {
+            return new IndexStats(label, property, counter.count, timeTaken, nodesPerSecond);
         }
     }
 
@@ -18,10 +18,12 @@ import org.neo4j.logging.Log;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -30,34 +32,35 @@ import static org.neo4j.helpers.collection.Iterables.stream;
 /**
  * a transaction event handler that updates manual indexes based on configuration in graph properties
  * based on configuration the updates are process synchronously via {@link #beforeCommit(TransactionData)} or async via
- * {@link #afterCommit(TransactionData, Collection<Consumer<Void>)}
+ * {@link #afterCommit(TransactionData, Map)}
+ *
+ * The updates of a transaction are coalesced per index, node and key, only the last value of a key is kept and a node
+ * deletion supersedes its updates. In async mode the batches are sharded by index name over several worker threads, which
+ * merge them further until a rollover applies them in one transaction.
+ *
+ * The queue of a shard is bounded by the number of queued operations, committing transactions wait in
+ * {@link #afterCommit(TransactionData, Map)} while it's full. If the transaction of a rollover fails, the batches are
+ * retried one index at a time, an index whose updates still can't be applied is reported as stale until it is rebuilt.
  * @author Stefan Armbruster
  */
-public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.Adapter<Collection<Consumer<Void>>> {
+public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.Adapter<Map<String, IndexUpdateTransactionEventHandler.IndexBatch>> {
 
-    private final GraphDatabaseService graphDatabaseService;
+    private final GraphDatabaseAPI graphDatabaseService;
     private final boolean async;
 
-    private final BlockingQueue<Consumer<Void>> indexCommandQueue;
     private final boolean stopWatchEnabled;
     private final Log log;
-    private Map<String, Map<String, Collection<Index<Node>>>> indexesByLabelAndProperty;
+    private final int queueCapacity;
+    private volatile Map<String, Map<String, Collection<Index<Node>>>> indexesByLabelAndProperty;
     private ScheduledFuture<?> configUpdateFuture = null;
-
-    // "magic" command for queue to perform a tx rollover
-    private static boolean forceTxRolloverFlag = false;
-    private static final Consumer<Void> FORCE_TX_ROLLOVER = aVoid -> forceTxRolloverFlag = true;
+    private List<Shard> shards = Collections.emptyList();
 
     public IndexUpdateTransactionEventHandler(GraphDatabaseAPI graphDatabaseService, Log log, boolean async, int queueCapacity, boolean stopWatchEnabled) {
         this.graphDatabaseService = graphDatabaseService;
         this.log = log;
         this.async = async;
         this.stopWatchEnabled = stopWatchEnabled;
-        this.indexCommandQueue = async ? new LinkedBlockingQueue<>(queueCapacity) : null;
-    }
-
-    public BlockingQueue<Consumer<Void>> getIndexCommandQueue() {
-        return indexCommandQueue;
+        this.queueCapacity = queueCapacity;
     }
 
     @FunctionalInterface
@@ -65,6 +68,119 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
         void apply (A a, B b, C c, D d, E e);
     }
 
+    /**
+     * An index update of a key of a node, a null value removes the key, replace removes the previous value first
+     */
+    static class Update {
+        final Object value;
+        final boolean replace;
+
+        Update(Object value, boolean replace) {
+            this.value = value;
+            this.replace = replace;
+        }
+    }
+
+    /**
+     * The coalesced updates of an index, the oldest commit time of the transactions they come from is kept to report the lag
+     */
+    static class IndexBatch {
+        final Index<Node> index;
+        final Set<Node> deleted = new LinkedHashSet<>();
+        final Map<Node, Map<String, Update>> updates = new LinkedHashMap<>();
+        long committed = Long.MAX_VALUE;
+        // operations received, operations dropped for a later one and distinct operations left
+        int operations;
+        int coalesced;
+        int size;
+
+        IndexBatch(Index<Node> index) {
+            this.index = index;
+        }
+
+        void update(Node node, String key, Object value, boolean replace) {
+            operations++;
+            Map<String, Update> keys = updates.computeIfAbsent(node, n -> new HashMap<>());
+            Update previous = keys.put(key, new Update(value, replace));
+            if (previous == null) {
+                size++;
+            } else {
+                coalesced++;
+                // the first update decides if the value committed in the index has to go
+                if (previous.replace && !replace) keys.put(key, new Update(value, true));
+            }
+        }
+
+        void delete(Node node) {
+            operations++;
+            drop(node);
+        }
+
+        private void drop(Node node) {
+            Map<String, Update> dropped = updates.remove(node);
+            if (dropped != null) {
+                coalesced += dropped.size();
+                size -= dropped.size();
+            }
+            if (deleted.add(node)) {
+                size++;
+            } else {
+                coalesced++;
+            }
+        }
+
+        /**
+         * merges the updates of a later batch, deletions are applied before updates so a reused node id is indexed again
+         */
+        void merge(IndexBatch later) {
+            operations += later.operations;
+            coalesced += later.coalesced;
+            committed = Math.min(committed, later.committed);
+            for (Node node : later.deleted) {
+                drop(node);
+            }
+            later.updates.forEach((node, keys) -> {
+                Map<String, Update> existing = updates.get(node);
+                if (existing == null) {
+                    updates.put(node, keys);
+                    size += keys.size();
+                    return;
+                }
+                keys.forEach((key, update) -> {
+                    Update previous = existing.put(key, update);
+                    if (previous == null) {
+                        size++;
+                    } else {
+                        coalesced++;
+                        if (previous.replace && !update.replace) existing.put(key, new Update(update.value, true));
+                    }
+                });
+            });
+        }
+
+        void apply() {
+            for (Node node : deleted) {
+                index.remove(node);
+            }
+            updates.forEach((node, keys) -> {
+                try {
+                    keys.forEach((key, update) -> {
+                        if (update.replace) {
+                            index.remove(node, key);
+                            index.remove(node, FreeTextSearch.KEY);
+                        }
+                        if (update.value != null) {
+                            index.add(node, key, update.value);
+                            index.add(node, FreeTextSearch.KEY, update.value);
+                        }
+                    });
+                } catch (NotFoundException e) {
+                    // deleted by a transaction that is not applied yet
+                }
+            });
+        }
+    }
+
     private <T> T logDuration(String message, Supplier<T> supplier) {
         if (stopWatchEnabled) {
             StopWatch sw = new StopWatch();
@@ -82,65 +198,63 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
     }
 
     @Override
-    public Collection<Consumer<Void>> beforeCommit(TransactionData data) throws Exception {
+    public Map<String, IndexBatch> beforeCommit(TransactionData data) throws Exception {
 
         return logDuration("beforeCommit", () -> {
             getIndexesByLabelAndProperty();
-            Collection<Consumer<Void>> state = async ? new LinkedList<>() : null;
+            Map<String, IndexBatch> state = new HashMap<>();
 
-            iterateNodePropertyChange(stream(data.assignedNodeProperties()),false, (index, node, key, value, oldValue) -> indexUpdate(state, aVoid -> {
-                if (oldValue != null) {
-                    index.remove(node, key);
-                    index.remove(node, FreeTextSearch.KEY);
-                }
-                index.add(node, key, value);
-                index.add(node, FreeTextSearch.KEY, value);
-            }));
+            iterateNodePropertyChange(stream(data.assignedNodeProperties()),false, (index, node, key, value, oldValue) ->
+                    batch(state, index).update(node, key, value, oldValue != null));
 
             // filter out removedNodeProperties from node deletions
-            iterateNodePropertyChange(stream(data.removedNodeProperties()).filter(nodePropertyEntry -> !data.isDeleted(nodePropertyEntry.entity())), true, (index, node, key, value, oldValue) -> indexUpdate(state, aVoid -> {
-                index.remove(node, key);
-                index.remove(node, FreeTextSearch.KEY);
-            }));
+            iterateNodePropertyChange(stream(data.removedNodeProperties()).filter(nodePropertyEntry -> !data.isDeleted(nodePropertyEntry.entity())), true, (index, node, key, value, oldValue) ->
+                    batch(state, index).update(node, key, null, true));
 
             // performance tweak: converted created nodes to a set, so we can apply `contains` on it fast
             final Set<Node> createdNodes = Iterables.asSet(data.createdNodes());
             iterateLabelChanges(
                     stream(data.assignedLabels()).filter( labelEntry -> !createdNodes.contains( labelEntry.node() ) ),
-                    (index, node, key, value, ignore) -> indexUpdate(state, aVoid -> {
-                        index.add(node, key, value);
-                        index.add(node, FreeTextSearch.KEY, value);
-                    }));
+                    (index, node, key, value, ignore) -> batch(state, index).update(node, key, value, false));
 
             iterateLabelChanges(
                     stream(data.removedLabels()).filter( labelEntry -> !data.isDeleted(labelEntry.node()) ),
-                    (index, node, key, value, ignore) -> indexUpdate(state, aVoid -> {
-                        index.remove(node, key);
-                        index.remove(node, FreeTextSearch.KEY);
-                    }));
+                    (index, node, key, value, ignore) -> batch(state, index).update(node, key, null, true));
 
             iterateNodeDeletions(stream(data.removedLabels()).filter( labelEntry -> data.isDeleted(labelEntry.node())),
-                    (nodeIndex, node, void1, void2, void3) -> indexUpdate(state, aVoid -> nodeIndex.remove(node)));
-            return state;
+                    (nodeIndex, node, void1, void2, void3) -> batch(state, nodeIndex).delete(node));
+
+            if (!async) {
+                for (IndexBatch batch : state.values()) {
+                    batch.apply();
+                }
+                return null;
+            }
+            return state.isEmpty() ? null : state;
         });
     }
 
     @Override
-    public void afterCommit(TransactionData data, Collection<Consumer<Void>> state) {
+    public void afterCommit(TransactionData data, Map<String, IndexBatch> state) {
+        if (state == null) return;
         logDuration("afterCommit", () -> {
-            if (async) {
-                for (Consumer<Void> consumer: state) {
-                    try {
-                        indexCommandQueue.put(consumer);
-                    } catch (InterruptedException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
+            long now = System.currentTimeMillis();
+            for (IndexBatch batch : state.values()) {
+                batch.committed = now;
+                shardFor(batch.index.getName()).enqueue(batch);
             }
             return null;
         });
     }
 
+    private static IndexBatch batch(Map<String, IndexBatch> state, Index<Node> index) {
+        return state.computeIfAbsent(index.getName(), name -> new IndexBatch(index));
+    }
+
+    private Shard shardFor(String indexName) {
+        return shards.get(Math.floorMod(indexName.hashCode(), shards.size()));
+    }
+
     private void iterateNodePropertyChange(Stream<PropertyEntry<Node>> stream, boolean propertyRemoved,
           IndexFunction<Index<Node>, Node, String, Object, Object> function) {
         stream.forEach(nodePropertyEntry -> {
@@ -196,18 +310,6 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
         });
     }
 
-    /**
-     * in async mode add the index action to a collection for consumption in {@link #afterCommit(TransactionData, Collection)}, in sync mode, run it directly
-     */
-    private Void indexUpdate(Collection<Consumer<Void>> state, Consumer<Void> indexAction) {
-        if (async) {
-            state.add(indexAction);
-        } else {
-            indexAction.accept(null);
-        }
-        return null;
-    }
-
     public Map<String, Map<String, Collection<Index<Node>>>> getIndexesByLabelAndProperty() {
         if (indexesByLabelAndProperty == null ) {
             indexesByLabelAndProperty = initIndexConfiguration();
@@ -246,6 +348,250 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
         return indexesByLabelAndProperty;
     }
 
+    // attempts to apply the batch of an index in its own transaction after a failed rollover
+    static final int RETRIES = 3;
+
+    /**
+     * Applies the batches of the indexes hashed to it, merging everything queued until a rollover by operation count or time
+     */
+    class Shard implements Runnable {
+        final int id;
+        private final BlockingQueue<IndexBatch> queue = new LinkedBlockingQueue<>();
+        private final long queueCapacity;
+        // notified when operations are taken off the queue
+        private final Object space = new Object();
+        private volatile boolean stopped;
+        private final long opsCountRollover;
+        private final long millisRollover;
+        // coalesced batches by index name, only touched by the worker thread
+        private final Map<String, IndexBatch> pending = new LinkedHashMap<>();
+        private final List<CountDownLatch> rollovers = new ArrayList<>();
+        private volatile long pendingSince;
+        volatile int pendingOperations;
+
+        final AtomicLong queuedOperations = new AtomicLong(), operations = new AtomicLong(), coalesced = new AtomicLong(),
+                applied = new AtomicLong(), commits = new AtomicLong(), applyMillis = new AtomicLong(), failures = new AtomicLong();
+        volatile long lastApplyMillis, lastLag, maxLag;
+        // indexes missing updates that couldn't be applied
+        final Set<String> staleIndexes = ConcurrentHashMap.newKeySet();
+
+        Shard(int id, long queueCapacity, long opsCountRollover, long millisRollover) {
+            this.id = id;
+            this.queueCapacity = queueCapacity;
+            this.opsCountRollover = opsCountRollover;
+            this.millisRollover = millisRollover;
+        }
+
+        /**
+         * Waits while the batch would exceed the queue capacity, unless the queue is empty so that a batch larger than
+         * the capacity gets through. The updates are queued anyway if the waiting thread is interrupted, they are committed.
+         */
+        void enqueue(IndexBatch batch) {
+            synchronized (space) {
+                try {
+                    while (!stopped && batch.operations > 0 && queuedOperations.get() > 0
+                            && queuedOperations.get() + batch.operations > queueCapacity) {
+                        space.wait(millisRollover);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                queuedOperations.addAndGet(batch.operations);
+            }
+            queue.add(batch);
+        }
+
+        int queueDepth() {
+            return queue.size();
+        }
+
+        /**
+         * @return millis since the oldest commit whose index updates are not applied yet
+         */
+        long lag() {
+            long oldest = pendingOperations > 0 ? pendingSince : Long.MAX_VALUE;
+            IndexBatch head = queue.peek();
+            if (head != null) oldest = Math.min(oldest, head.committed);
+            return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+        }
+
+        @Override
+        public void run() {
+            try {
+                final AvailabilityGuard availabilityGuard = graphDatabaseService.getDependencyResolver().resolveDependency(AvailabilityGuard.class);
+                availabilityGuard.await(60_000);
+                long lastCommit = System.currentTimeMillis();
+                List<IndexBatch> drained = new ArrayList<>();
+                while (true) {
+                    IndexBatch first = queue.poll(millisRollover, TimeUnit.MILLISECONDS);
+
+                    if (availabilityGuard.isShutdown()) {
+                        log.debug("shutdown in progress. Aborting index tracking thread " + id + ".");
+                        break;
+                    }
+
+                    if (first != null) {
+                        drained.add(first);
+                        queue.drainTo(drained, (int) Math.min(Integer.MAX_VALUE, opsCountRollover));
+                        for (IndexBatch batch : drained) {
+                            add(batch);
+                        }
+                        drained.clear();
+                        synchronized (space) {
+                            space.notifyAll();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (pendingOperations == 0 && rollovers.isEmpty()) {
+                        // in case we couldn't get anything from queue, we'll update lastcommit to prevent too early commits
+                        lastCommit = now;
+                    } else if (!rollovers.isEmpty() || now - lastCommit > millisRollover || pendingOperations >= opsCountRollover) {
+                        log.info("background indexing thread " + id + " doing tx rollover, opscount " + pendingOperations + ", millis since last rollover " + (now - lastCommit));
+                        flush();
+                        lastCommit = now;
+                    }
+                }
+            } catch (AvailabilityGuard.UnavailableException e) {
+                log.debug("database not available. Aborting index tracking thread " + id + ".");
+            } catch (InterruptedException e) {
+                log.error(e.getMessage(), e);
+                throw new RuntimeException(e);
+            } finally {
+                stopped = true;
+                synchronized (space) {
+                    space.notifyAll();
+                }
+                flush();
+                log.debug("final commit in background thread " + id);
+                log.info("stopping background thread " + id + " for async index updates");
+            }
+        }
+
+        private void add(IndexBatch batch) {
+            queuedOperations.addAndGet(-batch.operations);
+            if (batch instanceof Rollover) {
+                rollovers.add(((Rollover) batch).done);
+                return;
+            }
+            operations.addAndGet(batch.operations);
+            coalesced.addAndGet(batch.coalesced);
+            if (pendingOperations == 0) pendingSince = batch.committed;
+            IndexBatch existing = pending.get(batch.index.getName());
+            if (existing == null) {
+                pending.put(batch.index.getName(), batch);
+                pendingOperations += batch.size;
+            } else {
+                int coalescedBefore = existing.coalesced, sizeBefore = existing.size;
+                existing.merge(batch);
+                coalesced.addAndGet(existing.coalesced - coalescedBefore - batch.coalesced);
+                pendingOperations += existing.size - sizeBefore;
+            }
+        }
+
+        private void flush() {
+            if (!pending.isEmpty()) {
+                long start = System.currentTimeMillis();
+                int size = pendingOperations, appliedOperations = size;
+                try {
+                    apply(pending.values());
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    log.warn("failed to apply " + size + " index updates of " + pending.keySet() + ", retrying them per index", e);
+                    appliedOperations = 0;
+                    for (IndexBatch batch : pending.values()) {
+                        if (retry(batch)) appliedOperations += batch.size;
+                    }
+                }
+                long end = System.currentTimeMillis();
+                applied.addAndGet(appliedOperations);
+                commits.incrementAndGet();
+                lastApplyMillis = end - start;
+                applyMillis.addAndGet(lastApplyMillis);
+                long lag = end - pendingSince;
+                lastLag = lag;
+                maxLag = Math.max(maxLag, lag);
+                pending.clear();
+                pendingOperations = 0;
+            }
+            for (CountDownLatch done : rollovers) {
+                done.countDown();
+            }
+            rollovers.clear();
+        }
+
+        private void apply(Collection<IndexBatch> batches) {
+            try (Transaction tx = graphDatabaseService.beginTx()) {
+                for (IndexBatch batch : batches) {
+                    batch.apply();
+                }
+                tx.success();
+            }
+        }
+
+        /**
+         * @return false if the updates couldn't be applied and the index is stale
+         */
+        private boolean retry(IndexBatch batch) {
+            String name = batch.index.getName();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    apply(Collections.singletonList(batch));
+                    return true;
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    if (attempt == RETRIES) {
+                        staleIndexes.add(name);
+                        log.error("failed to apply " + batch.size + " index updates of '" + name + "' " + RETRIES + " times, the index is stale until it is rebuilt with apoc.index.addAllNodes", e);
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    // "magic" batch for the queue of a shard to perform a tx rollover
+    private static class Rollover extends IndexBatch {
+        final CountDownLatch done;
+
+        Rollover(CountDownLatch done) {
+            super(null);
+            this.done = done;
+        }
+    }
+
+    private void startShards(int threads, long opsCountRollover, long millisRollover) {
+        List<Shard> shards = new ArrayList<>(threads);
+        long capacity = Math.max(1, queueCapacity / threads);
+        for (int i = 0; i < threads; i++) {
+            shards.add(new Shard(i, capacity, opsCountRollover, millisRollover));
+        }
+        this.shards = shards;
+        for (Shard shard : shards) {
+            Thread thread = new Thread(shard, "apoc-index-update-" + shard.id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        log.info("started " + threads + " background threads for async index updates");
+    }
+
+    List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * the index was populated again, so it's no longer missing updates
+     */
+    void rebuilt(String indexName) {
+        for (Shard shard : shards) {
+            shard.staleIndexes.remove(indexName);
+        }
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
     public static class LifeCycle {
         private final GraphDatabaseAPI db;
         private final Log log;
@@ -264,10 +610,10 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
                 int queueCapacity = Integer.parseInt(ApocConfiguration.get("autoIndex.queue_capacity", "100000"));
                 indexUpdateTransactionEventHandler = new IndexUpdateTransactionEventHandler(db, log, async, queueCapacity, stopWatchEnabled);
                 if (async) {
-                    startIndexTrackingThread(db, indexUpdateTransactionEventHandler.getIndexCommandQueue(),
+                    int threads = Integer.parseInt(ApocConfiguration.get("autoIndex.async_threads", String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+                    indexUpdateTransactionEventHandler.startShards(Math.max(1, threads),
                             Long.parseLong(ApocConfiguration.get("autoIndex.async_rollover_opscount", "50000")),
-                            Long.parseLong(ApocConfiguration.get("autoIndex.async_rollover_millis", "5000")),
-                            log
+                            Long.parseLong(ApocConfiguration.get("autoIndex.async_rollover_millis", "5000"))
                     );
                 }
                 db.registerTransactionEventHandler(indexUpdateTransactionEventHandler);
@@ -277,68 +623,6 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
                 }
             }
         }
-        private void startIndexTrackingThread(GraphDatabaseAPI db, BlockingQueue<Consumer<Void>> indexCommandQueue, long opsCountRollover, long millisRollover, Log log) {
-            new Thread(() -> {
-                Transaction tx = null;
-                try {
-                    final AvailabilityGuard availabilityGuard = db.getDependencyResolver().resolveDependency(AvailabilityGuard.class);
-                    availabilityGuard.await(60_000);
-                    tx = db.beginTx();
-                    int opsCount = 0;
-                    long lastCommit = System.currentTimeMillis();
-                    while (true) {
-                        Consumer<Void> indexCommand = indexCommandQueue.poll(millisRollover, TimeUnit.MILLISECONDS);
-
-                        if (availabilityGuard.isShutdown()) {
-                            log.debug("shutdown in progress. Aborting index tracking thread.");
-                            break;
-                        }
-
-                        long now = System.currentTimeMillis();
-                        if (
-                                FORCE_TX_ROLLOVER.equals(indexCommand) ||
-                                ((opsCount>0) && ((now - lastCommit > millisRollover) || (opsCount >= opsCountRollover)))
-
-                                ) {
-                            tx.success();
-                            tx.close();
-                            tx = db.beginTx();
-                            log.info("background indexing thread doing tx rollover, opscount " + opsCount + ", millis since last rollover " + (now-lastCommit));
-                            lastCommit = now;
-                            opsCount = 0;
-                        }
-                        if (indexCommand == null) {
-                            // in case we couldn't get anything from queue, we'll update lastcommit to prevent too early commits
-                            if (opsCount == 0) {
-                                lastCommit = now;
-                            }
-                        } else {
-                            opsCount++;
-                            indexCommand.accept(null);
-                        }
-                    }
-                } catch (InterruptedException|AvailabilityGuard.UnavailableException e) {
-                    log.error(e.getMessage(), e);
-                    throw new RuntimeException(e);
-                } catch (Exception e) {
-                    log.error(e.getMessage(), e);
-                    throw new RuntimeException(e);
-                } finally {
-                    if (tx!=null) {
-                        tx.success();
-                        try {
-                            tx.close();
-                            log.debug("final commit in background thread");
-                        } catch (TransactionTerminatedException e) {
-                            log.error(e.getMessage(), e);
-                        }
-                    }
-                    log.info("stopping background thread for async index updates");
-                }
-            }).start();
-            log.info("started background thread for async index updates");
-        }
-
         public void stop() {
             if (indexUpdateTransactionEventHandler!=null) {
                 db.unregisterTransactionEventHandler(indexUpdateTransactionEventHandler);
@@ -372,14 +656,14 @@ public class IndexUpdateTransactionEventHandler extends TransactionEventHandler.
     /**
      * to be used from unit tests to ensure a tx rollover has happenend
      */
-    public synchronized void forceTxRollover() {
+    public void forceTxRollover() {
         if (async) {
             try {
-                forceTxRolloverFlag = false;
-                indexCommandQueue.put(FORCE_TX_ROLLOVER);
-                while (!forceTxRolloverFlag) {
-                    Thread.sleep(5);
+                CountDownLatch done = new CountDownLatch(shards.size());
+                for (Shard shard : shards) {
+                    shard.enqueue(new Rollover(done));
                 }
+                done.await();
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
@@ -4,8 +4,17 @@ import apoc.result.*;
 import apoc.util.Util;
 import org.neo4j.graphdb.*;
 import org.neo4j.helpers.collection.Iterators;
+import org.neo4j.internal.kernel.api.*;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.StatementConstants;
 import org.neo4j.procedure.*;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
 
+import java.lang.reflect.Array;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -15,6 +24,23 @@ public class Merge {
     @Context
     public GraphDatabaseService db;
 
+    @Context
+    public KernelTransaction ktx;
+
+    public static class MergeStatistics {
+        public long rows, created, matched, millis;
+        public double rowsPerSecond;
+        // whether the nodes were looked up in an index instead of a label scan, always false for relationships
+        public boolean indexed;
+
+        MergeStatistics finish(long start) {
+            long nanos = System.nanoTime() - start;
+            millis = nanos / 1_000_000;
+            rowsPerSecond = nanos == 0 ? 0 : rows * 1_000_000_000d / nanos;
+            return this;
+        }
+    }
+
     @Procedure(mode = Mode.WRITE)
     @Description("apoc.merge.node(['Label'], {key:value, ...}, {key:value,...}) - merge node with dynamic labels")
     public Stream<NodeResult> node(@Name("label") List<String> labelNames, @Name("identProps") Map<String, Object> identProps, @Name("props") Map<String, Object> props) {
@@ -53,6 +79,301 @@ public class Merge {
         return Stream.of(new RelationshipResult(rel));
     }
 
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.merge.nodes(['Label'], ['identKey',...], [{key:value,...},...], {update:false}) YIELD rows, created, matched, millis, rowsPerSecond, indexed - merge a node with dynamic labels for each row, " +
+            "identified by the identKeys of the row, looked up in the index on one of the labels if there is one (indexed is true then), missing nodes are created with all properties of the row, with update:true matched nodes get them too")
+    public Stream<MergeStatistics> nodes(@Name("labels") List<String> labelNames, @Name("identKeys") List<String> identKeys,
+                                         @Name("rows") List<Map<String, Object>> rows, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        if (labelNames == null || labelNames.isEmpty()) {
+            throw new IllegalArgumentException("you need to supply at least one label for a merge");
+        }
+        if (identKeys == null || identKeys.isEmpty()) {
+            throw new IllegalArgumentException("you need to supply at least one identifying property for a merge");
+        }
+        boolean update = Util.toBoolean(config.get("update"));
+        long startNanos = System.nanoTime();
+        MergeStatistics stats = new MergeStatistics();
+        try {
+            TokenWrite tokenWrite = ktx.tokenWrite();
+            int[] labels = new int[labelNames.size()];
+            for (int i = 0; i < labels.length; i++) labels[i] = tokenWrite.labelGetOrCreateForName(labelNames.get(i));
+            int[] identProperties = new int[identKeys.size()];
+            for (int i = 0; i < identProperties.length; i++) identProperties[i] = tokenWrite.propertyKeyGetOrCreateForName(identKeys.get(i));
+            IndexReference index = findIndex(labels, identProperties);
+            stats.indexed = index != null;
+
+            Read read = ktx.dataRead();
+            Write write = ktx.dataWrite();
+            // nodes by identifying values, filled by a label scan if there is no index
+            Map<List<Value>, Long> nodes = index == null ? scanNodes(labels, identProperties, identKeys, rows) : new HashMap<>();
+            try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+                 NodeValueIndexCursor indexCursor = ktx.cursors().allocateNodeValueIndexCursor()) {
+                for (Map<String, Object> row : rows) {
+                    stats.rows++;
+                    List<Value> ident = identValues(identKeys, row);
+                    Long node = nodes.get(ident);
+                    if (node == null && index != null) {
+                        node = seek(read, index, identProperties, ident, labels, indexCursor, nodeCursor);
+                    }
+                    boolean create = node == null;
+                    long id = create ? write.nodeCreate() : node;
+                    if (create) {
+                        for (int label : labels) write.nodeAddLabel(id, label);
+                        stats.created++;
+                    } else {
+                        stats.matched++;
+                    }
+                    if (create || update) setProperties(row, (key, value) -> write.nodeSetProperty(id, key, value));
+                    nodes.put(ident, id);
+                }
+            }
+        } catch (KernelException e) {
+            throw new RuntimeException("Error merging nodes with labels " + labelNames, e);
+        }
+        return Stream.of(stats.finish(startNanos));
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    @Description("apoc.merge.relationships('TYPE', ['identKey',...], [{start:node|id, end:node|id, properties:{key:value,...}},...], {update:false}) YIELD rows, created, matched, millis, rowsPerSecond - merge a relationship with dynamic type for each row, " +
+            "identified by its start and end node and the identKeys of its properties, missing relationships are created with all properties, with update:true matched relationships get them too")
+    public Stream<MergeStatistics> relationships(@Name("relationshipType") String relType, @Name("identKeys") List<String> identKeys,
+                                                 @Name("rows") List<Map<String, Object>> rows, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) {
+        List<String> keys = identKeys == null ? Collections.emptyList() : identKeys;
+        boolean update = Util.toBoolean(config.get("update"));
+        long startNanos = System.nanoTime();
+        MergeStatistics stats = new MergeStatistics();
+        try {
+            TokenWrite tokenWrite = ktx.tokenWrite();
+            int type = tokenWrite.relationshipTypeGetOrCreateForName(relType);
+            int[] identProperties = new int[keys.size()];
+            for (int i = 0; i < identProperties.length; i++) identProperties[i] = tokenWrite.propertyKeyGetOrCreateForName(keys.get(i));
+
+            Write write = ktx.dataWrite();
+            Map<List<Object>, Long> relationships = new HashMap<>();
+            try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+                 PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+                for (Map<String, Object> row : rows) {
+                    stats.rows++;
+                    long start = nodeId(row.get("start")), end = nodeId(row.get("end"));
+                    Map<String, Object> properties = properties(row);
+                    List<Value> ident = identValues(keys, properties);
+                    List<Object> key = Arrays.asList(start, end, ident);
+                    Long rel = relationships.get(key);
+                    if (rel == null) {
+                        rel = findRelationship(start, type, end, identProperties, ident, nodeCursor, propertyCursor);
+                    }
+                    if (rel == null) {
+                        // same locks as a cypher MERGE, then check again for a concurrently created one
+                        ktx.locks().acquireExclusiveNodeLock(Math.min(start, end), Math.max(start, end));
+                        rel = findRelationship(start, type, end, identProperties, ident, nodeCursor, propertyCursor);
+                    }
+                    boolean create = rel == null;
+                    long id = create ? write.relationshipCreate(start, type, end) : rel;
+                    if (create) {
+                        stats.created++;
+                    } else {
+                        stats.matched++;
+                    }
+                    if (create || update) setProperties(properties, (k, value) -> write.relationshipSetProperty(id, k, value));
+                    relationships.put(key, id);
+                }
+            }
+        } catch (KernelException e) {
+            throw new RuntimeException("Error merging relationships of type " + relType, e);
+        }
+        return Stream.of(stats.finish(startNanos));
+    }
+
+    /**
+     * @return an online index on one of the labels and exactly the identifying properties, unique ones first, or null
+     */
+    private IndexReference findIndex(int[] labels, int[] properties) throws KernelException {
+        SchemaRead schemaRead = ktx.schemaRead();
+        IndexReference found = null;
+        for (int label : labels) {
+            IndexReference index = schemaRead.index(label, properties);
+            if (index == CapableIndexReference.NO_INDEX || schemaRead.indexGetState(index) != InternalIndexState.ONLINE) continue;
+            if (index.isUnique()) return index;
+            if (found == null) found = index;
+        }
+        return found;
+    }
+
+    private Long seek(Read read, IndexReference index, int[] properties, List<Value> ident, int[] labels,
+                      NodeValueIndexCursor indexCursor, NodeCursor nodeCursor) throws KernelException {
+        IndexQuery.ExactPredicate[] predicates = new IndexQuery.ExactPredicate[properties.length];
+        for (int i = 0; i < properties.length; i++) predicates[i] = IndexQuery.exact(properties[i], ident.get(i));
+        if (index.isUnique()) {
+            // locks the value like a cypher MERGE, so concurrent merges don't create duplicates
+            long node = read.lockingNodeUniqueIndexSeek(index, predicates);
+            return node != StatementConstants.NO_SUCH_NODE && hasLabels(read, node, labels, nodeCursor) ? node : null;
+        }
+        read.nodeIndexSeek(index, indexCursor, IndexOrder.NONE, predicates);
+        while (indexCursor.next()) {
+            if (hasLabels(read, indexCursor.nodeReference(), labels, nodeCursor)) return indexCursor.nodeReference();
+        }
+        return null;
+    }
+
+    private static boolean hasLabels(Read read, long node, int[] labels, NodeCursor nodeCursor) {
+        if (labels.length == 1) return true;
+        read.singleNode(node, nodeCursor);
+        if (!nodeCursor.next()) return false;
+        LabelSet labelSet = nodeCursor.labels();
+        for (int label : labels) {
+            if (!labelSet.contains(label)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Without an index the nodes with the first label are scanned once for the identifying values of the rows.
+     */
+    private Map<List<Value>, Long> scanNodes(int[] labels, int[] properties, List<String> identKeys, List<Map<String, Object>> rows) {
+        Set<List<Value>> wanted = new HashSet<>();
+        for (Map<String, Object> row : rows) wanted.add(identValues(identKeys, row));
+        Map<List<Value>, Long> nodes = new HashMap<>();
+        Read read = ktx.dataRead();
+        try (NodeLabelIndexCursor labelCursor = ktx.cursors().allocateNodeLabelIndexCursor();
+             NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            read.nodeLabelScan(labels[0], labelCursor);
+            Value[] values = new Value[properties.length];
+            while (labelCursor.next() && nodes.size() < wanted.size()) {
+                long node = labelCursor.nodeReference();
+                if (!hasLabels(read, node, labels, nodeCursor)) continue;
+                read.singleNode(node, nodeCursor);
+                if (!nodeCursor.next()) continue;
+                nodeCursor.properties(propertyCursor);
+                if (!readValues(propertyCursor, properties, values)) continue;
+                List<Value> ident = Arrays.asList(values.clone());
+                if (wanted.contains(ident)) nodes.putIfAbsent(ident, node);
+            }
+        }
+        return nodes;
+    }
+
+    private Long findRelationship(long start, int type, long end, int[] properties, List<Value> ident,
+                                  NodeCursor nodeCursor, PropertyCursor propertyCursor) {
+        Read read = ktx.dataRead();
+        read.singleNode(start, nodeCursor);
+        if (!nodeCursor.next()) throw new NotFoundException("Node " + start + " not found");
+        boolean fromStart = !nodeCursor.isDense();
+        if (!fromStart) {
+            // expand from the end node unless it is dense as well
+            read.singleNode(end, nodeCursor);
+            if (!nodeCursor.next()) throw new NotFoundException("Node " + end + " not found");
+            if (nodeCursor.isDense()) {
+                read.singleNode(start, nodeCursor);
+                nodeCursor.next();
+                fromStart = true;
+            }
+        }
+        int[] types = {type};
+        Value[] values = new Value[properties.length];
+        try (RelationshipSelectionCursor rels = fromStart
+                ? RelationshipSelections.outgoingCursor(ktx.cursors(), nodeCursor, types)
+                : RelationshipSelections.incomingCursor(ktx.cursors(), nodeCursor, types)) {
+            while (rels.next()) {
+                if (rels.sourceNodeReference() != start || rels.targetNodeReference() != end) continue;
+                if (properties.length == 0) return rels.relationshipReference();
+                read.relationshipProperties(rels.relationshipReference(), rels.propertiesReference(), propertyCursor);
+                if (readValues(propertyCursor, properties, values) && ident.equals(Arrays.asList(values))) {
+                    return rels.relationshipReference();
+                }
+            }
+        }
+        return null;
+    }
+
+    // reads the values of the properties in order, false if one is missing
+    private static boolean readValues(PropertyCursor propertyCursor, int[] properties, Value[] values) {
+        Arrays.fill(values, null);
+        int found = 0;
+        while (propertyCursor.next() && found < properties.length) {
+            int key = propertyCursor.propertyKey();
+            for (int i = 0; i < properties.length; i++) {
+                if (properties[i] == key) {
+                    values[i] = propertyCursor.propertyValue();
+                    found++;
+                }
+            }
+        }
+        return found == properties.length;
+    }
+
+    private static long nodeId(Object node) {
+        if (node instanceof Node) return ((Node) node).getId();
+        if (node instanceof Number) return ((Number) node).longValue();
+        throw new IllegalArgumentException("Expected a node or node id as start and end of the row but got " + node);
+    }
+
+    private static Map<String, Object> properties(Map<String, Object> row) {
+        Object properties = row.get("properties");
+        if (properties == null) return Collections.emptyMap();
+        if (!(properties instanceof Map)) {
+            throw new IllegalArgumentException("Expected a map as properties of the row but got " + properties);
+        }
+        Map<String, Object> result = new HashMap<>();
+        ((Map<?, ?>) properties).forEach((key, value) -> result.put(String.valueOf(key), value));
+        return result;
+    }
+
+    private static List<Value> identValues(List<String> identKeys, Map<String, Object> row) {
+        List<Value> values = new ArrayList<>(identKeys.size());
+        for (String key : identKeys) {
+            Object value = row.get(key);
+            if (value == null) {
+                throw new IllegalArgumentException("Identifying property " + key + " is missing in row " + row);
+            }
+            values.add(toValue(value));
+        }
+        return values;
+    }
+
+    private interface PropertySetter {
+        void set(int key, Value value) throws KernelException;
+    }
+
+    private void setProperties(Map<String, Object> properties, PropertySetter setter) throws KernelException {
+        TokenWrite tokenWrite = ktx.tokenWrite();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (entry.getValue() == null) continue;
+            setter.set(tokenWrite.propertyKeyGetOrCreateForName(entry.getKey()), toValue(entry.getValue()));
+        }
+    }
+
+    // lists are stored as arrays of the type of their elements, mixed numbers are widened to long or double like in cypher
+    private static Value toValue(Object value) {
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            Object array = Array.newInstance(elementType(list), list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Object element = list.get(i);
+                if (array instanceof double[]) element = ((Number) element).doubleValue();
+                else if (array instanceof long[]) element = ((Number) element).longValue();
+                Array.set(array, i, element);
+            }
+            return Values.of(array);
+        }
+        return Values.of(value);
+    }
+
+    private static Class<?> elementType(List<?> list) {
+        if (list.contains(null)) throw new IllegalArgumentException("Lists containing null can not be stored as properties: " + list);
+        if (list.isEmpty()) return String.class;
+        Class<?> type = list.get(0).getClass();
+        boolean numbers = true, floating = false, mixed = false;
+        for (Object element : list) {
+            mixed |= element.getClass() != type;
+            numbers &= element instanceof Number;
+            floating |= element instanceof Double || element instanceof Float;
+        }
+        if (!mixed) return type;
+        if (numbers) return floating ? double.class : long.class;
+        throw new IllegalArgumentException("Lists containing mixed types can not be stored as properties: " + list);
+    }
+
     private String buildIdentPropsString(Map<String, Object> identProps) {
         if (identProps==null) {
             return "";
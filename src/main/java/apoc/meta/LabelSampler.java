@@ -0,0 +1,106 @@
+package apoc.meta;
+
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.NodeLabelIndexCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.Statement;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongPredicate;
+
+/**
+ * Picks about {@code sample} nodes of a label without reading every node of it.
+ *
+ * Large labels are sampled with seeks into the node store, taking the first node with the label in each of
+ * {@code sample} equal ranges of node ids, small ones with a strided label scan, whichever visits fewer records.
+ * If the nodes of a label are clustered in a few ranges, the seeks are topped up from the label scan.
+ */
+class LabelSampler {
+
+    // reading a node record costs about as much as this many label scan entries
+    static final int SEEK_COST = 10;
+    // give up on a range of node ids after this many times the average gap between nodes of the label
+    static final int MAX_GAPS = 10;
+
+    /**
+     * @return the stride for a label scan of {@code labelCount} nodes to sample about {@code sample} of them, -1 for all
+     */
+    static long stride(long labelCount, long sample) {
+        if (sample == -1L) return sample;
+        long skipCount = labelCount / sample;
+        long min = (long) Math.floor(skipCount - (skipCount * 0.1D));
+        long max = (long) Math.ceil(skipCount + (skipCount * 0.1D));
+        if (min >= max) {
+            return -1L;
+        }
+        return ThreadLocalRandom.current().nextLong(min, max);
+    }
+
+    static boolean useSeeks(long labelCount, long highestNodeId, long sample) {
+        if (sample == -1L || labelCount <= sample) return false;
+        long gap = Math.max(1, (highestNodeId + 1) / Math.max(1, labelCount));
+        return sample * gap * SEEK_COST < labelCount;
+    }
+
+    /**
+     * Passes the ids of the sampled nodes to the consumer until it returns false.
+     *
+     * @return false if the consumer stopped the sampling
+     */
+    static boolean sample(KernelTransaction ktx, int label, long labelCount, long highestNodeId, long sample, LongPredicate consumer) {
+        // keeps the label scan reader open while the consumer uses the core api
+        Statement statement = ktx.acquireStatement();
+        try {
+            if (useSeeks(labelCount, highestNodeId, sample)) {
+                return seek(ktx, label, labelCount, highestNodeId, sample, consumer);
+            }
+            return scan(ktx, label, stride(labelCount, sample), consumer);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static boolean scan(KernelTransaction ktx, int label, long stride, LongPredicate consumer) {
+        try (NodeLabelIndexCursor cursor = ktx.cursors().allocateNodeLabelIndexCursor()) {
+            ktx.dataRead().nodeLabelScan(label, cursor);
+            long count = 1;
+            while (cursor.next()) {
+                if (count++ % stride == 0 && !consumer.test(cursor.nodeReference())) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean seek(KernelTransaction ktx, int label, long labelCount, long highestNodeId, long sample, LongPredicate consumer) {
+        long bound = highestNodeId + 1;
+        long maxVisits = Math.max(1, bound / labelCount) * MAX_GAPS;
+        Set<Long> sampled = new HashSet<>();
+        Read read = ktx.dataRead();
+        try (NodeCursor cursor = ktx.cursors().allocateNodeCursor()) {
+            for (long range = 0; range < sample; range++) {
+                long start = bound * range / sample;
+                long end = Math.min(bound * (range + 1) / sample, start + maxVisits);
+                for (long id = start; id < end; id++) {
+                    read.singleNode(id, cursor);
+                    if (cursor.next() && cursor.labels().contains(label)) {
+                        sampled.add(id);
+                        if (!consumer.test(id)) return false;
+                        break;
+                    }
+                }
+            }
+        }
+        if (sampled.size() >= sample / 2) return true;
+        try (NodeLabelIndexCursor cursor = ktx.cursors().allocateNodeLabelIndexCursor()) {
+            read.nodeLabelScan(label, cursor);
+            while (sampled.size() < sample && cursor.next()) {
+                long id = cursor.nodeReference();
+                if (sampled.add(id) && !consumer.test(id)) return false;
+            }
+        }
+        return true;
+    }
+}
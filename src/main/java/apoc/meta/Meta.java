@@ -1,5 +1,7 @@
 package apoc.meta;
 
+import apoc.ApocKernelExtensionFactory;
+import apoc.Pools;
 import apoc.result.GraphResult;
 import apoc.result.MapResult;
 import apoc.result.VirtualNode;
@@ -10,21 +12,28 @@ import org.neo4j.graphdb.schema.ConstraintDefinition;
 import org.neo4j.graphdb.schema.IndexDefinition;
 import org.neo4j.graphdb.schema.Schema;
 import org.neo4j.graphdb.spatial.Point;
+import org.neo4j.helpers.collection.Iterables;
 import org.neo4j.helpers.collection.Pair;
 import org.neo4j.internal.kernel.api.Read;
 import org.neo4j.internal.kernel.api.TokenRead;
 import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.*;
 import org.neo4j.values.storable.DurationValue;
 
 import java.time.*;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static apoc.util.MapUtil.map;
+import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.NODES;
+import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.getHighestIdInUseForStore;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toMap;
@@ -41,6 +50,14 @@ public class Meta {
     @Context
     public KernelTransaction kernelTx;
 
+    static Meta forTransaction(GraphDatabaseAPI api, KernelTransaction kernelTx) {
+        Meta meta = new Meta();
+        meta.db = api;
+        meta.api = api;
+        meta.kernelTx = kernelTx;
+        return meta;
+    }
+
     public enum Types {
         INTEGER,FLOAT,STRING,BOOLEAN,RELATIONSHIP,NODE,PATH,NULL,ANY,MAP,LIST,POINT,DATE,DATE_TIME,LOCAL_TIME,LOCAL_DATE_TIME,TIME,DURATION;
 
@@ -131,6 +148,7 @@ public class Meta {
         public List<String> other = new ArrayList<>();
         public List<String> otherLabels = new ArrayList<>();
         public String elementType;
+        public boolean partial;
 
         public MetaResult addLabel(String label) {
             this.otherLabels.add(label);
@@ -173,6 +191,26 @@ public class Meta {
             return this;
         }
 
+        public MetaResult copy() {
+            MetaResult copy = new MetaResult(label, property);
+            copy.count = count;
+            copy.unique = unique;
+            copy.index = index;
+            copy.existence = existence;
+            copy.type = type;
+            copy.array = array;
+            copy.sample = sample;
+            copy.leftCount = leftCount;
+            copy.rightCount = rightCount;
+            copy.left = left;
+            copy.right = right;
+            copy.other = new ArrayList<>(other);
+            copy.otherLabels = new ArrayList<>(otherLabels);
+            copy.elementType = elementType;
+            copy.partial = partial;
+            return copy;
+        }
+
         public MetaResult elementType(String elementType) {
             switch(elementType){
                 case "NODE" : this.elementType = "node"; break;
@@ -406,7 +444,12 @@ public class Meta {
     @Description("apoc.meta.data({config})  - examines a subset of the graph to provide a tabular meta information")
     public Stream<MetaResult> data(@Name(value = "config",defaultValue = "{}") Map<String,Object> config) {
         MetaConfig metaConfig = new MetaConfig(config);
-        return collectMetaData(metaConfig).values().stream().flatMap(x -> x.values().stream());
+        Set<String> partial = new HashSet<>();
+        Map<String, Map<String, MetaResult>> metaData = metaData(metaConfig, partial);
+        metaData.forEach((name, results) -> {
+            if (partial.contains(name)) results.values().forEach(r -> r.partial = true);
+        });
+        return metaData.values().stream().flatMap(x -> x.values().stream());
     }
 
     @Procedure
@@ -414,75 +457,165 @@ public class Meta {
     public Stream<MapResult> schema(@Name(value = "config",defaultValue = "{}") Map<String,Object> config) {
         MetaStats metaStats = collectStats();
         MetaConfig metaConfig = new MetaConfig(config);
-        Map<String, Map<String, MetaResult>> metaData = collectMetaData(metaConfig);
+        Set<String> partial = new HashSet<>();
+        Map<String, Map<String, MetaResult>> metaData = metaData(metaConfig, partial);
 
-        Map<String, Object> relationships = collectRelationshipsMetaData(metaStats, metaData);
-        Map<String, Object> nodes = collectNodesMetaData(metaStats, metaData, relationships);
+        Map<String, Object> relationships = collectRelationshipsMetaData(metaStats, metaData, partial);
+        Map<String, Object> nodes = collectNodesMetaData(metaStats, metaData, relationships, partial);
 
         nodes.putAll(relationships);
         return Stream.of(new MapResult(nodes));
     }
 
-    private Map<String, Map<String, MetaResult>> collectMetaData (MetaConfig config) {
-        Map<String,Map<String,MetaResult>> metaData = new LinkedHashMap<>(100);
-        Schema schema = db.schema();
+    private Map<String, Map<String, MetaResult>> metaData(MetaConfig config, Set<String> partial) {
+        if (!config.isCached()) return collectMetaData(config, partial);
+        Map<String, Map<String, MetaResult>> metaData = new LinkedHashMap<>();
+        cache().metaData(config.getMaxStaleness()).forEach((name, results) -> {
+            Map<String, MetaResult> copies = new LinkedHashMap<>(results.size());
+            results.forEach((key, result) -> copies.put(key, result.copy()));
+            metaData.put(name, copies);
+        });
+        refreshSchemaInfo(metaData);
+        return metaData;
+    }
 
-        Map<String, Iterable<ConstraintDefinition>> relConstraints = new HashMap<>(20);
-        for (RelationshipType type : db.getAllRelationshipTypesInUse()) {
-            metaData.put(type.name(), new LinkedHashMap<>(10));
-            relConstraints.put(type.name(),schema.getConstraints(type));
-        }
-        Map<String, Long> countStore = getLabelCountStore();
+    private MetaCache cache() {
+        MetaCache cache = api.getDependencyResolver().resolveDependency(ApocKernelExtensionFactory.ApocLifecycle.class).getMetaCache();
+        if (cache == null) throw new RuntimeException(MetaCache.NOT_ENABLED_ERROR);
+        return cache;
+    }
+
+    // indexes and constraints may have changed since the cached results were sampled
+    private void refreshSchemaInfo(Map<String, Map<String, MetaResult>> metaData) {
+        Schema schema = db.schema();
         for (Label label : db.getAllLabelsInUse()) {
-            Map<String,MetaResult> nodeMeta = new LinkedHashMap<>(50);
-            String labelName = label.name();
-            metaData.put(labelName, nodeMeta);
-            Iterable<ConstraintDefinition> constraints = schema.getConstraints(label);
-            Set<String> indexed = new LinkedHashSet<>();
+            Map<String, MetaResult> results = metaData.get(label.name());
+            if (results == null) continue;
+            Set<String> indexed = new HashSet<>();
             for (IndexDefinition index : schema.getIndexes(label)) {
                 for (String prop : index.getPropertyKeys()) {
                     indexed.add(prop);
                 }
             }
-            long labelCount = countStore.get(labelName);
-            long sample = getSampleForLabelCount(labelCount, config.getSample());
-            try (ResourceIterator<Node> nodes = db.findNodes(label)) {
-                int count = 1;
-                while (nodes.hasNext()) {
-                    Node node = nodes.next();
-                    if(count++ % sample == 0) {
-                        addRelationships(metaData, nodeMeta, labelName, node, relConstraints);
-                        addProperties(nodeMeta, labelName, constraints, indexed, node, node);
-                    }
+            refreshSchemaInfo(results.values(), indexed, schema.getConstraints(label));
+        }
+        for (RelationshipType type : db.getAllRelationshipTypesInUse()) {
+            Map<String, MetaResult> results = metaData.get(type.name());
+            if (results == null) continue;
+            refreshSchemaInfo(results.values(), Collections.emptySet(), schema.getConstraints(type));
+        }
+    }
+
+    private void refreshSchemaInfo(Collection<MetaResult> results, Set<String> indexed, Iterable<ConstraintDefinition> constraints) {
+        for (MetaResult res : results) {
+            if (Types.RELATIONSHIP.name().equals(res.type)) continue;
+            res.index = indexed.contains(res.property);
+            res.unique = false;
+            res.existence = false;
+            for (ConstraintDefinition constraint : constraints) {
+                if (!Iterables.asList(constraint.getPropertyKeys()).contains(res.property)) continue;
+                switch (constraint.getConstraintType()) {
+                    case UNIQUENESS: res.unique = true; break;
+                    case NODE_PROPERTY_EXISTENCE: res.existence = true; break;
+                    case RELATIONSHIP_PROPERTY_EXISTENCE: res.existence = true; break;
                 }
             }
         }
-        return metaData;
     }
 
-    private Map<String, Long> getLabelCountStore() {
-        List<String> labels = db.getAllLabelsInUse().stream().map(label -> label.name()).collect(Collectors.toList());
+    static class LabelMetaData {
+        final Map<String, MetaResult> nodeMeta = new LinkedHashMap<>(50);
+        final Map<String, Map<String, MetaResult>> typeMeta = new LinkedHashMap<>(20);
+        boolean partial;
+    }
+
+    /**
+     * Samples the labels in parallel on the analytics pool, each in its own transaction, or one after the other in
+     * the current transaction if it has uncommitted changes, which other threads wouldn't see. The names of the labels
+     * whose sampling was cut short by the time budget, and of all relationship types then, are added to {@code partial}.
+     */
+    Map<String, Map<String, MetaResult>> collectMetaData (MetaConfig config, Set<String> partial) {
+        Map<String,Map<String,MetaResult>> metaData = new LinkedHashMap<>(100);
+        for (RelationshipType type : db.getAllRelationshipTypesInUse()) {
+            metaData.put(type.name(), new LinkedHashMap<>(10));
+        }
         TokenRead tokenRead = kernelTx.tokenRead();
-        return labels
-                .stream()
-                .collect(Collectors.toMap(e -> e, e -> kernelTx.dataRead().countsForNodeWithoutTxState(tokenRead.nodeLabel(e))));
+        Read read = kernelTx.dataRead();
+        long highestNodeId = getHighestIdInUseForStore(api.getDependencyResolver(), NODES);
+        long deadline = config.getTimeout() > 0 ? System.nanoTime() + (long) (config.getTimeout() * 1_000_000_000L) : Long.MAX_VALUE;
+        boolean hasTxState = kernelTx instanceof TxStateHolder && ((TxStateHolder) kernelTx).hasTxStateWithChanges();
+        Map<String, Future<LabelMetaData>> futures = new LinkedHashMap<>();
+        for (Label label : db.getAllLabelsInUse()) {
+            int labelId = tokenRead.nodeLabel(label.name());
+            long labelCount = read.countsForNodeWithoutTxState(labelId);
+            if (hasTxState) {
+                futures.put(label.name(), CompletableFuture.completedFuture(collectLabelMetaData(kernelTx, label, labelId, labelCount, highestNodeId, config.getSample(), deadline)));
+            } else {
+                futures.put(label.name(), Pools.ANALYTICS.submit(() -> collectLabelMetaData(label, labelId, labelCount, highestNodeId, config.getSample(), deadline)));
+            }
+        }
+        for (Map.Entry<String, Future<LabelMetaData>> entry : futures.entrySet()) {
+            LabelMetaData labelMetaData;
+            try {
+                labelMetaData = Pools.force(entry.getValue());
+            } catch (ExecutionException e) {
+                futures.values().forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error sampling label " + entry.getKey(), e.getCause());
+            }
+            metaData.put(entry.getKey(), labelMetaData.nodeMeta);
+            labelMetaData.typeMeta.forEach((typeName, results) -> {
+                Map<String, MetaResult> typeMeta = metaData.computeIfAbsent(typeName, t -> new LinkedHashMap<>(10));
+                results.forEach(typeMeta::putIfAbsent);
+            });
+            if (labelMetaData.partial) partial.add(entry.getKey());
+        }
+        if (!partial.isEmpty()) {
+            metaData.forEach((name, results) -> {
+                if (!futures.containsKey(name)) partial.add(name);
+            });
+        }
+        return metaData;
     }
 
-    public long getSampleForLabelCount(long labelCount, long sample) {
-        if(sample != -1L) {
-            long skipCount = labelCount / sample;
-            long min = (long) Math.floor(skipCount - (skipCount * 0.1D));
-            long max = (long) Math.ceil(skipCount + (skipCount * 0.1D));
-            if (min >= max) {
-                return -1L;
+    private LabelMetaData collectLabelMetaData(Label label, int labelId, long labelCount, long highestNodeId, long sample, long deadline) {
+        try (Transaction tx = db.beginTx()) {
+            KernelTransaction ktx = api.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).getKernelTransactionBoundToThisThread(true);
+            LabelMetaData result = collectLabelMetaData(ktx, label, labelId, labelCount, highestNodeId, sample, deadline);
+            tx.success();
+            return result;
+        }
+    }
+
+    private LabelMetaData collectLabelMetaData(KernelTransaction ktx, Label label, int labelId, long labelCount, long highestNodeId, long sample, long deadline) {
+        LabelMetaData result = new LabelMetaData();
+        String labelName = label.name();
+        Schema schema = db.schema();
+        Iterable<ConstraintDefinition> constraints = Iterables.asList(schema.getConstraints(label));
+        Set<String> indexed = new LinkedHashSet<>();
+        for (IndexDefinition index : schema.getIndexes(label)) {
+            for (String prop : index.getPropertyKeys()) {
+                indexed.add(prop);
             }
-            return ThreadLocalRandom.current().nextLong(min, max);
-        } else {
-            return sample;
         }
+        Map<String, Iterable<ConstraintDefinition>> relConstraints = new HashMap<>(20);
+        for (RelationshipType type : db.getAllRelationshipTypesInUse()) {
+            relConstraints.put(type.name(), Iterables.asList(schema.getConstraints(type)));
+        }
+        result.partial = !LabelSampler.sample(ktx, labelId, labelCount, highestNodeId, sample, id -> {
+            if (System.nanoTime() > deadline) return false;
+            Node node = db.getNodeById(id);
+            addRelationships(result.typeMeta, result.nodeMeta, labelName, node, relConstraints);
+            addProperties(result.nodeMeta, labelName, constraints, indexed, node, node);
+            return true;
+        });
+        return result;
     }
 
-    private Map<String, Object> collectNodesMetaData(MetaStats metaStats, Map<String, Map<String, MetaResult>> metaData, Map<String, Object> relationships) {
+    public long getSampleForLabelCount(long labelCount, long sample) {
+        return LabelSampler.stride(labelCount, sample);
+    }
+
+    private Map<String, Object> collectNodesMetaData(MetaStats metaStats, Map<String, Map<String, MetaResult>> metaData, Map<String, Object> relationships, Set<String> partial) {
         Map<String, Object> nodes = new LinkedHashMap<>();
         Map<String, List<Map<String, Object>>> startNodeNameToRelationshipsMap = new HashMap<>();
         for (String entityName : metaData.keySet()) {
@@ -528,7 +661,8 @@ public class Meta {
                         "count", metaStats.labels.get(entityName),
                         "labels", labels,
                         "properties", entityProperties,
-                        "relationships", entityRelationships
+                        "relationships", entityRelationships,
+                        "partial", partial.contains(entityName)
                 ));
             }
         }
@@ -557,10 +691,12 @@ public class Meta {
         });
     }
 
-    private Map<String, Object> collectRelationshipsMetaData(MetaStats metaStats, Map<String, Map<String, MetaResult>> metaData) {
+    private Map<String, Object> collectRelationshipsMetaData(MetaStats metaStats, Map<String, Map<String, MetaResult>> metaData, Set<String> partial) {
         Map<String, Object> relationships = new LinkedHashMap<>();
         for(String entityName : metaData.keySet()) {
             Map<String, MetaResult> entityData = metaData.get(entityName);
+            // labels without sampled properties or relationships
+            if (entityData.isEmpty() && metaStats.labels.containsKey(entityName)) continue;
             Map<String, Object> entityProperties = new LinkedHashMap<>();
             boolean isRelationship = true;
             for (String entityDataKey : entityData.keySet()) {
@@ -580,7 +716,8 @@ public class Meta {
                 relationships.put(entityName, MapUtil.map(
                         "type", "relationship",
                         "count", metaStats.relTypesCount.get(entityName),
-                        "properties", entityProperties));
+                        "properties", entityProperties,
+                        "partial", partial.contains(entityName)));
             }
         }
         return relationships;
@@ -608,7 +745,7 @@ public class Meta {
             if (!nodeMeta.containsKey(typeName)) nodeMeta.put(typeName, new MetaResult(labelName,typeName));
 //            int in = node.getDegree(type, Direction.INCOMING);
 
-            Map<String, MetaResult> typeMeta = metaData.get(typeName);
+            Map<String, MetaResult> typeMeta = metaData.computeIfAbsent(typeName, t -> new LinkedHashMap<>(10));
             if (!typeMeta.containsKey(labelName)) typeMeta.put(labelName,new MetaResult(typeName,labelName));
             MetaResult relMeta = nodeMeta.get(typeName);
             addOtherNodeInfo(node, labelName, out, type, relMeta , typeMeta, constraints);
@@ -798,13 +935,20 @@ public class Meta {
             combine(aggregated, Pair.of(rel.from, rel.type), rel);
             combine(aggregated, Pair.of(rel.type, rel.to), rel);
         }
+        Map<String, Map<String, MetaResult>> cached = metaConfig.isCached() ? cache().metaData(metaConfig.getMaxStaleness()) : null;
         aggregated.values().stream()
                 .filter( c -> c.size() > 1)
                 .flatMap(Collection::stream)
-                .filter( p -> !relationshipExists(p, vRels.get(p), metaConfig))
+                .filter( p -> cached != null ? !relationshipExists(p, cached) : !relationshipExists(p, vRels.get(p), metaConfig))
                 .forEach(vRels::remove);
     }
 
+    private boolean relationshipExists(Pattern p, Map<String, Map<String, MetaResult>> metaData) {
+        Map<String, MetaResult> nodeMeta = metaData.get(p.from);
+        MetaResult relMeta = nodeMeta == null ? null : nodeMeta.get(p.type);
+        return relMeta != null && relMeta.other.contains(p.to);
+    }
+
     private boolean relationshipExists(Pattern p, Relationship relationship, MetaConfig metaConfig) {
         if (relationship==null) return false;
         double degreeFrom = (double)(long)relationship.getProperty("out")  / (long)relationship.getStartNode().getProperty("count");
@@ -819,26 +963,20 @@ public class Meta {
     }
 
     private boolean relationshipExists(Label labelFromLabel, Label labelToLabel, RelationshipType relationshipType, Direction direction, MetaConfig metaConfig) {
-        Map<String, Long> countStore = getLabelCountStore();
-        try (ResourceIterator<Node> nodes = db.findNodes(labelFromLabel)) {
-            long count = 1L;
-            String labelName = labelFromLabel.name();
-            long labelCount = countStore.get(labelName);
-            long sample = getSampleForLabelCount(labelCount, metaConfig.getSample());
-            while (nodes.hasNext()) {
-                count++;
-                if(count % sample == 0) {
-                    Node node = nodes.next();
-                    long maxRels = metaConfig.getMaxRels();
-                    for (Relationship rel : node.getRelationships(direction, relationshipType)) {
-                        Node otherNode = direction == Direction.OUTGOING ? rel.getEndNode() : rel.getStartNode();
-                        if (otherNode.hasLabel(labelToLabel)) return true;
-                        if (maxRels != -1 && maxRels-- == 0) break;
-                    }
-                }
+        int labelId = kernelTx.tokenRead().nodeLabel(labelFromLabel.name());
+        long labelCount = kernelTx.dataRead().countsForNodeWithoutTxState(labelId);
+        long highestNodeId = getHighestIdInUseForStore(api.getDependencyResolver(), NODES);
+        // the sampling is stopped by the first matching relationship
+        return !LabelSampler.sample(kernelTx, labelId, labelCount, highestNodeId, metaConfig.getSample(), id -> {
+            Node node = db.getNodeById(id);
+            long maxRels = metaConfig.getMaxRels();
+            for (Relationship rel : node.getRelationships(direction, relationshipType)) {
+                Node otherNode = direction == Direction.OUTGOING ? rel.getEndNode() : rel.getStartNode();
+                if (otherNode.hasLabel(labelToLabel)) return false;
+                if (maxRels != -1 && maxRels-- == 0) break;
             }
-        }
-        return false;
+            return true;
+        });
     }
 
     private void combine(Map<Pair<String, String>, Set<Pattern>> aggregated, Pair<String, String> p, Pattern rel) {
@@ -0,0 +1,321 @@
+package apoc.meta;
+
+import apoc.ApocConfiguration;
+import apoc.Pools;
+import apoc.meta.Meta.MetaResult;
+import apoc.util.Util;
+import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.kernel.AvailabilityGuard;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Server-lifetime snapshot of the sampled meta data of {@code apoc.meta.data}, {@code apoc.meta.schema} and {@code apoc.meta.graph}.
+ *
+ * The snapshot is built in the background when the database becomes available. Committed transactions add their new
+ * labels, relationship types, property keys and relationship patterns to it, removals are only picked up by a rebuild,
+ * which the procedures ask for with {@code maxStaleness}. The changes are collected before the commit, when the labels
+ * and degrees of the nodes can still be read, and applied after it.
+ *
+ * Rebuilds run in their own transaction on a pool thread, never in the one of the calling procedure, which keeps
+ * getting the old snapshot until the new one is built.
+ */
+public class MetaCache implements TransactionEventHandler<MetaCache.Delta>, AvailabilityGuard.AvailabilityListener {
+
+    public static final String NOT_ENABLED_ERROR = "The meta data cache has not been enabled." +
+            " Set 'apoc.meta.cache.enabled=true' in your neo4j.conf file located in the $NEO4J_HOME/conf/ directory.";
+    // relationships of a node looked at for the relationship patterns of a new label
+    static final int MAX_RELS = 100;
+
+    private final GraphDatabaseAPI db;
+    private final Log log;
+    private boolean enabled;
+
+    // never modified, replaced by every change
+    volatile Snapshot snapshot;
+    // changes applied while the snapshot is rebuilt, guarded by this
+    private List<Delta> pending;
+    // the running rebuild, guarded by this
+    private Future<Snapshot> building;
+
+    static class Snapshot {
+        final Map<String, Map<String, MetaResult>> metaData;
+        final long built;
+        final boolean stale;
+
+        Snapshot(Map<String, Map<String, MetaResult>> metaData, long built, boolean stale) {
+            this.metaData = metaData;
+            this.built = built;
+            this.stale = stale;
+        }
+    }
+
+    /**
+     * Meta results by entity name and key to add to the snapshot if missing, the end labels of relationship
+     * patterns are merged into existing ones.
+     */
+    static class Delta {
+        final Map<String, Map<String, MetaResult>> additions = new LinkedHashMap<>();
+
+        Map<String, MetaResult> entity(String name) {
+            return additions.computeIfAbsent(name, n -> new LinkedHashMap<>());
+        }
+
+        boolean isEmpty() {
+            return additions.isEmpty();
+        }
+
+        Snapshot applyTo(Snapshot snapshot) {
+            Map<String, Map<String, MetaResult>> metaData = new LinkedHashMap<>(snapshot.metaData);
+            additions.forEach((name, results) -> {
+                Map<String, MetaResult> existing = metaData.get(name);
+                Map<String, MetaResult> entity = existing == null ? new LinkedHashMap<>() : new LinkedHashMap<>(existing);
+                results.forEach((key, result) -> {
+                    MetaResult current = entity.get(key);
+                    if (current == null) {
+                        entity.put(key, result);
+                    } else if (!current.other.containsAll(result.other)) {
+                        entity.put(key, current.copy().other(result.other));
+                    }
+                });
+                metaData.put(name, entity);
+            });
+            return new Snapshot(metaData, snapshot.built, snapshot.stale);
+        }
+    }
+
+    public MetaCache(GraphDatabaseAPI db, Log log) {
+        this.db = db;
+        this.log = log;
+    }
+
+    public void start() {
+        enabled = Util.toBoolean(ApocConfiguration.get("meta.cache.enabled", null));
+        if (!enabled) return;
+        db.registerTransactionEventHandler(this);
+    }
+
+    public void stop() {
+        if (!enabled) return;
+        db.unregisterTransactionEventHandler(this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void available() {
+        if (!enabled) return;
+        try {
+            rebuild();
+        } catch (RejectedExecutionException e) {
+            log.warn("Error building the meta data cache", e);
+        }
+    }
+
+    @Override
+    public void unavailable() {
+        // intentionally empty
+    }
+
+    /**
+     * @param maxStaleness seconds since the last build after which the snapshot is rebuilt, -1 to never rebuild
+     * @return the meta data by entity name, to be copied before it's modified, the old one while it's rebuilt
+     */
+    Map<String, Map<String, MetaResult>> metaData(double maxStaleness) {
+        if (!enabled) throw new RuntimeException(NOT_ENABLED_ERROR);
+        Snapshot current = snapshot;
+        if (isFresh(current, maxStaleness)) return current.metaData;
+        Future<Snapshot> rebuild = rebuild();
+        if (current != null) return current.metaData;
+        try {
+            return Pools.force(rebuild).metaData;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error building the meta data cache", e.getCause());
+        }
+    }
+
+    /**
+     * Starts a rebuild of the snapshot on the default pool, unless one is running.
+     */
+    private Future<Snapshot> rebuild() {
+        FutureTask<Snapshot> task;
+        synchronized (this) {
+            if (building != null) return building;
+            task = new FutureTask<>(this::build);
+            building = task;
+            pending = new ArrayList<>();
+        }
+        try {
+            Pools.DEFAULT.execute(task);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                building = null;
+                pending = null;
+            }
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Waits for the running rebuild, if any.
+     */
+    void awaitBuild() throws ExecutionException {
+        Future<Snapshot> running;
+        synchronized (this) {
+            running = building;
+        }
+        if (running != null) Pools.force(running);
+    }
+
+    private static boolean isFresh(Snapshot snapshot, double maxStaleness) {
+        if (snapshot == null || snapshot.stale) return false;
+        return maxStaleness < 0 || System.currentTimeMillis() - snapshot.built <= maxStaleness * 1000;
+    }
+
+    private Snapshot build() {
+        long start = System.currentTimeMillis();
+        Map<String, Map<String, MetaResult>> metaData;
+        try (Transaction tx = db.beginTx()) {
+            KernelTransaction ktx = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).getKernelTransactionBoundToThisThread(true);
+            metaData = Meta.forTransaction(db, ktx).collectMetaData(new MetaConfig(null), new HashSet<>());
+            tx.success();
+        } catch (RuntimeException e) {
+            log.warn("Error building the meta data cache", e);
+            synchronized (this) {
+                pending = null;
+                building = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            Snapshot built = new Snapshot(metaData, start, false);
+            for (Delta delta : pending) {
+                built = delta.applyTo(built);
+            }
+            pending = null;
+            building = null;
+            snapshot = built;
+            log.debug("Built the meta data cache in %d ms", System.currentTimeMillis() - start);
+            return built;
+        }
+    }
+
+    private synchronized void apply(Delta delta) {
+        if (pending != null) pending.add(delta);
+        if (snapshot != null) snapshot = delta.applyTo(snapshot);
+    }
+
+    private synchronized void markStale() {
+        if (snapshot != null) snapshot = new Snapshot(snapshot.metaData, snapshot.built, true);
+    }
+
+    private synchronized boolean isTracking() {
+        return snapshot != null || pending != null;
+    }
+
+    @Override
+    public Delta beforeCommit(TransactionData txData) {
+        if (!isTracking()) return null;
+        try {
+            Delta delta = collect(txData, snapshot != null ? snapshot.metaData : Collections.emptyMap());
+            return delta.isEmpty() ? null : delta;
+        } catch (Exception e) {
+            log.warn("Error collecting the changes for the meta data cache, it will be rebuilt", e);
+            markStale();
+            return null;
+        }
+    }
+
+    @Override
+    public void afterCommit(TransactionData txData, Delta delta) {
+        if (delta != null) apply(delta);
+    }
+
+    @Override
+    public void afterRollback(TransactionData txData, Delta delta) {
+        // intentionally empty
+    }
+
+    static Delta collect(TransactionData txData, Map<String, Map<String, MetaResult>> known) {
+        Delta delta = new Delta();
+        for (LabelEntry entry : txData.assignedLabels()) {
+            Node node = entry.node();
+            if (txData.isDeleted(node)) continue;
+            String labelName = entry.label().name();
+            if (!known.containsKey(labelName)) delta.entity(labelName);
+            for (Map.Entry<String, Object> property : node.getAllProperties().entrySet()) {
+                addProperty(delta, known, labelName, property.getKey(), property.getValue(), node);
+            }
+            int count = 0;
+            for (Relationship rel : node.getRelationships()) {
+                if (count++ == MAX_RELS) break;
+                addPattern(delta, known, rel);
+            }
+        }
+        for (PropertyEntry<Node> entry : txData.assignedNodeProperties()) {
+            Node node = entry.entity();
+            if (txData.isDeleted(node)) continue;
+            for (Label label : node.getLabels()) {
+                addProperty(delta, known, label.name(), entry.key(), entry.value(), node);
+            }
+        }
+        for (Relationship rel : txData.createdRelationships()) {
+            if (txData.isDeleted(rel)) continue;
+            String typeName = rel.getType().name();
+            if (!known.containsKey(typeName)) delta.entity(typeName);
+            addPattern(delta, known, rel);
+        }
+        for (PropertyEntry<Relationship> entry : txData.assignedRelationshipProperties()) {
+            Relationship rel = entry.entity();
+            if (txData.isDeleted(rel)) continue;
+            addProperty(delta, known, rel.getType().name(), entry.key(), entry.value(), rel);
+        }
+        return delta;
+    }
+
+    private static void addProperty(Delta delta, Map<String, Map<String, MetaResult>> known, String entityName, String key, Object value, PropertyContainer pc) {
+        Map<String, MetaResult> entity = known.get(entityName);
+        if (entity != null && entity.containsKey(key)) return;
+        delta.entity(entityName).computeIfAbsent(key, k -> {
+            MetaResult result = new MetaResult(entityName, key).type(Meta.Types.of(value).name()).array(value.getClass().isArray());
+            result.elementType(Meta.Types.of(pc).name());
+            return result;
+        });
+    }
+
+    private static void addPattern(Delta delta, Map<String, Map<String, MetaResult>> known, Relationship rel) {
+        RelationshipType type = rel.getType();
+        String typeName = type.name();
+        Node start = rel.getStartNode();
+        Node end = rel.getEndNode();
+        List<String> endLabels = new ArrayList<>();
+        for (Label label : end.getLabels()) endLabels.add(label.name());
+        for (Label label : start.getLabels()) {
+            String labelName = label.name();
+            Map<String, MetaResult> entity = known.get(labelName);
+            MetaResult pattern = entity == null ? null : entity.get(typeName);
+            if (pattern != null && pattern.other.containsAll(endLabels)) continue;
+            int out = start.getDegree(type, Direction.OUTGOING);
+            int in = end.getDegree(type, Direction.INCOMING);
+            delta.entity(labelName).computeIfAbsent(typeName, k -> new MetaResult(labelName, typeName).elementType(Meta.Types.NODE.name()))
+                    .inc().other(endLabels).rel(out, in);
+            delta.entity(typeName).computeIfAbsent(labelName, k -> new MetaResult(typeName, labelName).elementType(Meta.Types.RELATIONSHIP.name()))
+                    .inc().other(endLabels).rel(out, in);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package apoc.meta;
 
+import apoc.util.Util;
+
 import java.util.*;
 
 public class MetaConfig {
@@ -9,6 +11,9 @@ public class MetaConfig {
     private Set<String> excludes;
     private long maxRels;
     private long sample;
+    private double timeout;
+    private boolean cached;
+    private double maxStaleness;
 
     public MetaConfig(Map<String,Object> config) {
         config = config != null ? config : Collections.emptyMap();
@@ -17,6 +22,9 @@ public class MetaConfig {
         this.excludes = new HashSet<>((Collection<String>)config.getOrDefault("excludes",Collections.EMPTY_SET));
         this.sample = (long) config.getOrDefault("sample", 1000L);
         this.maxRels = (long) config.getOrDefault("maxRels", 100L);
+        this.timeout = Util.toDouble(config.getOrDefault("timeout", 0));
+        this.cached = Util.toBoolean(config.getOrDefault("cached", false));
+        this.maxStaleness = Util.toDouble(config.getOrDefault("maxStaleness", -1));
     }
 
     public Set<String> getIncludesLabels() {
@@ -43,4 +51,22 @@ public class MetaConfig {
     public long getMaxRels() {
         return maxRels;
     }
+
+    /**
+     * @return the time budget for sampling in seconds, 0 for none
+     */
+    public double getTimeout() {
+        return timeout;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * @return the seconds since the last build of the cache after which it's rebuilt, -1 for never
+     */
+    public double getMaxStaleness() {
+        return maxStaleness;
+    }
 }
@@ -0,0 +1,187 @@
+package apoc.neighbors;
+
+import apoc.ApocConfiguration;
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.Pair;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static apoc.path.RelationshipTypeAndDirections.parse;
+import static org.neo4j.internal.kernel.api.Read.ANY_RELATIONSHIP_TYPE;
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
+
+/**
+ * Computes the distinct neighbours of a node hop by hop on the kernel cursor API.
+ *
+ * The rel-direction-pattern is resolved to relationship type tokens once, one cursor per direction is used for each node.
+ * Hops of more than <code>apoc.neighbors.parallel_threshold</code> nodes are expanded in chunks on the analytics pool,
+ * each chunk in its own transaction and into its own bitmap, the bitmaps are merged afterwards.
+ */
+class HopExpander {
+
+    static final String CONFIG_PARALLEL_THRESHOLD = "neighbors.parallel_threshold";
+    static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+    private final GraphDatabaseAPI db;
+    private final KernelTransaction ktx;
+    private final ExecutorService pool = Pools.ANALYTICS;
+    private final int parallelThreshold;
+
+    // relationship types per direction, null for all types, empty for none
+    private int[] outgoing = new int[0];
+    private int[] incoming = new int[0];
+    private int[] both = new int[0];
+
+    HopExpander(GraphDatabaseAPI db, KernelTransaction ktx, String types) {
+        this.db = db;
+        this.ktx = ktx;
+        this.parallelThreshold = Util.toInteger(ApocConfiguration.get(CONFIG_PARALLEL_THRESHOLD, DEFAULT_PARALLEL_THRESHOLD));
+        TokenRead tokenRead = ktx.tokenRead();
+        for (Pair<RelationshipType, Direction> pair : parse(types)) {
+            int type = ANY_RELATIONSHIP_TYPE;
+            if (pair.first() != null) {
+                type = tokenRead.relationshipType(pair.first().name());
+                // an unknown type can't match any relationship
+                if (type == NO_TOKEN) continue;
+            }
+            switch (pair.other()) {
+                case OUTGOING: outgoing = addType(outgoing, type); break;
+                case INCOMING: incoming = addType(incoming, type); break;
+                default: both = addType(both, type);
+            }
+        }
+    }
+
+    private static int[] addType(int[] types, int type) {
+        if (types == null || type == ANY_RELATIONSHIP_TYPE) return null;
+        int[] result = Arrays.copyOf(types, types.length + 1);
+        result[types.length] = type;
+        return result;
+    }
+
+    /**
+     * @return the distinct nodes at each hop from 1 to <code>distance</code>, the start node only occurs in the first hop (via a self loop)
+     */
+    Roaring64NavigableMap[] hops(long startNode, int distance) {
+        Roaring64NavigableMap[] hops = new Roaring64NavigableMap[distance];
+        Roaring64NavigableMap seen = new Roaring64NavigableMap();
+        seen.addLong(startNode);
+        Roaring64NavigableMap frontier = new Roaring64NavigableMap();
+        frontier.addLong(startNode);
+        boolean parallelAllowed = !(ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges());
+
+        for (int i = 0; i < distance; i++) {
+            Roaring64NavigableMap next;
+            if (frontier.isEmpty()) {
+                next = frontier;
+            } else if (parallelAllowed && frontier.getLongCardinality() > parallelThreshold) {
+                next = expandParallel(frontier);
+            } else {
+                next = new Roaring64NavigableMap();
+                expand(ktx, frontier.getLongIterator(), next);
+            }
+            if (i > 0) {
+                next.andNot(seen);
+            }
+            seen.or(next);
+            hops[i] = next;
+            frontier = next;
+        }
+        return hops;
+    }
+
+    private Roaring64NavigableMap expandParallel(Roaring64NavigableMap frontier) {
+        ThreadToStatementContextBridge bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        int threads = 4 * Pools.getNoThreads(pool);
+        long chunkSize = Math.max(1, (frontier.getLongCardinality() + threads - 1) / threads);
+        List<Future<Roaring64NavigableMap>> futures = new ArrayList<>();
+        LongIterator it = frontier.getLongIterator();
+        while (it.hasNext()) {
+            long[] chunk = new long[(int) Math.min(chunkSize, frontier.getLongCardinality())];
+            int size = 0;
+            while (size < chunk.length && it.hasNext()) {
+                chunk[size++] = it.next();
+            }
+            long[] nodes = size == chunk.length ? chunk : Arrays.copyOf(chunk, size);
+            futures.add(pool.submit(() -> {
+                try (Transaction tx = db.beginTx()) {
+                    Roaring64NavigableMap result = new Roaring64NavigableMap();
+                    expand(bridge.getKernelTransactionBoundToThisThread(true), nodes, result);
+                    tx.success();
+                    return result;
+                }
+            }));
+        }
+        Roaring64NavigableMap next = new Roaring64NavigableMap();
+        for (Future<Roaring64NavigableMap> future : futures) {
+            try {
+                next.or(Pools.force(future));
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error expanding " + frontier.getLongCardinality() + " neighbours", e.getCause());
+            }
+        }
+        return next;
+    }
+
+    private void expand(KernelTransaction ktx, LongIterator nodes, Roaring64NavigableMap next) {
+        CursorFactory cursors = ktx.cursors();
+        try (NodeCursor nodeCursor = cursors.allocateNodeCursor()) {
+            while (nodes.hasNext()) {
+                expand(ktx.dataRead(), cursors, nodeCursor, nodes.next(), next);
+            }
+        }
+    }
+
+    private void expand(KernelTransaction ktx, long[] nodes, Roaring64NavigableMap next) {
+        CursorFactory cursors = ktx.cursors();
+        try (NodeCursor nodeCursor = cursors.allocateNodeCursor()) {
+            for (long node : nodes) {
+                expand(ktx.dataRead(), cursors, nodeCursor, node, next);
+            }
+        }
+    }
+
+    private void expand(Read read, CursorFactory cursors, NodeCursor nodeCursor, long node, Roaring64NavigableMap next) {
+        read.singleNode(node, nodeCursor);
+        if (!nodeCursor.next()) return;
+        if (outgoing == null || outgoing.length > 0) {
+            add(RelationshipSelections.outgoingCursor(cursors, nodeCursor, outgoing), next);
+        }
+        if (incoming == null || incoming.length > 0) {
+            add(RelationshipSelections.incomingCursor(cursors, nodeCursor, incoming), next);
+        }
+        if (both == null || both.length > 0) {
+            add(RelationshipSelections.allCursor(cursors, nodeCursor, both), next);
+        }
+    }
+
+    private static void add(RelationshipSelectionCursor rels, Roaring64NavigableMap next) {
+        try (RelationshipSelectionCursor cursor = rels) {
+            while (cursor.next()) {
+                next.addLong(cursor.otherNodeReference());
+            }
+        }
+    }
+}
@@ -3,87 +3,49 @@ package apoc.neighbors;
 import apoc.result.*;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.Node;
-import org.neo4j.helpers.collection.Pair;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.*;
-import org.roaringbitmap.RoaringBitmap;
-import org.roaringbitmap.longlong.LongBitmapDataProvider;
 import org.roaringbitmap.longlong.Roaring64NavigableMap;
 
 import java.util.*;
 import java.util.stream.*;
 
-import static apoc.path.RelationshipTypeAndDirections.parse;
-
 public class Neighbors {
 
     @Context
     public GraphDatabaseService db;
 
-    @Procedure("apoc.neighbors.tohop")
-    @Description("apoc.neighbors.tohop(node, rel-direction-pattern, distance) - returns distinct nodes of the given relationships in the pattern up to a certain distance, can use '>' or '<' for all outgoing or incoming relationships")
-    public Stream<NodeResult> neighbors(@Name("node") Node node, @Name(value = "types", defaultValue = "") String types, @Name(value="distance", defaultValue = "1") Long distance) {
-        if (distance < 1) return Stream.empty();
-        if (types==null || types.isEmpty()) return Stream.empty();
+    @Context
+    public KernelTransaction ktx;
 
-        // Initialize bitmaps for iteration
-        Roaring64NavigableMap seen = new Roaring64NavigableMap();
-        Roaring64NavigableMap nextA = new Roaring64NavigableMap();
-        Roaring64NavigableMap nextB = new Roaring64NavigableMap();
-        long nodeId = node.getId();
-        seen.addLong(nodeId);
-        Iterator<Long> iterator;
+    private Roaring64NavigableMap[] hops(Node node, String types, Long distance) {
+        return new HopExpander((GraphDatabaseAPI) db, ktx, types).hops(node.getId(), distance.intValue());
+    }
 
-        // First Hop
-        for (Pair<RelationshipType, Direction> pair : parse(types)) {
-            for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                nextB.addLong(r.getOtherNodeId(nodeId));
-            }
+    // all distinct nodes up to the distance, without the start node
+    private Roaring64NavigableMap toHop(Node node, String types, Long distance) {
+        Roaring64NavigableMap[] hops = hops(node, types, distance);
+        Roaring64NavigableMap seen = hops[0];
+        for (int i = 1; i < hops.length; i++) {
+            seen.or(hops[i]);
         }
+        seen.removeLong(node.getId());
+        return seen;
+    }
 
-        for(int i = 1; i < distance; i++) {
-            // next even Hop
-            nextB.andNot(seen);
-            seen.or(nextB);
-            nextA.clear();
-            iterator = nextB.iterator();
-            while (iterator.hasNext()) {
-                nodeId = iterator.next();
-                node = db.getNodeById(nodeId);
-                for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                    for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                        nextA.add((r.getOtherNodeId(nodeId)));
-                    }
-                }
-            }
+    private Stream<Node> nodes(Roaring64NavigableMap nodeIds) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(nodeIds.iterator(), Spliterator.SORTED), false)
+                .map(db::getNodeById);
+    }
 
-            i++;
-            if (i < distance) {
-                // next odd Hop
-                nextA.andNot(seen);
-                seen.or(nextA);
-                nextB.clear();
-                iterator = nextA.iterator();
-                while (iterator.hasNext()) {
-                    nodeId = iterator.next();
-                    node = db.getNodeById(nodeId);
-                    for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                        for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                            nextB.add(r.getOtherNodeId(nodeId));
-                        }
-                    }
-                }
-            }
-        }
-        if((distance % 2) == 0) {
-            seen.or(nextA);
-        } else {
-            seen.or(nextB);
-        }
-        // remove starting node
-        seen.removeLong(node.getId());
+    @Procedure("apoc.neighbors.tohop")
+    @Description("apoc.neighbors.tohop(node, rel-direction-pattern, distance) - returns distinct nodes of the given relationships in the pattern up to a certain distance, can use '>' or '<' for all outgoing or incoming relationships")
+    public Stream<NodeResult> neighbors(@Name("node") Node node, @Name(value = "types", defaultValue = "") String types, @Name(value="distance", defaultValue = "1") Long distance) {
+        if (distance < 1) return Stream.empty();
+        if (types==null || types.isEmpty()) return Stream.empty();
 
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(seen.iterator(), Spliterator.SORTED), false)
-                .map(x -> new NodeResult(db.getNodeById(x)));
+        return nodes(toHop(node, types, distance)).map(NodeResult::new);
     }
 
     @Procedure("apoc.neighbors.tohop.count")
@@ -92,64 +54,7 @@ public class Neighbors {
         if (distance < 1) return Stream.empty();
         if (types==null || types.isEmpty()) return Stream.empty();
 
-        // Initialize bitmaps for iteration
-        Roaring64NavigableMap seen = new Roaring64NavigableMap();
-        Roaring64NavigableMap nextA = new Roaring64NavigableMap();
-        Roaring64NavigableMap nextB = new Roaring64NavigableMap();
-        long nodeId = node.getId();
-        seen.add(nodeId);
-        Iterator<Long> iterator;
-
-        // First Hop
-        for (Pair<RelationshipType, Direction> pair : parse(types)) {
-            for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                nextB.add(r.getOtherNodeId(nodeId));
-            }
-        }
-
-        for(int i = 1; i < distance; i++) {
-            // next even Hop
-            nextB.andNot(seen);
-            seen.or(nextB);
-            nextA.clear();
-            iterator = nextB.iterator();
-            while (iterator.hasNext()) {
-                nodeId = iterator.next();
-                node = db.getNodeById(nodeId);
-                for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                    for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                        nextA.add(r.getOtherNodeId(nodeId));
-                    }
-                }
-            }
-
-            i++;
-            if (i < distance) {
-                // next odd Hop
-                nextA.andNot(seen);
-                seen.or(nextA);
-                nextB.clear();
-                iterator = nextA.iterator();
-                while (iterator.hasNext()) {
-                    nodeId = iterator.next();
-                    node = db.getNodeById(nodeId);
-                    for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                        for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                            nextB.add(r.getOtherNodeId(nodeId));
-                        }
-                    }
-                }
-            }
-        }
-        if((distance % 2) == 0) {
-            seen.or(nextA);
-        } else {
-            seen.or(nextB);
-        }
-        // remove starting node
-        seen.removeLong(node.getId());
-
-        return Stream.of(new LongResult(seen.getLongCardinality()));
+        return Stream.of(new LongResult(toHop(node, types, distance).getLongCardinality()));
     }
 
     @Procedure("apoc.neighbors.byhop")
@@ -158,42 +63,7 @@ public class Neighbors {
         if (distance < 1) return Stream.empty();
         if (types==null || types.isEmpty()) return Stream.empty();
 
-        // Initialize bitmaps for iteration
-        Roaring64NavigableMap[] seen = new Roaring64NavigableMap[distance.intValue()];
-        for(int i = 0; i < distance; i++) {
-            seen[i] = new Roaring64NavigableMap();
-        }
-        long nodeId = node.getId();
-
-        Iterator<Long> iterator;
-
-        // First Hop
-        for (Pair<RelationshipType, Direction> pair : parse(types)) {
-            for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                seen[0].add(r.getOtherNodeId(nodeId));
-            }
-        }
-
-        for(int i = 1; i < distance; i++) {
-            iterator = seen[i-1].iterator();
-            while (iterator.hasNext()) {
-                node = db.getNodeById(iterator.next());
-                for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                    for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                        seen[i].add(r.getOtherNodeId(node.getId()));
-                    }
-                }
-            }
-            for(int j = 0; j < i; j++){
-                seen[i].andNot(seen[j]);
-                seen[i].removeLong(nodeId);
-            }
-        }
-
-        return Arrays.stream(seen).map(x -> new NodeListResult(
-                StreamSupport.stream(Spliterators.spliteratorUnknownSize(x.iterator(), Spliterator.SORTED), false)
-                        .map(y -> db.getNodeById((long) y))
-                        .collect(Collectors.toList())));
+        return Arrays.stream(hops(node, types, distance)).map(x -> new NodeListResult(nodes(x).collect(Collectors.toList())));
     }
 
     @Procedure("apoc.neighbors.byhop.count")
@@ -202,41 +72,9 @@ public class Neighbors {
         if (distance < 1) return Stream.empty();
         if (types==null || types.isEmpty()) return Stream.empty();
 
-        // Initialize bitmaps for iteration
-        Roaring64NavigableMap[] seen = new Roaring64NavigableMap[distance.intValue()];
-        for(int i = 0; i < distance; i++) {
-            seen[i] = new Roaring64NavigableMap();
-        }
-        long nodeId = node.getId();
-
-        Iterator<Long> iterator;
-
-        // First Hop
-        for (Pair<RelationshipType, Direction> pair : parse(types)) {
-            for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                seen[0].add(r.getOtherNodeId(nodeId));
-            }
-        }
-
-        for(int i = 1; i < distance; i++) {
-            iterator = seen[i-1].iterator();
-            while (iterator.hasNext()) {
-                node = db.getNodeById(iterator.next());
-                for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                    for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                        seen[i].add(r.getOtherNodeId(node.getId()));
-                    }
-                }
-            }
-            for(int j = 0; j < i; j++){
-                seen[i].andNot(seen[j]);
-                seen[i].removeLong(nodeId);
-            }
-        }
-
         ArrayList counts = new ArrayList<Long>();
-        for(int i = 0; i < distance; i++) {
-            counts.add(seen[i].getLongCardinality());
+        for (Roaring64NavigableMap hop : hops(node, types, distance)) {
+            counts.add(hop.getLongCardinality());
         }
 
         return Stream.of(new ListResult(counts));
@@ -248,40 +86,7 @@ public class Neighbors {
         if (distance < 1) return Stream.empty();
         if (types==null || types.isEmpty()) return Stream.empty();
 
-        // Initialize bitmaps for iteration
-        Roaring64NavigableMap[] seen = new Roaring64NavigableMap[distance.intValue()];
-        for(int i = 0; i < distance; i++) {
-            seen[i] = new Roaring64NavigableMap();
-        }
-        long nodeId = node.getId();
-
-        Iterator<Long> iterator;
-
-        // First Hop
-        for (Pair<RelationshipType, Direction> pair : parse(types)) {
-            for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                seen[0].add(r.getOtherNodeId(nodeId));
-            }
-        }
-
-        for(int i = 1; i < distance; i++) {
-            iterator = seen[i-1].iterator();
-            while (iterator.hasNext()) {
-                node = db.getNodeById(iterator.next());
-                for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                    for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                        seen[i].add(r.getOtherNodeId(node.getId()));
-                    }
-                }
-            }
-            for(int j = 0; j < i; j++){
-                seen[i].andNot(seen[j]);
-                seen[i].removeLong(nodeId);
-            }
-        }
-
-        return StreamSupport
-                .stream(Spliterators.spliteratorUnknownSize(seen[distance.intValue() - 1].iterator(), Spliterator.SORTED), false).map(y -> new NodeResult(db.getNodeById(y)));
+        return nodes(hops(node, types, distance)[distance.intValue() - 1]).map(NodeResult::new);
     }
 
     @Procedure("apoc.neighbors.athop.count")
@@ -290,38 +95,6 @@ public class Neighbors {
         if (distance < 1) return Stream.empty();
         if (types == null || types.isEmpty()) return Stream.empty();
 
-        // Initialize bitmaps for iteration
-        Roaring64NavigableMap[] seen = new Roaring64NavigableMap[distance.intValue()];
-        for (int i = 0; i < distance; i++) {
-            seen[i] = new Roaring64NavigableMap();
-        }
-        long nodeId = node.getId();
-
-        Iterator<Long> iterator;
-
-        // First Hop
-        for (Pair<RelationshipType, Direction> pair : parse(types)) {
-            for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                seen[0].add(r.getOtherNodeId(nodeId));
-            }
-        }
-
-        for (int i = 1; i < distance; i++) {
-            iterator = seen[i - 1].iterator();
-            while (iterator.hasNext()) {
-                node = db.getNodeById(iterator.next());
-                for (Pair<RelationshipType, Direction> pair : parse(types)) {
-                    for (Relationship r : node.getRelationships(pair.first(), pair.other())) {
-                        seen[i].add(r.getOtherNodeId(node.getId()));
-                    }
-                }
-            }
-            for (int j = 0; j < i; j++) {
-                seen[i].andNot(seen[j]);
-                seen[i].removeLong(nodeId);
-            }
-        }
-
-        return Stream.of(new LongResult(seen[distance.intValue() - 1].getLongCardinality()));
+        return Stream.of(new LongResult(hops(node, types, distance)[distance.intValue() - 1].getLongCardinality()));
     }
 }
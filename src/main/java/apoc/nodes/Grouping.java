@@ -102,7 +102,7 @@ public class Grouping {
 
         List<Future> futures = new ArrayList<>(1000);
 
-        ExecutorService pool = Pools.DEFAULT;
+        ExecutorService pool = Pools.ANALYTICS;
         for (String labelName : labels) {
             Label label = Label.label(labelName);
             Label[] singleLabel = {label};
@@ -0,0 +1,460 @@
+package apoc.path;
+
+import apoc.ApocConfiguration;
+import apoc.Pools;
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.helpers.collection.Pair;
+import org.neo4j.internal.kernel.api.CursorFactory;
+import org.neo4j.internal.kernel.api.LabelSet;
+import org.neo4j.internal.kernel.api.NodeCursor;
+import org.neo4j.internal.kernel.api.Read;
+import org.neo4j.internal.kernel.api.TokenRead;
+import org.neo4j.internal.kernel.api.exceptions.LabelNotFoundKernelException;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static apoc.path.PathExplorer.NodeFilter.*;
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
+
+/**
+ * Level synchronous breadth first expansion with NODE_GLOBAL uniqueness on the kernel cursor API,
+ * used by apoc.path.subgraphNodes, subgraphAll and spanningTree.
+ *
+ * Visited nodes are kept in a bitmap. Frontiers of at least <code>apoc.path.expand.parallel_threshold</code> nodes
+ * are expanded and filtered in chunks on the analytics pool, each chunk in its own read transaction.
+ * The candidates of all chunks are then claimed in frontier order, so nodes, order and spanning tree paths
+ * are the same as with a single threaded breadth first traversal.
+ */
+class FrontierExpander {
+
+    static final String CONFIG_PARALLEL_THRESHOLD = "path.expand.parallel_threshold";
+    static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+    private static final byte INCLUDES = 1;
+    private static final byte CONTINUES = 2;
+
+    private final GraphDatabaseAPI db;
+    private final KernelTransaction ktx;
+    private final ExecutorService pool = Pools.ANALYTICS;
+    private final int parallelThreshold;
+    private final boolean trackPaths;
+
+    private final RelationshipSequenceExpander relExpander;
+    private final LabelSequenceEvaluator labelEvaluator;
+    private final long maxLevel;
+    private final Roaring64NavigableMap blacklist;
+    private final Roaring64NavigableMap whitelist;
+    private final Roaring64NavigableMap endNodes;
+    private final Roaring64NavigableMap terminatorNodes;
+
+    private final Map<Integer, String> labelNames = new ConcurrentHashMap<>();
+    private final Map<List<Pair<RelationshipType, Direction>>, Selection[]> selections = new IdentityHashMap<>();
+
+    FrontierExpander(GraphDatabaseAPI db, KernelTransaction ktx, String pathFilter, String labelFilter, long maxLevel,
+                     boolean filterStartNode, EnumMap<PathExplorer.NodeFilter, List<Node>> nodeFilter,
+                     String sequence, boolean beginSequenceAtStart, boolean trackPaths) {
+        this.db = db;
+        this.ktx = ktx;
+        this.maxLevel = maxLevel;
+        this.trackPaths = trackPaths;
+        this.parallelThreshold = Util.toInteger(ApocConfiguration.get(CONFIG_PARALLEL_THRESHOLD, DEFAULT_PARALLEL_THRESHOLD));
+
+        // same interpretation of sequence, relationshipFilter and labelFilter as PathExplorer.traverse
+        if (sequence != null && !sequence.trim().isEmpty()) {
+            String[] sequenceSteps = sequence.split(",");
+            List<String> labelSequenceList = new ArrayList<>();
+            List<String> relSequenceList = new ArrayList<>();
+
+            for (int index = 0; index < sequenceSteps.length; index++) {
+                List<String> seq = (beginSequenceAtStart ? index : index - 1) % 2 == 0 ? labelSequenceList : relSequenceList;
+                seq.add(sequenceSteps[index]);
+            }
+            this.relExpander = new RelationshipSequenceExpander(relSequenceList, beginSequenceAtStart);
+            this.labelEvaluator = new LabelSequenceEvaluator(labelSequenceList, filterStartNode, beginSequenceAtStart, -1);
+        } else {
+            this.relExpander = pathFilter != null && !pathFilter.trim().isEmpty() ? new RelationshipSequenceExpander(pathFilter.trim(), beginSequenceAtStart) : null;
+            this.labelEvaluator = labelFilter != null && !labelFilter.trim().isEmpty() ? new LabelSequenceEvaluator(labelFilter.trim(), filterStartNode, beginSequenceAtStart, -1) : null;
+        }
+
+        EnumMap<PathExplorer.NodeFilter, List<Node>> filter = nodeFilter == null ? new EnumMap<>(PathExplorer.NodeFilter.class) : nodeFilter;
+        this.blacklist = bitmap(filter.get(BLACKLIST_NODES));
+        this.endNodes = bitmap(filter.get(END_NODES));
+        this.terminatorNodes = bitmap(filter.get(TERMINATOR_NODES));
+        Roaring64NavigableMap whitelist = bitmap(filter.get(WHITELIST_NODES));
+        if (whitelist != null) {
+            // ensure endNodes and terminatorNodes are whitelisted
+            if (endNodes != null) whitelist.or(endNodes);
+            if (terminatorNodes != null) whitelist.or(terminatorNodes);
+        }
+        this.whitelist = whitelist;
+    }
+
+    private static Roaring64NavigableMap bitmap(List<Node> nodes) {
+        if (nodes == null || nodes.isEmpty()) return null;
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        for (Node node : nodes) {
+            bitmap.addLong(node.getId());
+        }
+        return bitmap;
+    }
+
+    Stream<Node> nodes(List<Node> startNodes) {
+        Traversal traversal = new Traversal(startNodes);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(traversal, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(entry -> db.getNodeById(traversal.nodeId(entry)));
+    }
+
+    Stream<Path> paths(List<Node> startNodes) {
+        if (!trackPaths) throw new IllegalStateException("paths are not tracked");
+        Traversal traversal = new Traversal(startNodes);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(traversal, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(traversal::path);
+    }
+
+    private static class Selection {
+        final int[] types;
+        final Direction direction;
+
+        Selection(int[] types, Direction direction) {
+            this.types = types;
+            this.direction = direction;
+        }
+    }
+
+    private Selection[] selection(int depth, TokenRead tokenRead) {
+        List<Pair<RelationshipType, Direction>> stepRels = relExpander == null ? null : relExpander.stepRels(depth);
+        return selections.computeIfAbsent(stepRels, (rels) -> {
+            if (rels == null) return new Selection[]{new Selection(null, Direction.BOTH)};
+            List<Selection> result = new ArrayList<>(rels.size());
+            for (Pair<RelationshipType, Direction> pair : rels) {
+                if (pair.first() == null) {
+                    result.add(new Selection(null, pair.other()));
+                } else {
+                    int type = tokenRead.relationshipType(pair.first().name());
+                    // an unknown type can't match any relationship
+                    if (type != NO_TOKEN) result.add(new Selection(new int[]{type}, pair.other()));
+                }
+            }
+            return result.toArray(new Selection[result.size()]);
+        });
+    }
+
+    private byte evaluate(Reader reader, long nodeId, int depth) {
+        boolean includes = true, continues = true;
+        if (labelEvaluator != null) {
+            Evaluation evaluation = labelEvaluator.evaluate(depth, () -> reader.labels(nodeId));
+            includes = evaluation.includes();
+            continues = evaluation.continues();
+        }
+        if (maxLevel != -1 && depth >= maxLevel) {
+            continues = false;
+        }
+        if (blacklist != null && blacklist.contains(nodeId)) {
+            return 0;
+        }
+        if (endNodes != null || terminatorNodes != null) {
+            boolean terminator = terminatorNodes != null && terminatorNodes.contains(nodeId);
+            includes &= terminator || (endNodes != null && endNodes.contains(nodeId));
+            continues &= !terminator;
+        }
+        if (whitelist != null && !whitelist.contains(nodeId)) {
+            return 0;
+        }
+        return (byte) ((includes ? INCLUDES : 0) | (continues ? CONTINUES : 0));
+    }
+
+    /**
+     * Cursors of one transaction, either the one of the procedure or the one of a worker thread.
+     */
+    private class Reader implements AutoCloseable {
+        final Read read;
+        final TokenRead tokenRead;
+        final CursorFactory cursors;
+        final NodeCursor nodeCursor;
+        final NodeCursor labelCursor;
+
+        Reader(KernelTransaction ktx) {
+            this.read = ktx.dataRead();
+            this.tokenRead = ktx.tokenRead();
+            this.cursors = ktx.cursors();
+            this.nodeCursor = cursors.allocateNodeCursor();
+            this.labelCursor = cursors.allocateNodeCursor();
+        }
+
+        Set<String> labels(long nodeId) {
+            read.singleNode(nodeId, labelCursor);
+            if (!labelCursor.next()) return Collections.emptySet();
+            LabelSet labels = labelCursor.labels();
+            Set<String> names = new HashSet<>(labels.numberOfLabels() * 2);
+            for (int i = 0; i < labels.numberOfLabels(); i++) {
+                names.add(labelNames.computeIfAbsent(labels.label(i), this::labelName));
+            }
+            return names;
+        }
+
+        private String labelName(int label) {
+            try {
+                return tokenRead.nodeLabelName(label);
+            } catch (LabelNotFoundKernelException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Expands the frontier nodes <code>from</code> until <code>to</code> and evaluates the neighbours that weren't visited on an earlier level.
+         */
+        Candidates expand(long[] frontier, int from, int to, Selection[] selections, int depth, Roaring64NavigableMap visited) {
+            Candidates candidates = new Candidates(Math.max(16, (to - from) * 2));
+            for (int pos = from; pos < to; pos++) {
+                read.singleNode(frontier[pos], nodeCursor);
+                if (!nodeCursor.next()) continue;
+                for (Selection selection : selections) {
+                    try (RelationshipSelectionCursor rels = select(selection)) {
+                        while (rels.next()) {
+                            long other = rels.otherNodeReference();
+                            if (visited.contains(other)) continue;
+                            candidates.add(other, rels.relationshipReference(), pos, evaluate(this, other, depth));
+                        }
+                    }
+                }
+            }
+            return candidates;
+        }
+
+        private RelationshipSelectionCursor select(Selection selection) {
+            switch (selection.direction) {
+                case OUTGOING:
+                    return RelationshipSelections.outgoingCursor(cursors, nodeCursor, selection.types);
+                case INCOMING:
+                    return RelationshipSelections.incomingCursor(cursors, nodeCursor, selection.types);
+                default:
+                    return RelationshipSelections.allCursor(cursors, nodeCursor, selection.types);
+            }
+        }
+
+        @Override
+        public void close() {
+            nodeCursor.close();
+            labelCursor.close();
+        }
+    }
+
+    private static class Candidates {
+        long[] nodes;
+        long[] rels;
+        int[] parents;
+        byte[] evaluations;
+        int size;
+
+        Candidates(int capacity) {
+            nodes = new long[capacity];
+            rels = new long[capacity];
+            parents = new int[capacity];
+            evaluations = new byte[capacity];
+        }
+
+        void add(long node, long rel, int parent, byte evaluation) {
+            if (size == nodes.length) {
+                int capacity = size * 2;
+                nodes = Arrays.copyOf(nodes, capacity);
+                rels = Arrays.copyOf(rels, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                evaluations = Arrays.copyOf(evaluations, capacity);
+            }
+            nodes[size] = node;
+            rels[size] = rel;
+            parents[size] = parent;
+            evaluations[size] = evaluation;
+            size++;
+        }
+    }
+
+    /**
+     * Iterates over the entries of the included nodes in breadth first order, expanding the next level on demand.
+     * With <code>trackPaths</code> an entry is an index into the tree of discovered nodes, otherwise the node id itself.
+     */
+    private class Traversal implements Iterator<Long> {
+        private final Roaring64NavigableMap visited = new Roaring64NavigableMap();
+        private final boolean parallelAllowed;
+
+        private long[] frontier;
+        private int[] frontierEntries;
+        private int frontierSize;
+        private long[] nextFrontier = new long[16];
+        private int[] nextFrontierEntries = new int[16];
+        private int nextFrontierSize;
+        private int depth;
+
+        private long[] results = new long[16];
+        private int resultsSize;
+        private int resultsPos;
+
+        // tree of discovered nodes, only maintained with trackPaths
+        private long[] treeNodes = new long[16];
+        private long[] treeRels = new long[16];
+        private int[] treeParents = new int[16];
+        private int treeSize;
+
+        Traversal(List<Node> startNodes) {
+            this.parallelAllowed = !(ktx instanceof TxStateHolder && ((TxStateHolder) ktx).hasTxStateWithChanges());
+            this.frontier = new long[16];
+            this.frontierEntries = new int[16];
+            try (Reader reader = new Reader(ktx)) {
+                for (Node node : startNodes) {
+                    long nodeId = node.getId();
+                    claim(nodeId, -1, -1, evaluate(reader, nodeId, 0));
+                }
+            }
+            swapFrontier();
+        }
+
+        private void claim(long nodeId, long relId, int parentEntry, byte evaluation) {
+            if (visited.contains(nodeId)) return;
+            visited.addLong(nodeId);
+            if (evaluation == 0) return;
+            int entry = -1;
+            if (trackPaths) {
+                entry = addToTree(nodeId, relId, parentEntry);
+            }
+            if ((evaluation & INCLUDES) != 0) {
+                if (resultsSize == results.length) results = Arrays.copyOf(results, resultsSize * 2);
+                results[resultsSize++] = trackPaths ? entry : nodeId;
+            }
+            if ((evaluation & CONTINUES) != 0) {
+                if (nextFrontierSize == nextFrontier.length) {
+                    nextFrontier = Arrays.copyOf(nextFrontier, nextFrontierSize * 2);
+                    nextFrontierEntries = Arrays.copyOf(nextFrontierEntries, nextFrontierSize * 2);
+                }
+                nextFrontier[nextFrontierSize] = nodeId;
+                nextFrontierEntries[nextFrontierSize] = entry;
+                nextFrontierSize++;
+            }
+        }
+
+        private int addToTree(long nodeId, long relId, int parent) {
+            if (treeSize == treeNodes.length) {
+                int capacity = treeSize * 2;
+                treeNodes = Arrays.copyOf(treeNodes, capacity);
+                treeRels = Arrays.copyOf(treeRels, capacity);
+                treeParents = Arrays.copyOf(treeParents, capacity);
+            }
+            treeNodes[treeSize] = nodeId;
+            treeRels[treeSize] = relId;
+            treeParents[treeSize] = parent;
+            return treeSize++;
+        }
+
+        private void swapFrontier() {
+            long[] nodes = frontier;
+            int[] entries = frontierEntries;
+            frontier = nextFrontier;
+            frontierEntries = nextFrontierEntries;
+            frontierSize = nextFrontierSize;
+            nextFrontier = nodes;
+            nextFrontierEntries = entries;
+            nextFrontierSize = 0;
+        }
+
+        private void expandLevel() {
+            resultsSize = 0;
+            resultsPos = 0;
+            int nextDepth = depth + 1;
+            List<Candidates> chunks;
+            Selection[] levelSelections;
+            try (Reader reader = new Reader(ktx)) {
+                levelSelections = selection(depth, reader.tokenRead);
+                if (parallelAllowed && frontierSize >= parallelThreshold) {
+                    chunks = expandParallel(levelSelections, nextDepth);
+                } else {
+                    chunks = Collections.singletonList(reader.expand(frontier, 0, frontierSize, levelSelections, nextDepth, visited));
+                }
+            }
+            for (Candidates candidates : chunks) {
+                for (int i = 0; i < candidates.size; i++) {
+                    claim(candidates.nodes[i], candidates.rels[i], frontierEntries[candidates.parents[i]], candidates.evaluations[i]);
+                }
+            }
+            depth = nextDepth;
+            swapFrontier();
+        }
+
+        private List<Candidates> expandParallel(Selection[] levelSelections, int nextDepth) {
+            ThreadToStatementContextBridge bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+            int chunkSize = Math.max(1, (frontierSize + 4 * Pools.getNoThreads(pool) - 1) / (4 * Pools.getNoThreads(pool)));
+            long[] nodes = frontier;
+            List<Future<Candidates>> futures = new ArrayList<>();
+            for (int from = 0; from < frontierSize; from += chunkSize) {
+                int start = from, end = Math.min(frontierSize, from + chunkSize);
+                futures.add(pool.submit(() -> {
+                    try (Transaction tx = db.beginTx();
+                         Reader reader = new Reader(bridge.getKernelTransactionBoundToThisThread(true))) {
+                        Candidates candidates = reader.expand(nodes, start, end, levelSelections, nextDepth, visited);
+                        tx.success();
+                        return candidates;
+                    }
+                }));
+            }
+            List<Candidates> chunks = new ArrayList<>(futures.size());
+            for (Future<Candidates> future : futures) {
+                try {
+                    chunks.add(Pools.force(future));
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw new RuntimeException("Error expanding frontier of " + frontierSize + " nodes at depth " + depth, e.getCause());
+                }
+            }
+            return chunks;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (resultsPos == resultsSize) {
+                if (frontierSize == 0) return false;
+                expandLevel();
+            }
+            return true;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return results[resultsPos++];
+        }
+
+        long nodeId(long entry) {
+            return trackPaths ? treeNodes[(int) entry] : entry;
+        }
+
+        Path path(long entry) {
+            Deque<Integer> entries = new ArrayDeque<>();
+            for (int e = (int) entry; e != -1; e = treeParents[e]) {
+                entries.push(e);
+            }
+            PathImpl.Builder builder = new PathImpl.Builder(db.getNodeById(treeNodes[entries.pop()]));
+            for (Integer e : entries) {
+                builder = builder.push(db.getRelationshipById(treeRels[e]));
+            }
+            return builder.build();
+        }
+    }
+}
@@ -27,6 +27,11 @@ public class LabelMatcher {
             return true;
         }
 
+        @Override
+        public boolean matchesLabels(Set<String> nodeLabels) {
+            return true;
+        }
+
         @Override
         public LabelMatcher addLabel(String label) {
             return this; // no-op
@@ -66,9 +71,10 @@ public class LabelMatcher {
     }
 
     public boolean matchesLabels(Node node) {
-        Set<String> nodeLabels = new HashSet<>();
-        node.getLabels().forEach(label -> nodeLabels.add(label.name()));
+        return matchesLabels(labelNames(node));
+    }
 
+    public boolean matchesLabels(Set<String> nodeLabels) {
         for ( String label : labels ) {
             if (nodeLabels.contains(label)) {
                 return true;
@@ -89,6 +95,12 @@ public class LabelMatcher {
     public boolean isEmpty() {
         return labels.isEmpty() && (compoundLabels == null || compoundLabels.isEmpty());
     }
+
+    public static Set<String> labelNames(Node node) {
+        Set<String> nodeLabels = new HashSet<>();
+        node.getLabels().forEach(label -> nodeLabels.add(label.name()));
+        return nodeLabels;
+    }
 }
 
 
@@ -1,6 +1,5 @@
 package apoc.path;
 
-import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.traversal.Evaluation;
 import org.neo4j.graphdb.traversal.Evaluator;
@@ -9,6 +8,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.neo4j.graphdb.traversal.Evaluation.EXCLUDE_AND_CONTINUE;
 import static org.neo4j.graphdb.traversal.Evaluation.INCLUDE_AND_CONTINUE;
@@ -64,8 +65,13 @@ public class LabelSequenceEvaluator implements Evaluator {
 
     @Override
     public Evaluation evaluate(Path path) {
-        int depth = path.length();
-        Node node = path.endNode();
+        return evaluate(path.length(), () -> LabelMatcher.labelNames(path.endNode()));
+    }
+
+    /**
+     * Evaluates a node at the given depth, the labels of the node are only requested when a matcher needs them.
+     */
+    public Evaluation evaluate(int depth, Supplier<Set<String>> nodeLabels) {
         boolean belowMinLevel = depth < minLevel;
 
         // if start node shouldn't be filtered, exclude/include based on if using termination/endnode filter or not
@@ -77,6 +83,6 @@ public class LabelSequenceEvaluator implements Evaluator {
         // the user may want the sequence to begin at the start node (default), or the sequence may only apply from the next node on
         LabelMatcherGroup matcherGroup = sequenceMatchers.get((beginSequenceAtStart ? depth : depth - 1) % sequenceMatchers.size());
 
-        return matcherGroup.evaluate(node, belowMinLevel);
+        return matcherGroup.evaluate(nodeLabels.get(), belowMinLevel);
     }
 }
\ No newline at end of file
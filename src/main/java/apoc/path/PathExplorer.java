@@ -10,6 +10,8 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.traversal.*;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Description;
@@ -32,6 +34,9 @@ public class PathExplorer {
 	@Context
     public Log log;
 
+	@Context
+	public KernelTransaction ktx;
+
 	@Procedure("apoc.path.expand")
 	@Description("apoc.path.expand(startNode <id>|Node|list, 'TYPE|TYPE_OUT>|<TYPE_IN', '+YesLabel|-NoLabel', minLevel, maxLevel ) yield path - expand from start node following the given relationships from min to max-level adhering to the label filters")
 	public Stream<PathResult> explorePath(@Name("start") Object start
@@ -61,6 +66,10 @@ public class PathExplorer {
 			throw new IllegalArgumentException("minLevel not supported in subgraphNodes");
 		}
 
+		FrontierExpander expander = frontierExpander(configMap, false);
+		if (expander != null) {
+			return optionalStream(limit(expander.nodes(startToNodes(start)), configMap), configMap).map(NodeResult::new);
+		}
 		return expandConfigPrivate(start, configMap).map( path -> path == null ? new NodeResult(null) : new NodeResult(path.endNode()) );
 	}
 
@@ -75,8 +84,10 @@ public class PathExplorer {
 			throw new IllegalArgumentException("minLevel not supported in subgraphAll");
 		}
 
-		List<Node> subgraphNodes = expandConfigPrivate(start, configMap).map( Path::endNode ).collect(Collectors.toList());
-		List<Relationship> subgraphRels = Cover.coverNodes(subgraphNodes).collect(Collectors.toList());
+		FrontierExpander expander = frontierExpander(configMap, false);
+		List<Node> subgraphNodes = (expander != null ? limit(expander.nodes(startToNodes(start)), configMap) : expandConfigPrivate(start, configMap).map( Path::endNode ))
+				.collect(Collectors.toList());
+		List<Relationship> subgraphRels = Cover.coverNodes(db, ktx, subgraphNodes).collect(Collectors.toList());
 
 		return Stream.of(new GraphResult(subgraphNodes, subgraphRels));
 	}
@@ -91,9 +102,40 @@ public class PathExplorer {
 			throw new IllegalArgumentException("minLevel not supported in spanningTree");
 		}
 
+		FrontierExpander expander = frontierExpander(configMap, true);
+		if (expander != null) {
+			return optionalStream(limit(expander.paths(startToNodes(start)), configMap), configMap).map( PathResult::new );
+		}
 		return expandConfigPrivate(start, configMap).map( PathResult::new );
 	}
 
+	/**
+	 * The kernel based breadth first expansion for the NODE_GLOBAL subgraph procedures, null when a depth first expansion was requested.
+	 */
+	private FrontierExpander frontierExpander(Map<String,Object> config, boolean trackPaths) throws Exception {
+		if (!Util.toBoolean(config.getOrDefault("bfs", true))) {
+			return null;
+		}
+		return new FrontierExpander((GraphDatabaseAPI) db, ktx,
+				(String) config.getOrDefault("relationshipFilter", null),
+				(String) config.getOrDefault("labelFilter", null),
+				Util.toLong(config.getOrDefault("maxLevel", "-1")),
+				Util.toBoolean(config.getOrDefault("filterStartNode", false)),
+				nodeFilter(config),
+				(String) config.getOrDefault("sequence", null),
+				Util.toBoolean(config.getOrDefault("beginSequenceAtStart", true)),
+				trackPaths);
+	}
+
+	private <T> Stream<T> limit(Stream<T> stream, Map<String,Object> config) {
+		long limit = Util.toLong(config.getOrDefault("limit", "-1"));
+		return limit == -1 ? stream : stream.limit(limit);
+	}
+
+	private <T> Stream<T> optionalStream(Stream<T> stream, Map<String,Object> config) {
+		return Util.toBoolean(config.getOrDefault("optional", false)) ? optionalStream(stream) : stream;
+	}
+
 	private Uniqueness getUniqueness(String uniqueness) {
 		for (Uniqueness u : Uniqueness.values()) {
 			if (u.name().equalsIgnoreCase(uniqueness)) return u;
@@ -146,6 +188,18 @@ public class PathExplorer {
 		String sequence = (String) config.getOrDefault("sequence", null);
 		boolean beginSequenceAtStart = Util.toBoolean(config.getOrDefault("beginSequenceAtStart", true));
 
+		EnumMap<NodeFilter, List<Node>> nodeFilter = nodeFilter(config);
+
+		Stream<Path> results = explorePathPrivate(nodes, relationshipFilter, labelFilter, minLevel, maxLevel, bfs, getUniqueness(uniqueness), filterStartNode, limit, nodeFilter, sequence, beginSequenceAtStart);
+
+		if (optional) {
+			return optionalStream(results);
+		} else {
+			return results;
+		}
+	}
+
+	private EnumMap<NodeFilter, List<Node>> nodeFilter(Map<String,Object> config) throws Exception {
 		List<Node> endNodes = startToNodes(config.get("endNodes"));
 		List<Node> terminatorNodes = startToNodes(config.get("terminatorNodes"));
 		List<Node> whitelistNodes = startToNodes(config.get("whitelistNodes"));
@@ -167,14 +221,7 @@ public class PathExplorer {
 		if (blacklistNodes != null && !blacklistNodes.isEmpty()) {
 			nodeFilter.put(BLACKLIST_NODES, blacklistNodes);
 		}
-
-		Stream<Path> results = explorePathPrivate(nodes, relationshipFilter, labelFilter, minLevel, maxLevel, bfs, getUniqueness(uniqueness), filterStartNode, limit, nodeFilter, sequence, beginSequenceAtStart);
-
-		if (optional) {
-			return optionalStream(results);
-		} else {
-			return results;
-		}
+		return nodeFilter;
 	}
 
 	private Stream<Path> explorePathPrivate(Iterable<Node> startNodes,
@@ -204,13 +251,13 @@ public class PathExplorer {
 	 * @param stream the input stream
 	 * @return a stream of a single null value if the input stream is empty, otherwise returns the equivalent of the input stream
 	 */
-	private Stream<Path> optionalStream(Stream<Path> stream) {
-		Stream<Path> optionalStream;
-		Iterator<Path> itr = stream.iterator();
+	private <T> Stream<T> optionalStream(Stream<T> stream) {
+		Stream<T> optionalStream;
+		Iterator<T> itr = stream.iterator();
 		if (itr.hasNext()) {
 			optionalStream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(itr, 0), false);
 		} else {
-			List<Path> listOfNull = new ArrayList<>();
+			List<T> listOfNull = new ArrayList<>();
 			listOfNull.add(null);
 			optionalStream = listOfNull.stream();
 		}
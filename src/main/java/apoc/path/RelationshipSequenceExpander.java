@@ -70,17 +70,20 @@ public class RelationshipSequenceExpander implements PathExpander {
         }
     }
 
+    /**
+     * @return the relationship types and directions to expand from a node at the given depth
+     */
+    public List<Pair<RelationshipType, Direction>> stepRels(int depth) {
+        if (depth == 0 && initialRels != null) {
+            return initialRels;
+        }
+        return relSequences.get((initialRels == null ? depth : depth - 1) % relSequences.size());
+    }
+
     @Override
     public Iterable<Relationship> expand( Path path, BranchState state ) {
         final Node node = path.endNode();
-        int depth = path.length();
-        List<Pair<RelationshipType, Direction>> stepRels;
-
-        if (depth == 0 && initialRels != null) {
-            stepRels = initialRels;
-        } else {
-            stepRels = relSequences.get((initialRels == null ? depth : depth - 1) % relSequences.size());
-        }
+        List<Pair<RelationshipType, Direction>> stepRels = stepRels(path.length());
 
         return Iterators.asList(
          new NestingIterator<Relationship, Pair<RelationshipType, Direction>>(
@@ -0,0 +1,84 @@
+package apoc.periodic;
+
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.kernel.DeadlockDetectedException;
+import org.neo4j.kernel.api.exceptions.Status;
+
+/**
+ * Number of batches apoc.periodic.iterate keeps in flight.
+ *
+ * With <code>adaptive:true</code> the window behaves like an AIMD controller: it grows by one batch after a full window
+ * of uncontended commits, shrinks by one when the commit latency drifts above twice the best observed latency
+ * and is halved whenever a batch fails with a deadlock or lock timeout.
+ * Without <code>adaptive</code> the window is fixed to the configured concurrency.
+ */
+class BatchWindow {
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private final int maxSize;
+    private final boolean adaptive;
+
+    private volatile int size;
+    private long sinceResize;
+    private double avgLatency = -1;
+    private long minLatency = Long.MAX_VALUE;
+
+    BatchWindow(int initialSize, int maxSize, boolean adaptive) {
+        this.maxSize = Math.max(1, maxSize);
+        this.adaptive = adaptive;
+        this.size = Math.max(1, Math.min(initialSize, this.maxSize));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Called by the worker thread after the batch transaction was committed or rolled back.
+     */
+    synchronized void completed(long latencyNanos, boolean lockContention) {
+        if (!adaptive) return;
+        if (lockContention) {
+            resize(size / 2);
+            return;
+        }
+        minLatency = Math.min(minLatency, latencyNanos);
+        avgLatency = avgLatency < 0 ? latencyNanos : avgLatency + LATENCY_SMOOTHING * (latencyNanos - avgLatency);
+        if (avgLatency > minLatency * LATENCY_TOLERANCE) {
+            resize(size - 1);
+            avgLatency = minLatency * LATENCY_TOLERANCE;
+        } else if (++sinceResize >= size) {
+            resize(size + 1);
+        }
+    }
+
+    private void resize(int newSize) {
+        size = Math.max(1, Math.min(newSize, maxSize));
+        sinceResize = 0;
+    }
+
+    /**
+     * @return true for deadlocks and lock acquisition timeouts, other transient errors don't shrink the window
+     */
+    static boolean isLockContention(Throwable e) {
+        while (e != null) {
+            if (e instanceof DeadlockDetectedException) return true;
+            if (e instanceof Status.HasStatus && isLockContention(((Status.HasStatus) e).status())) return true;
+            if (e instanceof QueryExecutionException && isLockContention(((QueryExecutionException) e).getStatusCode())) return true;
+            if (e.getCause() == e) break;
+            e = e.getCause();
+        }
+        return false;
+    }
+
+    private static boolean isLockContention(Status status) {
+        return status == Status.Transaction.DeadlockDetected || status == Status.Transaction.LockAcquisitionTimeout;
+    }
+
+    private static boolean isLockContention(String statusCode) {
+        return Status.Transaction.DeadlockDetected.code().serialize().equals(statusCode)
+                || Status.Transaction.LockAcquisitionTimeout.code().serialize().equals(statusCode);
+    }
+}
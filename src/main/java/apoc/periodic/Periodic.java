@@ -5,6 +5,7 @@ import apoc.util.Util;
 import org.apache.commons.lang.StringUtils;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.Iterators;
 import org.neo4j.helpers.collection.Pair;
 import org.neo4j.logging.Log;
@@ -12,9 +13,9 @@ import org.neo4j.procedure.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -254,7 +255,7 @@ public class Periodic {
      * @param cypherAction
      */
     @Procedure(mode = Mode.WRITE)
-    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,retries:0}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
+    @Description("apoc.periodic.iterate('statement returning items', 'statement per item', {batchSize:1000,iterateList:true,parallel:false,params:{},concurrency:50,adaptive:false,retries:0}) YIELD batches, total - run the second statement for each item returned by the first statement. Returns number of batches and total processed rows")
     public Stream<BatchAndTotalResult> iterate(
             @Name("cypherIterate") String cypherIterate,
             @Name("cypherAction") String cypherAction,
@@ -263,6 +264,7 @@ public class Periodic {
         long batchSize = Util.toLong(config.getOrDefault("batchSize", 10000));
         int concurrency = Util.toInteger(config.getOrDefault("concurrency", 50));
         boolean parallel = Util.toBoolean(config.getOrDefault("parallel", false));
+        boolean adaptive = Util.toBoolean(config.getOrDefault("adaptive", false));
         boolean iterateList = Util.toBoolean(config.getOrDefault("iterateList", true));
         long retries = Util.toLong(config.getOrDefault("retries", 0)); // todo sleep/delay or push to end of batch to try again or immediate ?
         Map<String,Object> params = (Map)config.getOrDefault("params", Collections.emptyMap());
@@ -271,7 +273,8 @@ public class Periodic {
             String innerStatement = prepared.first();
             iterateList=prepared.other();
             log.info("starting batching from `%s` operation using iteration `%s` in separate thread", cypherIterate,cypherAction);
-            return iterateAndExecuteBatchedInSeparateThread((int)batchSize, parallel, iterateList, retries, result, (p) -> db.execute(innerStatement, merge(params, p)).close(), concurrency);
+            BatchWindow window = adaptive ? new BatchWindow(Math.min(concurrency, Pools.getNoThreads(Pools.BATCH_WRITE)), concurrency, true) : new BatchWindow(concurrency, concurrency, false);
+            return iterateAndExecuteBatchedInSeparateThread((int)batchSize, parallel, iterateList, retries, result, (p) -> db.execute(innerStatement, merge(params, p)).close(), window);
         }
     }
 
@@ -320,8 +323,14 @@ public class Periodic {
 
     private Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(int batchsize, boolean parallel, boolean iterateList, long retries,
                                                                                  Iterator<Map<String, Object>> iterator, Consumer<Map<String, Object>> consumer, int concurrency) {
-        ExecutorService pool = parallel ? Pools.DEFAULT : Pools.SINGLE;
-        List<Future<Long>> futures = new ArrayList<>(concurrency);
+        return iterateAndExecuteBatchedInSeparateThread(batchsize, parallel, iterateList, retries, iterator, consumer, new BatchWindow(concurrency, concurrency, false));
+    }
+
+    private Stream<BatchAndTotalResult> iterateAndExecuteBatchedInSeparateThread(int batchsize, boolean parallel, boolean iterateList, long retries,
+                                                                                 Iterator<Map<String, Object>> iterator, Consumer<Map<String, Object>> consumer, BatchWindow window) {
+        ExecutorService pool = parallel ? Pools.BATCH_WRITE : Pools.SINGLE;
+        CompletionService<Long> completionService = new ExecutorCompletionService<>(pool);
+        Set<Future<Long>> inFlight = new HashSet<>();
         long batches = 0;
         long start = System.nanoTime();
         AtomicLong count = new AtomicLong();
@@ -336,6 +345,7 @@ public class Periodic {
             if (log.isDebugEnabled()) log.debug("execute in batch no " + batches + " batch size " + batchsize);
             List<Map<String,Object>> batch = Util.take(iterator, batchsize);
             long currentBatchSize = batch.size();
+            AtomicBoolean contended = new AtomicBoolean();
             Callable<Long> task;
             if (iterateList) {
                 task = () -> {
@@ -347,6 +357,7 @@ public class Periodic {
                     } catch (Exception e) {
                         failedOps.addAndGet(batchsize);
                         recordError(operationErrors, e);
+                        if (BatchWindow.isLockContention(e)) contended.set(true);
                     }
                     return currentBatchSize;
                 };
@@ -363,41 +374,79 @@ public class Periodic {
                             } catch (Exception e) {
                                 failedOps.incrementAndGet();
                                 recordError(operationErrors, e);
+                                if (BatchWindow.isLockContention(e)) contended.set(true);
                             }
                             return 1;
                         }).mapToLong(l -> l).sum();
                 };
             }
-            futures.add(Util.inTxFuture(pool, db, task));
+            inFlight.add(completionService.submit(timedInTx(task, window, contended)));
             batches++;
-            if (futures.size() > concurrency) {
-                while (futures.stream().noneMatch(Future::isDone)) { // none done yet, block for a bit
-                    LockSupport.parkNanos(1000);
-                }
-                Iterator<Future<Long>> it = futures.iterator();
-                while (it.hasNext()) {
-                    Future<Long> future = it.next();
-                    if (future.isDone()) {
-                        successes += Util.getFuture(future, batchErrors, failedBatches, 0L);
-                        it.remove();
-                    }
-                }
+            // collect whatever already finished, then block (without spinning) until the window has room again
+            for (Future<Long> done = completionService.poll(); done != null; done = completionService.poll()) {
+                successes += completed(done, inFlight, batchErrors, failedBatches);
             }
+            Future<Long> done = null;
+            while (inFlight.size() >= window.size() && (done = takeCompleted(completionService)) != null) {
+                successes += completed(done, inFlight, batchErrors, failedBatches);
+            }
+            // terminated or interrupted while waiting for room
+            if (inFlight.size() >= window.size()) break;
         } while (iterator.hasNext());
-        boolean wasTerminated = Util.transactionIsTerminated(terminationGuard);
-        if (wasTerminated) {
-            successes += futures.stream().mapToLong(f -> Util.getFutureOrCancel(f, batchErrors, failedBatches, 0L)).sum();
-        } else {
-            successes += futures.stream().mapToLong(f -> Util.getFuture(f, batchErrors, failedBatches, 0L)).sum();
+        Future<Long> done = null;
+        while (!inFlight.isEmpty() && (done = takeCompleted(completionService)) != null) {
+            successes += completed(done, inFlight, batchErrors, failedBatches);
+        }
+        boolean wasTerminated = Util.transactionIsTerminated(terminationGuard) || Thread.currentThread().isInterrupted();
+        if (!inFlight.isEmpty()) {
+            successes += inFlight.stream().mapToLong(f -> Util.getFutureOrCancel(f, batchErrors, failedBatches, 0L)).sum();
         }
         Util.logErrors("Error during iterate.commit:", batchErrors, log);
         Util.logErrors("Error during iterate.execute:", operationErrors, log);
         long timeTaken = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
         BatchAndTotalResult result =
-                new BatchAndTotalResult(batches, count.get(), timeTaken, successes, failedOps.get(), failedBatches.get(), retried.get(), operationErrors, batchErrors, wasTerminated);
+                new BatchAndTotalResult(batches, count.get(), timeTaken, successes, failedOps.get(), failedBatches.get(), retried.get(), operationErrors, batchErrors, wasTerminated, window.size());
         return Stream.of(result);
     }
 
+    private Callable<Long> timedInTx(Callable<Long> task, BatchWindow window, AtomicBoolean contended) {
+        return () -> {
+            long started = System.nanoTime();
+            boolean lockContention = false;
+            try (Transaction tx = db.beginTx()) {
+                Long result = task.call();
+                tx.success();
+                return result;
+            } catch (Exception e) {
+                lockContention = BatchWindow.isLockContention(e);
+                throw e;
+            } finally {
+                window.completed(System.nanoTime() - started, lockContention || contended.get());
+            }
+        };
+    }
+
+    private long completed(Future<Long> future, Set<Future<Long>> inFlight, Map<String, Long> batchErrors, AtomicInteger failedBatches) {
+        inFlight.remove(future);
+        return Util.getFuture(future, batchErrors, failedBatches, 0L);
+    }
+
+    /**
+     * @return the next completed batch, null if the query was terminated or the thread interrupted, which stays interrupted
+     */
+    private <T> Future<T> takeCompleted(CompletionService<T> completionService) {
+        while (!Util.transactionIsTerminated(terminationGuard)) {
+            try {
+                Future<T> done = completionService.poll(100, TimeUnit.MILLISECONDS);
+                if (done != null) return done;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
     public static class BatchAndTotalResult {
         public final long batches;
         public final long total;
@@ -410,10 +459,11 @@ public class Periodic {
         public final Map<String,Object> batch;
         public final Map<String,Object> operations;
         public final boolean wasTerminated;
+        public final long concurrency;
 
         public BatchAndTotalResult(long batches, long total, long timeTaken, long committedOperations,
                                    long failedOperations, long failedBatches, long retries,
-                                   Map<String, Long> operationErrors, Map<String, Long> batchErrors, boolean wasTerminated) {
+                                   Map<String, Long> operationErrors, Map<String, Long> batchErrors, boolean wasTerminated, long concurrency) {
             this.batches = batches;
             this.total = total;
             this.timeTaken = timeTaken;
@@ -423,6 +473,7 @@ public class Periodic {
             this.retries = retries;
             this.errorMessages = operationErrors;
             this.wasTerminated = wasTerminated;
+            this.concurrency = concurrency;
             this.batch = Util.map("total",batches,"failed",failedBatches,"committed",batches-failedBatches,"errors",batchErrors);
             this.operations = Util.map("total",total,"failed",failedOperations,"committed", committedOperations,"errors",operationErrors);
         }
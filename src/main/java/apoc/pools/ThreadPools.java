@@ -0,0 +1,42 @@
+package apoc.pools;
+
+import apoc.Pools;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+
+public class ThreadPools {
+
+    public static class PoolInfo {
+        public final String name;
+        public final long threads;
+        public final long maxThreads;
+        public final long activeThreads;
+        public final long queueSize;
+        public final long queueRemaining;
+        public final long completedTasks;
+        public final long rejected;
+        public final boolean shutdown;
+
+        public PoolInfo(String name, ThreadPoolExecutor pool) {
+            this.name = name;
+            this.threads = pool.getPoolSize();
+            this.maxThreads = pool.getMaximumPoolSize();
+            this.activeThreads = pool.getActiveCount();
+            this.queueSize = pool.getQueue().size();
+            this.queueRemaining = pool.getQueue().remainingCapacity();
+            this.completedTasks = pool.getCompletedTaskCount();
+            this.rejected = Pools.getRejectedCount(pool);
+            this.shutdown = pool.isShutdown();
+        }
+    }
+
+    @Procedure
+    @Description("apoc.pools.stats() - lists the APOC thread pools with their threads, queue depth and number of rejected (caller blocked) submissions")
+    public Stream<PoolInfo> stats() {
+        return Pools.getPools().entrySet().stream().map((Map.Entry<String, ThreadPoolExecutor> e) -> new PoolInfo(e.getKey(), e.getValue()));
+    }
+}
@@ -2,18 +2,19 @@ package apoc.refactor;
 
 import apoc.Pools;
 import apoc.algo.Cover;
+import apoc.refactor.util.Categorizer;
 import apoc.refactor.util.PropertiesManager;
 import apoc.refactor.util.RefactorConfig;
 import apoc.result.NodeResult;
 import apoc.result.RelationshipResult;
 import apoc.util.Util;
 import org.neo4j.graphdb.*;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -26,6 +27,9 @@ public class GraphRefactoring {
     @Context
     public Log log;
 
+    @Context
+    public KernelTransaction ktx;
+
     private Stream<NodeRefactorResult> doCloneNodes(@Name("nodes") List<Node> nodes, @Name("withRelationships") boolean withRelationships, List<String> skipProperties) {
         if (nodes == null) return Stream.empty();
         return nodes.stream().map((node) -> {
@@ -179,7 +183,7 @@ public class GraphRefactoring {
 
         // empty or missing rels list means get all rels between nodes
         if (rels == null || rels.isEmpty()) {
-            rels = Cover.coverNodes(nodes).collect(Collectors.toList());
+            rels = Cover.coverNodes(db, ktx, nodes).collect(Collectors.toList());
         }
 
         Map<Node, Node> copyMap = new HashMap<>(nodes.size());
@@ -406,7 +410,7 @@ public class GraphRefactoring {
             @Name("targetKey") String targetKey,
             @Name("copiedKeys") List<String> copiedKeys,
             @Name("batchSize") long batchSize
-    ) throws ExecutionException {
+    ) {
         // Verify and adjust arguments
         if (sourceKey == null)
             throw new IllegalArgumentException("Invalid (null) sourceKey");
@@ -416,66 +420,9 @@ public class GraphRefactoring {
 
         copiedKeys.remove(targetKey); // Just to be sure
 
-        // Create batches of nodes
-        List<Node> batch = null;
-        List<Future<Void>> futures = new ArrayList<>();
-        try (Transaction tx = db.beginTx()) {
-            for (Node node : db.getAllNodes()) {
-                if (batch == null) {
-                    batch = new ArrayList<>((int) batchSize);
-                }
-                batch.add(node);
-                if (batch.size() == batchSize) {
-                    futures.add(categorizeNodes(batch, sourceKey, relationshipType, outgoing, label, targetKey, copiedKeys));
-                    batch = null;
-                }
-            }
-            if (batch != null) {
-                futures.add(categorizeNodes(batch, sourceKey, relationshipType, outgoing, label, targetKey, copiedKeys));
-            }
-
-            // Await processing of node batches
-            for (Future<Void> future : futures) {
-                Pools.force(future);
-            }
-            tx.success();
-        }
-    }
-
-    private Future<Void> categorizeNodes(List<Node> batch, String sourceKey, String relationshipType, Boolean outgoing, String label, String targetKey, List<String> copiedKeys) {
-        return Pools.processBatch(batch, db, (Node node) -> {
-            Object value = node.getProperty(sourceKey, null);
-            if (value != null) {
-                String q =
-                        "WITH {node} AS n " +
-                                "MERGE (cat:`" + label + "` {`" + targetKey + "`: {value}}) " +
-                                (outgoing ? "MERGE (n)-[:`" + relationshipType + "`]->(cat) "
-                                        : "MERGE (n)<-[:`" + relationshipType + "`]-(cat) ") +
-                                "RETURN cat";
-                Map<String, Object> params = new HashMap<>(2);
-                params.put("node", node);
-                params.put("value", value);
-                Result result = db.execute(q, params);
-                if (result.hasNext()) {
-                    Node cat = (Node) result.next().get("cat");
-                    for (String copiedKey : copiedKeys) {
-                        Object copiedValue = node.getProperty(copiedKey, null);
-                        if (copiedValue != null) {
-                            Object catValue = cat.getProperty(copiedKey, null);
-                            if (catValue == null) {
-                                cat.setProperty(copiedKey, copiedValue);
-                                node.removeProperty(copiedKey);
-                            } else if (copiedValue.equals(catValue)) {
-                                node.removeProperty(copiedKey);
-                            }
-                        }
-                    }
-                }
-                assert (!result.hasNext());
-                result.close();
-                node.removeProperty(sourceKey);
-            }
-        });
+        Categorizer categorizer = new Categorizer((GraphDatabaseAPI) db, Pools.BATCH_WRITE, (int) batchSize);
+        categorizer.categorize(sourceKey, relationshipType, outgoing, label, targetKey, copiedKeys);
+        log.info("apoc.refactor.categorize: %d categories (%d created), %d nodes connected", categorizer.categories, categorizer.created, categorizer.connected);
     }
 
     private Node mergeNodes(Node source, Node target, boolean delete, RefactorConfig conf) {
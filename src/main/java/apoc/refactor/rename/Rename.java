@@ -1,13 +1,13 @@
 package apoc.refactor.rename;
 
-import apoc.periodic.Periodic;
 import apoc.periodic.Periodic.BatchAndTotalResult;
-import apoc.util.MapUtil;
 import apoc.util.Util;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.schema.ConstraintDefinition;
 import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
 import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
@@ -28,64 +28,59 @@ public class Rename {
 	@Context public GraphDatabaseService db;
     @Context public Log log;
     @Context public TerminationGuard terminationGuard;
+    @Context public KernelTransaction ktx;
 
     /**
 	 * Rename the Label of a node by creating a new one and deleting the old.
 	 */
 	@Procedure(mode = Mode.WRITE)
-	@Description("apoc.refactor.rename.label(oldLabel, newLabel, [nodes]) | rename a label from 'oldLabel' to 'newLabel' for all nodes. If 'nodes' is provided renaming is applied to this set only")
-	public Stream<BatchAndTotalResultWithInfo> label(@Name("oldLabel") String oldLabel, @Name("newLabel") String newLabel, @Name(value = "nodes", defaultValue = "") List<Node> nodes) {
-		String cypherIterate = nodes != null && !nodes.isEmpty() ? "UNWIND {nodes} AS n WITH n WHERE n:`"+oldLabel+"` RETURN n" : "MATCH (n:`"+oldLabel+"`) RETURN n";
-        String cypherAction = "SET n:`"+newLabel+"` REMOVE n:`"+oldLabel+"`";
-        Map<String, Object> parameters = MapUtil.map("batchSize", 100000, "parallel", true, "iterateList", true, "params", MapUtil.map("nodes", nodes));
-		return getResultOfBatchAndTotalWithInfo( newPeriodic().iterate(cypherIterate, cypherAction, parameters), db, oldLabel, null, null);
+	@Description("apoc.refactor.rename.label(oldLabel, newLabel, [nodes], {batchSize:100000}) | rename a label from 'oldLabel' to 'newLabel' for all nodes. If 'nodes' is provided renaming is applied to this set only")
+	public Stream<BatchAndTotalResultWithInfo> label(@Name("oldLabel") String oldLabel, @Name("newLabel") String newLabel, @Name(value = "nodes", defaultValue = "") List<Node> nodes, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) throws KernelException {
+		BatchAndTotalResult result = newEngine(config).label(ktx, oldLabel, newLabel, ids(nodes));
+		return getResultOfBatchAndTotalWithInfo(Stream.of(result), db, oldLabel, null, null);
 	}
 
     /**
 	 * Rename the Relationship Type by creating a new one and deleting the old.
 	 */
 	@Procedure(mode = Mode.WRITE)
-	@Description("apoc.refactor.rename.type(oldType, newType, [rels]) | rename all relationships with type 'oldType' to 'newType'. If 'rels' is provided renaming is applied to this set only")
-	public Stream<BatchAndTotalResultWithInfo> type(@Name("oldType") String oldType, @Name("newType") String newType, @Name(value = "rels", defaultValue = "") List<Relationship> rels) {
-		String cypherIterate = rels != null && ! rels.isEmpty() ? "UNWIND {rels} AS oldRel WITH oldRel WHERE type(oldRel)=\""+oldType+"\" RETURN oldRel,startNode(oldRel) as a,endNode(oldRel) as b" : "MATCH (a)-[oldRel:`"+oldType+"`]->(b) RETURN oldRel,a,b";
-		String cypherAction = "CREATE(a)-[newRel:`"+newType+"`]->(b)"+ "SET newRel+=oldRel DELETE oldRel";
-		Map<String, Object> parameters = MapUtil.map("batchSize", 100000, "parallel", true, "iterateList", true, "params", MapUtil.map("rels", rels));
-		return getResultOfBatchAndTotalWithInfo(newPeriodic().iterate(cypherIterate, cypherAction, parameters), db, null, oldType, null);
+	@Description("apoc.refactor.rename.type(oldType, newType, [rels], {batchSize:100000}) | rename all relationships with type 'oldType' to 'newType'. If 'rels' is provided renaming is applied to this set only")
+	public Stream<BatchAndTotalResultWithInfo> type(@Name("oldType") String oldType, @Name("newType") String newType, @Name(value = "rels", defaultValue = "") List<Relationship> rels, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) throws KernelException {
+		BatchAndTotalResult result = newEngine(config).type(ktx, oldType, newType, ids(rels));
+		return getResultOfBatchAndTotalWithInfo(Stream.of(result), db, null, oldType, null);
 	}
 
 	/**
 	 * Rename property of a node by creating a new one and deleting the old.
 	 */
 	@Procedure(mode = Mode.WRITE)
-	@Description("apoc.refactor.rename.nodeProperty(oldName, newName, [nodes]) | rename all node's property from 'oldName' to 'newName'. If 'nodes' is provided renaming is applied to this set only")
-	public Stream<BatchAndTotalResultWithInfo> nodeProperty(@Name("oldName") String oldName, @Name("newName") String newName, @Name(value="nodes", defaultValue = "") List<Object> nodes) {
-		String cypherIterate = nodes != null && ! nodes.isEmpty() ? "UNWIND {nodes} AS n WITH n WHERE exists (n."+oldName+") return n" : "match (n) where exists (n."+oldName+") return n";
-		String cypherAction = "set n."+newName+"= n."+oldName+" remove n."+oldName;
-		Map<String, Object> parameters = MapUtil.map("batchSize", 100000, "parallel", true, "iterateList", true, "params", MapUtil.map("nodes", nodes));
-		return getResultOfBatchAndTotalWithInfo(newPeriodic().iterate(cypherIterate, cypherAction, parameters), db, null, null, oldName);
+	@Description("apoc.refactor.rename.nodeProperty(oldName, newName, [nodes], {batchSize:100000}) | rename all node's property from 'oldName' to 'newName'. If 'nodes' is provided renaming is applied to this set only")
+	public Stream<BatchAndTotalResultWithInfo> nodeProperty(@Name("oldName") String oldName, @Name("newName") String newName, @Name(value="nodes", defaultValue = "") List<Object> nodes, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) throws KernelException {
+		BatchAndTotalResult result = newEngine(config).nodeProperty(ktx, oldName, newName, ids(nodes));
+		return getResultOfBatchAndTotalWithInfo(Stream.of(result), db, null, null, oldName);
 	}
 
 	/**
 	 * Rename property of a relationship by creating a new one and deleting the old.
 	 */
 	@Procedure(mode = Mode.WRITE)
-	@Description("apoc.refactor.rename.typeProperty(oldName, newName, [rels]) | rename all relationship's property from 'oldName' to 'newName'. If 'rels' is provided renaming is applied to this set only")
-	public Stream<BatchAndTotalResultWithInfo> typeProperty(@Name("oldName") String oldName, @Name("newName") String newName, @Name(value="rels", defaultValue = "") List<Object> rels) {
-		String cypherIterate = rels != null && ! rels.isEmpty() ? "UNWIND {rels} AS r WITH r WHERE exists (r."+oldName+") return r" : "match ()-[r]->() where exists (r."+oldName+") return r";
-		String cypherAction = "set r."+newName+"= r."+oldName+" remove r."+oldName;
-		Map<String, Object> parameters = MapUtil.map("batchSize", 100000, "parallel", true, "iterateList", true, "params", MapUtil.map("rels", rels));
-		return getResultOfBatchAndTotalWithInfo(newPeriodic().iterate(cypherIterate, cypherAction, parameters), db, null, null, oldName);
+	@Description("apoc.refactor.rename.typeProperty(oldName, newName, [rels], {batchSize:100000}) | rename all relationship's property from 'oldName' to 'newName'. If 'rels' is provided renaming is applied to this set only")
+	public Stream<BatchAndTotalResultWithInfo> typeProperty(@Name("oldName") String oldName, @Name("newName") String newName, @Name(value="rels", defaultValue = "") List<Object> rels, @Name(value = "config", defaultValue = "{}") Map<String, Object> config) throws KernelException {
+		BatchAndTotalResult result = newEngine(config).typeProperty(ktx, oldName, newName, ids(rels));
+		return getResultOfBatchAndTotalWithInfo(Stream.of(result), db, null, null, oldName);
 	}
 
+    private RenameEngine newEngine(Map<String, Object> config) {
+        int batchSize = Util.toInteger(config.getOrDefault("batchSize", RenameEngine.DEFAULT_BATCH_SIZE));
+        return new RenameEngine((GraphDatabaseAPI) db, terminationGuard, batchSize);
+    }
+
     /*
-     * create a properly initialized Periodic instance by setting all the required @Context attributes
+     * ids of the given nodes, relationships or ids, null to rename all
      */
-    private Periodic newPeriodic() {
-        Periodic periodic = new Periodic();
-        periodic.db = this.db;
-        periodic.log = this.log;
-        periodic.terminationGuard = this.terminationGuard;
-        return periodic;
+    private long[] ids(List<?> entities) {
+        if (entities == null || entities.isEmpty()) return null;
+        return entities.stream().mapToLong(e -> e instanceof Number ? ((Number) e).longValue() : e instanceof Node ? ((Node) e).getId() : ((Relationship) e).getId()).toArray();
     }
 
 	/*
@@ -0,0 +1,282 @@
+package apoc.refactor.rename;
+
+import apoc.Pools;
+import apoc.periodic.Periodic.BatchAndTotalResult;
+import apoc.util.Util;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.*;
+import org.neo4j.internal.kernel.api.exceptions.EntityNotFoundException;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.TerminationGuard;
+import org.neo4j.values.storable.Value;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
+
+/**
+ * Renames labels, relationship types and properties through the kernel API in parallel batches.
+ *
+ * A batch is a range of node or relationship ids, a chunk of the label scan store or of the given entities, and is
+ * committed in its own transaction on the {@code batch_write} pool, so batches never touch the same entity.
+ * Only renaming a relationship type recreates the relationships and locks their nodes, each batch takes all of
+ * these locks up front in node id order, so batches sharing nodes wait for each other instead of deadlocking.
+ */
+public class RenameEngine {
+
+    public static final int DEFAULT_BATCH_SIZE = 100_000;
+
+    private final GraphDatabaseAPI db;
+    private final TerminationGuard guard;
+    private final ExecutorService pool;
+    private final int batchSize;
+    private final ThreadToStatementContextBridge bridge;
+
+    private interface BatchWork {
+        void run(KernelTransaction ktx, PrimitiveIterator.OfLong ids, Batch batch) throws KernelException;
+    }
+
+    private static class Batch {
+        // renamed entities, up to the failure for failed batches
+        long renamed;
+    }
+
+    public RenameEngine(GraphDatabaseAPI db, TerminationGuard guard, int batchSize) {
+        this(db, guard, Pools.BATCH_WRITE, batchSize);
+    }
+
+    public RenameEngine(GraphDatabaseAPI db, TerminationGuard guard, ExecutorService pool, int batchSize) {
+        this.db = db;
+        this.guard = guard;
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+        this.bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+    }
+
+    /**
+     * @param nodes the nodes to rename, all nodes with the label if null
+     */
+    public BatchAndTotalResult label(KernelTransaction ktx, String oldLabel, String newLabel, long[] nodes) throws KernelException {
+        int oldId = ktx.tokenRead().nodeLabel(oldLabel);
+        if (oldId == NO_TOKEN || oldLabel.equals(newLabel)) return empty();
+        int newId = ktx.tokenWrite().labelGetOrCreateForName(newLabel);
+        BatchWork work = (batchTx, ids, batch) -> {
+            Write write = batchTx.dataWrite();
+            while (ids.hasNext()) {
+                long id = ids.nextLong();
+                try {
+                    if (write.nodeRemoveLabel(id, oldId)) {
+                        write.nodeAddLabel(id, newId);
+                        batch.renamed++;
+                    }
+                } catch (EntityNotFoundException e) {
+                    // deleted in the meantime
+                }
+            }
+        };
+        if (nodes != null) return run(chunks(nodes), work);
+        try (NodeLabelIndexCursor cursor = ktx.cursors().allocateNodeLabelIndexCursor()) {
+            ktx.dataRead().nodeLabelScan(oldId, cursor);
+            return run(chunks(cursor), work);
+        }
+    }
+
+    /**
+     * Recreates the relationships with the new type and their properties.
+     *
+     * @param rels the relationships to rename, all relationships if null
+     */
+    public BatchAndTotalResult type(KernelTransaction ktx, String oldType, String newType, long[] rels) throws KernelException {
+        int oldId = ktx.tokenRead().relationshipType(oldType);
+        if (oldId == NO_TOKEN || oldType.equals(newType)) return empty();
+        int newId = ktx.tokenWrite().relationshipTypeGetOrCreateForName(newType);
+        return run(rels != null ? chunks(rels) : ranges(GlobalOperationsTypes.RELATIONSHIPS), (batchTx, ids, batch) -> {
+            Read read = batchTx.dataRead();
+            Write write = batchTx.dataWrite();
+            try (RelationshipScanCursor relCursor = batchTx.cursors().allocateRelationshipScanCursor();
+                 PropertyCursor propertyCursor = batchTx.cursors().allocatePropertyCursor()) {
+                LongStream.Builder matched = LongStream.builder(), nodes = LongStream.builder();
+                while (ids.hasNext()) {
+                    read.singleRelationship(ids.nextLong(), relCursor);
+                    if (relCursor.next() && relCursor.type() == oldId) {
+                        matched.add(relCursor.relationshipReference());
+                        nodes.add(relCursor.sourceNodeReference());
+                        nodes.add(relCursor.targetNodeReference());
+                    }
+                }
+                batchTx.locks().acquireExclusiveNodeLock(nodes.build().sorted().distinct().toArray());
+                List<Integer> keys = new ArrayList<>();
+                List<Value> values = new ArrayList<>();
+                for (PrimitiveIterator.OfLong it = matched.build().iterator(); it.hasNext(); ) {
+                    long id = it.nextLong();
+                    read.singleRelationship(id, relCursor);
+                    if (!relCursor.next() || relCursor.type() != oldId) continue;
+                    keys.clear();
+                    values.clear();
+                    relCursor.properties(propertyCursor);
+                    while (propertyCursor.next()) {
+                        keys.add(propertyCursor.propertyKey());
+                        values.add(propertyCursor.propertyValue());
+                    }
+                    long newRel = write.relationshipCreate(relCursor.sourceNodeReference(), newId, relCursor.targetNodeReference());
+                    for (int i = 0; i < keys.size(); i++) {
+                        write.relationshipSetProperty(newRel, keys.get(i), values.get(i));
+                    }
+                    write.relationshipDelete(id);
+                    batch.renamed++;
+                }
+            }
+        });
+    }
+
+    /**
+     * @param nodes the nodes to rename, all nodes if null
+     */
+    public BatchAndTotalResult nodeProperty(KernelTransaction ktx, String oldName, String newName, long[] nodes) throws KernelException {
+        int oldId = ktx.tokenRead().propertyKey(oldName);
+        if (oldId == NO_TOKEN || oldName.equals(newName)) return empty();
+        int newId = ktx.tokenWrite().propertyKeyGetOrCreateForName(newName);
+        return run(nodes != null ? chunks(nodes) : ranges(GlobalOperationsTypes.NODES), (batchTx, ids, batch) -> {
+            Read read = batchTx.dataRead();
+            Write write = batchTx.dataWrite();
+            try (NodeCursor nodeCursor = batchTx.cursors().allocateNodeCursor();
+                 PropertyCursor propertyCursor = batchTx.cursors().allocatePropertyCursor()) {
+                while (ids.hasNext()) {
+                    long id = ids.nextLong();
+                    read.singleNode(id, nodeCursor);
+                    if (!nodeCursor.next()) continue;
+                    nodeCursor.properties(propertyCursor);
+                    Value value = propertyValue(propertyCursor, oldId);
+                    if (value == null) continue;
+                    write.nodeSetProperty(id, newId, value);
+                    write.nodeRemoveProperty(id, oldId);
+                    batch.renamed++;
+                }
+            }
+        });
+    }
+
+    /**
+     * @param rels the relationships to rename, all relationships if null
+     */
+    public BatchAndTotalResult typeProperty(KernelTransaction ktx, String oldName, String newName, long[] rels) throws KernelException {
+        int oldId = ktx.tokenRead().propertyKey(oldName);
+        if (oldId == NO_TOKEN || oldName.equals(newName)) return empty();
+        int newId = ktx.tokenWrite().propertyKeyGetOrCreateForName(newName);
+        return run(rels != null ? chunks(rels) : ranges(GlobalOperationsTypes.RELATIONSHIPS), (batchTx, ids, batch) -> {
+            Read read = batchTx.dataRead();
+            Write write = batchTx.dataWrite();
+            try (RelationshipScanCursor relCursor = batchTx.cursors().allocateRelationshipScanCursor();
+                 PropertyCursor propertyCursor = batchTx.cursors().allocatePropertyCursor()) {
+                while (ids.hasNext()) {
+                    long id = ids.nextLong();
+                    read.singleRelationship(id, relCursor);
+                    if (!relCursor.next()) continue;
+                    relCursor.properties(propertyCursor);
+                    Value value = propertyValue(propertyCursor, oldId);
+                    if (value == null) continue;
+                    write.relationshipSetProperty(id, newId, value);
+                    write.relationshipRemoveProperty(id, oldId);
+                    batch.renamed++;
+                }
+            }
+        });
+    }
+
+    private static Value propertyValue(PropertyCursor propertyCursor, int key) {
+        while (propertyCursor.next()) {
+            if (propertyCursor.propertyKey() == key) return propertyCursor.propertyValue();
+        }
+        return null;
+    }
+
+    private Iterator<LongStream> ranges(GlobalOperationsTypes type) {
+        long highestId = MultiThreadedGlobalGraphOperations.getHighestIdInUseForStore(db.getDependencyResolver(), type);
+        return LongStream.iterate(0, start -> start + batchSize).limit((highestId + batchSize - 1) / batchSize)
+                .mapToObj(start -> LongStream.range(start, Math.min(highestId, start + batchSize)))
+                .iterator();
+    }
+
+    private Iterator<LongStream> chunks(long[] ids) {
+        long[] sorted = LongStream.of(ids).sorted().distinct().toArray();
+        return LongStream.iterate(0, start -> start + batchSize).limit((sorted.length + batchSize - 1) / batchSize)
+                .mapToObj(start -> Arrays.stream(sorted, (int) start, (int) Math.min(sorted.length, start + batchSize)))
+                .iterator();
+    }
+
+    // reads the next chunk only when the previous one was submitted
+    private Iterator<LongStream> chunks(NodeLabelIndexCursor cursor) {
+        return new Iterator<LongStream>() {
+            boolean hasNext = cursor.next();
+
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            public LongStream next() {
+                if (!hasNext) throw new NoSuchElementException();
+                LongStream.Builder chunk = LongStream.builder();
+                int size = 0;
+                do {
+                    chunk.add(cursor.nodeReference());
+                    hasNext = cursor.next();
+                } while (hasNext && ++size < batchSize);
+                return chunk.build();
+            }
+        };
+    }
+
+    private BatchAndTotalResult run(Iterator<LongStream> batches, BatchWork work) {
+        long start = System.currentTimeMillis();
+        AtomicLong committed = new AtomicLong(), failed = new AtomicLong(), failedBatches = new AtomicLong();
+        Map<String, Long> errors = new ConcurrentHashMap<>();
+        List<Future<?>> futures = new ArrayList<>();
+        boolean terminated = false;
+        while (batches.hasNext()) {
+            if (Util.transactionIsTerminated(guard)) {
+                terminated = true;
+                break;
+            }
+            LongStream ids = batches.next();
+            futures.add(pool.submit(() -> {
+                Batch batch = new Batch();
+                try {
+                    try (Transaction tx = db.beginTx()) {
+                        work.run(bridge.getKernelTransactionBoundToThisThread(true), ids.iterator(), batch);
+                        tx.success();
+                    }
+                    committed.addAndGet(batch.renamed);
+                } catch (Exception e) {
+                    failed.addAndGet(batch.renamed);
+                    failedBatches.incrementAndGet();
+                    errors.merge(String.valueOf(e.getMessage()), 1L, Long::sum);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                Pools.force(future);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error renaming", e.getCause());
+            }
+        }
+        return new BatchAndTotalResult(futures.size(), committed.get() + failed.get(), System.currentTimeMillis() - start,
+                committed.get(), failed.get(), failedBatches.get(), 0, errors, errors, terminated, Pools.getNoThreads(pool));
+    }
+
+    private BatchAndTotalResult empty() {
+        return run(Collections.emptyIterator(), null);
+    }
+}
@@ -0,0 +1,300 @@
+package apoc.refactor.util;
+
+import apoc.Pools;
+import apoc.util.kernel.MultiThreadedGlobalGraphOperations;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.*;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelectionCursor;
+import org.neo4j.internal.kernel.api.helpers.RelationshipSelections;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.values.storable.Value;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static apoc.util.kernel.MultiThreadedGlobalGraphOperations.GlobalOperationsTypes.NODES;
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
+
+/**
+ * Turns the distinct values of a property into category nodes, in two phases over node id ranges in parallel:
+ * <ol>
+ * <li>the distinct values are collected, with the first (lowest node id) value of every copied key, then the missing
+ * category nodes are created once</li>
+ * <li>each range connects its nodes to their categories in its own transaction, locking the categories in id order
+ * so concurrent ranges can't deadlock</li>
+ * </ol>
+ * Like the cypher {@code MERGE} it replaces, existing category nodes and relationships are reused, copied keys
+ * are moved to the category if it has none yet and removed from the node if it has the same value.
+ */
+public class Categorizer {
+
+    private final GraphDatabaseAPI db;
+    private final ExecutorService pool;
+    private final ThreadToStatementContextBridge bridge;
+    private final int batchSize;
+
+    public long categories, created, connected;
+
+    private static class Category {
+        long nodeId = -1;
+        boolean existing;
+        // values of the copied keys, by lowest node id while collecting
+        final Value[] copied;
+        final long[] copiedFrom;
+
+        Category(int copiedKeys) {
+            copied = new Value[copiedKeys];
+            copiedFrom = new long[copiedKeys];
+        }
+
+        synchronized void merge(Value[] values, long[] from) {
+            for (int i = 0; i < copied.length; i++) {
+                if (values[i] != null && (copied[i] == null || from[i] < copiedFrom[i])) {
+                    copied[i] = values[i];
+                    copiedFrom[i] = from[i];
+                }
+            }
+        }
+    }
+
+    public Categorizer(GraphDatabaseAPI db, ExecutorService pool, int batchSize) {
+        this.db = db;
+        this.pool = pool;
+        this.bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void categorize(String sourceKey, String relationshipType, boolean outgoing, String label, String targetKey, List<String> copiedKeys) {
+        int[] tokens = inTx(ktx -> {
+            TokenWrite tokenWrite = ktx.tokenWrite();
+            int[] result = new int[4 + copiedKeys.size()];
+            result[0] = ktx.tokenRead().propertyKey(sourceKey);
+            result[1] = tokenWrite.relationshipTypeGetOrCreateForName(relationshipType);
+            result[2] = tokenWrite.labelGetOrCreateForName(label);
+            result[3] = tokenWrite.propertyKeyGetOrCreateForName(targetKey);
+            for (int i = 0; i < copiedKeys.size(); i++) {
+                result[4 + i] = tokenWrite.propertyKeyGetOrCreateForName(copiedKeys.get(i));
+            }
+            return result;
+        });
+        int source = tokens[0], type = tokens[1], labelId = tokens[2], target = tokens[3];
+        int[] copied = Arrays.copyOfRange(tokens, 4, tokens.length);
+        if (source == NO_TOKEN) return;
+
+        long highestId = MultiThreadedGlobalGraphOperations.getHighestIdInUseForStore(db.getDependencyResolver(), NODES);
+        Map<Value, Category> values = collect(highestId, source, copied);
+        categories = values.size();
+        inTx(ktx -> createCategories(ktx, values, labelId, target, copied));
+        Set<Long> categoryIds = new HashSet<>();
+        values.values().forEach(category -> categoryIds.add(category.nodeId));
+        connected = sum(forRanges(highestId, (ktx, from, to) -> connect(ktx, from, to, values, categoryIds, source, copied, type, outgoing)));
+    }
+
+    private Map<Value, Category> collect(long highestId, int source, int[] copied) {
+        Map<Value, Category> values = new ConcurrentHashMap<>();
+        forRanges(highestId, (ktx, from, to) -> {
+            Map<Value, Category> local = new HashMap<>();
+            Read read = ktx.dataRead();
+            Value[] copiedValues = new Value[copied.length];
+            long[] copiedFrom = new long[copied.length];
+            try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+                 PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+                for (long id = from; id < to; id++) {
+                    read.singleNode(id, nodeCursor);
+                    if (!nodeCursor.next()) continue;
+                    nodeCursor.properties(propertyCursor);
+                    Value value = readProperties(propertyCursor, source, copied, copiedValues);
+                    if (value == null) continue;
+                    Arrays.fill(copiedFrom, id);
+                    local.computeIfAbsent(value, v -> new Category(copied.length)).merge(copiedValues, copiedFrom);
+                }
+            }
+            local.forEach((value, category) -> values.merge(value, category, (existing, added) -> {
+                existing.merge(added.copied, added.copiedFrom);
+                return existing;
+            }));
+            return (long) local.size();
+        });
+        return values;
+    }
+
+    private long createCategories(KernelTransaction ktx, Map<Value, Category> values, int label, int target, int[] copied) throws KernelException {
+        Read read = ktx.dataRead();
+        Write write = ktx.dataWrite();
+        // existing categories, their copied keys are only set if missing
+        try (NodeLabelIndexCursor labelCursor = ktx.cursors().allocateNodeLabelIndexCursor();
+             NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            read.nodeLabelScan(label, labelCursor);
+            Value[] existingValues = new Value[copied.length];
+            while (labelCursor.next()) {
+                read.singleNode(labelCursor.nodeReference(), nodeCursor);
+                if (!nodeCursor.next()) continue;
+                nodeCursor.properties(propertyCursor);
+                Value value = readProperties(propertyCursor, target, copied, existingValues);
+                if (value == null) continue;
+                Category category = values.get(value);
+                if (category == null || category.existing) continue;
+                category.nodeId = nodeCursor.nodeReference();
+                category.existing = true;
+                for (int i = 0; i < copied.length; i++) {
+                    if (existingValues[i] != null) {
+                        category.copied[i] = existingValues[i];
+                    } else if (category.copied[i] != null) {
+                        write.nodeSetProperty(category.nodeId, copied[i], category.copied[i]);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Value, Category> entry : values.entrySet()) {
+            Category category = entry.getValue();
+            if (category.existing) continue;
+            category.nodeId = write.nodeCreate();
+            write.nodeAddLabel(category.nodeId, label);
+            write.nodeSetProperty(category.nodeId, target, entry.getKey());
+            for (int i = 0; i < copied.length; i++) {
+                if (category.copied[i] != null) write.nodeSetProperty(category.nodeId, copied[i], category.copied[i]);
+            }
+            created++;
+        }
+        return created;
+    }
+
+    private long connect(KernelTransaction ktx, long from, long to, Map<Value, Category> values, Set<Long> categoryIds,
+                         int source, int[] copied, int type, boolean outgoing) throws KernelException {
+        Read read = ktx.dataRead();
+        Write write = ktx.dataWrite();
+        // node ids and their categories, connected in category order
+        List<long[]> pairs = new ArrayList<>();
+        List<Category> categoryOfPair = new ArrayList<>();
+        try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            Value[] copiedValues = new Value[copied.length];
+            for (long id = from; id < to; id++) {
+                if (categoryIds.contains(id)) continue;
+                read.singleNode(id, nodeCursor);
+                if (!nodeCursor.next()) continue;
+                nodeCursor.properties(propertyCursor);
+                Value value = readProperties(propertyCursor, source, copied, copiedValues);
+                if (value == null) continue;
+                Category category = values.get(value);
+                if (category == null) continue;
+                // bit i set: copied key i is removed from the node
+                long remove = 0;
+                for (int i = 0; i < copied.length; i++) {
+                    if (copiedValues[i] != null && copiedValues[i].equals(category.copied[i])) remove |= 1L << i;
+                }
+                pairs.add(new long[]{id, category.nodeId, remove});
+                categoryOfPair.add(category);
+            }
+            if (pairs.isEmpty()) return 0;
+            pairs.sort(Comparator.comparingLong(pair -> pair[1]));
+            ktx.locks().acquireExclusiveNodeLock(pairs.stream().mapToLong(pair -> pair[1]).distinct().toArray());
+            Set<Long> existingCategories = new HashSet<>();
+            categoryOfPair.forEach(category -> {
+                if (category.existing) existingCategories.add(category.nodeId);
+            });
+            long count = 0;
+            for (long[] pair : pairs) {
+                long node = pair[0], category = pair[1];
+                if (!existingCategories.contains(category) || !isConnected(read, ktx.cursors(), nodeCursor, node, category, type, outgoing)) {
+                    if (outgoing) write.relationshipCreate(node, type, category);
+                    else write.relationshipCreate(category, type, node);
+                    count++;
+                }
+                write.nodeRemoveProperty(node, source);
+                for (int i = 0; i < copied.length; i++) {
+                    if ((pair[2] & 1L << i) != 0) write.nodeRemoveProperty(node, copied[i]);
+                }
+            }
+            return count;
+        }
+    }
+
+    private static boolean isConnected(Read read, CursorFactory cursors, NodeCursor nodeCursor, long node, long category, int type, boolean outgoing) {
+        read.singleNode(node, nodeCursor);
+        if (!nodeCursor.next()) return false;
+        int[] types = {type};
+        try (RelationshipSelectionCursor rels = outgoing
+                ? RelationshipSelections.outgoingCursor(cursors, nodeCursor, types)
+                : RelationshipSelections.incomingCursor(cursors, nodeCursor, types)) {
+            while (rels.next()) {
+                if (rels.otherNodeReference() == category) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the value of the key, null if missing, the values of the other keys are put into {@code values}
+     */
+    private static Value readProperties(PropertyCursor propertyCursor, int key, int[] others, Value[] values) {
+        Arrays.fill(values, null);
+        Value result = null;
+        while (propertyCursor.next()) {
+            int property = propertyCursor.propertyKey();
+            if (property == key) result = propertyCursor.propertyValue();
+            for (int i = 0; i < others.length; i++) {
+                if (others[i] == property) values[i] = propertyCursor.propertyValue();
+            }
+        }
+        return result;
+    }
+
+    private interface TxWork<T> {
+        T run(KernelTransaction ktx) throws KernelException;
+    }
+
+    private interface RangeWork {
+        long run(KernelTransaction ktx, long from, long to) throws KernelException;
+    }
+
+    // in a transaction of a pool thread, so it is committed before the next phase
+    private <T> T inTx(TxWork<T> work) {
+        return force(Collections.singletonList(pool.submit(() -> {
+            try (Transaction tx = db.beginTx()) {
+                T result = work.run(bridge.getKernelTransactionBoundToThisThread(true));
+                tx.success();
+                return result;
+            }
+        }))).get(0);
+    }
+
+    private List<Long> forRanges(long highestId, RangeWork work) {
+        List<Future<Long>> futures = new ArrayList<>();
+        for (long start = 0; start < highestId; start += batchSize) {
+            long from = start, to = Math.min(highestId, start + batchSize);
+            futures.add(pool.submit(() -> {
+                try (Transaction tx = db.beginTx()) {
+                    long result = work.run(bridge.getKernelTransactionBoundToThisThread(true), from, to);
+                    tx.success();
+                    return result;
+                }
+            }));
+        }
+        return force(futures);
+    }
+
+    private static <T> List<T> force(List<Future<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(Pools.force(future));
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Error categorizing nodes", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static long sum(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -297,6 +297,10 @@ public class Geocode {
         return new OSMSupplier(activeConfig, terminationGuard);
     }
 
+    private String getProvider(Map<String, Object> config) {
+        return config.getOrDefault(GEOCODE_PROVIDER_KEY, "osm").toString().toLowerCase();
+    }
+
     @Procedure
     @Description("apoc.spatial.geocodeOnce('address') YIELD location, latitude, longitude, description, osmData - look up geographic location of address from a geocoding service (the default one is OpenStreetMap)")
     public Stream<GeoCodeResult> geocodeOnce(@Name("location") String address) throws UnsupportedEncodingException {
@@ -310,7 +314,11 @@ public class Geocode {
             return Stream.empty();
         else {
             try {
-                return getSupplier().geocode(address, maxResults == 0 ? MAX_RESULTS : Math.min(Math.max(maxResults, 1), MAX_RESULTS));
+                long max = maxResults == 0 ? MAX_RESULTS : Math.min(Math.max(maxResults, 1), MAX_RESULTS);
+                Map<String, Object> config = ApocConfiguration.get(PREFIX);
+                GeocodeCache cache = GeocodeCache.get(config);
+                if (cache == null) return getSupplier().geocode(address, max);
+                return cache.geocode(getProvider(config), address, max, () -> getSupplier().geocode(address, max));
             } catch (IllegalStateException re) {
                 if (!quotaException && re.getMessage().startsWith("QUOTA_EXCEEDED")) return Stream.empty();
                 throw re;
@@ -322,7 +330,10 @@ public class Geocode {
     @Description("apoc.spatial.reverseGeocode(latitude,longitude) YIELD location, latitude, longitude, description - look up address from latitude and longitude from a geocoding service (the default one is OpenStreetMap)")
     public Stream<GeoCodeResult> reverseGeocode(@Name("latitude") double latitude, @Name("longitude") double longitude, @Name(value = "quotaException",defaultValue = "false") boolean quotaException) {
         try {
-            return getSupplier().reverseGeocode(latitude, longitude);
+            Map<String, Object> config = ApocConfiguration.get(PREFIX);
+            GeocodeCache cache = GeocodeCache.get(config);
+            if (cache == null) return getSupplier().reverseGeocode(latitude, longitude);
+            return cache.reverseGeocode(getProvider(config), latitude, longitude, () -> getSupplier().reverseGeocode(latitude, longitude));
         } catch(IllegalStateException re) {
             if (!quotaException && re.getMessage().startsWith("QUOTA_EXCEEDED")) return Stream.empty();
             throw re;
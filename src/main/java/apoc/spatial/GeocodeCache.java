@@ -0,0 +1,209 @@
+package apoc.spatial;
+
+import apoc.spatial.Geocode.GeoCodeResult;
+import apoc.util.JsonUtil;
+import apoc.util.Util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static apoc.util.MapUtil.map;
+import static apoc.util.Util.toDouble;
+
+/**
+ * LRU cache of geocoding results by provider and normalised address, or by location for reverse geocoding.
+ *
+ * Cached results are returned without calling, and so without waiting for, the provider. Concurrent lookups of the
+ * same key share a single provider call. With a cache file every new result is appended to it as a line of json,
+ * the file is read back, and compacted, when the cache is created.
+ */
+class GeocodeCache {
+
+    public static final String CACHE_SIZE_KEY = "cache.size";
+    public static final String CACHE_FILE_KEY = "cache.file";
+
+    private static GeocodeCache instance;
+
+    private final int size;
+    private final String file;
+    // in access order, guarded by this
+    private final Entries entries;
+    // serializes the appends to the file, which are done outside of the lock of the entries
+    private final Object fileLock = new Object();
+    private final Map<String, CompletableFuture<Entry>> pending = new ConcurrentHashMap<>();
+
+    static class Entry {
+        final long maxResults;
+        final List<GeoCodeResult> results;
+
+        Entry(long maxResults, List<GeoCodeResult> results) {
+            this.maxResults = maxResults;
+            this.results = results;
+        }
+
+        boolean covers(long maxResults) {
+            return this.maxResults >= maxResults || results.size() < this.maxResults;
+        }
+    }
+
+    // LRU map of at most size entries
+    private static class Entries extends LinkedHashMap<String, Entry> {
+        private static final long serialVersionUID = 1L;
+        private final int size;
+
+        Entries(int size) {
+            super(16, 0.75f, true);
+            this.size = size;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > size;
+        }
+    }
+
+    GeocodeCache(int size, String file) {
+        this.size = size;
+        this.file = file;
+        this.entries = new Entries(size);
+        if (file != null) load();
+    }
+
+    /**
+     * @return the cache for the geocode configuration, null if {@code cache.size} isn't positive
+     */
+    static synchronized GeocodeCache get(Map<String, Object> config) {
+        int size = Util.toInteger(config.getOrDefault(CACHE_SIZE_KEY, 0));
+        String file = config.containsKey(CACHE_FILE_KEY) ? config.get(CACHE_FILE_KEY).toString() : null;
+        if (size <= 0) {
+            instance = null;
+        } else if (instance == null || instance.size != size || !Objects.equals(instance.file, file)) {
+            instance = new GeocodeCache(size, file);
+        }
+        return instance;
+    }
+
+    static String normalize(String address) {
+        return address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    Stream<GeoCodeResult> geocode(String provider, String address, long maxResults, Supplier<Stream<GeoCodeResult>> lookup) {
+        return lookup(provider + "|" + normalize(address), maxResults, lookup);
+    }
+
+    Stream<GeoCodeResult> reverseGeocode(String provider, double latitude, double longitude, Supplier<Stream<GeoCodeResult>> lookup) {
+        return lookup(provider + "|reverse|" + latitude + "," + longitude, 1, lookup);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private Stream<GeoCodeResult> lookup(String key, long maxResults, Supplier<Stream<GeoCodeResult>> lookup) {
+        Entry entry = cached(key, maxResults);
+        if (entry == null) {
+            CompletableFuture<Entry> future = new CompletableFuture<>();
+            CompletableFuture<Entry> running = pending.putIfAbsent(key, future);
+            if (running == null) {
+                try {
+                    entry = new Entry(maxResults, lookup.get().collect(Collectors.toList()));
+                    put(key, entry);
+                    future.complete(entry);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    pending.remove(key, future);
+                }
+            } else {
+                entry = join(running);
+                // the running lookup asked for fewer results
+                if (!entry.covers(maxResults)) return lookup(key, maxResults, lookup);
+            }
+        }
+        return entry.results.stream().limit(maxResults);
+    }
+
+    private static Entry join(CompletableFuture<Entry> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private synchronized Entry cached(String key, long maxResults) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.covers(maxResults) ? entry : null;
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        if (file == null) return;
+        try {
+            String line = toJson(key, entry) + '\n';
+            synchronized (fileLock) {
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                    writer.write(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't write geocode cache file " + file, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        File cacheFile = new File(file);
+        if (!cacheFile.exists()) return;
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                lines++;
+                Map<String, Object> json = JsonUtil.OBJECT_MAPPER.readValue(line, Map.class);
+                List<GeoCodeResult> results = ((List<Map<String, Object>>) json.get("results")).stream()
+                        .map(r -> new GeoCodeResult(toDouble(r.get("latitude")), toDouble(r.get("longitude")), (String) r.get("description"), (Map<String, Object>) r.get("data")))
+                        .collect(Collectors.toList());
+                entries.put((String) json.get("key"), new Entry(Util.toLong(json.get("maxResults")), results));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read geocode cache file " + file, e);
+        }
+        if (lines > entries.size()) compact(cacheFile);
+    }
+
+    // rewrites the file with the retained entries only
+    private void compact(File cacheFile) {
+        File compacted = new File(file + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(compacted), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write(toJson(entry.getKey(), entry.getValue()));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't write geocode cache file " + file, e);
+        }
+        if (!compacted.renameTo(cacheFile)) {
+            compacted.delete();
+        }
+    }
+
+    private static String toJson(String key, Entry entry) throws IOException {
+        List<Map<String, Object>> results = entry.results.stream()
+                .map(r -> map("latitude", r.latitude, "longitude", r.longitude, "description", r.description, "data", r.data))
+                .collect(Collectors.toList());
+        return JsonUtil.OBJECT_MAPPER.writeValueAsString(map("key", key, "maxResults", entry.maxResults, "results", results));
+    }
+}
@@ -90,7 +90,7 @@ public class DegreeDistribution {
     public Stream<DegreeStats.Result> degrees(@Name(value = "types", defaultValue = "") String types) {
         List<DegreeStats> stats = prepareStats(types);
 
-        MultiThreadedGlobalGraphOperations.forAllNodes(db, Pools.DEFAULT, BATCHSIZE,
+        MultiThreadedGlobalGraphOperations.forAllNodes(db, Pools.ANALYTICS, BATCHSIZE,
                 (ktx,nodeCursor)-> stats.forEach((s) -> s.computeDegree(nodeCursor, ktx.cursors()))
         );
         return stats.stream().map(DegreeStats::done);
@@ -9,7 +9,6 @@ import org.neo4j.graphdb.event.LabelEntry;
 import org.neo4j.graphdb.event.PropertyEntry;
 import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.event.TransactionEventHandler;
-import org.neo4j.helpers.collection.Iterators;
 import org.neo4j.kernel.impl.core.EmbeddedProxySPI;
 import org.neo4j.kernel.impl.core.GraphProperties;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
@@ -18,6 +17,8 @@ import org.neo4j.procedure.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static apoc.util.Util.map;
@@ -100,7 +101,7 @@ public class Trigger {
     }
 
     @Procedure(mode = Mode.WRITE)
-    @Description("add a trigger kernelTransaction under a name, in the kernelTransaction you can use {createdNodes}, {deletedNodes} etc., the selector is {phase:'before/after/rollback'} returns previous and new trigger information. Takes in an optional configuration.")
+    @Description("add a trigger kernelTransaction under a name, in the kernelTransaction you can use {createdNodes}, {deletedNodes} etc., the selector is {phase:'before/after/rollback', labels:[...], types:[...], propertyKeys:[...]} returns previous and new trigger information. Takes in an optional configuration.")
     public Stream<TriggerInfo> add(@Name("name") String name, @Name("kernelTransaction") String statement, @Name(value = "selector"/*, defaultValue = "{}"*/)  Map<String,Object> selector, @Name(value = "config", defaultValue = "{}") Map<String,Object> config) {
         Map<String,Object> params = (Map)config.getOrDefault("params", Collections.emptyMap());
         Map<String, Object> removed = TriggerHandler.add(name, statement, selector, params);
@@ -171,6 +172,8 @@ public class Trigger {
     public static class TriggerHandler implements TransactionEventHandler {
         public static final String APOC_TRIGGER = "apoc.trigger";
         static ConcurrentHashMap<String,Map<String,Object>> triggers = new ConcurrentHashMap(map("",map()));
+        // selectors and referenced parameters of the triggers, recompiled when their data is reloaded
+        static ConcurrentHashMap<String,CompiledTrigger> compiled = new ConcurrentHashMap<>();
         private static GraphProperties properties;
         private final Log log;
 
@@ -228,6 +231,7 @@ public class Trigger {
                 triggers.clear();
                 String triggerProperty = (String) properties.getProperty(APOC_TRIGGER, "{}");
                 triggers.putAll(Util.fromJson(triggerProperty,Map.class));
+                compiled.keySet().retainAll(triggers.keySet());
                 Map<String,Object> previous = null;
                 if (name != null) {
                     previous = (value == null) ? triggers.remove(name) : triggers.put(name, value);
@@ -243,6 +247,7 @@ public class Trigger {
         public synchronized static Map<String, Object> removeAll() {
             try (Transaction tx = properties.getGraphDatabase().beginTx()) {
                 triggers.clear();
+                compiled.clear();
                 String previous = (String) properties.removeProperty(APOC_TRIGGER);
                 tx.success();
                 return previous == null ? null : Util.fromJson(previous, Map.class);
@@ -268,38 +273,35 @@ public class Trigger {
             if (triggers.containsKey("")) updateTriggers(null,null);
             GraphDatabaseService db = properties.getGraphDatabase();
             Map<String,String> exceptions = new LinkedHashMap<>();
-            Map<String, Object> params = txDataParams(txData, phase);
-            triggers.forEach((name, data) -> {
-                if( data.get("paused").equals(false)) {
-                    if( data.get( "params" ) != null)
-                    {
-                        params.putAll( (Map<String,Object>) data.get( "params" ) );
-                    }
-                    try (Transaction tx = db.beginTx()) {
-                        Map<String,Object> selector = (Map<String, Object>) data.get("selector");
-                        if (when(selector, phase)) {
-                            params.put("trigger", name);
-                            Result result = db.execute((String) data.get("kernelTransaction"), params);
-                            Iterators.count(result);
-                            result.close();
-                        }
-                        tx.success();
-                    } catch(Exception e) {
-                        log.warn("Error executing trigger "+name+" in phase "+phase,e);
-                        exceptions.put(name, e.getMessage());
+            TxDataParams txDataParams = null;
+            for (Map.Entry<String, Map<String, Object>> entry : triggers.entrySet()) {
+                String name = entry.getKey();
+                Map<String, Object> data = entry.getValue();
+                if (Boolean.TRUE.equals(data.get("paused"))) continue;
+                CompiledTrigger trigger = compiled.get(name);
+                if (trigger == null || trigger.data != data) {
+                    trigger = new CompiledTrigger(data);
+                    compiled.put(name, trigger);
+                }
+                if (!trigger.phase.equals(phase)) continue;
+                if (txDataParams == null) txDataParams = new TxDataParams(txData, phase);
+                try (Transaction tx = db.beginTx()) {
+                    if (trigger.matches(txDataParams)) {
+                        Result result = db.execute(trigger.statement, trigger.params(txDataParams, name));
+                        result.accept(row -> true);
+                        result.close();
                     }
+                    tx.success();
+                } catch(Exception e) {
+                    log.warn("Error executing trigger "+name+" in phase "+phase,e);
+                    exceptions.put(name, e.getMessage());
                 }
-            });
+            }
             if (!exceptions.isEmpty()) {
                 throw new RuntimeException("Error executing triggers "+exceptions.toString());
             }
         }
 
-        private boolean when(Map<String, Object> selector, String phase) {
-            if (selector == null) return (phase.equals("before"));
-            return selector.getOrDefault("phase", "before").equals(phase);
-        }
-
         @Override
         public void afterCommit(TransactionData txData, Object state) {
             executeTriggers(txData, "after");
@@ -312,19 +314,170 @@ public class Trigger {
 
     }
 
-    private static Map<String, Object> txDataParams(TransactionData txData, String phase) {
-        return map("transactionId", phase.equals("after") ? txData.getTransactionId() : -1,
-                        "commitTime", phase.equals("after") ? txData.getCommitTime() : -1,
-                        "createdNodes", txData.createdNodes(),
-                        "createdRelationships", txData.createdRelationships(),
-                        "deletedNodes", txData.deletedNodes(),
-                        "deletedRelationships", txData.deletedRelationships(),
-                        "removedLabels", aggregateLabels(txData.removedLabels()),
-                        "removedNodeProperties", aggregatePropertyKeys(txData.removedNodeProperties(),true,true),
-                        "removedRelationshipProperties", aggregatePropertyKeys(txData.removedRelationshipProperties(),false,true),
-                        "assignedLabels", aggregateLabels(txData.assignedLabels()),
-                        "assignedNodeProperties",aggregatePropertyKeys(txData.assignedNodeProperties(),true,false),
-                        "assignedRelationshipProperties",aggregatePropertyKeys(txData.assignedRelationshipProperties(),false,false));
+    static final List<String> TX_DATA_PARAMS = Arrays.asList("transactionId", "commitTime",
+            "createdNodes", "createdRelationships", "deletedNodes", "deletedRelationships",
+            "removedLabels", "removedNodeProperties", "removedRelationshipProperties",
+            "assignedLabels", "assignedNodeProperties", "assignedRelationshipProperties");
+
+    // $name, $`name` or {name}
+    private static final Pattern PARAMETER = Pattern.compile("\\$\\s*`?(\\w+)`?|\\{\\s*(\\w+)\\s*}");
+
+    /**
+     * The statement of a trigger with its selector and the transaction data parameters it references
+     */
+    static class CompiledTrigger {
+        final Map<String, Object> data;
+        final String statement;
+        final String phase;
+        // null matches any transaction
+        final Set<String> labels, types, propertyKeys;
+        final Set<String> parameters = new LinkedHashSet<>();
+        final Map<String, Object> params;
+
+        CompiledTrigger(Map<String, Object> data) {
+            this.data = data;
+            this.statement = (String) data.get("kernelTransaction");
+            Map<String, Object> selector = (Map<String, Object>) data.get("selector");
+            if (selector == null) selector = Collections.emptyMap();
+            this.phase = String.valueOf(selector.getOrDefault("phase", "before"));
+            this.labels = names(selector.get("labels"));
+            this.types = names(selector.get("types"));
+            this.propertyKeys = names(selector.get("propertyKeys"));
+            Matcher matcher = PARAMETER.matcher(statement);
+            while (matcher.find()) {
+                String name = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+                if (TX_DATA_PARAMS.contains(name)) parameters.add(name);
+            }
+            Map<String, Object> params = (Map<String, Object>) data.get("params");
+            this.params = params == null ? Collections.emptyMap() : params;
+        }
+
+        private static Set<String> names(Object value) {
+            if (value == null) return null;
+            if (value instanceof Collection) {
+                Set<String> names = new HashSet<>();
+                for (Object name : (Collection) value) names.add(String.valueOf(name));
+                return names;
+            }
+            return Collections.singleton(String.valueOf(value));
+        }
+
+        boolean matches(TxDataParams txData) {
+            return (labels == null || !Collections.disjoint(labels, txData.labels()))
+                    && (types == null || !Collections.disjoint(types, txData.types()))
+                    && (propertyKeys == null || !Collections.disjoint(propertyKeys, txData.propertyKeys()));
+        }
+
+        Map<String, Object> params(TxDataParams txData, String name) {
+            Map<String, Object> result = new HashMap<>();
+            for (String parameter : parameters) {
+                result.put(parameter, txData.get(parameter));
+            }
+            result.putAll(params);
+            result.put("trigger", name);
+            return result;
+        }
+    }
+
+    /**
+     * The transaction data parameters and what the selectors need to know about the transaction, each built on first use
+     * and shared by the triggers of a phase
+     */
+    static class TxDataParams {
+        private final TransactionData txData;
+        private final String phase;
+        private final Map<String, Object> params = new HashMap<>();
+        private Set<String> labels, types, propertyKeys;
+
+        TxDataParams(TransactionData txData, String phase) {
+            this.txData = txData;
+            this.phase = phase;
+        }
+
+        Object get(String name) {
+            return params.computeIfAbsent(name, this::build);
+        }
+
+        private Object build(String name) {
+            switch (name) {
+                case "transactionId": return phase.equals("after") ? txData.getTransactionId() : -1;
+                case "commitTime": return phase.equals("after") ? txData.getCommitTime() : -1;
+                case "createdNodes": return txData.createdNodes();
+                case "createdRelationships": return txData.createdRelationships();
+                case "deletedNodes": return txData.deletedNodes();
+                case "deletedRelationships": return txData.deletedRelationships();
+                case "removedLabels": return aggregateLabels(txData.removedLabels());
+                case "removedNodeProperties": return aggregatePropertyKeys(txData.removedNodeProperties(),true,true);
+                case "removedRelationshipProperties": return aggregatePropertyKeys(txData.removedRelationshipProperties(),false,true);
+                case "assignedLabels": return aggregateLabels(txData.assignedLabels());
+                case "assignedNodeProperties": return aggregatePropertyKeys(txData.assignedNodeProperties(),true,false);
+                case "assignedRelationshipProperties": return aggregatePropertyKeys(txData.assignedRelationshipProperties(),false,false);
+                default: throw new IllegalArgumentException("Unknown transaction data parameter " + name);
+            }
+        }
+
+        /**
+         * labels assigned or removed, and the labels of nodes with assigned or removed properties
+         */
+        Set<String> labels() {
+            if (labels == null) {
+                labels = new HashSet<>();
+                for (LabelEntry entry : txData.assignedLabels()) labels.add(entry.label().name());
+                for (LabelEntry entry : txData.removedLabels()) labels.add(entry.label().name());
+                addLabels(txData.assignedNodeProperties());
+                addLabels(txData.removedNodeProperties());
+            }
+            return labels;
+        }
+
+        private void addLabels(Iterable<PropertyEntry<Node>> entries) {
+            for (PropertyEntry<Node> entry : entries) {
+                Node node = entry.entity();
+                // the labels of deleted nodes are among the removed labels
+                if (txData.isDeleted(node)) continue;
+                try {
+                    for (Label label : node.getLabels()) labels.add(label.name());
+                } catch (NotFoundException e) {
+                    // created by a rolled back transaction, its labels are among the assigned labels
+                }
+            }
+        }
+
+        /**
+         * types of created and deleted relationships, and of relationships with assigned or removed properties
+         */
+        Set<String> types() {
+            if (types == null) {
+                types = new HashSet<>();
+                for (Relationship rel : txData.createdRelationships()) addType(rel);
+                for (Relationship rel : txData.deletedRelationships()) addType(rel);
+                for (PropertyEntry<Relationship> entry : txData.assignedRelationshipProperties()) addType(entry.entity());
+                for (PropertyEntry<Relationship> entry : txData.removedRelationshipProperties()) addType(entry.entity());
+            }
+            return types;
+        }
+
+        private void addType(Relationship rel) {
+            try {
+                types.add(rel.getType().name());
+            } catch (NotFoundException e) {
+                // created by a rolled back transaction
+            }
+        }
+
+        /**
+         * keys of assigned and removed node and relationship properties
+         */
+        Set<String> propertyKeys() {
+            if (propertyKeys == null) {
+                propertyKeys = new HashSet<>();
+                for (PropertyEntry<Node> entry : txData.assignedNodeProperties()) propertyKeys.add(entry.key());
+                for (PropertyEntry<Node> entry : txData.removedNodeProperties()) propertyKeys.add(entry.key());
+                for (PropertyEntry<Relationship> entry : txData.assignedRelationshipProperties()) propertyKeys.add(entry.key());
+                for (PropertyEntry<Relationship> entry : txData.removedRelationshipProperties()) propertyKeys.add(entry.key());
+            }
+            return propertyKeys;
+        }
     }
 
     private static <T extends PropertyContainer> Map<String,List<Map<String,Object>>> aggregatePropertyKeys(Iterable<PropertyEntry<T>> entries, boolean nodes, boolean removed) {
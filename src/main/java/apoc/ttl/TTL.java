@@ -0,0 +1,62 @@
+package apoc.ttl;
+
+import apoc.ApocKernelExtensionFactory;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Procedure;
+
+import java.util.stream.Stream;
+
+public class TTL {
+
+    @Context
+    public GraphDatabaseAPI db;
+
+    @Context
+    public KernelTransaction ktx;
+
+    @Procedure
+    @Description("apoc.ttl.stats() - number of expired :TTL nodes not yet deleted, the lag in ms since the oldest of them expired, and the nodes and relationships deleted by the ttl background task")
+    public Stream<TTLStats> stats() {
+        TTLStats stats = new TTLStats();
+        long now = System.currentTimeMillis();
+        long[] oldest = {now};
+        stats.indexed = TTLExpirer.forExpired(ktx, now, (nodeId, ttl) -> {
+            stats.backlog++;
+            oldest[0] = Math.min(oldest[0], ttl);
+        }, Long.MAX_VALUE);
+        stats.lag = now - oldest[0];
+
+        TTLLifeCycle lifeCycle = db.getDependencyResolver().resolveDependency(ApocKernelExtensionFactory.ApocLifecycle.class).getTtlLifeCycle();
+        if (lifeCycle != null) {
+            stats.enabled = lifeCycle.isEnabled();
+            TTLExpirer expirer = lifeCycle.getExpirer();
+            if (expirer != null) {
+                stats.runs = expirer.runs.get();
+                stats.batches = expirer.batches.get();
+                stats.nodesDeleted = expirer.nodesDeleted.get();
+                stats.relationshipsDeleted = expirer.relationshipsDeleted.get();
+                stats.lastRun = expirer.lastRun;
+                stats.lastRunDuration = expirer.lastRunDuration;
+                stats.lastRunNodesDeleted = expirer.lastRunNodesDeleted;
+            }
+        }
+        return Stream.of(stats);
+    }
+
+    public static class TTLStats {
+        public boolean enabled;
+        public boolean indexed;
+        public long backlog;
+        public long lag;
+        public long runs;
+        public long batches;
+        public long nodesDeleted;
+        public long relationshipsDeleted;
+        public long lastRun;
+        public long lastRunDuration;
+        public long lastRunNodesDeleted;
+    }
+}
@@ -0,0 +1,189 @@
+package apoc.ttl;
+
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.internal.kernel.api.*;
+import org.neo4j.internal.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.neo4j.internal.kernel.api.TokenRead.NO_TOKEN;
+
+/**
+ * Deletes expired {@code :TTL} nodes in batches until none are left or the time budget is used up.
+ *
+ * Expired nodes are found by a range seek on the {@code :TTL(ttl)} index, or a label scan while the index isn't online.
+ * Each batch of nodes is deleted in its own transaction, the relationships of dense nodes are deleted in chunks of
+ * their own transactions first, so a supernode never ends up in one huge transaction.
+ */
+public class TTLExpirer {
+
+    public static final String LABEL = "TTL";
+    public static final String PROPERTY = "ttl";
+
+    private final GraphDatabaseAPI db;
+    private final ThreadToStatementContextBridge bridge;
+    private final long batchSize;
+    private final long relationshipBatchSize;
+
+    final AtomicLong runs = new AtomicLong(), batches = new AtomicLong(),
+            nodesDeleted = new AtomicLong(), relationshipsDeleted = new AtomicLong();
+    volatile long lastRun, lastRunDuration, lastRunNodesDeleted;
+
+    public TTLExpirer(GraphDatabaseAPI db, long batchSize, long relationshipBatchSize) {
+        this.db = db;
+        this.bridge = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        this.batchSize = Math.max(1, batchSize);
+        this.relationshipBatchSize = Math.max(1, relationshipBatchSize);
+    }
+
+    private interface TxWork {
+        boolean run(KernelTransaction ktx) throws KernelException;
+    }
+
+    /**
+     * @return the number of deleted nodes
+     */
+    public long expire(long timeBudgetMillis) {
+        long start = System.currentTimeMillis();
+        long deleted = 0;
+        boolean more;
+        do {
+            long[] found = new long[(int) batchSize];
+            int[] count = {0};
+            long[] batchDeleted = {0, 0};
+            inTx(ktx -> {
+                forExpired(ktx, System.currentTimeMillis(), (id, ttl) -> {
+                    if (count[0] < found.length) found[count[0]++] = id;
+                }, batchSize);
+                Read read = ktx.dataRead();
+                Write write = ktx.dataWrite();
+                try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor()) {
+                    for (int i = 0; i < count[0]; i++) {
+                        read.singleNode(found[i], nodeCursor);
+                        // dense nodes are deleted separately
+                        if (!nodeCursor.next() || nodeCursor.isDense()) continue;
+                        batchDeleted[1] += write.nodeDetachDelete(found[i]);
+                        batchDeleted[0]++;
+                        found[i] = -1;
+                    }
+                }
+                return true;
+            });
+            batches.incrementAndGet();
+            nodesDeleted.addAndGet(batchDeleted[0]);
+            relationshipsDeleted.addAndGet(batchDeleted[1]);
+            deleted += batchDeleted[0];
+            for (int i = 0; i < count[0]; i++) {
+                if (found[i] != -1 && deleteDense(found[i])) deleted++;
+            }
+            more = count[0] == batchSize;
+        } while (more && System.currentTimeMillis() - start < timeBudgetMillis);
+        runs.incrementAndGet();
+        lastRun = start;
+        lastRunDuration = System.currentTimeMillis() - start;
+        lastRunNodesDeleted = deleted;
+        return deleted;
+    }
+
+    // deletes chunks of relationships in their own transactions, then the node
+    private boolean deleteDense(long nodeId) {
+        boolean[] nodeDeleted = {false};
+        boolean done;
+        do {
+            long[] relsDeleted = {0};
+            done = inTx(ktx -> {
+                Read read = ktx.dataRead();
+                Write write = ktx.dataWrite();
+                try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+                     RelationshipTraversalCursor relCursor = ktx.cursors().allocateRelationshipTraversalCursor()) {
+                    read.singleNode(nodeId, nodeCursor);
+                    if (!nodeCursor.next()) return true;
+                    nodeCursor.allRelationships(relCursor);
+                    while (relsDeleted[0] < relationshipBatchSize && relCursor.next()) {
+                        write.relationshipDelete(relCursor.relationshipReference());
+                        relsDeleted[0]++;
+                    }
+                    if (relsDeleted[0] < relationshipBatchSize) {
+                        nodeDeleted[0] = write.nodeDelete(nodeId);
+                        return true;
+                    }
+                    return false;
+                }
+            });
+            relationshipsDeleted.addAndGet(relsDeleted[0]);
+        } while (!done);
+        if (nodeDeleted[0]) nodesDeleted.incrementAndGet();
+        return nodeDeleted[0];
+    }
+
+    private boolean inTx(TxWork work) {
+        try (Transaction tx = db.beginTx()) {
+            boolean result = work.run(bridge.getKernelTransactionBoundToThisThread(true));
+            tx.success();
+            return result;
+        } catch (KernelException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public interface ExpiredConsumer {
+        void accept(long nodeId, long ttl);
+    }
+
+    /**
+     * Passes up to {@code limit} nodes expired before {@code now}, with their {@code ttl}, to the consumer, in no particular order.
+     *
+     * @return true if the {@code :TTL(ttl)} index was used
+     */
+    public static boolean forExpired(KernelTransaction ktx, long now, ExpiredConsumer consumer, long limit) {
+        TokenRead tokens = ktx.tokenRead();
+        int label = tokens.nodeLabel(LABEL);
+        int property = tokens.propertyKey(PROPERTY);
+        if (label == NO_TOKEN || property == NO_TOKEN) return false;
+        Read read = ktx.dataRead();
+        long count = 0;
+        try (NodeCursor nodeCursor = ktx.cursors().allocateNodeCursor();
+             PropertyCursor propertyCursor = ktx.cursors().allocatePropertyCursor()) {
+            CapableIndexReference index = ktx.schemaRead().index(label, property);
+            if (index != CapableIndexReference.NO_INDEX && ktx.schemaRead().indexGetState(index) == InternalIndexState.ONLINE) {
+                try (NodeValueIndexCursor cursor = ktx.cursors().allocateNodeValueIndexCursor()) {
+                    read.nodeIndexSeek(index, cursor, IndexOrder.NONE, IndexQuery.range(property, (Number) null, false, now, false));
+                    while (count < limit && cursor.next()) {
+                        Value ttl = cursor.hasValue() ? cursor.propertyValue(0) : ttl(read, nodeCursor, propertyCursor, cursor.nodeReference(), property);
+                        consumer.accept(cursor.nodeReference(), ((Number) ttl.asObject()).longValue());
+                        count++;
+                    }
+                }
+                return true;
+            }
+            try (NodeLabelIndexCursor labelCursor = ktx.cursors().allocateNodeLabelIndexCursor()) {
+                read.nodeLabelScan(label, labelCursor);
+                while (count < limit && labelCursor.next()) {
+                    Value ttl = ttl(read, nodeCursor, propertyCursor, labelCursor.nodeReference(), property);
+                    if (Values.isNumberValue(ttl) && ((Number) ttl.asObject()).longValue() < now) {
+                        consumer.accept(labelCursor.nodeReference(), ((Number) ttl.asObject()).longValue());
+                        count++;
+                    }
+                }
+            }
+            return false;
+        } catch (KernelException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Value ttl(Read read, NodeCursor nodeCursor, PropertyCursor propertyCursor, long nodeId, int property) {
+        read.singleNode(nodeId, nodeCursor);
+        if (!nodeCursor.next()) return Values.NO_VALUE;
+        nodeCursor.properties(propertyCursor);
+        while (propertyCursor.next()) {
+            if (propertyCursor.propertyKey() == property) return propertyCursor.propertyValue();
+        }
+        return Values.NO_VALUE;
+    }
+}
@@ -2,8 +2,6 @@ package apoc.ttl;
 
 import apoc.ApocConfiguration;
 import apoc.util.Util;
-import org.neo4j.graphdb.QueryStatistics;
-import org.neo4j.graphdb.Result;
 import org.neo4j.scheduler.JobScheduler;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
@@ -18,12 +16,16 @@ public class TTLLifeCycle {
 
     public static final int INITIAL_DELAY = 30;
     public static final int DEFAULT_SCHEDULE = 60;
+    public static final long DEFAULT_LIMIT = 1000L;
+    public static final long DEFAULT_RELATIONSHIP_LIMIT = 10000L;
     public static JobScheduler.Group TTL_GROUP = new JobScheduler.Group("TTL");
     private final JobScheduler scheduler;
     private final GraphDatabaseAPI db;
     private JobScheduler.JobHandle ttlIndexJobHandle;
     private JobScheduler.JobHandle ttlJobHandle;
     private Log log;
+    private boolean enabled;
+    private TTLExpirer expirer;
 
     public TTLLifeCycle(JobScheduler scheduler, GraphDatabaseAPI db, Log log) {
         this.scheduler = scheduler;
@@ -31,26 +33,38 @@ public class TTLLifeCycle {
         this.db = db;
     }
 
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public TTLExpirer getExpirer() {
+        return expirer;
+    }
+
     public void start() {
-        boolean enabled = Util.toBoolean(ApocConfiguration.get("ttl.enabled", null));
+        long limit = Util.toLong(ApocConfiguration.get("ttl.limit", DEFAULT_LIMIT));
+        long relationshipLimit = Util.toLong(ApocConfiguration.get("ttl.relationshipLimit", DEFAULT_RELATIONSHIP_LIMIT));
+        expirer = new TTLExpirer(db, limit, relationshipLimit);
+
+        enabled = Util.toBoolean(ApocConfiguration.get("ttl.enabled", null));
         if (!enabled) return;
 
         long ttlSchedule = Util.toLong(ApocConfiguration.get("ttl.schedule", DEFAULT_SCHEDULE));
         ttlIndexJobHandle = scheduler.schedule(TTL_GROUP, this::createTTLIndex, (int)(ttlSchedule*0.8), TimeUnit.SECONDS);
 
-        long limit = Util.toLong(ApocConfiguration.get("ttl.limit", 1000L));
+        // keep deleting for up to half of the schedule, so runs don't pile up
+        long budget = Util.toLong(ApocConfiguration.get("ttl.budget", ttlSchedule * 500));
 
-        ttlJobHandle = scheduler.scheduleRecurring(TTL_GROUP, () -> expireNodes(limit), ttlSchedule, ttlSchedule, TimeUnit.SECONDS);
+        ttlJobHandle = scheduler.scheduleRecurring(TTL_GROUP, () -> expireNodes(budget), ttlSchedule, ttlSchedule, TimeUnit.SECONDS);
     }
 
-    public void expireNodes(long limit) {
+    public void expireNodes(long budget) {
         try {
             if (!Util.isWriteableInstance(db)) return;
-            Result result = db.execute("MATCH (t:TTL) where t.ttl < timestamp() WITH t LIMIT {limit} DETACH DELETE t", Util.map("limit", limit));
-            QueryStatistics stats = result.getQueryStatistics();
-            result.close();
-            if (stats.getNodesDeleted()>0) {
-                log.info("TTL: Expired %d nodes %d relationships", stats.getNodesDeleted(), stats.getRelationshipsDeleted());
+            long relationshipsDeleted = expirer.relationshipsDeleted.get();
+            long nodesDeleted = expirer.expire(budget);
+            if (nodesDeleted>0) {
+                log.info("TTL: Expired %d nodes %d relationships", nodesDeleted, expirer.relationshipsDeleted.get() - relationshipsDeleted);
             }
         } catch (Exception e) {
             log.error("TTL: Error deleting expired nodes", e);
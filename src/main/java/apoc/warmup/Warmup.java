@@ -139,13 +139,13 @@ public class Warmup {
             if (idx == BATCH_SIZE) {
                 long[] submitted = ids.clone();
                 idx = 0;
-                futures.add(Util.inTxFuture(Pools.DEFAULT, db, () -> loadRecords(submitted, record, recordStore, guard)));
+                futures.add(Util.inTxFuture(Pools.IO, db, () -> loadRecords(submitted, record, recordStore, guard)));
             }
             pages += removeDone(futures, false);
         }
         if (idx > 0) {
             long[] submitted = Arrays.copyOf(ids, idx);
-            futures.add(Util.inTxFuture(Pools.DEFAULT, db, () -> loadRecords(submitted, record, recordStore, guard)));
+            futures.add(Util.inTxFuture(Pools.IO, db, () -> loadRecords(submitted, record, recordStore, guard)));
         }
         pages += removeDone(futures, true);
         return pages;
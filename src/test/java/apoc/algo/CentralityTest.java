@@ -332,6 +332,50 @@ public class CentralityTest
         t.close();
     }
 
+    @Test
+    public void shouldHaveExactBetweennessWhenSamplingAllNodes()
+    {
+        db.execute( MULTIPLE_SHORTEST_PATH ).close();
+        TestUtil.testCall( db, "CALL apoc.algo.betweennessCypher({write:true, probability:1.0})", row -> {
+            assertEquals( 7L, row.get( "samples" ) );
+            assertEquals( 0D, (double) row.get( "error" ), 0D );
+        } );
+        Result t =  db.execute("MATCH (n) RETURN n.name as name, n.betweenness_centrality as score ORDER BY score DESC LIMIT 1");
+        assertEquals( CentralityTest.MULTIPLE_SHORTEST_PATH_EXPECTED,
+                (double)t.next().get("score"), 0.1D );
+        t.close();
+    }
+
+    @Test
+    public void shouldEstimateBetweennessFromSample()
+    {
+        db.execute( RANDOM_GRAPH ).close();
+        TestUtil.testCall( db, "CALL apoc.algo.betweennessCypher({samplingSize:20, strategy:'degree', seed:42, write:true})", row -> {
+            assertEquals( 20L, row.get( "samples" ) );
+            assertTrue( (double) row.get( "error" ) >= 0D );
+        } );
+        TestUtil.testCall( db, "MATCH (n) RETURN count(n.betweenness_centrality) as count", row -> assertEquals( 101L, row.get( "count" ) ) );
+    }
+
+    @Test( expected = RuntimeException.class )
+    public void shouldRejectSamplingProbabilityOutOfRange()
+    {
+        db.execute( RANDOM_GRAPH ).close();
+        TestUtil.testCall( db, "CALL apoc.algo.betweennessCypher({probability:1.5})", row -> {} );
+    }
+
+    @Test
+    public void shouldHaveExpectedClosenessResultsForCypher()
+    {
+        db.execute( STAR_GRAPH ).close();
+        db.execute("CALL apoc.algo.closenessCypher({write:true})").close();
+        Result t =  db.execute("MATCH (n) RETURN n.name as name, n.closeness_centrality as score ORDER BY score DESC LIMIT 1");
+        Map<String, Object> row = t.next();
+        assertEquals( "f", row.get( "name" ) );
+        assertEquals( 0.5D, (double) row.get( "score" ), 0.0001D );
+        t.close();
+    }
+
     @Test
     public void shouldHaveExpectedBetweennessNodeRemappingForCypher()
     {
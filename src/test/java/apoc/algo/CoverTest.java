@@ -38,4 +38,16 @@ public class CoverTest {
                 "match (n) with collect(id(n)) as nodes call apoc.algo.cover(nodes) yield rel return count(*) as c",
                 (r) -> assertEquals(3L,r.get("c")));
     }
+
+    @Test
+    public void testCoverInParallelBatches() throws Exception {
+        TestUtil.testCall(db,
+                "match (n) with collect(n) as nodes call apoc.algo.cover(nodes, {batchSize:1}) yield rel return collect(id(rel)) as rels",
+                (r) -> TestUtil.testCall(db,
+                        "match (n) with collect(n) as nodes call apoc.algo.cover(nodes, {parallel:false}) yield rel return collect(id(rel)) as rels",
+                        (r2) -> assertEquals(r2.get("rels"), r.get("rels"))));
+        TestUtil.testCall(db,
+                "match (n)-[:X]->(m) where not ()-->(n) with [n,m] as nodes call apoc.algo.cover(nodes, {batchSize:1}) yield rel return count(*) as c",
+                (r) -> assertEquals(1L,r.get("c")));
+    }
 }
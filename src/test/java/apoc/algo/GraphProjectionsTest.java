@@ -0,0 +1,138 @@
+package apoc.algo;
+
+import apoc.ApocConfiguration;
+import apoc.algo.algorithms.GraphCatalog;
+import apoc.algo.algorithms.GraphProjection;
+import apoc.algo.pagerank.PageRankAlgoTest;
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static apoc.util.TestUtil.testCall;
+import static apoc.util.Util.map;
+import static org.junit.Assert.*;
+
+public class GraphProjectionsTest {
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        TestUtil.registerProcedure(db, GraphProjections.class, PageRank.class, Centrality.class);
+    }
+
+    @After
+    public void tearDown() {
+        GraphCatalog.list().forEach(g -> GraphCatalog.remove(g.name));
+        db.shutdown();
+    }
+
+    @Test
+    public void testLoadListAndDrop() throws Exception {
+        db.execute(PageRankTest.COMPANIES_QUERY).close();
+        testCall(db, "CALL apoc.algo.graph.load('companies', {label:'Company', relationshipType:'TYPE_1'})", (row) -> {
+            assertEquals("companies", row.get("name"));
+            assertEquals(11L, row.get("nodes"));
+            assertEquals(8L, row.get("relationships"));
+            assertEquals(false, row.get("weighted"));
+            assertEquals(11L * 16 + 8L * 4, row.get("memoryBytes"));
+        });
+        testCall(db, "CALL apoc.algo.graph.load('weighted', {label:['Company','Unknown'], relationshipType:'TYPE_1|TYPE_2', weightProperty:'score'})", (row) -> {
+            assertEquals(11L, row.get("nodes"));
+            assertEquals(16L, row.get("relationships"));
+            assertEquals(true, row.get("weighted"));
+            assertEquals(11L * 16 + 16L * (4 + 8 + 4), row.get("memoryBytes"));
+            assertEquals(0.8, GraphCatalog.get("weighted").weights[0], 0.0001);
+        });
+        testCall(db, "CALL apoc.algo.graph.drop('weighted')", (row) -> assertEquals(16L, row.get("relationships")));
+        testCall(db, "CALL apoc.algo.graph.list()", (row) -> assertEquals("companies", row.get("name")));
+        testCall(db, "CALL apoc.algo.graph.drop('companies')", (row) -> assertEquals(8L, row.get("relationships")));
+        assertFalse(db.execute("CALL apoc.algo.graph.list()").hasNext());
+    }
+
+    @Test
+    public void testParallelLoadMatchesSequential() throws Exception {
+        db.execute(CentralityTest.RANDOM_GRAPH).close();
+        // self loops are only returned once for direction BOTH
+        db.execute("MATCH (n)-[r]->(n) DELETE r").close();
+        db.execute("MATCH ()-[r]->() SET r.weight = id(r) % 5").close();
+        db.execute("CALL apoc.algo.graph.load('seq', {weightProperty:'weight', parallel:false})").close();
+        db.execute("CALL apoc.algo.graph.load('both', {weightProperty:'weight', batchSize:7, direction:'BOTH'})").close();
+        db.execute("CALL apoc.algo.graph.load('par', {weightProperty:'weight', batchSize:7})").close();
+        GraphProjection seq = GraphCatalog.get("seq"), par = GraphCatalog.get("par");
+        assertArrayEquals(seq.nodeIds, par.nodeIds);
+        assertArrayEquals(seq.degrees, par.degrees);
+        assertArrayEquals(seq.offsets, par.offsets);
+        assertArrayEquals(seq.targets, par.targets);
+        assertArrayEquals(seq.weights, par.weights, 0);
+        assertEquals(2 * seq.relationshipCount(), GraphCatalog.get("both").relationshipCount());
+        try (Transaction tx = db.beginTx()) {
+            long rels = (long) db.execute("MATCH ()-[r]->() RETURN count(*) AS c").next().get("c");
+            assertEquals(rels, seq.relationshipCount());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void testPageRankOnProjection() throws Exception {
+        db.execute(PageRankTest.COMPANIES_QUERY).close();
+        db.execute("CALL apoc.algo.graph.load('companies', {})").close();
+        for (int run = 0; run < 2; run++) {
+            testCall(db, "CALL apoc.algo.pageRankWithCypher({iterations:20, write:true, graph:'companies'})", (row) -> {
+                assertEquals(11L, row.get("nodes"));
+                assertEquals(16L, row.get("relationships"));
+                assertEquals(0L, row.get("readRelationshipMillis"));
+            });
+            ResourceIterator<Double> it = db.execute("MATCH (n) RETURN n.pagerank as score ORDER BY score DESC LIMIT 1").columnAs("score");
+            assertEquals(PageRankAlgoTest.EXPECTED, it.next(), 0.1D);
+            it.close();
+        }
+    }
+
+    @Test
+    public void testBetweennessOnProjection() throws Exception {
+        db.execute(CentralityTest.STAR_GRAPH).close();
+        db.execute("CALL apoc.algo.graph.load('star', {})").close();
+        db.execute("CALL apoc.algo.betweennessCypher({write:true, graph:'star'})").close();
+        ResourceIterator<Double> it = db.execute("MATCH (n) RETURN n.betweenness_centrality as score ORDER BY score DESC LIMIT 1").columnAs("score");
+        assertEquals(CentralityTest.STAR_GRAPH_EXPECTED, it.next(), 0.1D);
+        it.close();
+    }
+
+    @Test
+    public void testClosenessOnProjection() throws Exception {
+        db.execute(CentralityTest.STAR_GRAPH).close();
+        db.execute("CALL apoc.algo.graph.load('star', {})").close();
+        db.execute("CALL apoc.algo.closenessCypher({write:true, graph:'star'})").close();
+        ResourceIterator<Double> it = db.execute("MATCH (n) RETURN n.closeness_centrality as score ORDER BY score DESC LIMIT 1").columnAs("score");
+        assertEquals(0.5D, it.next(), 0.0001D);
+        it.close();
+    }
+
+    @Test
+    public void testMemoryLimit() throws Exception {
+        db.execute(PageRankTest.COMPANIES_QUERY).close();
+        ApocConfiguration.addToConfig(map(GraphCatalog.CONFIG_MAX_MEMORY, "100"));
+        try {
+            db.execute("CALL apoc.algo.graph.load('companies', {})").close();
+            fail("projection exceeding the memory limit should fail");
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("apoc.algo.graph.max_memory"));
+        } finally {
+            ApocConfiguration.addToConfig(map(GraphCatalog.CONFIG_MAX_MEMORY, String.valueOf(Runtime.getRuntime().maxMemory() / 2)));
+        }
+        assertTrue(GraphCatalog.list().isEmpty());
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void testUnknownGraph() throws Exception {
+        db.execute("CALL apoc.algo.pageRankWithCypher({graph:'unknown'})").close();
+    }
+}
@@ -7,6 +7,9 @@ import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
+import java.util.Collections;
+import java.util.List;
+
 import static apoc.util.TestUtil.testCall;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
@@ -43,4 +46,67 @@ public class LabelPropagationTest {
             (r) -> assertThat(r.get("partition"), equalTo(2L))
         );
     }
+
+    @Test
+    public void testCommunityInMemory() {
+        db.execute("CREATE (n {id: 0, partition: 1}) " +
+                   "CREATE (n)-[:X]->({id: 1, weight: 1.0, partition: 1})" +
+                   "CREATE (n)-[:X]->({id: 2, weight: 2.0, partition: 1})" +
+                   "CREATE (n)-[:X]->({id: 3, weight: 1.0, partition: 1})" +
+                   "CREATE (n)-[:X]->({id: 4, weight: 1.0, partition: 1})" +
+                   "CREATE (n)-[:X]->({id: 5, weight: 8.0, partition: 2})"
+        ).close();
+
+        testCall(db, "CALL apoc.algo.community.inMemory({iterations:1, type:'X', direction:'OUTGOING', weightKey:'weight', batchSize:1})", (r) -> {
+            assertThat(r.get("iterations"), equalTo(1L));
+            assertThat(r.get("changes"), equalTo(Collections.singletonList(1L)));
+            assertThat(r.get("written"), equalTo(6L));
+        });
+        testCall(
+            db,
+            "MATCH (n) WHERE n.id = 0 RETURN n.partition AS partition",
+            (r) -> assertThat(r.get("partition"), equalTo(2L))
+        );
+    }
+
+    @Test
+    public void testCommunityInMemoryConverges() {
+        db.execute("UNWIND [0, 10] AS base " +
+                   "UNWIND range(base, base + 4) AS id CREATE (:Node {id: id})").close();
+        db.execute("MATCH (a:Node), (b:Node) WHERE a.id < b.id AND (a.id < 5) = (b.id < 5) CREATE (a)-[:X]->(b)").close();
+        db.execute("MATCH (a:Node {id: 4}), (b:Node {id: 14}) CREATE (a)-[:X]->(b)").close();
+        db.execute("CREATE (:Other)").close();
+
+        testCall(db, "CALL apoc.algo.community.inMemory({labels:['Node'], tolerance:0.0, write:false, partitionKey:'community'})", (r) -> {
+            assertThat(r.get("nodes"), equalTo(10L));
+            assertThat(r.get("relationships"), equalTo(42L));
+            assertThat(r.get("converged"), equalTo(true));
+            assertThat(r.get("communities"), equalTo(2L));
+            List<Long> changes = (List<Long>) r.get("changes");
+            assertThat(changes.get(changes.size() - 1), equalTo(0L));
+        });
+        testCall(db, "MATCH (n:Node) RETURN count(n.community) AS written", (r) -> assertThat(r.get("written"), equalTo(0L)));
+
+        db.execute("CALL apoc.algo.community.inMemory({labels:['Node'], partitionKey:'community', batchSize:3})").close();
+        testCall(db, "MATCH (n:Node) RETURN count(distinct n.community) AS communities, count(n.community) AS written",
+                (r) -> {
+                    assertThat(r.get("communities"), equalTo(2L));
+                    assertThat(r.get("written"), equalTo(10L));
+                });
+    }
+
+    @Test
+    public void testCommunityInMemoryConvergesOnBipartiteGraph() {
+        db.execute("UNWIND range(0, 3) AS id CREATE (:Node {id: id})").close();
+        db.execute("MATCH (a:Node), (b:Node) WHERE a.id < 2 AND b.id >= 2 CREATE (a)-[:X]->(b)").close();
+
+        testCall(db, "CALL apoc.algo.community.inMemory({labels:['Node'], tolerance:0.0, iterations:10, partitionKey:'community'})", (r) -> {
+            assertThat(r.get("converged"), equalTo(true));
+            assertThat(r.get("communities"), equalTo(1L));
+        });
+        testCall(db, "MATCH (n:Node) RETURN count(distinct n.community) AS communities, count(n.community) AS written", (r) -> {
+            assertThat(r.get("communities"), equalTo(1L));
+            assertThat(r.get("written"), equalTo(4L));
+        });
+    }
 }
@@ -1,5 +1,6 @@
 package apoc.algo;
 
+import apoc.algo.algorithms.ParallelResultWriter;
 import apoc.algo.pagerank.PageRankAlgoTest;
 import apoc.util.TestUtil;
 import org.junit.After;
@@ -14,7 +15,12 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.TransactionTerminatedException;
+import org.neo4j.kernel.api.exceptions.Status;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.test.TestGraphDatabaseFactory;
+import org.neo4j.values.storable.Value;
+import org.neo4j.values.storable.Values;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -22,6 +28,7 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PageRankTest
 {
@@ -153,6 +160,81 @@ public class PageRankTest
         it.close();
     }
 
+    @Test
+    public void shouldWritePageRankWithCypherInBatchesAndSkipUnchanged() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        String query = "CALL apoc.algo.pageRankWithCypher({iterations:20, write:true, writeBatchSize:2, skipUnchanged:true})";
+        TestUtil.testCall( db, query, row -> {
+            long nodes = (long) row.get( "nodes" );
+            assertEquals( nodes, row.get( "written" ) );
+            assertEquals( (nodes + 1) / 2, row.get( "batches" ) );
+        } );
+        TestUtil.testCall( db, query, row -> assertEquals( 0L, row.get( "written" ) ) );
+        ResourceIterator<Double> it = db.execute("MATCH (n) RETURN n.pagerank as score ORDER BY score DESC LIMIT 1").columnAs("score");
+        assertEquals(PageRankAlgoTest.EXPECTED, it.next(), 0.1D);
+        it.close();
+    }
+
+    @Test
+    public void shouldFailTerminatedWrite()
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        ParallelResultWriter writer = new ParallelResultWriter( (GraphDatabaseAPI) db, () -> {
+            throw new TransactionTerminatedException( Status.Transaction.Terminated );
+        }, 2, false );
+        try
+        {
+            writer.write( "pagerank", new ParallelResultWriter.NodeValues()
+            {
+                public int size()
+                {
+                    return 11;
+                }
+
+                public long nodeId( int index )
+                {
+                    return index;
+                }
+
+                public Value value( int index )
+                {
+                    return Values.doubleValue( index );
+                }
+            } );
+            fail( "terminated write should fail" );
+        }
+        catch ( RuntimeException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( "terminated" ) );
+        }
+        TestUtil.testCall( db, "MATCH (n) RETURN count(n.pagerank) AS written", row -> assertEquals( 0L, row.get( "written" ) ) );
+    }
+
+    @Test
+    public void shouldComputeIncrementalPageRankWithCypher() throws IOException
+    {
+        db.execute( COMPANIES_QUERY ).close();
+        TestUtil.testCall( db, "CALL apoc.algo.pageRankWithCypher({tolerance:0.000001, write:true})", row -> {
+            assertTrue( (double) row.get( "residual" ) <= 0.000001 * (long) row.get( "nodes" ) );
+            assertTrue( (long) row.get( "iterations" ) > 10 );
+        } );
+        // converged value, EXPECTED is the one after 20 iterations
+        ResourceIterator<Double> it = db.execute("MATCH (n) RETURN n.pagerank as score ORDER BY score DESC LIMIT 1").columnAs("score");
+        assertEquals(3.0107, it.next(), 0.001D);
+        it.close();
+
+        TestUtil.testCall( db, "CALL apoc.algo.pageRankWithCypher({tolerance:0.000001, incremental:true, write:true, skipUnchanged:true})",
+                row -> assertEquals( 0L, row.get( "iterations" ) ) );
+
+        db.execute( "MATCH (a {name:'a'}), (b {name:'b'}) CREATE (a)-[:TYPE_1]->(b)" ).close();
+        TestUtil.testCall( db, "CALL apoc.algo.pageRankWithCypher({tolerance:0.000001, incremental:true, write:true})",
+                row -> assertTrue( (long) row.get( "iterations" ) > 0 ) );
+        db.execute( "CALL apoc.algo.pageRankWithCypher({tolerance:0.000001, write:true, property:'full'})" ).close();
+        db.execute( "MATCH (n) RETURN n.pagerank as incremental, n.full as full" ).forEachRemaining( row ->
+                assertEquals( (double) row.get( "full" ), (double) row.get( "incremental" ), 0.0001 ) );
+    }
+
     @Test
     public void shouldGetPageRankWithCypherExpectedResultWithLables() throws IOException
     {
@@ -3,7 +3,10 @@ package apoc.algo;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -60,6 +63,45 @@ public class WeaklyConnectedComponentsTest {
     	assertExpectedResultOfType( Long.class, "CALL apoc.algo.wcc()" + "" );
     }
     
+    @Test
+    public void shouldStreamComponentsWithSmallestNodeId()
+    {
+        db.execute(CC_GRAPH).close();
+        TestUtil.testResult( db, "CALL apoc.algo.wcc.stream() YIELD nodeId, componentId " +
+                "MATCH (n) WHERE id(n) = nodeId WITH componentId, collect(n.name) AS names, min(nodeId) AS minId " +
+                "RETURN componentId = minId AS smallest, size(names) AS size ORDER BY size", ( result ) -> {
+            List<Long> sizes = new ArrayList<>();
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                assertEquals( true, row.get( "smallest" ) );
+                sizes.add( (Long) row.get( "size" ) );
+            }
+            assertEquals( Arrays.asList( 1L, 1L, 2L, 3L, 8L ), sizes );
+        } );
+    }
+
+    @Test
+    public void shouldReturnStatsAndWriteComponents()
+    {
+        db.execute(CC_GRAPH).close();
+        TestUtil.testCall( db, "CALL apoc.algo.wcc.stats()", ( row ) -> {
+            assertEquals( 15L, row.get( "nodes" ) );
+            assertEquals( 13L, row.get( "relationships" ) );
+            assertEquals( 5L, row.get( "components" ) );
+            assertEquals( 8L, row.get( "maxComponentSize" ) );
+        } );
+        TestUtil.testCall( db, "CALL apoc.algo.wcc.write({batchSize:3, property:'cc'})", ( row ) -> {
+            assertEquals( 5L, row.get( "components" ) );
+            assertEquals( true, row.get( "write" ) );
+        } );
+        TestUtil.testCall( db, "MATCH (n) RETURN count(distinct n.cc) AS components, count(n.cc) AS nodes", ( row ) -> {
+            assertEquals( 5L, row.get( "components" ) );
+            assertEquals( 15L, row.get( "nodes" ) );
+        } );
+        TestUtil.testCall( db, "MATCH (c:Node {name:'C'}), (e:Node {name:'E'}) RETURN c.cc = e.cc AS same", ( row ) -> assertEquals( true, row.get( "same" ) ) );
+        TestUtil.testCall( db, "CALL apoc.algo.wcc.stats({types:'UNKNOWN'})", ( row ) -> assertEquals( 15L, row.get( "components" ) ) );
+    }
+
     private void assertExpected( int expectedResultCount, String query )
     {
         TestUtil.testCallCount( db, query, null,5 );
@@ -0,0 +1,98 @@
+package apoc.export.csv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvIdMappingTest {
+
+    private static final int COUNT = 200_000;
+
+    @Test
+    public void testNumericIds() {
+        try (CsvIdMapping mapping = new CsvIdMapping(false, false)) {
+            assertMapping(mapping);
+        }
+    }
+
+    @Test
+    public void testNumericIdsAreKeyedByTheirString() {
+        try (CsvIdMapping mapping = new CsvIdMapping(false, false)) {
+            IdMapper mapper = mapping.getOrCreate("Person");
+            assertTrue(mapper.put("7", 1L));
+            assertTrue(mapper.put("007", 2L));
+            assertTrue(mapper.put("+7", 3L));
+            assertTrue(mapper.put("-7", 4L));
+            assertTrue(mapper.put("99999999999999999999", 5L));
+            assertFalse(mapper.put("007", 6L));
+            assertEquals(5, mapper.size());
+            assertEquals(1L, mapper.get("7"));
+            assertEquals(2L, mapper.get("007"));
+            assertEquals(3L, mapper.get("+7"));
+            assertEquals(4L, mapper.get("-7"));
+            assertEquals(5L, mapper.get("99999999999999999999"));
+            assertEquals(IdMapper.NOT_FOUND, mapper.get("07"));
+            assertEquals(IdMapper.NOT_FOUND, mapper.get("-0"));
+        }
+        assertTrue(LongIdMapper.isCanonical("0"));
+        assertTrue(LongIdMapper.isCanonical(String.valueOf(Long.MIN_VALUE)));
+        assertFalse(LongIdMapper.isCanonical("-"));
+        assertFalse(LongIdMapper.isCanonical("\u0667"));
+    }
+
+    @Test
+    public void testStringIds() {
+        try (CsvIdMapping mapping = new CsvIdMapping(true, false)) {
+            assertMapping(mapping);
+            IdMapper mapper = mapping.getOrCreate("Person");
+            assertTrue(mapper.put("Ünïcødé-id", 42L));
+            assertEquals(42L, mapper.get("Ünïcødé-id"));
+            assertEquals(IdMapper.NOT_FOUND, mapper.get("Unicode-id"));
+        }
+    }
+
+    @Test
+    public void testSpilledIds() {
+        try (CsvIdMapping mapping = new CsvIdMapping(true, true)) {
+            assertMapping(mapping);
+        }
+        try (CsvIdMapping mapping = new CsvIdMapping(false, true)) {
+            assertMapping(mapping);
+        }
+    }
+
+    @Test
+    public void testPagesGrowFromASmallPage() {
+        for (boolean spill : new boolean[]{false, true}) {
+            try (OffHeapPages pages = OffHeapPages.allocate(spill, 100)) {
+                assertEquals(OffHeapPages.MIN_PAGE_SIZE, pages.capacity());
+                pages.putLong(64, 42L);
+                pages.ensureCapacity(OffHeapPages.MIN_PAGE_SIZE + 1);
+                assertEquals(OffHeapPages.MIN_PAGE_SIZE * 2, pages.capacity());
+                pages.ensureCapacity(OffHeapPages.PAGE_SIZE + 1);
+                assertEquals(OffHeapPages.PAGE_SIZE * 2L, pages.capacity());
+                assertEquals(42L, pages.getLong(64));
+                assertEquals(0L, pages.getLong(OffHeapPages.MIN_PAGE_SIZE));
+                pages.putLong(OffHeapPages.PAGE_SIZE, 7L);
+                assertEquals(7L, pages.getLong(OffHeapPages.PAGE_SIZE));
+            }
+        }
+    }
+
+    private void assertMapping(CsvIdMapping mapping) {
+        IdMapper mapper = mapping.getOrCreate("Person");
+        for (int i = 0; i < COUNT; i++) {
+            assertTrue(mapper.put(String.valueOf(i * 7L), i));
+        }
+        assertFalse(mapper.put("7", 0L));
+        assertEquals(COUNT, mapper.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(i, mapping.get("Person", String.valueOf(i * 7L)));
+        }
+        assertEquals(IdMapper.NOT_FOUND, mapping.get("Person", "1"));
+        assertEquals(IdMapper.NOT_FOUND, mapping.get("Person", null));
+        assertEquals(IdMapper.NOT_FOUND, mapping.get("Organisation", "7"));
+    }
+}
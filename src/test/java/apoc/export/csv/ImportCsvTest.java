@@ -14,13 +14,19 @@ import org.neo4j.test.TestGraphDatabaseFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static apoc.util.MapUtil.map;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ImportCsvTest {
 
@@ -112,6 +118,163 @@ public class ImportCsvTest {
         db.shutdown();
     }
 
+    @Test
+    public void testNodesAndRelationshipsInBatches() throws IOException {
+        StringBuilder persons = new StringBuilder(":ID|name:STRING|age:INT\n");
+        StringBuilder knows = new StringBuilder(":START_ID|:END_ID|since:INT\n");
+        for (int i = 0; i < 1000; i++) {
+            persons.append(i).append("|Person").append(i).append('|').append(i % 100).append('\n');
+            knows.append(i).append('|').append((i + 1) % 1000).append('|').append(2000 + i % 20).append('\n');
+        }
+        CsvTestUtil.saveCsvFile("batch-persons", persons.toString());
+        CsvTestUtil.saveCsvFile("batch-knows", knows.toString());
+
+        TestUtil.testCall(
+                db,
+                "CALL apoc.import.csv([{fileName: {nodeFile}, labels: ['Person']}], [{fileName: {relFile}, type: 'KNOWS'}], {config})",
+                map(
+                        "nodeFile", "file:/batch-persons.csv",
+                        "relFile", "file:/batch-knows.csv",
+                        "config", map("delimiter", '|', "batchSize", 100)
+                ),
+                (r) -> {
+                    assertEquals(1000L, r.get("nodes"));
+                    assertEquals(1000L, r.get("relationships"));
+                }
+        );
+
+        TestUtil.testCall(db, "MATCH (a:Person {name:'Person999'})-[r:KNOWS]->(b:Person) RETURN a.age AS age, r.since AS since, b.name AS name",
+                (r) -> {
+                    assertEquals(99L, r.get("age"));
+                    assertEquals(2019L, r.get("since"));
+                    assertEquals("Person0", r.get("name"));
+                });
+    }
+
+    @Test
+    public void testRelationshipsInParallel() throws IOException {
+        StringBuilder persons = new StringBuilder(":ID|name:STRING\n");
+        StringBuilder knows = new StringBuilder(":START_ID|:END_ID|since:INT\n");
+        for (int i = 0; i < 1000; i++) {
+            persons.append(i).append("|Person").append(i).append('\n');
+            knows.append(i).append('|').append((i * 7) % 1000).append('|').append(2000 + i % 20).append('\n');
+            knows.append(i).append('|').append(999 - i).append('|').append(2000 + i % 20).append('\n');
+        }
+        CsvTestUtil.saveCsvFile("parallel-persons", persons.toString());
+        CsvTestUtil.saveCsvFile("parallel-knows", knows.toString());
+
+        TestUtil.testCall(
+                db,
+                "CALL apoc.import.csv([{fileName: {nodeFile}, labels: ['Person']}], [{fileName: {relFile}, type: 'KNOWS'}], {config})",
+                map(
+                        "nodeFile", "file:/parallel-persons.csv",
+                        "relFile", "file:/parallel-knows.csv",
+                        "config", map("delimiter", '|', "batchSize", 50, "parallel", true)
+                ),
+                (r) -> {
+                    assertEquals(1000L, r.get("nodes"));
+                    assertEquals(2000L, r.get("relationships"));
+                    assertEquals(4000L, r.get("properties"));
+                }
+        );
+
+        TestUtil.testCall(db, "MATCH (a:Person {name:'Person3'})-[r:KNOWS]->(b:Person) RETURN collect(b.name) AS names, sum(r.since) AS since",
+                (r) -> {
+                    assertEquals(new HashSet<>(Arrays.asList("Person21", "Person996")), new HashSet<>((List) r.get("names")));
+                    assertEquals(4006L, r.get("since"));
+                });
+        TestUtil.testCall(db, "MATCH ()-[r:KNOWS]->() RETURN count(r) AS count", (r) -> assertEquals(2000L, r.get("count")));
+    }
+
+    @Test
+    public void testFailedParallelLoadDiscardsTheLastChunk() throws IOException {
+        StringBuilder persons = new StringBuilder(":ID|name:STRING\n");
+        StringBuilder knows = new StringBuilder(":START_ID|:END_ID\n");
+        for (int i = 0; i < 10; i++) {
+            persons.append(i).append("|Person").append(i).append('\n');
+            knows.append(i).append('|').append(9 - i).append('\n');
+        }
+        knows.append("0|42\n");
+        CsvTestUtil.saveCsvFile("parallel-failing-persons", persons.toString());
+        CsvTestUtil.saveCsvFile("parallel-failing-knows", knows.toString());
+
+        try {
+            TestUtil.testCall(
+                    db,
+                    "CALL apoc.import.csv([{fileName: {nodeFile}, labels: ['Person']}], [{fileName: {relFile}, type: 'KNOWS'}], {config})",
+                    map(
+                            "nodeFile", "file:/parallel-failing-persons.csv",
+                            "relFile", "file:/parallel-failing-knows.csv",
+                            "config", map("delimiter", '|', "batchSize", 50, "parallel", true)
+                    ),
+                    (r) -> fail("id 42 doesn't exist"));
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("id 42 not found"));
+        }
+        TestUtil.testCall(db, "MATCH ()-[r:KNOWS]->() RETURN count(r) AS count", (r) -> assertEquals(0L, r.get("count")));
+    }
+
+    @Test
+    public void testMissingTrailingColumnsAreNull() throws IOException {
+        CsvTestUtil.saveCsvFile("short-persons", ":ID|name:STRING|age:INT\n1|John|25\n2|Jane\n3\n");
+        CsvTestUtil.saveCsvFile("short-knows", ":START_ID|:END_ID|since:INT\n1|2\n2|3|2016\n");
+
+        TestUtil.testCall(
+                db,
+                "CALL apoc.import.csv([{fileName: {nodeFile}, labels: ['Person']}], [{fileName: {relFile}, type: 'KNOWS'}], {config})",
+                map(
+                        "nodeFile", "file:/short-persons.csv",
+                        "relFile", "file:/short-knows.csv",
+                        "config", map("delimiter", '|')
+                ),
+                (r) -> {
+                    assertEquals(3L, r.get("nodes"));
+                    assertEquals(2L, r.get("relationships"));
+                }
+        );
+        TestUtil.testCall(db, "MATCH (n:Person) RETURN count(n.name) AS names, count(n.age) AS ages",
+                (r) -> {
+                    assertEquals(2L, r.get("names"));
+                    assertEquals(1L, r.get("ages"));
+                });
+        TestUtil.testCall(db, "MATCH ()-[r:KNOWS]->() RETURN count(r.since) AS since", (r) -> assertEquals(1L, r.get("since")));
+    }
+
+    @Test
+    public void testMissingEndIdReportsTheLine() throws IOException {
+        CsvTestUtil.saveCsvFile("short-ids-persons", ":ID|name:STRING\n1|John\n2|Jane\n");
+        CsvTestUtil.saveCsvFile("short-ids-knows", ":START_ID|:END_ID\n1|2\n2\n");
+
+        try {
+            TestUtil.testCall(
+                    db,
+                    "CALL apoc.import.csv([{fileName: {nodeFile}, labels: ['Person']}], [{fileName: {relFile}, type: 'KNOWS'}], {config})",
+                    map(
+                            "nodeFile", "file:/short-ids-persons.csv",
+                            "relFile", "file:/short-ids-knows.csv",
+                            "config", map("delimiter", '|')
+                    ),
+                    (r) -> fail("the second relationship has no end id"));
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Missing start or end id on line 2"));
+        }
+    }
+
+    @Test
+    public void testParallelRoundsAreDisjoint() {
+        int partitions = 6;
+        Set<List<Integer>> pairs = new HashSet<>();
+        for (int[][] round : ParallelRelationshipLoader.rounds(partitions)) {
+            Set<Integer> used = new HashSet<>();
+            for (int[] pair : round) {
+                assertTrue(used.add(pair[0]));
+                assertTrue(pair[0] == pair[1] || used.add(pair[1]));
+                pairs.add(Arrays.asList(Math.min(pair[0], pair[1]), Math.max(pair[0], pair[1])));
+            }
+        }
+        assertEquals(partitions * (partitions + 1) / 2, pairs.size());
+    }
+
     @Test
     public void testNodesWithIds() {
         TestUtil.testCall(
@@ -106,6 +106,26 @@ public class FingerprintingTest {
         compareGraph("CREATE (:Person{name:'ABC', created:timestamp()})", singletonList("created"), true);
     }
 
+    @Test
+    public void fingerprintGraphParallel() {
+        String cypher = "UNWIND range(1,10) AS id CREATE (a:Person{id:id, created:timestamp()})-[:KNOWS{since:id}]->(:Person{id:id + 1})";
+        Map<String, Object> params = map("excludes", singletonList("created"), "config", map("parallel", true, "batchSize", 3));
+        String query = "return apoc.hashing.fingerprintGraph($excludes, $config) as hash";
+
+        db.execute(cypher).close();
+        String value = Iterators.single(db.execute(query, params).columnAs("hash"));
+
+        // same graph with different ids
+        db.execute("match (n) detach delete n").close();
+        db.execute("CREATE (:Dummy)").close();
+        db.execute(cypher).close();
+        db.execute("match (n:Dummy) delete n").close();
+        assertEquals(value, Iterators.single(db.execute(query, params).columnAs("hash")));
+
+        db.execute("match (a)-[r:KNOWS{since:1}]->(b) delete r create (b)-[:KNOWS{since:1}]->(a)").close();
+        assertNotEquals(value, Iterators.single(db.execute(query, params).columnAs("hash")));
+    }
+
     private void compareGraph(String cypher, List<String> excludes, boolean shouldBeEqual) {
         Map<String, Object> params = singletonMap("excludes", excludes);
 
@@ -61,6 +61,35 @@ public class FreeTextSearchTest {
         assertSingleNode("people", termQuery("Jones"), hasProperty("name", "Cyrus Jones"));
     }
 
+    @Test
+    public void shouldCreateIndexInParallel() throws Exception {
+        // given
+        execute("UNWIND range(1,25) AS i CREATE (:Person {name:'Person '+i, nick:'p'+i})");
+        execute("CREATE (:Person:City {name:'Paris'}), (:City {name:'London'}), (:Other {name:'Cyrus'})");
+
+        // when
+        TestUtil.testResult(db, "CALL apoc.index.addAllNodes('stuff', {Person:['name','nick'], City:['name']}, {parallel:true, batchSize:4}) " +
+                "YIELD label, property, nodeCount RETURN label, property, nodeCount ORDER BY label, property", result -> {
+            assertEquals(map("label", "City", "property", "name", "nodeCount", 2L), result.next());
+            assertEquals(map("label", "Person", "property", "name", "nodeCount", 26L), result.next());
+            assertEquals(map("label", "Person", "property", "nick", "nodeCount", 25L), result.next());
+            assertFalse(result.hasNext());
+        });
+
+        // then
+        assertSingleNode("stuff", termQuery("p17"), hasProperty("name", "Person 17"), hasLabel("Person"));
+        assertSingleNode("stuff", termQuery("London"), hasProperty("name", "London"), hasLabel("City"));
+        assertSingleNode("stuff", termQuery("Paris"), hasProperty("name", "Paris"), hasLabel("City"));
+        assertEquals(25, Iterators.count(search("stuff", "Person.name:Person")));
+        assertNone(search("stuff", "Cyrus"));
+        try (Transaction tx = db.beginTx()) {
+            Map<String, String> config = db.index().getConfiguration(nodeIndex("stuff"));
+            assertFalse(config.containsKey("parallel"));
+            assertFalse(config.containsKey("batchSize"));
+            tx.success();
+        }
+    }
+
     @Test
     public void shouldRefuseToCreateIndexWithNoStructure() throws Exception {
         // when
@@ -9,14 +9,20 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 
 import static apoc.util.TestUtil.*;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 @RunWith(Parameterized.class)
 public class IndexUpdateTransactionEventHandlerTest {
@@ -103,6 +109,88 @@ public class IndexUpdateTransactionEventHandlerTest {
         testCallCount(db, "match (s:Submarine) remove s.periscope return s", null, 2);
     }
 
+    @Test
+    public void shouldCoalesceUpdatesOfANodeAndKey() {
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.createNode();
+            IndexUpdateTransactionEventHandler.IndexBatch batch = new IndexUpdateTransactionEventHandler.IndexBatch(null);
+            batch.update(node, "City.name", "a", false);
+            batch.update(node, "City.name", "b", true);
+            batch.update(node, "City.name", "c", false);
+            assertEquals(3, batch.operations);
+            assertEquals(2, batch.coalesced);
+            assertEquals(1, batch.size);
+            IndexUpdateTransactionEventHandler.Update update = batch.updates.get(node).get("City.name");
+            assertEquals("c", update.value);
+            assertTrue(update.replace);
+
+            // a deletion supersedes the updates, a later update of the same id is applied after it
+            IndexUpdateTransactionEventHandler.IndexBatch later = new IndexUpdateTransactionEventHandler.IndexBatch(null);
+            later.delete(node);
+            batch.merge(later);
+            assertEquals(1, batch.size);
+            assertTrue(batch.updates.isEmpty());
+            assertTrue(batch.deleted.contains(node));
+
+            later = new IndexUpdateTransactionEventHandler.IndexBatch(null);
+            later.update(node, "City.name", "d", false);
+            batch.merge(later);
+            assertEquals(2, batch.size);
+            assertEquals(5, batch.operations);
+            assertEquals(3, batch.coalesced);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldReportAsyncUpdateStats() {
+        testCallEmpty(db, "call apoc.index.addAllNodesExtended('search_index',{City:['name']},{autoUpdate:true})", null);
+        testCallEmpty(db, "create (c:City{name:\"Made Up City\"})", null);
+        for (int i = 0; i < 5; i++) {
+            testCallEmpty(db, "match (c:City) set c.name = 'Other City " + i + "'", null);
+        }
+        indexUpdateTransactionEventHandler.forceTxRollover();
+
+        testCallCount(db, "CALL apoc.index.nodes('search_index','City.name:\"Made Up\"')", null, 0);
+        testCallCount(db, "CALL apoc.index.nodes('search_index','City.name:\"Other City 4\"')", null, 1);
+        if (asyncIndexUpdates) {
+            testResult(db, "CALL apoc.index.autoUpdateStats()", result -> {
+                long operations = 0, applied = 0;
+                while (result.hasNext()) {
+                    Map<String, Object> row = result.next();
+                    assertEquals(0L, row.get("queueDepth"));
+                    assertEquals(0L, row.get("pendingOperations"));
+                    assertEquals(0L, row.get("lag"));
+                    assertEquals(Collections.emptyList(), row.get("staleIndexes"));
+                    operations += (long) row.get("operations");
+                    applied += (long) row.get("applied");
+                }
+                assertEquals(6, operations);
+                assertTrue(applied >= 1 && applied <= 6);
+            });
+        } else {
+            testCallEmpty(db, "CALL apoc.index.autoUpdateStats()", null);
+        }
+    }
+
+    @Test
+    public void shouldQueueABatchLargerThanTheCapacity() {
+        assumeTrue(asyncIndexUpdates);
+        IndexUpdateTransactionEventHandler handler = new IndexUpdateTransactionEventHandler((GraphDatabaseAPI) db, NullLog.getInstance(), true, 1, false);
+        IndexUpdateTransactionEventHandler.Shard shard = handler.new Shard(0, 1, 10, 10);
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.createNode();
+            IndexUpdateTransactionEventHandler.IndexBatch batch = new IndexUpdateTransactionEventHandler.IndexBatch(null);
+            batch.update(node, "City.name", "a", false);
+            batch.update(node, "City.url", "b", false);
+            // the queue is empty, so it doesn't wait for space
+            shard.enqueue(batch);
+            assertEquals(2L, shard.queuedOperations.get());
+            assertEquals(1, shard.queueDepth());
+            tx.success();
+        }
+    }
+
     @Ignore("this test is supposed to fail until 3.4.10 gets released, https://github.com/neo4j/neo4j/commit/7b8baa607cd63a70303437de7ebb1e254a9e42ff")
     @Test
     public void shouldDeletingNodeWork() {
@@ -9,9 +9,13 @@ import org.neo4j.graphdb.*;
 import org.neo4j.helpers.collection.Iterators;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
+import static apoc.util.MapUtil.map;
 import static apoc.util.TestUtil.testCall;
+import static java.util.Arrays.asList;
 import static apoc.util.TestUtil.testResult;
 import static org.junit.Assert.*;
 
@@ -117,4 +121,97 @@ public class MergeTest {
         }
     }
 
+    @Test
+    public void testMergeNodesBatched() throws Exception {
+        db.execute("CREATE (:Person:Bastard {ssid:'1', name:'Jim'}), (:Person {ssid:'2', name:'Joe'})").close();
+        String query = "CALL apoc.merge.nodes(['Person','Bastard'], ['ssid'], [{ssid:'1', name:'John'}, {ssid:'2', name:'Jane'}, {ssid:'3', name:'Jack', tags:['a','b']}, {ssid:'3', name:'Jill'}], $config)";
+        testCall(db, query, map("config", map()), row -> {
+            assertEquals(4L, row.get("rows"));
+            assertEquals(2L, row.get("created"));
+            assertEquals(2L, row.get("matched"));
+            assertEquals(false, row.get("indexed"));
+        });
+        testResult(db, "MATCH (p:Person:Bastard) RETURN p.ssid as ssid, p.name as name, p.tags as tags ORDER BY ssid", result -> {
+            assertEquals(map("ssid", "1", "name", "Jim", "tags", null), result.next());
+            assertEquals("Jane", result.next().get("name"));
+            assertEquals("Jack", result.next().get("name"));
+            assertFalse(result.hasNext());
+        });
+
+        db.execute("CREATE INDEX ON :Bastard(ssid)").close();
+        db.execute("CALL db.awaitIndexes()").close();
+        testCall(db, query, map("config", map("update", true)), row -> {
+            assertEquals(0L, row.get("created"));
+            assertEquals(4L, row.get("matched"));
+            assertEquals(true, row.get("indexed"));
+        });
+        testCall(db, "MATCH (p:Bastard {ssid:'3'}) RETURN p.name as name, p.tags as tags", row -> {
+            assertEquals("Jill", row.get("name"));
+            assertArrayEquals(new String[]{"a", "b"}, (String[]) row.get("tags"));
+        });
+    }
+
+    @Test
+    public void testMergeNodesWidensMixedNumbers() throws Exception {
+        testCall(db, "CALL apoc.merge.nodes(['Person'], ['id'], [{id:1, scores:[1, 2.5], counts:[1, 2]}]) YIELD created RETURN *",
+                row -> assertEquals(1L, row.get("created")));
+        testCall(db, "MATCH (p:Person {id:1}) RETURN p.scores as scores, p.counts as counts", row -> {
+            assertArrayEquals(new double[]{1, 2.5}, (double[]) row.get("scores"), 0);
+            assertArrayEquals(new long[]{1, 2}, (long[]) row.get("counts"));
+        });
+        try {
+            testCall(db, "CALL apoc.merge.nodes(['Person'], ['id'], [{id:2, tags:['a', 1]}]) YIELD created RETURN *",
+                    row -> assertEquals(1L, row.get("created")));
+            fail();
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Lists containing mixed types can not be stored as properties"));
+        }
+    }
+
+    @Test
+    public void testMergeNodesWithUniqueConstraint() throws Exception {
+        db.execute("CREATE CONSTRAINT ON (p:Person) ASSERT p.id IS UNIQUE").close();
+        db.execute("CREATE (:Person {id:1})").close();
+        testCall(db, "UNWIND range(1,100) as id WITH collect({id:id % 10}) as rows CALL apoc.merge.nodes(['Person'], ['id'], rows) YIELD created, matched, indexed RETURN *", row -> {
+            assertEquals(9L, row.get("created"));
+            assertEquals(91L, row.get("matched"));
+            assertEquals(true, row.get("indexed"));
+        });
+        testCall(db, "MATCH (p:Person) RETURN count(*) as c", row -> assertEquals(10L, row.get("c")));
+    }
+
+    @Test
+    public void testMergeRelationshipsBatched() throws Exception {
+        db.execute("CREATE (a:Person {name:'a'}), (b:Person {name:'b'}), (a)-[:KNOWS {since:2000, weight:1}]->(b)").close();
+        String query = "MATCH (a:Person {name:'a'}), (b:Person {name:'b'}) " +
+                "CALL apoc.merge.relationships('KNOWS', ['since'], [{start:a, end:b, properties:{since:2000, weight:2}}, {start:id(a), end:id(b), properties:{since:2010, weight:3}}, {start:b, end:a, properties:{since:2010}}, {start:a, end:b, properties:{since:2010}}], $config) " +
+                "YIELD rows, created, matched, rowsPerSecond RETURN *";
+        testCall(db, query, map("config", map()), row -> {
+            assertEquals(4L, row.get("rows"));
+            assertEquals(2L, row.get("created"));
+            assertEquals(2L, row.get("matched"));
+            assertTrue((double) row.get("rowsPerSecond") > 0);
+        });
+        testCall(db, "MATCH (:Person {name:'a'})-[r:KNOWS]->(:Person {name:'b'}) RETURN collect(r.weight) as weights", row ->
+                assertEquals(new HashSet<>(asList(1L, 3L)), new HashSet<>((List) row.get("weights"))));
+        testCall(db, query, map("config", map("update", true)), row -> assertEquals(4L, row.get("matched")));
+        testCall(db, "MATCH ()-[r:KNOWS]->() RETURN count(*) as c, sum(r.weight) as weight", row -> {
+            assertEquals(3L, row.get("c"));
+            assertEquals(5L, row.get("weight"));
+        });
+    }
+
+    @Test
+    public void testMergeRelationshipsWithPropertiesNotAMapShouldFail() {
+        db.execute("CREATE (a:Person {name:'a'}), (b:Person {name:'b'})").close();
+        try {
+            testCall(db, "MATCH (a:Person {name:'a'}), (b:Person {name:'b'}) " +
+                    "CALL apoc.merge.relationships('KNOWS', ['since'], [{start:a, end:b, properties:2000}]) YIELD created RETURN *",
+                    row -> assertEquals(1L, row.get("created")));
+            fail();
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage().contains("Expected a map as properties of the row but got 2000"));
+        }
+    }
+
 }
@@ -0,0 +1,132 @@
+package apoc.meta;
+
+import apoc.ApocKernelExtensionFactory;
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static apoc.util.TestUtil.testCall;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class MetaCacheTest {
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder()
+                .setConfig("apoc.meta.cache.enabled", "true")
+                .newGraphDatabase();
+        TestUtil.registerProcedure(db, Meta.class);
+    }
+
+    @After
+    public void tearDown() {
+        if (db != null) db.shutdown();
+    }
+
+    private MetaCache cache() {
+        return ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ApocKernelExtensionFactory.ApocLifecycle.class).getMetaCache();
+    }
+
+    private List<String> metaData(String config) {
+        return db.execute("CALL apoc.meta.data(" + config + ") YIELD label, property RETURN label + '.' + property AS key ORDER BY key")
+                .<String>columnAs("key").stream().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testCachedMetaDataIsUpdatedIncrementally() throws Exception {
+        db.execute("CREATE (:Person {name:'Tom'})-[:KNOWS {since:2010}]->(:Person {name:'John'})").close();
+        assertEquals(asList("KNOWS.Person", "KNOWS.since", "Person.KNOWS", "Person.name"), metaData("{cached:true}"));
+        long built = cache().snapshot.built;
+
+        db.execute("MATCH (p:Person {name:'Tom'}) SET p.age = 42 CREATE (p)-[:LIVES_IN]->(:City {name:'Berlin'})").close();
+        assertEquals(asList("City.name", "KNOWS.Person", "KNOWS.since", "LIVES_IN.Person", "Person.KNOWS", "Person.LIVES_IN", "Person.age", "Person.name"), metaData("{cached:true}"));
+        assertEquals(built, cache().snapshot.built);
+
+        testCall(db, "CALL apoc.meta.data({cached:true}) YIELD label, property, other WHERE label = 'Person' AND property = 'LIVES_IN' RETURN other",
+                (row) -> assertEquals(asList("City"), row.get("other")));
+
+        // rolled back changes are not applied
+        try {
+            db.execute("CREATE (:Ghost {name:'x'}) RETURN 1/0").close();
+            fail("division by zero");
+        } catch (Exception e) {
+            // expected
+        }
+        assertFalse(metaData("{cached:true}").contains("Ghost.name"));
+    }
+
+    @Test
+    public void testRemovalsNeedARebuild() throws Exception {
+        db.execute("CREATE (:Person {name:'Tom', age:42})").close();
+        assertTrue(metaData("{cached:true}").contains("Person.age"));
+
+        db.execute("MATCH (p:Person) REMOVE p.age").close();
+        assertTrue(metaData("{cached:true}").contains("Person.age"));
+        Thread.sleep(10);
+        // the old snapshot is returned while it's rebuilt
+        long built = cache().snapshot.built;
+        metaData("{cached:true, maxStaleness:0.001}");
+        cache().awaitBuild();
+        assertNotEquals(built, cache().snapshot.built);
+        assertFalse(metaData("{cached:true}").contains("Person.age"));
+    }
+
+    @Test
+    public void testCachedSchemaRefreshesIndexes() throws Exception {
+        db.execute("CREATE (:Movie {title:'Forrest Gump'})<-[:ACTED_IN]-(:Actor {name:'Tom Hanks'})").close();
+        testCall(db, "CALL apoc.meta.schema({cached:true})", (row) -> {
+            Map<String, Object> movie = (Map<String, Object>) ((Map<String, Object>) row.get("value")).get("Movie");
+            assertEquals(false, ((Map<String, Object>) ((Map<String, Object>) movie.get("properties")).get("title")).get("indexed"));
+        });
+        db.execute("CREATE INDEX ON :Movie(title)").close();
+        testCall(db, "CALL apoc.meta.schema({cached:true})", (row) -> {
+            Map<String, Object> value = (Map<String, Object>) row.get("value");
+            Map<String, Object> movie = (Map<String, Object>) value.get("Movie");
+            assertEquals(true, ((Map<String, Object>) ((Map<String, Object>) movie.get("properties")).get("title")).get("indexed"));
+            assertEquals("relationship", ((Map<String, Object>) value.get("ACTED_IN")).get("type"));
+        });
+    }
+
+    @Test
+    public void testCachedMetaGraph() throws Exception {
+        db.execute("CREATE (:A)-[:X]->(:B), (:C)-[:X]->(:D)").close();
+        testCall(db, "CALL apoc.meta.graph({cached:true})", (row) -> {
+            List<Relationship> rels = (List<Relationship>) row.get("relationships");
+            assertEquals(2, rels.size());
+            for (Relationship rel : rels) {
+                Node start = rel.getStartNode();
+                Node end = rel.getEndNode();
+                assertEquals(start.getProperty("name").equals("A") ? "B" : "D", end.getProperty("name"));
+            }
+        });
+    }
+
+    @Test
+    public void testCacheNotEnabled() throws Exception {
+        GraphDatabaseService other = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        try {
+            TestUtil.registerProcedure(other, Meta.class);
+            other.execute("CALL apoc.meta.data({cached:true})").close();
+            fail("cache is not enabled");
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null) cause = cause.getCause();
+            assertTrue(cause.getMessage(), cause.getMessage().contains("apoc.meta.cache.enabled"));
+        } finally {
+            other.shutdown();
+        }
+    }
+}
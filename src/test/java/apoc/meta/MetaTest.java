@@ -8,6 +8,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.*;
 import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.values.storable.*;
 
 import java.time.Clock;
@@ -23,6 +26,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singletonMap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.neo4j.driver.v1.Values.isoDuration;
 import static org.neo4j.graphdb.traversal.Evaluators.toDepth;
 
@@ -652,4 +656,60 @@ public class MetaTest {
         });
     }
 
-}
+    @Test
+    public void testMetaDataSamplesLargeLabelsBySeeks() throws Exception {
+        db.execute("UNWIND range(0,4999) AS i CREATE (n:Big {id:i}) WITH n, i WHERE i % 100 = 0 SET n.extra = true").close();
+        db.execute("UNWIND range(0,4) AS i CREATE (:Small {id:i})").close();
+        try (Transaction tx = db.beginTx()) {
+            KernelTransaction ktx = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).getKernelTransactionBoundToThisThread(true);
+            int label = ktx.tokenRead().nodeLabel("Big");
+            assertTrue(LabelSampler.useSeeks(5000, 5004, 10));
+            List<Long> sampled = new ArrayList<>();
+            assertTrue(LabelSampler.sample(ktx, label, 5000, 5004, 10, sampled::add));
+            assertEquals(10, sampled.size());
+            for (long id : sampled) {
+                assertTrue(db.getNodeById(id).hasLabel(Label.label("Big")));
+            }
+            tx.success();
+        }
+        TestUtil.testResult(db, "CALL apoc.meta.data({sample:10}) YIELD label, property, partial RETURN * ORDER BY label, property",
+                (r) -> {
+                    assertEquals(map("label", "Big", "property", "extra", "partial", false), r.next());
+                    assertEquals(map("label", "Big", "property", "id", "partial", false), r.next());
+                    assertEquals(map("label", "Small", "property", "id", "partial", false), r.next());
+                    assertEquals(false, r.hasNext());
+                });
+    }
+
+    @Test
+    public void testMetaSchemaWithTimeout() {
+        db.execute("CREATE (:Person {name:'Tom'})-[:KNOWS]->(:Person {name:'John'})").close();
+        testCall(db, "CALL apoc.meta.schema()", (row) -> {
+            Map<String, Object> o = (Map<String, Object>) row.get("value");
+            assertEquals(false, ((Map<String, Object>) o.get("Person")).get("partial"));
+            assertEquals(false, ((Map<String, Object>) o.get("KNOWS")).get("partial"));
+        });
+        testCall(db, "CALL apoc.meta.schema({timeout:0.000000001})", (row) -> {
+            Map<String, Object> o = (Map<String, Object>) row.get("value");
+            Map<String, Object> person = (Map<String, Object>) o.get("Person");
+            assertEquals(true, person.get("partial"));
+            assertEquals(2L, person.get("count"));
+            assertEquals(true, ((Map<String, Object>) o.get("KNOWS")).get("partial"));
+        });
+    }
+
+    @Test
+    public void testMetaSchemaSeesUncommittedChanges() {
+        db.execute("CREATE (:Person {name:'Tom'})").close();
+        try (Transaction tx = db.beginTx()) {
+            db.execute("MATCH (p:Person) SET p.age = 42").close();
+            testCall(db, "CALL apoc.meta.schema()", (row) -> {
+                Map<String, Object> o = (Map<String, Object>) row.get("value");
+                Map<String, Object> properties = (Map<String, Object>) ((Map<String, Object>) o.get("Person")).get("properties");
+                assertTrue(properties.containsKey("age"));
+            });
+            tx.failure();
+        }
+    }
+
+}
\ No newline at end of file
@@ -1,9 +1,12 @@
 package apoc.neighbors;
 
+import apoc.ApocConfiguration;
 import apoc.util.TestUtil;
 import org.junit.*;
 import org.neo4j.graphdb.*;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -31,6 +34,23 @@ public class NeighborsTest {
         db.shutdown();
     }
 
+    @Test
+    public void getNeighborsInParallel() {
+        try {
+            ApocConfiguration.addToConfig(Collections.singletonMap(HopExpander.CONFIG_PARALLEL_THRESHOLD, 0));
+            TestUtil.testCall(db, "MATCH (n:First) WITH n " +
+                            "CALL apoc.neighbors.byhop.count(n,'KNOWS>|<UNKNOWN', 3) YIELD value AS numbers " +
+                            "RETURN numbers",
+                    (row) -> assertEquals(Arrays.asList(1L, 1L, 1L), row.get("numbers")));
+            TestUtil.testCall(db, "MATCH (n:Neighbor)-->(:Neighbor)-->(:Neighbor) WITH n " +
+                            "CALL apoc.neighbors.tohop.count(n,'KNOWS', 2) YIELD value AS number " +
+                            "RETURN number",
+                    (row) -> assertEquals(3L, row.get("number")));
+        } finally {
+            ApocConfiguration.addToConfig(Collections.singletonMap(HopExpander.CONFIG_PARALLEL_THRESHOLD, HopExpander.DEFAULT_PARALLEL_THRESHOLD));
+        }
+    }
+
     @Test
     public void getNeighbors2Hops() {
         TestUtil.testCall(db, "MATCH (n:First) WITH n " +
@@ -1,5 +1,6 @@
 package apoc.path;
 
+import apoc.ApocConfiguration;
 import apoc.algo.Cover;
 import apoc.result.NodeResult;
 import apoc.result.RelationshipResult;
@@ -52,6 +53,33 @@ public class SubgraphTest {
 		db.shutdown();
 	}
 
+	@Test
+	public void testParallelFrontierShouldMatchTraversal() throws Throwable {
+		String traversal = "MATCH (m:Movie {title: 'The Matrix'}) CALL apoc.path.expandConfig(m, {config}) yield path return collect([n in nodes(path) | id(n)]) as paths";
+		String spanningTree = "MATCH (m:Movie {title: 'The Matrix'}) CALL apoc.path.spanningTree(m, {config}) yield path return collect([n in nodes(path) | id(n)]) as paths";
+		List<Map<String, Object>> configs = java.util.Arrays.asList(
+				Util.map(),
+				Util.map("maxLevel", 3, "relationshipFilter", "ACTED_IN|DIRECTED>"),
+				Util.map("labelFilter", "+Person|Movie|-BigBrother", "limit", 50),
+				Util.map("sequence", ">Movie,<ACTED_IN,Person,ACTED_IN>"));
+		try {
+			for (int threshold : new int[]{FrontierExpander.DEFAULT_PARALLEL_THRESHOLD, 1}) {
+				ApocConfiguration.addToConfig(Util.map(FrontierExpander.CONFIG_PARALLEL_THRESHOLD, threshold));
+				for (Map<String, Object> config : configs) {
+					Map<String, Object> traversalConfig = new java.util.HashMap<>(config);
+					traversalConfig.put("uniqueness", "NODE_GLOBAL");
+					try (Transaction tx = db.beginTx()) {
+						Object expected = db.execute(traversal, Util.map("config", traversalConfig)).next().get("paths");
+						Object actual = db.execute(spanningTree, Util.map("config", config)).next().get("paths");
+						assertEquals(config.toString(), expected, actual);
+					}
+				}
+			}
+		} finally {
+			ApocConfiguration.addToConfig(Util.map(FrontierExpander.CONFIG_PARALLEL_THRESHOLD, FrontierExpander.DEFAULT_PARALLEL_THRESHOLD));
+		}
+	}
+
 	@Test
 	public void testFullSubgraphShouldContainAllNodes() throws Throwable {
 		String query = "MATCH (m:Movie {title: 'The Matrix'}) CALL apoc.path.subgraphNodes(m,{}) yield node return count(distinct node) as cnt";
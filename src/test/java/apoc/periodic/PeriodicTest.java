@@ -218,6 +218,24 @@ System.out.println("call list" + db.execute(callList).resultAsString());
         );
     }
 
+    @Test
+    public void testIterateAdaptive() throws Exception {
+        db.execute("UNWIND range(1,1000) AS x CREATE (:Person{name:'Person_'+x})").close();
+
+        testResult(db, "CALL apoc.periodic.iterate('match (p:Person) return p', 'SET p.lastname =p.name REMOVE p.name', {batchSize:10,parallel:true,adaptive:true,concurrency:8})", result -> {
+            Map<String, Object> row = Iterators.single(result);
+            assertEquals(100L, row.get("batches"));
+            assertEquals(1000L, row.get("total"));
+            long concurrency = (long) row.get("concurrency");
+            assertTrue(concurrency >= 1 && concurrency <= 8);
+        });
+
+        testCall(db,
+                "MATCH (p:Person) where p.lastname is not null return count(p) as count",
+                row -> assertEquals(1000L, row.get("count"))
+        );
+    }
+
     @Test
     public void testIteratePrefix() throws Exception {
         db.execute("UNWIND range(1,100) AS x CREATE (:Person{name:'Person_'+x})").close();
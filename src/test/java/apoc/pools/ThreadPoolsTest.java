@@ -0,0 +1,65 @@
+package apoc.pools;
+
+import apoc.Pools;
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadPoolsTest {
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        TestUtil.registerProcedure(db, ThreadPools.class);
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        Future<Integer> future = Pools.ANALYTICS.submit(() -> 42);
+        assertEquals(42, future.get().intValue());
+
+        Set<String> names = new HashSet<>();
+        TestUtil.testResult(db, "CALL apoc.pools.stats()", result -> result.forEachRemaining(row -> {
+            names.add((String) row.get("name"));
+            assertTrue((Long) row.get("maxThreads") >= 1);
+            assertTrue((Long) row.get("queueSize") >= 0);
+            assertTrue((Long) row.get("rejected") >= 0);
+        }));
+        for (String name : new String[]{"pool", "single", "scheduled", Pools.BATCH_WRITE_POOL, Pools.ANALYTICS_POOL, Pools.IO_POOL, Pools.BACKGROUND_POOL}) {
+            assertTrue(name, names.contains(name));
+        }
+    }
+
+    @Test
+    public void testNestedSubmitRunsInline() throws Exception {
+        ExecutorService pool = Pools.createPool("nested", 1);
+        try {
+            Future<String> future = pool.submit(() -> {
+                String worker = Thread.currentThread().getName();
+                return pool.submit(() -> Thread.currentThread().getName().equals(worker) ? "inline" : "queued").get();
+            });
+            assertEquals("inline", future.get(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
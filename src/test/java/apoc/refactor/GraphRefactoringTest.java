@@ -288,6 +288,30 @@ public class GraphRefactoringTest {
         categorizeWithDirection(Direction.INCOMING);
     }
 
+    @Test
+    public void testCategorizeReusesExistingCategories() throws Exception {
+        db.execute("CREATE (:Item {prop: 'A', k: 'a'})-[:IS_A]->(:Letter {name: 'A', k: 'x'}) " +
+                "CREATE (:Item {prop: 'A', k: 'x'}) " +
+                "CREATE (:Item {prop: 'B', k: 'b'})").close();
+
+        testCallEmpty(db, "CALL apoc.refactor.categorize('prop','IS_A', true, 'Letter','name',['k'],100)", map());
+
+        testCall(db, "MATCH (l:Letter) RETURN count(*) AS count", (r) -> assertEquals(2L, r.get("count")));
+        testCall(db, "MATCH (:Item)-[r:IS_A]->(:Letter) RETURN count(r) AS count", (r) -> assertEquals(3L, r.get("count")));
+        testCall(db, "MATCH (l:Letter) WITH l ORDER BY l.name RETURN collect(l.k) AS ks", (r) -> assertEquals(asList("x", "b"), r.get("ks")));
+        testCall(db, "MATCH (i:Item) WITH i ORDER BY id(i) RETURN collect(coalesce(i.k, '-')) AS ks", (r) -> assertEquals(asList("a", "-", "-"), r.get("ks")));
+    }
+
+    @Test
+    public void testCategorizeIgnoresCategoryLabelWithoutTargetKey() throws Exception {
+        db.execute("CREATE (:Letter {other: 'x'}) CREATE (:Item {prop: 'A'})").close();
+
+        testCallEmpty(db, "CALL apoc.refactor.categorize('prop','IS_A', true, 'Letter','name',[],100)", map());
+
+        testCall(db, "MATCH (:Item)-[:IS_A]->(l:Letter) RETURN l.name AS name", (r) -> assertEquals("A", r.get("name")));
+        testCall(db, "MATCH (l:Letter) RETURN count(*) AS count", (r) -> assertEquals(2L, r.get("count")));
+    }
+
     @Test
     public void testCloneNodes() throws Exception {
         Node node = db.execute("CREATE (f:Foo {name:'foo',age:42})-[:FB]->(:Bar) RETURN f").<Node>columnAs("f").next();
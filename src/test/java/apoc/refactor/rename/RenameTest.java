@@ -71,6 +71,21 @@ public class RenameTest {
 		assertEquals(new Long(0), resultRelationshipsMatches("KNOWS", null));
 	}
 
+	@Test
+	public void testRenameRelationshipsOfSharedNodesInBatches() throws Exception {
+		db.execute("CREATE (hub:Hub) WITH hub UNWIND range(1,20) AS id CREATE (hub)-[:KNOWS {id: id}]->(:Foo {id: id})").close();
+		testCall(db, "CALL apoc.refactor.rename.type({oldType},{newType}, null, {batchSize: 3})",
+				map("oldType", "KNOWS", "newType", "LOVES"), (r) -> {
+			assertEquals(20L, r.get("total"));
+			assertEquals(20L, r.get("committedOperations"));
+			assertEquals(0L, r.get("failedBatches"));
+		});
+
+		assertEquals(new Long(20), resultRelationshipsMatches("LOVES", null));
+		assertEquals(new Long(0), resultRelationshipsMatches("KNOWS", null));
+		testCall(db, "MATCH (:Hub)-[r:LOVES]->(f:Foo) WHERE r.id = f.id RETURN count(*) AS count", (r) -> assertEquals(20L, r.get("count")));
+	}
+
 	@Test
 	public void testRenameTypeForSomeRelationships() throws Exception {
 		for (int i = 0; i < 10; i++)
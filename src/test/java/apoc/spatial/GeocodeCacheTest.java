@@ -0,0 +1,124 @@
+package apoc.spatial;
+
+import apoc.spatial.Geocode.GeoCodeResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static apoc.util.MapUtil.map;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class GeocodeCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Supplier<Stream<GeoCodeResult>> lookup(String address, long maxResults) {
+        return () -> {
+            calls.incrementAndGet();
+            return LongStream.range(0, maxResults).mapToObj(i -> new GeoCodeResult((double) i, (double) -i, address + " " + i, map("rank", i)));
+        };
+    }
+
+    private List<String> geocode(GeocodeCache cache, String address, long maxResults) {
+        return cache.geocode("osm", address, maxResults, lookup(address, maxResults)).map(r -> r.description).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testCacheHitsByNormalizedAddress() {
+        GeocodeCache cache = new GeocodeCache(10, null);
+        assertEquals(1, geocode(cache, "21 Rue Paul Bellamy  Nantes", 1).size());
+        assertEquals(1, geocode(cache, " 21 rue paul bellamy nantes", 1).size());
+        assertEquals(1, calls.get());
+
+        // more results than cached
+        assertEquals(3, geocode(cache, "21 rue paul bellamy nantes", 3).size());
+        assertEquals(2, calls.get());
+        assertEquals(1, geocode(cache, "21 rue paul bellamy nantes", 1).size());
+        assertEquals(2, calls.get());
+
+        // other provider
+        cache.geocode("google", "21 rue paul bellamy nantes", 1, lookup("21 rue paul bellamy nantes", 1)).count();
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        GeocodeCache cache = new GeocodeCache(2, null);
+        geocode(cache, "a", 1);
+        geocode(cache, "b", 1);
+        geocode(cache, "a", 1);
+        geocode(cache, "c", 1);
+        assertEquals(3, calls.get());
+        assertEquals(2, cache.size());
+
+        geocode(cache, "a", 1);
+        assertEquals(3, calls.get());
+        geocode(cache, "b", 1);
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testPersistentCache() throws Exception {
+        String file = new File(folder.getRoot(), "geocode.cache").getPath();
+        GeocodeCache cache = new GeocodeCache(2, file);
+        geocode(cache, "a", 2);
+        geocode(cache, "b", 1);
+        geocode(cache, "c", 1);
+        cache.reverseGeocode("osm", 47.2, -1.5, lookup("reverse", 1)).count();
+        assertEquals(4, calls.get());
+
+        GeocodeCache reloaded = new GeocodeCache(2, file);
+        assertEquals(2, reloaded.size());
+        assertEquals(asList("c 0"), geocode(reloaded, "c", 1));
+        assertEquals(asList("reverse 0"), reloaded.reverseGeocode("osm", 47.2, -1.5, lookup("other", 1)).map(r -> r.description).collect(Collectors.toList()));
+        assertEquals(4, calls.get());
+        assertEquals(2, Files.readAllLines(new File(file).toPath()).size());
+    }
+
+    @Test
+    public void testConcurrentLookupsAreCollapsed() throws Exception {
+        GeocodeCache cache = new GeocodeCache(10, null);
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        Supplier<Stream<GeoCodeResult>> slowLookup = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Stream.of(new GeoCodeResult(1d, 2d, "slow", map()));
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> first = executor.submit(() -> cache.geocode("osm", "x", 1, slowLookup).count());
+            started.await(10, TimeUnit.SECONDS);
+            Future<Long> second = executor.submit(() -> cache.geocode("osm", "x", 1, slowLookup).count());
+            Thread.sleep(100);
+            release.countDown();
+            assertEquals(1L, (long) first.get());
+            assertEquals(1L, (long) second.get());
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -8,8 +8,10 @@ import org.neo4j.graphdb.*;
 import org.neo4j.helpers.collection.Iterators;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
+import java.util.ArrayList;
 import java.util.Map;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.neo4j.helpers.collection.MapUtil.map;
@@ -226,6 +228,38 @@ public class TriggerTest {
         });
     }
 
+    @Test
+    public void testSelectorByLabelTypeAndPropertyKey() throws Exception {
+        db.execute("CREATE (:Counter {labels:0, types:0, keys:0})").close();
+        db.execute("CALL apoc.trigger.add('by-label','MATCH (c:Counter) SET c.labels = c.labels + 1',{labels:['Person']})").close();
+        db.execute("CALL apoc.trigger.add('by-type','MATCH (c:Counter) SET c.types = c.types + 1',{phase:'after', types:'KNOWS'})").close();
+        db.execute("CALL apoc.trigger.add('by-key','MATCH (c:Counter) SET c.keys = c.keys + 1',{propertyKeys:['age']})").close();
+
+        db.execute("CREATE (:Foo {name:'Michael'})-[:X]->(:Bar)").close();
+        db.execute("CREATE (:Person {name:'Michael'})").close();
+        db.execute("MATCH (p:Person) SET p.age = 42").close();
+        db.execute("MATCH (p:Person), (f:Foo) CREATE (p)-[:KNOWS]->(f)").close();
+        db.execute("MATCH ()-[r:KNOWS]->() DELETE r").close();
+        TestUtil.testCall(db, "MATCH (c:Counter) RETURN c.labels AS labels, c.types AS types, c.keys AS keys", (row) -> {
+            assertEquals(2L, row.get("labels"));
+            assertEquals(2L, row.get("types"));
+            assertEquals(1L, row.get("keys"));
+        });
+    }
 
+    @Test
+    public void testOnlyReferencedParametersAreBuilt() throws Exception {
+        Trigger.CompiledTrigger trigger = new Trigger.CompiledTrigger(map("kernelTransaction",
+                "UNWIND apoc.trigger.nodesByLabel({assignedLabels},'Person') AS n SET n.txId = $transactionId, n.flag = $`flag`, n.map = {commitTime: 1}",
+                "selector", map("phase", "after"), "params", map("flag", true)));
+        assertEquals("after", trigger.phase);
+        assertEquals(asList("assignedLabels", "transactionId"), new ArrayList<>(trigger.parameters));
+        db.execute("CALL apoc.trigger.add('flag','UNWIND {createdNodes} AS n SET n.flag = $flag, n.trigger = $trigger',{},{params:{flag:true}})").close();
+        db.execute("CREATE (:Foo)").close();
+        TestUtil.testCall(db, "MATCH (f:Foo) RETURN f.flag AS flag, f.trigger AS trigger", (row) -> {
+            assertEquals(true, row.get("flag"));
+            assertEquals("flag", row.get("trigger"));
+        });
+    }
 
 }
@@ -0,0 +1,68 @@
+package apoc.ttl;
+
+import apoc.util.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static apoc.util.TestUtil.testCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TTLExpirerTest {
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        TestUtil.registerProcedure(db, TTL.class);
+        db.execute("CREATE INDEX ON :TTL(ttl)").close();
+        db.execute("CALL db.awaitIndexes()").close();
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void testExpireInBatches() throws Exception {
+        db.execute("UNWIND range(1,25) AS id CREATE (:TTL:Foo {ttl: timestamp() - id})-[:KNOWS]->(:Bar)").close();
+        db.execute("UNWIND range(1,5) AS id CREATE (:TTL:Foo {ttl: timestamp() + 100000})").close();
+
+        TTLExpirer expirer = new TTLExpirer((GraphDatabaseAPI) db, 10, 100);
+        assertEquals(25L, expirer.expire(10000));
+        assertEquals(3L, expirer.batches.get());
+        assertEquals(25L, expirer.relationshipsDeleted.get());
+        testCall(db, "MATCH (n:Foo) RETURN count(*) AS count", (r) -> assertEquals(5L, r.get("count")));
+        testCall(db, "MATCH (n:Bar) RETURN count(*) AS count", (r) -> assertEquals(25L, r.get("count")));
+    }
+
+    @Test
+    public void testExpireDenseNodeInChunks() throws Exception {
+        db.execute("CREATE (t:TTL {ttl: timestamp() - 1}) WITH t UNWIND range(1,120) AS id CREATE (t)-[:KNOWS]->(:Bar)").close();
+
+        TTLExpirer expirer = new TTLExpirer((GraphDatabaseAPI) db, 10, 50);
+        assertEquals(1L, expirer.expire(10000));
+        assertEquals(120L, expirer.relationshipsDeleted.get());
+        testCall(db, "MATCH (n:TTL) RETURN count(*) AS count", (r) -> assertEquals(0L, r.get("count")));
+        testCall(db, "MATCH (n:Bar) RETURN count(*) AS count", (r) -> assertEquals(120L, r.get("count")));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        db.execute("UNWIND range(1,3) AS id CREATE (:TTL {ttl: timestamp() - 1000 * id})").close();
+        db.execute("CREATE (:TTL {ttl: timestamp() + 100000})").close();
+
+        testCall(db, "CALL apoc.ttl.stats()", (r) -> {
+            assertEquals(true, r.get("indexed"));
+            assertEquals(false, r.get("enabled"));
+            assertEquals(3L, r.get("backlog"));
+            assertTrue((long) r.get("lag") >= 3000);
+        });
+    }
+}